@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2013, Hamish Morgan.
+ * All Rights Reserved.
+ */
+package com.google.api.services.freebase;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Concurrency limiter using additive-increase/multiplicative-decrease, as in TCP congestion control. Each request
+ * acquires a permit before it starts, and reports its outcome when it releases the permit.
+ * <p/>
+ * Each request that succeeds within the latency threshold raises the limit by <tt>1/limit</tt>, so the limit grows
+ * by about one per round of requests. A request that fails, or takes longer than the threshold, multiplies the limit
+ * by the decrease factor. Requests that were already running when the limit was decreased do not decrease it
+ * again, so a burst of failures from one overloaded round only backs off once.
+ * <p/>
+ * Permits can be acquired either by blocking, with {@link #acquire()}, or without blocking, with
+ * {@link #acquire(PermitCallback)}. Callers waiting without blocking are queued, and are granted permits in order as
+ * others are released, before any blocked callers are woken.
+ *
+ * @author Hamish Morgan
+ */
+@ThreadSafe
+public final class AimdLimiter {
+
+    public static final int DEFAULT_INITIAL_LIMIT = 4;
+    public static final int DEFAULT_MAX_LIMIT = 32;
+    public static final double DEFAULT_DECREASE_FACTOR = 0.5;
+    public static final long DEFAULT_LATENCY_THRESHOLD_MILLIS = 5000;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double decreaseFactor;
+    private final long latencyThresholdNanos;
+
+    @GuardedBy("this")
+    private double limit;
+    @GuardedBy("this")
+    private int inFlight = 0;
+    /**
+     * Incremented on every decrease; permits acquired before the latest decrease can not decrease the limit again.
+     */
+    @GuardedBy("this")
+    private long epoch = 0;
+    /**
+     * Callers of {@link #acquire(PermitCallback)} waiting for a permit, in order of arrival.
+     */
+    @GuardedBy("this")
+    private final Queue<PermitCallback> waiters = new ArrayDeque<PermitCallback>();
+
+    /**
+     * Receives a permit acquired without blocking.
+     */
+    public interface PermitCallback {
+
+        /**
+         * Called once a permit has been taken on behalf of the caller, which must eventually pass it to
+         * {@link #release(long, long, boolean)} or {@link #cancel(long)}. This may be called on the thread that
+         * released an earlier permit, so it should hand the request over to an executor rather than run it.
+         *
+         * @param permit value to be passed to {@link #release(long, long, boolean)}
+         */
+        void onPermit(long permit);
+    }
+
+    /**
+     * @param initialLimit     number of concurrent requests allowed at first
+     * @param minLimit         the limit never falls below this
+     * @param maxLimit         the limit never rises above this
+     * @param decreaseFactor   factor by which the limit is multiplied on a failure, between 0 and 1
+     * @param latencyThreshold requests that take longer than this count as failures
+     * @param unit             unit of the latency threshold
+     */
+    public AimdLimiter(int initialLimit, int minLimit, int maxLimit, double decreaseFactor,
+                       long latencyThreshold, TimeUnit unit) {
+        checkArgument(minLimit > 0, "minLimit <= 0");
+        checkArgument(maxLimit >= minLimit, "maxLimit < minLimit");
+        checkArgument(initialLimit >= minLimit && initialLimit <= maxLimit,
+                "initialLimit out of range [minLimit, maxLimit]");
+        checkArgument(decreaseFactor > 0 && decreaseFactor < 1, "decreaseFactor out of range (0,1)");
+        checkArgument(latencyThreshold > 0, "latencyThreshold <= 0");
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.decreaseFactor = decreaseFactor;
+        this.latencyThresholdNanos = checkNotNull(unit, "unit").toNanos(latencyThreshold);
+        this.limit = initialLimit;
+    }
+
+    public AimdLimiter() {
+        this(DEFAULT_INITIAL_LIMIT, 1, DEFAULT_MAX_LIMIT, DEFAULT_DECREASE_FACTOR,
+                DEFAULT_LATENCY_THRESHOLD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Wait until fewer requests than the current limit are in flight, and take a permit.
+     *
+     * @return permit to be passed to {@link #release(long, long, boolean)}
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized long acquire() throws InterruptedException {
+        while (inFlight >= (int) limit || !waiters.isEmpty())
+            wait();
+        inFlight++;
+        return epoch;
+    }
+
+    /**
+     * Take a permit without blocking: the callback is passed a permit immediately, on the calling thread, if fewer
+     * requests than the current limit are in flight; otherwise it is queued, and passed a permit when enough have
+     * been released.
+     *
+     * @param callback receives the permit
+     */
+    public void acquire(@Nonnull PermitCallback callback) {
+        checkNotNull(callback, "callback");
+        final long permit;
+        synchronized (this) {
+            if (inFlight >= (int) limit || !waiters.isEmpty()) {
+                waiters.add(callback);
+                return;
+            }
+            inFlight++;
+            permit = epoch;
+        }
+        callback.onPermit(permit);
+    }
+
+    /**
+     * Return a permit, and adjust the limit according to the outcome of the request.
+     *
+     * @param permit       value returned by {@link #acquire()}
+     * @param latencyNanos how long the request took
+     * @param failed       whether the request failed
+     */
+    public void release(long permit, long latencyNanos, boolean failed) {
+        final List<PermitCallback> granted;
+        final long grantedPermit;
+        synchronized (this) {
+            inFlight--;
+            if (failed || latencyNanos > latencyThresholdNanos) {
+                if (permit == epoch) {
+                    limit = Math.max(minLimit, limit * decreaseFactor);
+                    epoch++;
+                }
+            } else {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            granted = grantWaiters();
+            grantedPermit = epoch;
+            notifyAll();
+        }
+        for (PermitCallback callback : granted)
+            callback.onPermit(grantedPermit);
+    }
+
+    /**
+     * Return a permit that was never used for a request, for example because the request was cancelled while it was
+     * waiting to run. The limit is not adjusted.
+     *
+     * @param permit value returned by {@link #acquire()} or passed to a {@link PermitCallback}
+     */
+    public void cancel(long permit) {
+        final List<PermitCallback> granted;
+        final long grantedPermit;
+        synchronized (this) {
+            inFlight--;
+            granted = grantWaiters();
+            grantedPermit = epoch;
+            notifyAll();
+        }
+        for (PermitCallback callback : granted)
+            callback.onPermit(grantedPermit);
+    }
+
+    /**
+     * Take permits for as many queued callbacks as the limit now allows. The callbacks are called by the caller
+     * once the lock has been released.
+     */
+    @GuardedBy("this")
+    @Nonnull
+    private List<PermitCallback> grantWaiters() {
+        if (waiters.isEmpty() || inFlight >= (int) limit)
+            return Collections.emptyList();
+        final List<PermitCallback> granted = new ArrayList<PermitCallback>();
+        while (!waiters.isEmpty() && inFlight < (int) limit) {
+            granted.add(waiters.remove());
+            inFlight++;
+        }
+        return granted;
+    }
+
+    /**
+     * @return number of concurrent requests currently allowed
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * @return number of concurrent requests the limit can rise to
+     */
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * @return number of callers of {@link #acquire(PermitCallback)} waiting for a permit
+     */
+    public synchronized int getWaiting() {
+        return waiters.size();
+    }
+
+    /**
+     * @return number of permits currently held
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "AimdLimiter{limit=" + limit + ", inFlight=" + inFlight + '}';
+    }
+}
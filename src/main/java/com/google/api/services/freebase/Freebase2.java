@@ -16,25 +16,47 @@ import com.google.api.client.http.HttpTransport;
 import com.google.api.client.http.json.JsonHttpRequestInitializer;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.JsonObjectParser;
+import com.google.api.client.json.JsonParser;
 import com.google.api.services.freebase.SearchFormat.AbstractResult;
 import com.google.api.services.freebase.SearchFormat.IdsResult;
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.Files;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Extention to the com.google.api.services.freebase.Freebase API which adds support for search.
@@ -45,10 +67,27 @@ import java.util.Set;
  *
  * @author hamish
  */
-public class Freebase2 extends Freebase {
+public class Freebase2 extends Freebase implements Closeable {
 
     private static final Logger LOG = LoggerFactory.getLogger(Freebase2.class);
     public static final int BATCH_FAILURE_RETRIES = 3;
+    /**
+     * Default maximum number of queries sent in a single batch request.
+     */
+    public static final int DEFAULT_BATCH_CHUNK_SIZE = 50;
+
+    private volatile int batchChunkSize = DEFAULT_BATCH_CHUNK_SIZE;
+    @Nonnull
+    private volatile AimdLimiter batchLimiter = new AimdLimiter();
+    /**
+     * Executor on which the chunks of a batch search are run; created when first needed unless set.
+     */
+    @Nullable
+    private ExecutorService batchExecutor = null;
+    /**
+     * Whether the batch executor was created by this instance, rather than set, and so is shut down when it is closed.
+     */
+    private boolean ownsBatchExecutor = false;
 
     public Freebase2(HttpTransport transport, JsonFactory jsonFactory,
                      HttpRequestInitializer httpRequestInitializer) {
@@ -79,8 +118,9 @@ public class Freebase2 extends Freebase {
         Search search = new Search(query);
         search.setFormat(SearchFormat.MIDS);
         initialize(search);
-        return search.executeParseObject(
-                SearchFormat.IdsResult.class).getResults();
+        final List<String> ids = new ArrayList<String>();
+        search.executeParseIds(ids);
+        return ids;
     }
 
     public List<String> searchGetIds(String query) throws IOException {
@@ -88,8 +128,9 @@ public class Freebase2 extends Freebase {
         Search search = new Search(query);
         search.setFormat(SearchFormat.IDS);
         initialize(search);
-        return search.executeParseObject(
-                SearchFormat.IdsResult.class).getResults();
+        final List<String> ids = new ArrayList<String>();
+        search.executeParseIds(ids);
+        return ids;
     }
 
     public List<String> searchGetGuids(String query) throws IOException {
@@ -97,8 +138,9 @@ public class Freebase2 extends Freebase {
         Search search = new Search(query);
         search.setFormat(SearchFormat.GUIDS);
         initialize(search);
-        return search.executeParseObject(
-                SearchFormat.IdsResult.class).getResults();
+        final List<String> ids = new ArrayList<String>();
+        search.executeParseIds(ids);
+        return ids;
     }
 
     /**
@@ -115,12 +157,84 @@ public class Freebase2 extends Freebase {
     }
 
     /**
-     * Search for all of the given queries as a single batch operations, returning the results as
+     * Set the maximum number of queries sent in a single batch request. Larger query sets are split into chunks of
+     * this size, which are searched concurrently.
+     */
+    public void setBatchChunkSize(int batchChunkSize) {
+        Preconditions.checkArgument(batchChunkSize > 0, "batchChunkSize <= 0");
+        this.batchChunkSize = batchChunkSize;
+    }
+
+    public int getBatchChunkSize() {
+        return batchChunkSize;
+    }
+
+    /**
+     * Set the limiter that controls how many batch requests are in flight at once. It is shared by all the batch
+     * searches of this instance, so the concurrency adapts to the service as a whole.
+     */
+    public void setBatchLimiter(@Nonnull AimdLimiter batchLimiter) {
+        this.batchLimiter = Preconditions.checkNotNull(batchLimiter, "batchLimiter");
+    }
+
+    @Nonnull
+    public AimdLimiter getBatchLimiter() {
+        return batchLimiter;
+    }
+
+    /**
+     * Set the executor on which the chunks of a batch search are run. If unset, a pool of daemon threads is created
+     * when first needed, with one thread for each permit the batch limiter can grant at most; chunks wait in its
+     * queue, rather than each holding a thread blocked on the limiter.
+     */
+    public synchronized void setBatchExecutor(@Nonnull ExecutorService batchExecutor) {
+        this.batchExecutor = Preconditions.checkNotNull(batchExecutor, "batchExecutor");
+        this.ownsBatchExecutor = false;
+    }
+
+    @Nonnull
+    private synchronized ExecutorService getBatchExecutor() {
+        if (batchExecutor == null) {
+            final int threads = batchLimiter.getMaxLimit();
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactoryBuilder()
+                            .setDaemon(true)
+                            .setNameFormat("freebase-batch-%d")
+                            .build());
+            executor.allowCoreThreadTimeOut(true);
+            batchExecutor = executor;
+            ownsBatchExecutor = true;
+        }
+        return batchExecutor;
+    }
+
+    /**
+     * Shut down the HTTP transport, which closes the connections of a pooled transport (see
+     * <tt>HttpTransports</tt>), and the batch executor if it was created by this instance. Searches still running
+     * may fail, and no more can be made.
+     *
+     * @throws IOException if the transport could not be shut down
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (ownsBatchExecutor)
+                batchExecutor.shutdown();
+        }
+        getRequestFactory().getTransport().shutdown();
+    }
+
+    /**
+     * Search for all of the given queries as batch operations, returning the results as
      * map from each query string to the result object. The format of the result object is
      * determined by the second (format) argument.
      * <p/>
      * This method is substantially faster when large numbers of queries need to be performed
-     * consecutively.
+     * consecutively. The queries are split into chunks of at most {@link #getBatchChunkSize()} queries, which are
+     * searched concurrently, as many at a time as the {@link AimdLimiter} allows. Queries that fail are retried, up
+     * to {@link #BATCH_FAILURE_RETRIES} attempts, as part of their own chunk only, so a throttled chunk does not
+     * hold up the others. Queries which still fail are omitted from the results.
      *
      * @param queries queries to search for
      * @param format  result format
@@ -128,58 +242,293 @@ public class Freebase2 extends Freebase {
      * @throws IOException if something bad occurs with the lookup
      */
     public Map<String, AbstractResult> batchSearch(
-            @Nonnull Set<String> queries, @Nonnull SearchFormat format)
+            @Nonnull Set<String> queries, @Nonnull final SearchFormat format)
             throws IOException {
-        LOG.debug("Performing brach search for queries {}", queries);
+        LOG.debug("Performing batch search for queries {}", queries);
         Preconditions.checkNotNull(queries, "queries");
-        Preconditions.checkNotNull(format, "queries");
+        Preconditions.checkNotNull(format, "format");
         assert AbstractResult.class.isAssignableFrom(format.getDataClass());
 
-        final Map<String, AbstractResult> successes = Maps.newHashMap();
-        final Map<String, GoogleJsonError> failures = Maps.newHashMap();
+        final List<List<String>> chunks = Lists.partition(ImmutableList.copyOf(queries), batchChunkSize);
+        if (chunks.size() <= 1)
+            return searchChunk(queries, format);
+
+        final ExecutorService executor = getBatchExecutor();
+        final List<Future<Map<String, AbstractResult>>> futures =
+                new ArrayList<Future<Map<String, AbstractResult>>>(chunks.size());
+        for (final List<String> chunk : chunks) {
+            futures.add(executor.submit(new Callable<Map<String, AbstractResult>>() {
+                @Override
+                public Map<String, AbstractResult> call() throws IOException {
+                    return searchChunk(ImmutableSet.copyOf(chunk), format);
+                }
+            }));
+        }
 
-        final BatchRequest request = this.batch();
+        final Map<String, AbstractResult> successes = Maps.newHashMap();
+        try {
+            for (Future<Map<String, AbstractResult>> future : futures)
+                successes.putAll(future.get());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw (InterruptedIOException) new InterruptedIOException().initCause(ex);
+        } catch (ExecutionException ex) {
+            Throwables.propagateIfInstanceOf(ex.getCause(), IOException.class);
+            throw Throwables.propagate(ex.getCause());
+        } finally {
+            for (Future<Map<String, AbstractResult>> future : futures)
+                future.cancel(true);
+        }
+        return successes;
+    }
 
+    /**
+     * Search for one chunk of queries, retrying the queries that fail. Each attempt holds a permit from the batch
+     * limiter, and reports its latency, and whether any query failed, when it completes.
+     *
+     * @throws IOException if the last attempt failed outright
+     */
+    @Nonnull
+    private Map<String, AbstractResult> searchChunk(@Nonnull Set<String> queries, @Nonnull SearchFormat format)
+            throws IOException {
+        final AimdLimiter limiter = batchLimiter;
+        final Map<String, AbstractResult> successes = Maps.newHashMap();
+        Set<String> failures = queries;
+        IOException lastError = null;
         int retryCount = 0;
 
-        for (String query : queries) {
-            failures.put(query, null);
-        }
-
         while (!failures.isEmpty() && retryCount < BATCH_FAILURE_RETRIES) {
 
+            final long permit;
             try {
-                Thread.sleep(100 * (long) Math.pow(2, retryCount));
+                if (retryCount > 0)
+                    Thread.sleep(retryDelayMillis(retryCount));
+                permit = limiter.acquire();
             } catch (InterruptedException ex) {
-                throw Throwables.propagate(ex);
+                Thread.currentThread().interrupt();
+                throw (InterruptedIOException) new InterruptedIOException().initCause(ex);
             }
 
-            for (String query : failures.keySet()) {
-                final Search search = new Search(query);
-                search.setFormat(format);
-                initialize(search);
+            final long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                failures = executeBatch(failures, format, successes);
+                failed = !failures.isEmpty();
+                lastError = null;
+            } catch (IOException ex) {
+                LOG.warn("Batch request of " + failures.size() + " queries failed: " + ex.getLocalizedMessage());
+                lastError = ex;
+            } finally {
+                limiter.release(permit, System.nanoTime() - start, failed);
+            }
+            retryCount++;
+        }
+
+        if (lastError != null)
+            throw lastError;
+        return successes;
+    }
+
+    /**
+     * Search for all of the given queries as batch operations, as {@link #batchSearch(Set, SearchFormat)},
+     * but without blocking the calling thread. The queries are split into chunks in the same way, and each chunk's
+     * batch request is executed on the given scheduler. Each attempt takes a permit from the same batch limiter as
+     * the synchronous searches, but waits for it without holding a thread, and failed queries are retried, within
+     * their chunk, after a scheduled delay rather than by sleeping.
+     * <p/>
+     * The retry policy is that of the synchronous method: queries which still fail after
+     * {@link #BATCH_FAILURE_RETRIES} attempts are omitted from the results, and the search fails if the last attempt
+     * of any chunk failed outright.
+     *
+     * @param queries   queries to search for
+     * @param format    result format
+     * @param scheduler executor on which requests and retries are run
+     * @return future of the results mapped to each query string
+     */
+    @Nonnull
+    public ListenableFuture<Map<String, AbstractResult>> batchSearchAsync(
+            @Nonnull Set<String> queries, @Nonnull SearchFormat format,
+            @Nonnull ScheduledExecutorService scheduler) {
+        Preconditions.checkNotNull(queries, "queries");
+        Preconditions.checkNotNull(format, "format");
+        Preconditions.checkNotNull(scheduler, "scheduler");
+        final List<ListenableFuture<Map<String, AbstractResult>>> chunkResults = Lists.newArrayList();
+        for (List<String> chunk : Lists.partition(ImmutableList.copyOf(queries), batchChunkSize)) {
+            final BatchSearchTask task =
+                    new BatchSearchTask(ImmutableSet.copyOf(chunk), format, batchLimiter, scheduler);
+            task.start();
+            chunkResults.add(task.result);
+        }
+        if (chunkResults.size() == 1)
+            return chunkResults.get(0);
+        return Futures.transform(Futures.allAsList(chunkResults),
+                new Function<List<Map<String, AbstractResult>>, Map<String, AbstractResult>>() {
+                    @Override
+                    public Map<String, AbstractResult> apply(List<Map<String, AbstractResult>> results) {
+                        final Map<String, AbstractResult> merged = Maps.newHashMap();
+                        for (Map<String, AbstractResult> result : results)
+                            merged.putAll(result);
+                        return merged;
+                    }
+                }, scheduler);
+    }
+
+    /**
+     * Search for all of the given queries as a single batch operation, without blocking the calling thread,
+     * returning the results as a map from each query string to an list of id strings.
+     *
+     * @param queries   queries to search for
+     * @param scheduler executor on which requests and retries are run
+     * @return future of the results mapped to each query string
+     * @see #batchSearchAsync(Set, SearchFormat, ScheduledExecutorService)
+     */
+    @Nonnull
+    public ListenableFuture<Map<String, List<String>>> batchSearchGetIdsAsync(
+            @Nonnull Set<String> queries, @Nonnull ScheduledExecutorService scheduler) {
+        return Futures.transform(batchSearchAsync(queries, SearchFormat.IDS, scheduler),
+                new Function<Map<String, AbstractResult>, Map<String, List<String>>>() {
+                    @Override
+                    public Map<String, List<String>> apply(Map<String, AbstractResult> results) {
+                        return toIds(results);
+                    }
+                }, scheduler);
+    }
+
+    /**
+     * Time to wait before the given attempt at a batch request.
+     */
+    private static long retryDelayMillis(int retryCount) {
+        return 100 * (long) Math.pow(2, retryCount);
+    }
 
-                // Need to pre-define and type the arguments or jdk6 gets confused.
-                final HttpRequest httpRequest = search.buildHttpRequest();
+    /**
+     * Execute a single batch request for the given queries, adding the results of successful queries to the
+     * successes map.
+     *
+     * @return the queries that failed
+     */
+    @Nonnull
+    private Set<String> executeBatch(@Nonnull Set<String> queries, @Nonnull SearchFormat format,
+                                     @Nonnull Map<String, AbstractResult> successes) throws IOException {
+        final Map<String, GoogleJsonError> failures = Maps.newHashMap();
+        final BatchRequest request = this.batch();
 
-                @SuppressWarnings("unchecked")
-                final Class<AbstractResult> dataClass = (Class<AbstractResult>) format.getDataClass();
+        for (String query : queries) {
+            final Search search = new Search(query);
+            search.setFormat(format);
+            initialize(search);
 
-                final Class<GoogleJsonError> errorClass = GoogleJsonError.class;
-                final BatchCallback<AbstractResult, GoogleJsonError> callback = newMapPutCallback(query, successes, failures);
-                request.queue(httpRequest, dataClass, errorClass, callback);
+            // Need to pre-define and type the arguments or jdk6 gets confused.
+            final HttpRequest httpRequest = search.buildHttpRequest();
+            if (format.getDataClass() == IdsResult.class)
+                httpRequest.setParser(new StreamingIdsParser(getJsonFactory()));
+
+            @SuppressWarnings("unchecked")
+            final Class<AbstractResult> dataClass = (Class<AbstractResult>) format.getDataClass();
+
+            final Class<GoogleJsonError> errorClass = GoogleJsonError.class;
+            final BatchCallback<AbstractResult, GoogleJsonError> callback = newMapPutCallback(query, successes, failures);
+            request.queue(httpRequest, dataClass, errorClass, callback);
+        }
+        request.execute();
+
+        if (!failures.isEmpty()) {
+            LOG.warn("One or more queries failed during batch request: "
+                    + failures.keySet().toString());
+        }
+        return ImmutableSet.copyOf(failures.keySet());
+    }
+
+    /**
+     * A batch search of one chunk that re-schedules itself to retry failed queries, as {@link #searchChunk(Set,
+     * SearchFormat)} does without blocking. Each attempt waits for a permit from the batch limiter, then runs on the
+     * scheduler; attempts run one after another, so the successes map is only accessed by one thread at a time.
+     */
+    private final class BatchSearchTask implements AimdLimiter.PermitCallback {
+
+        private final SearchFormat format;
+        private final AimdLimiter limiter;
+        private final ScheduledExecutorService scheduler;
+        private final Map<String, AbstractResult> successes = Maps.newHashMap();
+        private final SettableFuture<Map<String, AbstractResult>> result = SettableFuture.create();
+        private Set<String> failures;
+        @Nullable
+        private IOException lastError = null;
+        private int retryCount = 0;
+
+        BatchSearchTask(Set<String> queries, SearchFormat format, AimdLimiter limiter,
+                        ScheduledExecutorService scheduler) {
+            this.failures = queries;
+            this.format = format;
+            this.limiter = limiter;
+            this.scheduler = scheduler;
+        }
+
+        /**
+         * Wait for a permit for the next attempt, after the back-off delay if it is a retry.
+         */
+        void start() {
+            if (retryCount == 0) {
+                limiter.acquire(this);
+                return;
             }
-            failures.clear();
-            request.execute();
+            try {
+                scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        limiter.acquire(BatchSearchTask.this);
+                    }
+                }, retryDelayMillis(retryCount), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ex) {
+                result.setException(ex);
+            }
+        }
 
-            if (!failures.isEmpty()) {
-                LOG.warn("One or more queries failed during batch request: "
-                        + failures.keySet().toString());
+        @Override
+        public void onPermit(final long permit) {
+            try {
+                scheduler.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        attempt(permit);
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                limiter.cancel(permit);
+                result.setException(ex);
             }
-            retryCount++;
         }
 
-        return successes;
+        private void attempt(final long permit) {
+            if (result.isCancelled()) {
+                limiter.cancel(permit);
+                return;
+            }
+
+            final long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                failures = executeBatch(failures, format, successes);
+                failed = !failures.isEmpty();
+                lastError = null;
+            } catch (IOException ex) {
+                LOG.warn("Batch request of " + failures.size() + " queries failed: " + ex.getLocalizedMessage());
+                lastError = ex;
+            } catch (Throwable t) {
+                result.setException(t);
+                return;
+            } finally {
+                limiter.release(permit, System.nanoTime() - start, failed);
+            }
+            retryCount++;
+
+            if (!failures.isEmpty() && retryCount < BATCH_FAILURE_RETRIES)
+                start();
+            else if (lastError != null)
+                result.setException(lastError);
+            else
+                result.set(successes);
+        }
     }
 
     /**
@@ -196,7 +545,11 @@ public class Freebase2 extends Freebase {
         Preconditions.checkNotNull(format, "format");
         Preconditions.checkArgument(format.getDataClass().equals(IdsResult.class),
                 "format must produce an IdsResult type output.");
-        final Map<String, AbstractResult> results = batchSearch(queries, format);
+        return toIds(batchSearch(queries, format));
+    }
+
+    @Nonnull
+    private static Map<String, List<String>> toIds(@Nonnull Map<String, AbstractResult> results) {
         final Map<String, List<String>> ids = Maps.newHashMap();
         for (Map.Entry<String, AbstractResult> result : results.entrySet()) {
             ids.put(result.getKey(), ((IdsResult) result.getValue()).getResults());
@@ -688,6 +1041,27 @@ public class Freebase2 extends Freebase {
             return parser.parseAndClose(is, charset, dataClass);
 
         }
+
+        /**
+         * Execute the search and append the identifiers of the results to the given list, without building the
+         * response object graph. The identifiers are the results themselves for the IDS, MIDS and GUIDS formats, and
+         * the mid of each result for the entity formats.
+         *
+         * @param ids list to which identifiers are appended; it can be reused across searches
+         * @return the status of the response, or null if it has none
+         * @throws IOException if the request failed or the response could not be decoded
+         */
+        @Nullable
+        public String executeParseIds(@Nonnull List<String> ids) throws IOException {
+            Preconditions.checkNotNull(ids, "ids");
+            final JsonParser parser = getJsonFactory().createJsonParser(
+                    executeAsInputStream(), Charsets.UTF_8);
+            try {
+                return StreamingIdsParser.readIds(parser, ids);
+            } finally {
+                parser.close();
+            }
+        }
     }
 
     /**
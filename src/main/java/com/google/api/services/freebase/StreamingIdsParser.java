@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2013, Hamish Morgan.
+ * All Rights Reserved.
+ */
+package com.google.api.services.freebase;
+
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.JsonObjectParser;
+import com.google.api.client.json.JsonParser;
+import com.google.api.client.json.JsonToken;
+import com.google.api.client.util.ObjectParser;
+import com.google.api.services.freebase.SearchFormat.IdsResult;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Decodes search responses by pulling the identifiers directly from the JSON token stream, rather than mapping the
+ * whole response onto a data object graph through reflection.
+ * <p/>
+ * Only the <tt>result</tt> array is decoded; for the IDS, MIDS and GUIDS formats each element is the identifier, and
+ * for the entity formats the <tt>mid</tt> (or failing that the <tt>id</tt>) of each element is taken. The
+ * <tt>status</tt> and <tt>code</tt> properties are kept; all others are skipped without being materialised.
+ * <p/>
+ * As an {@link ObjectParser} it produces {@link IdsResult} objects, so it can be set on the requests of a batch. Any
+ * other data class is passed to a standard {@link JsonObjectParser}.
+ *
+ * @author Hamish Morgan
+ */
+public class StreamingIdsParser implements ObjectParser {
+
+    private static final String RESULT = "result";
+    private static final String STATUS = "status";
+    private static final String CODE = "code";
+    private static final String MID = "mid";
+    private static final String ID = "id";
+
+    @Nonnull
+    private final JsonFactory jsonFactory;
+    @Nonnull
+    private final JsonObjectParser fallback;
+
+    public StreamingIdsParser(@Nonnull JsonFactory jsonFactory) {
+        this.jsonFactory = checkNotNull(jsonFactory, "jsonFactory");
+        this.fallback = jsonFactory.createJsonObjectParser();
+    }
+
+    /**
+     * Read a search response object from the parser, appending the identifiers of the results to the given list.
+     * The parser must be positioned before the start of the object.
+     *
+     * @param parser JSON token stream
+     * @param ids    list to which identifiers are appended; it can be cleared and reused between responses
+     * @return the <tt>status</tt> property of the response, or null if it has none
+     * @throws IOException if the stream can not be read, or is not a JSON object
+     */
+    @Nullable
+    public static String readIds(@Nonnull JsonParser parser, @Nonnull List<String> ids) throws IOException {
+        final IdsResult result = readResult(parser, ids);
+        return result.getStatus();
+    }
+
+    @Nonnull
+    private static IdsResult readResult(@Nonnull JsonParser parser, @Nonnull List<String> ids) throws IOException {
+        checkNotNull(parser, "parser");
+        checkNotNull(ids, "ids");
+        final IdsResult result = new IdsResult();
+        if (next(parser) != JsonToken.START_OBJECT)
+            throw new IOException("Expected a JSON object but found: " + parser.getCurrentToken());
+
+        JsonToken token;
+        while ((token = next(parser)) == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            token = next(parser);
+            if (RESULT.equals(name) && token == JsonToken.START_ARRAY) {
+                readResultArray(parser, ids);
+            } else if (STATUS.equals(name) && token == JsonToken.VALUE_STRING) {
+                result.setStatus(parser.getText());
+            } else if (CODE.equals(name) && token == JsonToken.VALUE_STRING) {
+                result.setCode(parser.getText());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (token != JsonToken.END_OBJECT)
+            throw new IOException("Expected a field name or the end of the object but found: " + token);
+        return result;
+    }
+
+    private static void readResultArray(@Nonnull JsonParser parser, @Nonnull List<String> ids) throws IOException {
+        JsonToken token;
+        while ((token = next(parser)) != JsonToken.END_ARRAY) {
+            if (token == JsonToken.VALUE_STRING) {
+                ids.add(parser.getText());
+            } else if (token == JsonToken.START_OBJECT) {
+                final String id = readEntityId(parser);
+                if (id != null)
+                    ids.add(id);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * Read the rest of an entity object, returning its mid, or its id if it has no mid.
+     */
+    @Nullable
+    private static String readEntityId(@Nonnull JsonParser parser) throws IOException {
+        String mid = null;
+        String id = null;
+        while (next(parser) == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = next(parser);
+            if (MID.equals(name) && token == JsonToken.VALUE_STRING)
+                mid = parser.getText();
+            else if (ID.equals(name) && token == JsonToken.VALUE_STRING)
+                id = parser.getText();
+            else
+                parser.skipChildren();
+        }
+        return mid != null ? mid : id;
+    }
+
+    @Nonnull
+    private static JsonToken next(@Nonnull JsonParser parser) throws IOException {
+        final JsonToken token = parser.nextToken();
+        if (token == null)
+            throw new EOFException("Unexpected end of JSON input");
+        return token;
+    }
+
+    /**
+     * Parse a response into an {@link IdsResult}, closing the parser.
+     */
+    @Nonnull
+    private static IdsResult parseAndClose(@Nonnull JsonParser parser) throws IOException {
+        try {
+            final List<String> ids = new ArrayList<String>();
+            final IdsResult result = readResult(parser, ids);
+            result.setResults(ids);
+            return result;
+        } finally {
+            parser.close();
+        }
+    }
+
+    @Override
+    public <T> T parseAndClose(InputStream in, Charset charset, Class<T> dataClass) throws IOException {
+        if (dataClass != IdsResult.class)
+            return fallback.parseAndClose(in, charset, dataClass);
+        return dataClass.cast(parseAndClose(jsonFactory.createJsonParser(in, charset)));
+    }
+
+    @Override
+    public Object parseAndClose(InputStream in, Charset charset, Type dataType) throws IOException {
+        if (dataType != IdsResult.class)
+            return fallback.parseAndClose(in, charset, dataType);
+        return parseAndClose(jsonFactory.createJsonParser(in, charset));
+    }
+
+    @Override
+    public <T> T parseAndClose(Reader reader, Class<T> dataClass) throws IOException {
+        if (dataClass != IdsResult.class)
+            return fallback.parseAndClose(reader, dataClass);
+        return dataClass.cast(parseAndClose(jsonFactory.createJsonParser(reader)));
+    }
+
+    @Override
+    public Object parseAndClose(Reader reader, Type dataType) throws IOException {
+        if (dataType != IdsResult.class)
+            return fallback.parseAndClose(reader, dataType);
+        return parseAndClose(jsonFactory.createJsonParser(reader));
+    }
+}
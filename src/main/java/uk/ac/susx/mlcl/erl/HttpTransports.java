@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2013, Hamish Morgan.
+ * All Rights Reserved.
+ */
+package uk.ac.susx.mlcl.erl;
+
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.apache.ApacheHttpTransport;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpVersion;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.Properties;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.text.MessageFormat.format;
+
+/**
+ * Creates the HTTP transports used to talk to remote services such as Freebase, configured from properties:
+ * <ul>
+ * <li><tt>http.transport</tt>: <tt>net</tt> (the default) for {@link NetHttpTransport}, which relies on the
+ * JVM's <tt>HttpURLConnection</tt> keep-alive cache, or <tt>pooled</tt> for an Apache HttpClient transport with a
+ * bounded pool of persistent connections, reused across requests and threads.</li>
+ * <li><tt>http.pool.max_connections</tt> and <tt>http.pool.max_connections_per_route</tt>: size of the pooled
+ * transport's connection pool.</li>
+ * <li><tt>http.connect_timeout_millis</tt> and <tt>http.read_timeout_millis</tt>: timeouts of every request. For
+ * the pooled transport the connect timeout also bounds the wait for a free connection.</li>
+ * </ul>
+ * The timeouts are applied to each request by the initializer from {@link #newRequestInitializer(Properties)},
+ * since the client library sets them on every request it builds.
+ * <p/>
+ * A pooled transport keeps its connections open until it is shut down with {@link HttpTransport#shutdown()}, which
+ * closes its connection manager; {@link com.google.api.services.freebase.Freebase2#close()} does so for the transport
+ * of that client.
+ *
+ * @author Hamish Morgan
+ */
+public final class HttpTransports {
+
+    private static final Log LOG = LogFactory.getLog(HttpTransports.class);
+
+    public static final String TRANSPORT_KEY = "http.transport";
+    public static final String TRANSPORT_VALUE_NET = "net";
+    public static final String TRANSPORT_VALUE_POOLED = "pooled";
+    public static final String MAX_CONNECTIONS_KEY = "http.pool.max_connections";
+    public static final String MAX_CONNECTIONS_PER_ROUTE_KEY = "http.pool.max_connections_per_route";
+    public static final String CONNECT_TIMEOUT_KEY = "http.connect_timeout_millis";
+    public static final String READ_TIMEOUT_KEY = "http.read_timeout_millis";
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 32;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 32;
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 20 * 1000;
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 20 * 1000;
+
+    private HttpTransports() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Create the transport selected by the properties.
+     */
+    @Nonnull
+    public static HttpTransport newTransport(@Nonnull Properties props) {
+        checkNotNull(props, "props");
+        final String transport = props.getProperty(TRANSPORT_KEY, TRANSPORT_VALUE_NET).toLowerCase().trim();
+        if (transport.equals(TRANSPORT_VALUE_NET)) {
+            return new NetHttpTransport();
+        } else if (transport.equals(TRANSPORT_VALUE_POOLED)) {
+            return newPooledTransport(
+                    getInt(props, MAX_CONNECTIONS_KEY, DEFAULT_MAX_CONNECTIONS),
+                    getInt(props, MAX_CONNECTIONS_PER_ROUTE_KEY, DEFAULT_MAX_CONNECTIONS_PER_ROUTE),
+                    getInt(props, CONNECT_TIMEOUT_KEY, DEFAULT_CONNECT_TIMEOUT_MILLIS));
+        } else {
+            throw new IllegalArgumentException("Unknown HTTP transport type: " + props.getProperty(TRANSPORT_KEY));
+        }
+    }
+
+    /**
+     * Create a transport over an Apache HttpClient with a bounded pool of keep-alive connections, which is safe to
+     * share between threads.
+     *
+     * @param maxConnections         maximum number of open connections
+     * @param maxConnectionsPerRoute maximum number of open connections to any one host
+     * @param poolTimeoutMillis      longest time to wait for a free connection
+     * @return pooled transport, which must be shut down to close its connections
+     */
+    @Nonnull
+    public static ApacheHttpTransport newPooledTransport(int maxConnections, int maxConnectionsPerRoute,
+                                                         int poolTimeoutMillis) {
+        checkArgument(maxConnections > 0, "maxConnections <= 0");
+        checkArgument(maxConnectionsPerRoute > 0, "maxConnectionsPerRoute <= 0");
+        checkArgument(poolTimeoutMillis >= 0, "poolTimeoutMillis < 0");
+        LOG.debug(format("Creating pooled HTTP transport: max connections {0}, per route {1}",
+                maxConnections, maxConnectionsPerRoute));
+
+        final HttpParams params = new BasicHttpParams();
+        HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+        HttpConnectionParams.setStaleCheckingEnabled(params, true);
+        HttpConnectionParams.setSocketBufferSize(params, 8192);
+        ConnManagerParams.setMaxTotalConnections(params, maxConnections);
+        ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(maxConnectionsPerRoute));
+        ConnManagerParams.setTimeout(params, poolTimeoutMillis);
+
+        final SchemeRegistry registry = new SchemeRegistry();
+        registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+        registry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+
+        final ThreadSafeClientConnManager connectionManager = new ThreadSafeClientConnManager(params, registry);
+        final DefaultHttpClient client = new DefaultHttpClient(connectionManager, params);
+        // Retries are the caller's business (see Freebase2.batchSearch); never silently resend a request
+        client.setHttpRequestRetryHandler(new DefaultHttpRequestRetryHandler(0, false));
+        return new ApacheHttpTransport(client);
+    }
+
+    /**
+     * Create an initializer that applies the configured connect and read timeouts to every request.
+     */
+    @Nonnull
+    public static HttpRequestInitializer newRequestInitializer(@Nonnull Properties props) {
+        checkNotNull(props, "props");
+        return newRequestInitializer(
+                getInt(props, CONNECT_TIMEOUT_KEY, DEFAULT_CONNECT_TIMEOUT_MILLIS),
+                getInt(props, READ_TIMEOUT_KEY, DEFAULT_READ_TIMEOUT_MILLIS));
+    }
+
+    @Nonnull
+    public static HttpRequestInitializer newRequestInitializer(final int connectTimeoutMillis,
+                                                               final int readTimeoutMillis) {
+        checkArgument(connectTimeoutMillis >= 0, "connectTimeoutMillis < 0");
+        checkArgument(readTimeoutMillis >= 0, "readTimeoutMillis < 0");
+        return new HttpRequestInitializer() {
+            @Override
+            public void initialize(HttpRequest request) throws IOException {
+                request.setConnectTimeout(connectTimeoutMillis);
+                request.setReadTimeout(readTimeoutMillis);
+            }
+        };
+    }
+
+    private static int getInt(@Nonnull Properties props, @Nonnull String key, int defaultValue) {
+        return props.containsKey(key) ? Integer.parseInt(props.getProperty(key).trim()) : defaultValue;
+    }
+}
@@ -5,7 +5,6 @@
 package uk.ac.susx.mlcl.erl;
 
 import com.google.api.client.googleapis.services.GoogleKeyInitializer;
-import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.client.http.json.JsonHttpRequestInitializer;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.jackson.JacksonFactory;
@@ -16,6 +15,7 @@ import org.apache.commons.logging.LogFactory;
 import javax.annotation.Nonnull;
 import java.io.File;
 import java.io.IOException;
+import java.util.Properties;
 
 /**
  * Stuff that should be elsewhere!
@@ -27,9 +27,22 @@ public class MiscUtil {
     private static final Log LOG = LogFactory.getLog(MiscUtil.class);
     private static final String APPLICATION_NAME = "ERL/1.0";
     private static final String API_KEY_FILE = ".google_api_key.txt";
+    /**
+     * Property overriding the Freebase API root URL, for example to point at a local stand-in server.
+     */
+    public static final String FREEBASE_ROOT_URL_KEY = "freebase.root_url";
 
     @Nonnull
     public static Freebase2 newFreebaseInstance() throws IOException {
+        return newFreebaseInstance(new Properties());
+    }
+
+    /**
+     * Create a Freebase client using the HTTP transport and timeouts configured by the properties (see
+     * {@link HttpTransports}).
+     */
+    @Nonnull
+    public static Freebase2 newFreebaseInstance(@Nonnull Properties props) throws IOException {
         final String googleApiKey =
                 Freebase2.loadGoogleApiKey(new File(API_KEY_FILE));
 
@@ -39,11 +52,13 @@ public class MiscUtil {
 
         JsonFactory jsonFactory = new JacksonFactory();
 
-        return new Freebase2.Builder(
-                new NetHttpTransport(), jsonFactory, null)
+        final Freebase2.Builder builder = new Freebase2.Builder(
+                HttpTransports.newTransport(props), jsonFactory, HttpTransports.newRequestInitializer(props))
                 .setApplicationName(APPLICATION_NAME)
-                .setJsonHttpRequestInitializer(credential)
-                .build();
+                .setJsonHttpRequestInitializer(credential);
+        if (props.containsKey(FREEBASE_ROOT_URL_KEY))
+            builder.setRootUrl(props.getProperty(FREEBASE_ROOT_URL_KEY));
+        return builder.build();
     }
 
 
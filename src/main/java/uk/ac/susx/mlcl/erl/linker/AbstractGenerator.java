@@ -1,6 +1,7 @@
 package uk.ac.susx.mlcl.erl.linker;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 
 import javax.annotation.Nonnull;
 import java.io.IOException;
@@ -28,7 +29,7 @@ public abstract class AbstractGenerator<Q, L> implements CandidateGenerator<Q, L
     public Map<Q, Set<L>> batchFindCandidates(@Nonnull Iterable<Q> queries)
             throws IOException, ExecutionException {
         ImmutableMap.Builder<Q, Set<L>> mapBuilder = ImmutableMap.builder();
-        for (Q query : queries)
+        for (Q query : ImmutableSet.copyOf(queries))
             mapBuilder.put(query, findCandidates(query));
         return mapBuilder.build();
     }
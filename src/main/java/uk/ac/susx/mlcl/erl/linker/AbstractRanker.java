@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2012-2013, Hamish Morgan.
+ * All Rights Reserved.
+ */
+package uk.ac.susx.mlcl.erl.linker;
+
+import com.google.common.collect.Lists;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <tt>AbstractRanker</tt> is a skeletal implementation of {@link CandidateRanker} for rankers that score each
+ * candidate independently. Sub-classes need only implement {@link #score(Object, Object)}; the top <tt>k</tt>
+ * candidates are selected with a bounded heap, so requesting only the best few candidates does not require the whole
+ * set to be sorted. The heap holds primitive scores and positions, and a {@link ScoredCandidate} is only created for
+ * each of the <tt>k</tt> candidates returned.
+ *
+ * @param <Q> query type
+ * @param <L> link type
+ * @author Hamish Morgan
+ */
+public abstract class AbstractRanker<Q, L> implements CandidateRanker<Q, L> {
+
+    protected AbstractRanker() {
+    }
+
+    /**
+     * Score the plausibility of the candidate for the given query. Higher scores are more plausible.
+     */
+    protected abstract double score(@Nonnull Q query, @Nonnull L candidate) throws IOException;
+
+    @Nonnull
+    @Override
+    public List<L> rankCandidates(@Nonnull final Q query, @Nonnull final Iterable<L> candidates) throws IOException {
+        final List<ScoredCandidate<L>> ranked = rankTopK(query, candidates, Integer.MAX_VALUE);
+        final List<L> result = new ArrayList<L>(ranked.size());
+        for (ScoredCandidate<L> scored : ranked)
+            result.add(scored.getCandidate());
+        return result;
+    }
+
+    @Nonnull
+    @Override
+    public List<ScoredCandidate<L>> rankTopK(@Nonnull final Q query, @Nonnull final Iterable<L> candidates,
+                                             final int k) throws IOException {
+        checkNotNull(query, "query");
+        checkNotNull(candidates, "candidates");
+        checkArgument(k >= 0, "k < 0");
+        final List<L> list = candidates instanceof List ? (List<L>) candidates : Lists.newArrayList(candidates);
+        final double[] scores = new double[list.size()];
+        for (int i = 0; i < scores.length; i++)
+            scores[i] = score(query, list.get(i));
+        return scoredCandidates(list, scores, selectTopK(scores, scores.length, k));
+    }
+
+    /**
+     * Select the positions of the <tt>k</tt> highest scores, using a bounded min-heap of positions, so the cost is
+     * <em>O(n log k)</em> rather than that of a full sort, and nothing is allocated but the heap itself. Equal scores
+     * keep their input order.
+     *
+     * @param scores score of each candidate, by position
+     * @param count  number of scores to select from, starting at the first
+     * @param k      maximum number of positions to return
+     * @return up to <tt>k</tt> positions in order of descending score
+     */
+    @Nonnull
+    static int[] selectTopK(@Nonnull final double[] scores, final int count, final int k) {
+        checkArgument(k >= 0, "k < 0");
+        checkArgument(count >= 0 && count <= scores.length, "count out of range");
+
+        // The heap head is the worst retained position: the lowest score, or the latest position among equal scores.
+        final int[] heap = new int[Math.min(k, count)];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            if (size < heap.length) {
+                heap[size] = i;
+                siftUp(heap, size++, scores);
+            } else if (heap.length > 0 && better(scores, i, heap[0])) {
+                heap[0] = i;
+                siftDown(heap, size, scores);
+            }
+        }
+
+        final int[] result = new int[size];
+        while (size > 0) {
+            result[size - 1] = heap[0];
+            heap[0] = heap[--size];
+            siftDown(heap, size, scores);
+        }
+        return result;
+    }
+
+    /**
+     * @return the selected candidates with their scores, in the order of the selected positions
+     */
+    @Nonnull
+    static <L> List<ScoredCandidate<L>> scoredCandidates(@Nonnull final List<L> candidates,
+                                                         @Nonnull final double[] scores,
+                                                         @Nonnull final int[] positions) {
+        final List<ScoredCandidate<L>> result = new ArrayList<ScoredCandidate<L>>(positions.length);
+        for (int position : positions)
+            result.add(new ScoredCandidate<L>(candidates.get(position), scores[position]));
+        return result;
+    }
+
+    /**
+     * @return true if the candidate at position <tt>a</tt> ranks above that at position <tt>b</tt>
+     */
+    private static boolean better(@Nonnull final double[] scores, final int a, final int b) {
+        final int c = Double.compare(scores[a], scores[b]);
+        return c != 0 ? c > 0 : a < b;
+    }
+
+    private static void siftUp(@Nonnull final int[] heap, int child, @Nonnull final double[] scores) {
+        final int position = heap[child];
+        while (child > 0) {
+            final int parent = (child - 1) >>> 1;
+            if (!better(scores, heap[parent], position))
+                break;
+            heap[child] = heap[parent];
+            child = parent;
+        }
+        heap[child] = position;
+    }
+
+    private static void siftDown(@Nonnull final int[] heap, final int size, @Nonnull final double[] scores) {
+        if (size == 0)
+            return;
+        final int position = heap[0];
+        int parent = 0;
+        int child;
+        while ((child = 2 * parent + 1) < size) {
+            if (child + 1 < size && better(scores, heap[child], heap[child + 1]))
+                child++;
+            if (!better(scores, position, heap[child]))
+                break;
+            heap[parent] = heap[child];
+            parent = child;
+        }
+        heap[parent] = position;
+    }
+}
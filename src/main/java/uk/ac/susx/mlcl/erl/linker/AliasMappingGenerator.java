@@ -1,8 +1,9 @@
 package uk.ac.susx.mlcl.erl.linker;
 
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Sets;
 import javax.annotation.Nullable;
 
 import javax.annotation.Nonnull;
@@ -22,51 +23,143 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * or a loop is detected. If a single terminating query is not found (either in the map or the original query) then
  * it is passed to the delegate. Otherwise, if a loop is detected, then all terms in the compose the loop are
  * passed to the delegate, and the union of these results are returned.
+ * <p/>
+ * The alias map is resolved once, on construction, into an immutable table from each key to the terms it resolves
+ * to, so later changes to the map are not seen. Every key on a chain resolves to the same terms, so the table holds
+ * one shared list per terminating alias or loop. At query time a mention costs a single table lookup, and a single
+ * (batched) call to the delegate.
  *
  * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
  */
 public class AliasMappingGenerator<Q,L> extends ForwardingGenerator<Q,L> {
 
-    private final Map<Q, Q> aliasMap;
-    private final boolean recusiveMapping;
+    private final ImmutableMap<Q, ImmutableList<Q>> closure;
 
     public AliasMappingGenerator(final CandidateGenerator<Q,L> delegate, final Map<Q, Q> aliasMap, boolean recusiveMapping) {
         super(delegate);
-        this.aliasMap = checkNotNull(aliasMap, "aliasMap");
-        this.recusiveMapping = recusiveMapping;
+        checkNotNull(aliasMap, "aliasMap");
+        this.closure = recusiveMapping ? transitiveClosure(aliasMap) : singleStep(aliasMap);
     }
 
     @Nullable
     @Override
     public Set<L> findCandidates(final Q mention) throws IOException {
-        if (recusiveMapping) {
-            final Deque<Q> seen = new ArrayDeque<Q>();
-            Q query = mention;
-
-            // Repeatedly map the query to it's alias, until either it isn't found or a loop is detected.
-            // All discovered aliases are stored in the seen stack, starting with the original mention
-            seen.push(query);
-            boolean loopDetected = false;
-            while (!loopDetected && aliasMap.containsKey(query)) {
-                query = aliasMap.get(query);
-                if (seen.contains(query)) {
-                    loopDetected = true;
-                } else {
-                    seen.push(query);
+        final List<Q> terms = resolve(mention);
+        if (terms.size() == 1)
+            return super.findCandidates(terms.get(0));
+        try {
+            return union(terms, getDelegate().batchFindCandidates(terms));
+        } catch (ExecutionException ex) {
+            Throwables.propagateIfInstanceOf(ex.getCause(), IOException.class);
+            throw Throwables.propagate(ex.getCause());
+        }
+    }
+
+    /**
+     * Resolve all the queries to their aliases first, then pass every distinct alias to the delegate as a single
+     * batch. Queries that share an alias therefore only cause it to be looked up once.
+     */
+    @Nonnull
+    @Override
+    public Map<Q, Set<L>> batchFindCandidates(@Nonnull final Iterable<Q> queries)
+            throws IOException, ExecutionException {
+        final Map<Q, List<Q>> resolved = new LinkedHashMap<Q, List<Q>>();
+        final Set<Q> terms = new LinkedHashSet<Q>();
+        for (Q query : queries) {
+            if (!resolved.containsKey(query)) {
+                final List<Q> queryTerms = resolve(query);
+                resolved.put(query, queryTerms);
+                terms.addAll(queryTerms);
+            }
+        }
+
+        final Map<Q, Set<L>> termCandidates = getDelegate().batchFindCandidates(terms);
+
+        final ImmutableMap.Builder<Q, Set<L>> builder = ImmutableMap.builder();
+        for (Map.Entry<Q, List<Q>> entry : resolved.entrySet())
+            builder.put(entry.getKey(), union(entry.getValue(), termCandidates));
+        return builder.build();
+    }
+
+    @Nonnull
+    private static <Q, L> Set<L> union(@Nonnull final List<Q> terms, @Nonnull final Map<Q, Set<L>> termCandidates) {
+        if (terms.size() == 1) {
+            final Set<L> candidates = termCandidates.get(terms.get(0));
+            return candidates == null ? ImmutableSet.<L>of() : candidates;
+        }
+        final ImmutableSet.Builder<L> result = ImmutableSet.builder();
+        for (Q term : terms)
+            if (termCandidates.containsKey(term))
+                result.addAll(termCandidates.get(term));
+        return result.build();
+    }
+
+    /**
+     * Find the terms that should be passed to the delegate for the given mention.
+     *
+     * @param mention query to resolve
+     * @return the terminating alias, or all the terms that compose the loop if one was detected
+     */
+    @Nonnull
+    private List<Q> resolve(final Q mention) {
+        final List<Q> terms = closure.get(mention);
+        return terms != null ? terms : ImmutableList.of(mention);
+    }
+
+    @Nonnull
+    private static <Q> ImmutableMap<Q, ImmutableList<Q>> singleStep(@Nonnull final Map<Q, Q> aliasMap) {
+        final ImmutableMap.Builder<Q, ImmutableList<Q>> builder = ImmutableMap.builder();
+        for (Map.Entry<Q, Q> entry : aliasMap.entrySet())
+            builder.put(entry.getKey(), ImmutableList.of(entry.getValue()));
+        return builder.build();
+    }
+
+    /**
+     * Resolve every key of the alias map to its terminating alias, or to the members of the loop it leads into.
+     * Each chain is walked only as far as the first key that has already been resolved, so the whole map is
+     * resolved in time linear in its size.
+     *
+     * @param aliasMap map from query to alias
+     * @return map from every key of the alias map to the terms it resolves to
+     */
+    @Nonnull
+    static <Q> ImmutableMap<Q, ImmutableList<Q>> transitiveClosure(@Nonnull final Map<Q, Q> aliasMap) {
+        final Map<Q, ImmutableList<Q>> closure = new HashMap<Q, ImmutableList<Q>>(aliasMap.size());
+        final Map<Q, Integer> positions = new HashMap<Q, Integer>();
+        final List<Q> chain = new ArrayList<Q>();
+
+        for (Q key : aliasMap.keySet()) {
+            if (closure.containsKey(key))
+                continue;
+
+            // Follow the chain until reaching a resolved key, a term that isn't a key, or a term already on the chain
+            ImmutableList<Q> terms;
+            Q query = key;
+            while (true) {
+                terms = closure.get(query);
+                if (terms != null)
+                    break;
+                final Integer position = positions.get(query);
+                if (position != null) {
+                    terms = ImmutableList.copyOf(chain.subList(position, chain.size())).reverse();
+                    break;
                 }
+                if (!aliasMap.containsKey(query)) {
+                    terms = ImmutableList.of(query);
+                    break;
+                }
+                positions.put(query, chain.size());
+                chain.add(query);
+                query = aliasMap.get(query);
             }
 
-            // Pop elements of the stack until the terminating query is discovered
-            Set<L> result = ImmutableSet.of();
-            while (!seen.isEmpty() && !seen.peek().equals(query))
-                result = Sets.union(result, super.findCandidates(seen.pop()));
-            result = Sets.union(result, super.findCandidates(query));
-            return result;
-        } else {
-            return aliasMap.containsKey(mention)
-                    ? super.findCandidates(aliasMap.get(mention))
-                    : super.findCandidates(mention);
+            // Every key on the chain resolves to the same terms
+            for (Q term : chain)
+                closure.put(term, terms);
+            positions.clear();
+            chain.clear();
         }
+        return ImmutableMap.copyOf(closure);
     }
 
 }
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2012-2013, Hamish Morgan.
+ * All Rights Reserved.
+ */
+package uk.ac.susx.mlcl.erl.linker;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import javax.annotation.Nonnull;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An <tt>AsyncCandidateGenerator</tt> is a {@link CandidateGenerator} that can also answer queries without blocking
+ * the calling thread. Results are delivered through a {@link ListenableFuture}, so the caller can carry on with other
+ * work (such as tagging the next sentence) and collect the candidates later, or attach a listener.
+ * <p/>
+ * Failures are reported through the future; an <tt>IOException</tt> from the knowledge base is the cause of the
+ * {@link java.util.concurrent.ExecutionException} thrown by {@link ListenableFuture#get()}.
+ * <p/>
+ * Synchronous generators can be adapted using {@link AsyncGenerators#asAsync(CandidateGenerator,
+ * java.util.concurrent.Executor)}.
+ *
+ * @param <Q> Query type
+ * @param <L> Candidate link type
+ * @author Hamish Morgan
+ */
+public interface AsyncCandidateGenerator<Q, L> extends CandidateGenerator<Q, L> {
+
+    /**
+     * Get candidate links from the knowledge base for the given query, without blocking.
+     *
+     * @param query query object
+     * @return future of the candidate links matching the given query
+     */
+    @Nonnull
+    ListenableFuture<Set<L>> findCandidatesAsync(@Nonnull Q query);
+
+    /**
+     * Query the knowledge base with all of the given queries, as a single batch operation, without blocking.
+     *
+     * @param queries query objects
+     * @return future of the map from queries to candidate links
+     */
+    @Nonnull
+    ListenableFuture<Map<Q, Set<L>>> batchFindCandidatesAsync(@Nonnull Iterable<Q> queries);
+}
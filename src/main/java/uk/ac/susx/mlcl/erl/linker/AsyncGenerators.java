@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2012-2013, Hamish Morgan.
+ * All Rights Reserved.
+ */
+package uk.ac.susx.mlcl.erl.linker;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Static utility methods for working with {@link AsyncCandidateGenerator}s.
+ *
+ * @author Hamish Morgan
+ */
+public final class AsyncGenerators {
+
+    /**
+     * Static utility class should not be instantiated.
+     */
+    private AsyncGenerators() {
+    }
+
+    /**
+     * Adapt the generator to the asynchronous interface. If it is already asynchronous it is returned unchanged;
+     * otherwise each asynchronous call runs the equivalent synchronous call as a task on the given executor.
+     *
+     * @param generator generator to adapt
+     * @param executor  executor on which synchronous calls are run
+     * @return an asynchronous view of the generator
+     */
+    @Nonnull
+    public static <Q, L> AsyncCandidateGenerator<Q, L> asAsync(@Nonnull final CandidateGenerator<Q, L> generator,
+                                                               @Nonnull final Executor executor) {
+        checkNotNull(generator, "generator");
+        checkNotNull(executor, "executor");
+        if (generator instanceof AsyncCandidateGenerator)
+            return (AsyncCandidateGenerator<Q, L>) generator;
+        return new ExecutorAsyncGenerator<Q, L>(generator, executor);
+    }
+
+    /**
+     * Copy the outcome of the source future to the destination future, once it completes.
+     */
+    static <T> void forward(@Nonnull final ListenableFuture<? extends T> source,
+                            @Nonnull final SettableFuture<T> destination) {
+        Futures.addCallback(source, new FutureCallback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                destination.set(result);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                destination.setException(t);
+            }
+        }, MoreExecutors.sameThreadExecutor());
+    }
+
+    /**
+     * Asynchronous adapter of a synchronous generator, running each call as a task on an executor.
+     */
+    private static final class ExecutorAsyncGenerator<Q, L> implements AsyncCandidateGenerator<Q, L> {
+
+        @Nonnull
+        private final CandidateGenerator<Q, L> generator;
+        @Nonnull
+        private final Executor executor;
+
+        ExecutorAsyncGenerator(@Nonnull CandidateGenerator<Q, L> generator, @Nonnull Executor executor) {
+            this.generator = generator;
+            this.executor = executor;
+        }
+
+        @Nonnull
+        @Override
+        public Set<L> findCandidates(@Nonnull Q query) throws IOException {
+            return generator.findCandidates(query);
+        }
+
+        @Nonnull
+        @Override
+        public Map<Q, Set<L>> batchFindCandidates(@Nonnull Iterable<Q> queries)
+                throws IOException, ExecutionException {
+            return generator.batchFindCandidates(queries);
+        }
+
+        @Nonnull
+        @Override
+        public ListenableFuture<Set<L>> findCandidatesAsync(@Nonnull final Q query) {
+            final ListenableFutureTask<Set<L>> task = ListenableFutureTask.create(new Callable<Set<L>>() {
+                @Override
+                public Set<L> call() throws IOException {
+                    return generator.findCandidates(query);
+                }
+            });
+            executor.execute(task);
+            return task;
+        }
+
+        @Nonnull
+        @Override
+        public ListenableFuture<Map<Q, Set<L>>> batchFindCandidatesAsync(@Nonnull Iterable<Q> queries) {
+            // Copy the queries now, since the caller may modify the iterable before the task runs
+            final Set<Q> uniqueQueries = ImmutableSet.copyOf(queries);
+            final ListenableFutureTask<Map<Q, Set<L>>> task = ListenableFutureTask.create(
+                    new Callable<Map<Q, Set<L>>>() {
+                        @Override
+                        public Map<Q, Set<L>> call() throws IOException, ExecutionException {
+                            return generator.batchFindCandidates(uniqueQueries);
+                        }
+                    });
+            executor.execute(task);
+            return task;
+        }
+    }
+}
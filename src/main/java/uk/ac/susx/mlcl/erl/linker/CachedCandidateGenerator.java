@@ -4,24 +4,43 @@
  */
 package uk.ac.susx.mlcl.erl.linker;
 
+import com.google.common.base.Function;
 import com.google.common.base.Throwables;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
 import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
-import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
 import java.io.IOException;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
 /**
  * Instances of
@@ -32,28 +51,86 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * the KB service. This particularly useful for web-based services such as Freebase, where
  * unnecessary calls can have a significant effect on performance.
  * <p/>
- * Memory usage is constrained to approximately 1 MiB per cache. There are currently two caches (one
- * for text and the other for search queries) so memory usage should not exceed 2MiB per instance.
+ * Memory usage is constrained by the maximum weight of the cache, where each entry weighs one plus the number of
+ * candidates it holds. By default this is {@link Builder#DEFAULT_MAXIMUM_WEIGHT}, which is approximately 1 MiB.
+ * Entries can optionally expire a fixed time after they were loaded, and hot entries can be refreshed in the
+ * background before they expire, so that frequently requested mentions never block on the inner generator. Use
+ * {@link Builder} to configure these options.
  * <p/>
- * Not thread safe
+ * Hit, miss, load time and eviction counters are available at runtime from {@link #stats()}. Loads made by the
+ * asynchronous methods are included in the load counts and time.
+ * <p/>
+ * Generators of string entity ids can be given an {@link EntityIdDictionary}, using
+ * {@link Builder#setDictionary(EntityIdDictionary)}. Cached candidate sets are then stored as
+ * {@link IntCandidateSet}s, which take a fraction of the memory of hashed string sets, and can be combined by
+ * {@link GeneratorCollection} without decoding.
+ * <p/>
+ * Cache hits are answered immediately by the asynchronous methods. Misses are passed to the inner generator's
+ * asynchronous methods if it has them, or otherwise run on the cache executor, and the results are cached when they
+ * arrive.
+ * <p/>
+ * Instances are thread safe, provided the inner generator is.
  *
  * @author hamish
  */
 @Nonnull
-@NotThreadSafe
-public class CachedCandidateGenerator<Q,L> implements CandidateGenerator<Q,L> {
+@ThreadSafe
+public class CachedCandidateGenerator<Q,L> implements AsyncCandidateGenerator<Q,L> {
 
     private static final Logger LOG = LoggerFactory.getLogger(CachedCandidateGenerator.class);
     private final LoadingCache<Q, Set<L>> searchCache;
+    /**
+     * Generator that answers asynchronous cache misses, or null if they should be loaded on the calling thread.
+     */
+    @Nullable
+    private final AsyncCandidateGenerator<Q, L> asyncInner;
+    /**
+     * Dictionary with which cached values are encoded, or null if they are stored as loaded.
+     */
+    @Nullable
+    private final EntityIdDictionary dictionary;
+    /**
+     * Whether loads made by the asynchronous methods, which bypass the cache loader, are counted in {@link #stats()}.
+     */
+    private final boolean recordStats;
+    private final AtomicLong asyncLoadSuccessCount = new AtomicLong();
+    private final AtomicLong asyncLoadExceptionCount = new AtomicLong();
+    private final AtomicLong asyncTotalLoadTime = new AtomicLong();
 
     /**
      * Protected dependency injection constructor. Use
-     * {@link CachedCandidateGenerator#wrap(CandidateGenerator)} } instead.
+     * {@link CachedCandidateGenerator#wrap(CandidateGenerator)} } or {@link Builder} instead.
      *
      * @param searchCache
+     * @param asyncInner  generator that answers asynchronous cache misses, or null to load them synchronously
+     * @param dictionary  dictionary with which to encode values put by the asynchronous methods, or null to store
+     *                    them as loaded
+     * @param recordStats whether to count the loads made by the asynchronous methods; this should match whether
+     *                    the cache records statistics
      */
-    protected CachedCandidateGenerator(final LoadingCache<Q, Set<L>> searchCache) {
+    protected CachedCandidateGenerator(final LoadingCache<Q, Set<L>> searchCache,
+                                       @Nullable final AsyncCandidateGenerator<Q, L> asyncInner,
+                                       @Nullable final EntityIdDictionary dictionary,
+                                       final boolean recordStats) {
         this.searchCache = checkNotNull(searchCache, "searchCache");
+        this.asyncInner = asyncInner;
+        this.dictionary = dictionary;
+        this.recordStats = recordStats;
+    }
+
+    protected CachedCandidateGenerator(final LoadingCache<Q, Set<L>> searchCache,
+                                       @Nullable final AsyncCandidateGenerator<Q, L> asyncInner,
+                                       @Nullable final EntityIdDictionary dictionary) {
+        this(searchCache, asyncInner, dictionary, true);
+    }
+
+    protected CachedCandidateGenerator(final LoadingCache<Q, Set<L>> searchCache,
+                                       @Nullable final AsyncCandidateGenerator<Q, L> asyncInner) {
+        this(searchCache, asyncInner, null);
+    }
+
+    protected CachedCandidateGenerator(final LoadingCache<Q, Set<L>> searchCache) {
+        this(searchCache, null);
     }
 
     @Override
@@ -67,6 +144,137 @@ public class CachedCandidateGenerator<Q,L> implements CandidateGenerator<Q,L> {
         return searchCache.getAll(queries);
     }
 
+    @Nonnull
+    @Override
+    public ListenableFuture<Set<L>> findCandidatesAsync(@Nonnull final Q query) {
+        checkNotNull(query, "query");
+        final Set<L> cached = searchCache.getIfPresent(query);
+        if (cached != null)
+            return Futures.immediateFuture(cached);
+
+        if (asyncInner == null) {
+            try {
+                return Futures.immediateFuture(findCandidates(query));
+            } catch (IOException ex) {
+                return Futures.immediateFailedFuture(ex);
+            }
+        }
+
+        final long start = System.nanoTime();
+        final ListenableFuture<Set<L>> loading = asyncInner.findCandidatesAsync(query);
+        recordAsyncFailure(loading, start);
+        // The result is cached before the returned future completes, so a caller that waits for it will then hit
+        return Futures.transform(loading, new Function<Set<L>, Set<L>>() {
+            @Override
+            public Set<L> apply(Set<L> result) {
+                recordAsyncLoad(start, true);
+                if (result != null)
+                    searchCache.put(query, encode(dictionary, result));
+                return result;
+            }
+        }, MoreExecutors.sameThreadExecutor());
+    }
+
+    /**
+     * Queries that are already cached are answered immediately; the rest are passed to the inner generator as a
+     * single batch.
+     */
+    @Nonnull
+    @Override
+    public ListenableFuture<Map<Q, Set<L>>> batchFindCandidatesAsync(@Nonnull final Iterable<Q> queries) {
+        final Set<Q> uniqueQueries = ImmutableSet.copyOf(queries);
+        final Map<Q, Set<L>> present = searchCache.getAllPresent(uniqueQueries);
+        if (present.size() == uniqueQueries.size())
+            return Futures.immediateFuture(present);
+
+        if (asyncInner == null) {
+            try {
+                return Futures.immediateFuture(batchFindCandidates(uniqueQueries));
+            } catch (IOException ex) {
+                return Futures.immediateFailedFuture(ex);
+            } catch (ExecutionException ex) {
+                return Futures.immediateFailedFuture(ex.getCause());
+            }
+        }
+
+        final Set<Q> missing = ImmutableSet.copyOf(Sets.difference(uniqueQueries, present.keySet()));
+        final long start = System.nanoTime();
+        final ListenableFuture<Map<Q, Set<L>>> loading = asyncInner.batchFindCandidatesAsync(missing);
+        recordAsyncFailure(loading, start);
+        return Futures.transform(loading,
+                new Function<Map<Q, Set<L>>, Map<Q, Set<L>>>() {
+                    @Override
+                    public Map<Q, Set<L>> apply(Map<Q, Set<L>> loaded) {
+                        recordAsyncLoad(start, true);
+                        searchCache.putAll(encodeAll(dictionary, loaded));
+                        final Map<Q, Set<L>> result = Maps.newHashMap(present);
+                        result.putAll(loaded);
+                        return result;
+                    }
+                }, MoreExecutors.sameThreadExecutor());
+    }
+
+    /**
+     * Count a load made by one of the asynchronous methods. These put their results into the cache directly, so
+     * are not seen by the cache's own statistics. As with a bulk load through the cache loader, a batch counts as a
+     * single load.
+     */
+    private void recordAsyncLoad(final long startNanos, final boolean success) {
+        if (!recordStats)
+            return;
+        asyncTotalLoadTime.addAndGet(System.nanoTime() - startNanos);
+        if (success)
+            asyncLoadSuccessCount.incrementAndGet();
+        else
+            asyncLoadExceptionCount.incrementAndGet();
+    }
+
+    /**
+     * Count the load as failed if the future fails; the failure itself is reported to the caller through the
+     * future, and nothing is cached. Successful loads are counted when their results are cached.
+     */
+    private void recordAsyncFailure(@Nonnull final ListenableFuture<?> loading, final long startNanos) {
+        Futures.addCallback(loading, new FutureCallback<Object>() {
+            @Override
+            public void onSuccess(Object result) {
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                recordAsyncLoad(startNanos, false);
+            }
+        }, MoreExecutors.sameThreadExecutor());
+    }
+
+    /**
+     * Get a snapshot of the cache statistics: hit and miss counts, total load time, and eviction count. The counts
+     * will all be zero if statistics recording was disabled when the cache was built.
+     * <p/>
+     * Lookups by the asynchronous methods are counted as hits and misses, and the loads they make are counted with
+     * those made through the cache loader.
+     *
+     * @return cumulative cache statistics since the cache was built
+     */
+    @Nonnull
+    public CacheStats stats() {
+        return searchCache.stats().plus(new CacheStats(0, 0,
+                asyncLoadSuccessCount.get(), asyncLoadExceptionCount.get(), asyncTotalLoadTime.get(), 0));
+    }
+
+    /**
+     * @return approximate number of entries currently held in the cache
+     */
+    public long size() {
+        return searchCache.size();
+    }
+
+    /**
+     * Discard all cached entries.
+     */
+    public void invalidateAll() {
+        searchCache.invalidateAll();
+    }
+
     protected static <K, V> V get(@Nonnull final LoadingCache<K, V> cache, final K key)
             throws IOException {
         try {
@@ -78,29 +286,175 @@ public class CachedCandidateGenerator<Q,L> implements CandidateGenerator<Q,L> {
         }
     }
 
+    /**
+     * @return the candidates encoded with the dictionary, or unchanged if there is no dictionary
+     */
+    @SuppressWarnings("unchecked")
+    static <L> Set<L> encode(@Nullable final EntityIdDictionary dictionary, @Nonnull final Set<L> candidates) {
+        if (dictionary == null)
+            return candidates;
+        return (Set<L>) IntCandidateSet.copyOf(dictionary, (Set<String>) candidates);
+    }
+
+    static <Q, L> Map<Q, Set<L>> encodeAll(@Nullable final EntityIdDictionary dictionary,
+                                           @Nonnull final Map<Q, Set<L>> candidates) {
+        if (dictionary == null)
+            return candidates;
+        final Map<Q, Set<L>> encoded = Maps.newHashMapWithExpectedSize(candidates.size());
+        for (Map.Entry<Q, Set<L>> entry : candidates.entrySet())
+            encoded.put(entry.getKey(), encode(dictionary, entry.getValue()));
+        return encoded;
+    }
+
     @Nonnull
     public static <Q,L> CandidateGenerator<Q,L> wrap(@Nonnull final CandidateGenerator<Q,L> inner) {
         if (checkNotNull(inner, "inner") instanceof CachedCandidateGenerator) {
             LOG.warn("Ignoring attempt to cache wrap a KnowledgeBase that was already cached.");
             return inner;
         }
+        return new Builder<Q, L>().setInner(inner).build();
+    }
 
-        final CacheLoader<Q, Set<L>> searchLoader =
-                new CacheLoader<Q, Set<L>>() {
-                    @Nullable
-                    @Override
-                    public Set<L> load(Q key) throws Exception {
-                        return inner.findCandidates(key);
-                    }
+    /**
+     * Builder for {@link CachedCandidateGenerator} instances.
+     *
+     * @param <Q> query type
+     * @param <L> candidate link type
+     */
+    public static class Builder<Q, L> {
 
-                    @Override
-                    public Map<Q, Set<L>> loadAll(Iterable<? extends Q> keys)
-                            throws Exception {
-                        return inner.batchFindCandidates(Sets.newHashSet(keys));
-                    }
-                };
+        public static final long DEFAULT_MAXIMUM_WEIGHT = 1 << 16;
+
+        /**
+         * Number of threads in the executor shared by caches that are not given one. Further loads wait in a queue
+         * for a free thread.
+         */
+        public static final int DEFAULT_EXECUTOR_THREADS = 4;
+
+        @Nullable
+        private CandidateGenerator<Q, L> inner = null;
+        private long maximumWeight = DEFAULT_MAXIMUM_WEIGHT;
+        private long expireAfterWriteNanos = 0;
+        private long refreshAfterWriteNanos = 0;
+        @Nullable
+        private Executor refreshExecutor = null;
+        private boolean recordStats = true;
+        @Nullable
+        private EntityIdDictionary dictionary = null;
+
+        public Builder() {
+        }
 
-        final Weigher<Q, Set<L>> searchWeighter =
+        @Nonnull
+        public Builder<Q, L> setInner(@Nonnull final CandidateGenerator<Q, L> inner) {
+            this.inner = checkNotNull(inner, "inner");
+            return this;
+        }
+
+        /**
+         * Set the maximum total weight of the cache, where each entry weighs one plus the number of candidates.
+         */
+        @Nonnull
+        public Builder<Q, L> setMaximumWeight(final long maximumWeight) {
+            checkArgument(maximumWeight >= 0, "maximumWeight < 0");
+            this.maximumWeight = maximumWeight;
+            return this;
+        }
+
+        /**
+         * Set the time after which entries are discarded, measured from when they were loaded. A duration of zero
+         * (the default) means entries never expire, and are only removed to satisfy the maximum weight.
+         */
+        @Nonnull
+        public Builder<Q, L> setExpireAfterWrite(final long duration, @Nonnull final TimeUnit unit) {
+            checkArgument(duration >= 0, "duration < 0");
+            this.expireAfterWriteNanos = checkNotNull(unit, "unit").toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Set the time after which an entry becomes eligible for refresh. The next request for such an entry
+         * triggers a reload on the refresh executor, while the request itself is answered with the old value. A
+         * duration of zero (the default) disables refreshing.
+         * <p/>
+         * To refresh ahead of expiry this should be shorter than the expire-after-write time; entries that are not
+         * requested again before they expire are simply discarded.
+         */
+        @Nonnull
+        public Builder<Q, L> setRefreshAfterWrite(final long duration, @Nonnull final TimeUnit unit) {
+            checkArgument(duration >= 0, "duration < 0");
+            this.refreshAfterWriteNanos = checkNotNull(unit, "unit").toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Set the executor on which background refreshes, and asynchronous loads from a synchronous inner generator,
+         * are run. If unset, a pool of {@link #DEFAULT_EXECUTOR_THREADS} daemon threads shared by all caches is used,
+         * which is created on first use and whose idle threads exit after a minute. Callers that expect more
+         * concurrent loads than that should supply their own executor.
+         */
+        @Nonnull
+        public Builder<Q, L> setRefreshExecutor(@Nonnull final Executor refreshExecutor) {
+            this.refreshExecutor = checkNotNull(refreshExecutor, "refreshExecutor");
+            return this;
+        }
+
+        /**
+         * Set whether hit, miss, load time and eviction counts are recorded. Recording is enabled by default.
+         */
+        @Nonnull
+        public Builder<Q, L> setRecordStats(final boolean recordStats) {
+            this.recordStats = recordStats;
+            return this;
+        }
+
+        /**
+         * Set the dictionary with which cached candidate sets are encoded. This may only be used when the
+         * candidates are string entity ids. By default sets are cached as the inner generator returns them.
+         */
+        @Nonnull
+        public Builder<Q, L> setDictionary(@Nonnull final EntityIdDictionary dictionary) {
+            this.dictionary = checkNotNull(dictionary, "dictionary");
+            return this;
+        }
+
+        @Nonnull
+        public CachedCandidateGenerator<Q, L> build() {
+            checkState(inner != null, "inner generator has not been set");
+            final CandidateGenerator<Q, L> generator = inner;
+            final EntityIdDictionary dictionary = this.dictionary;
+
+            final Executor executor = refreshExecutor == null ? SharedExecutor.INSTANCE : refreshExecutor;
+
+            final CacheLoader<Q, Set<L>> searchLoader =
+                    new CacheLoader<Q, Set<L>>() {
+                        @Nullable
+                        @Override
+                        public Set<L> load(Q key) throws Exception {
+                            return encode(dictionary, generator.findCandidates(key));
+                        }
+
+                        @Override
+                        public Map<Q, Set<L>> loadAll(Iterable<? extends Q> keys)
+                                throws Exception {
+                            return encodeAll(dictionary, generator.batchFindCandidates(Sets.newHashSet(keys)));
+                        }
+
+                        @Override
+                        public ListenableFuture<Set<L>> reload(final Q key, final Set<L> oldValue) {
+                            final ListenableFutureTask<Set<L>> task = ListenableFutureTask.create(
+                                    new Callable<Set<L>>() {
+                                        @Override
+                                        public Set<L> call() throws Exception {
+                                            return encode(dictionary, generator.findCandidates(key));
+                                        }
+                                    });
+                            executor.execute(task);
+                            return task;
+                        }
+                    };
+
+            final Weigher<Q, Set<L>> searchWeighter =
                     new Weigher<Q, Set<L>>() {
                         public int weigh(@Nonnull Q key, @Nonnull Set<L> values) {
                             return 1 + values.size();
@@ -108,13 +462,53 @@ public class CachedCandidateGenerator<Q,L> implements CandidateGenerator<Q,L> {
                         }
                     };
 
-        final LoadingCache<Q, Set<L>> searchCache  = CacheBuilder
-                .newBuilder()
-                .weigher(searchWeighter)
-                .maximumWeight(1 << 16)
-                .build(searchLoader);
+            final CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder();
+            if (expireAfterWriteNanos > 0)
+                cacheBuilder.expireAfterWrite(expireAfterWriteNanos, TimeUnit.NANOSECONDS);
+            if (refreshAfterWriteNanos > 0)
+                cacheBuilder.refreshAfterWrite(refreshAfterWriteNanos, TimeUnit.NANOSECONDS);
+            if (recordStats)
+                cacheBuilder.recordStats();
 
-        return new CachedCandidateGenerator<Q,L>(searchCache);
+            final LoadingCache<Q, Set<L>> searchCache = cacheBuilder
+                    .weigher(searchWeighter)
+                    .maximumWeight(maximumWeight)
+                    .build(searchLoader);
 
+            return new CachedCandidateGenerator<Q, L>(
+                    searchCache, AsyncGenerators.asAsync(generator, executor), dictionary, recordStats);
+        }
+    }
+
+    /**
+     * Holder of the default refresh executor, so that it is only created when a cache without an explicit executor
+     * is built. It starts at most {@link Builder#DEFAULT_EXECUTOR_THREADS} threads, however many caches share it, and
+     * queues any further loads. Its threads are daemons, and exit when idle, so it never needs to be shut down.
+     */
+    private static final class SharedExecutor {
+
+        /**
+         * Time after which idle threads exit.
+         */
+        private static final long KEEP_ALIVE_SECONDS = 60;
+
+        static final ExecutorService INSTANCE = create();
+
+        private SharedExecutor() {
+        }
+
+        @Nonnull
+        private static ExecutorService create() {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    Builder.DEFAULT_EXECUTOR_THREADS, Builder.DEFAULT_EXECUTOR_THREADS,
+                    KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactoryBuilder()
+                            .setDaemon(true)
+                            .setNameFormat("candidate-cache-%d")
+                            .build());
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
     }
 }
@@ -30,4 +30,19 @@ public interface CandidateRanker<Q, L> {
     @Nonnull
     List<L> rankCandidates(@Nonnull Q query, @Nonnull Iterable<L> candidates) throws IOException;
 
+    /**
+     * Takes a sequence of candidate knowledgebase links and a query, returning only the <tt>k</tt> most plausible
+     * links, in order, along with their scores. Callers that only need the best link (or need to compare it against a
+     * NIL threshold) should use this method with a small <tt>k</tt>, since implementations need not order the
+     * remaining candidates.
+     *
+     * @param query      query to rank the candidates for
+     * @param candidates candidate links
+     * @param k          maximum number of links to return
+     * @return up to <tt>k</tt> scored links, most plausible first
+     * @throws IOException
+     */
+    @Nonnull
+    List<ScoredCandidate<L>> rankTopK(@Nonnull Q query, @Nonnull Iterable<L> candidates, int k) throws IOException;
+
 }
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2012-2013, Hamish Morgan.
+ * All Rights Reserved.
+ */
+package uk.ac.susx.mlcl.erl.linker;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.SettableFuture;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <tt>CoalescingGenerator</tt> is a {@link ForwardingGenerator} that ensures only one lookup for a given query is in
+ * flight at a time. Threads that request a query already being looked up by another thread wait for, and share, that
+ * result rather than querying the delegate again. This matters for remote generators, such as
+ * {@link FreebaseSearchGenerator}, when many threads link the same popular mentions at once.
+ * <p/>
+ * Batches are coalesced per query: a batch only passes to the delegate those queries that no other call is already
+ * looking up, then waits for the rest. Nothing is retained once a lookup completes, so this is usually placed under
+ * a {@link CachedCandidateGenerator}: the cache answers repeated queries, and this ensures that concurrent misses for
+ * the same query, which the cache's bulk loads do not share, reach the delegate only once.
+ *
+ * @author Hamish Morgan
+ */
+@ThreadSafe
+public class CoalescingGenerator<Q, L> extends ForwardingGenerator<Q, L> {
+
+    @Nonnull
+    private final ConcurrentMap<Q, SettableFuture<Set<L>>> inFlight;
+
+    public CoalescingGenerator(@Nonnull final CandidateGenerator<Q, L> delegate) {
+        super(delegate);
+        this.inFlight = new ConcurrentHashMap<Q, SettableFuture<Set<L>>>();
+    }
+
+    @Nonnull
+    @Override
+    public Set<L> findCandidates(@Nonnull final Q mention) throws IOException {
+        checkNotNull(mention, "mention");
+        final SettableFuture<Set<L>> future = SettableFuture.create();
+        final SettableFuture<Set<L>> existing = inFlight.putIfAbsent(mention, future);
+        if (existing != null) {
+            try {
+                return awaitLookup(existing);
+            } catch (ExecutionException ex) {
+                throw asIOException(ex);
+            }
+        }
+
+        try {
+            final Set<L> result = super.findCandidates(mention);
+            future.set(result);
+            return result;
+        } catch (IOException ex) {
+            future.setException(ex);
+            throw ex;
+        } catch (RuntimeException ex) {
+            future.setException(ex);
+            throw ex;
+        } catch (Error ex) {
+            future.setException(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(mention, future);
+        }
+    }
+
+    @Nonnull
+    @Override
+    public Map<Q, Set<L>> batchFindCandidates(@Nonnull final Iterable<Q> queries)
+            throws IOException, ExecutionException {
+        // Claim every query that isn't already in flight; the others will be waited for.
+        final Map<Q, SettableFuture<Set<L>>> owned = new LinkedHashMap<Q, SettableFuture<Set<L>>>();
+        final Map<Q, SettableFuture<Set<L>>> shared = new LinkedHashMap<Q, SettableFuture<Set<L>>>();
+        for (Q query : queries) {
+            if (owned.containsKey(query) || shared.containsKey(query))
+                continue;
+            final SettableFuture<Set<L>> future = SettableFuture.create();
+            final SettableFuture<Set<L>> existing = inFlight.putIfAbsent(query, future);
+            if (existing == null)
+                owned.put(query, future);
+            else
+                shared.put(query, existing);
+        }
+
+        // Complete the owned lookups before waiting on any others, so that concurrent batches can't deadlock.
+        final ImmutableMap.Builder<Q, Set<L>> builder = ImmutableMap.builder();
+        if (!owned.isEmpty()) {
+            try {
+                final Map<Q, Set<L>> results = super.batchFindCandidates(owned.keySet());
+                for (Map.Entry<Q, SettableFuture<Set<L>>> entry : owned.entrySet()) {
+                    final Set<L> result = results.get(entry.getKey());
+                    entry.getValue().set(result);
+                    if (result != null)
+                        builder.put(entry.getKey(), result);
+                }
+            } catch (Throwable t) {
+                for (SettableFuture<Set<L>> future : owned.values())
+                    future.setException(t);
+                Throwables.propagateIfInstanceOf(t, IOException.class);
+                Throwables.propagateIfInstanceOf(t, ExecutionException.class);
+                throw Throwables.propagate(t);
+            } finally {
+                for (Map.Entry<Q, SettableFuture<Set<L>>> entry : owned.entrySet())
+                    inFlight.remove(entry.getKey(), entry.getValue());
+            }
+        }
+
+        for (Map.Entry<Q, SettableFuture<Set<L>>> entry : shared.entrySet()) {
+            final Set<L> result = awaitLookup(entry.getValue());
+            if (result != null)
+                builder.put(entry.getKey(), result);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return number of queries currently being looked up
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * Wait for a lookup that another call started. Tests override this to find out when a call has joined a lookup.
+     */
+    @Nullable
+    Set<L> awaitLookup(@Nonnull final Future<Set<L>> lookup) throws InterruptedIOException, ExecutionException {
+        try {
+            return lookup.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw (InterruptedIOException) new InterruptedIOException().initCause(ex);
+        }
+    }
+
+    @Nonnull
+    private static IOException asIOException(@Nonnull final ExecutionException ex) {
+        final Throwable cause = ex.getCause();
+        Throwables.propagateIfPossible(cause);
+        return cause instanceof IOException ? (IOException) cause : new IOException(cause);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2012-2013, Hamish Morgan.
+ * All Rights Reserved.
+ */
+package uk.ac.susx.mlcl.erl.linker;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import uk.ac.susx.mlcl.erl.tac.kb.SparseVector;
+import uk.ac.susx.mlcl.erl.tac.kb.TermVectors;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A {@link CandidateRanker} that orders candidate entities by the cosine similarity of their Wikipedia text with the
+ * context of the mention. Both are represented as TF-IDF weighted {@link SparseVector}s over the knowledge base term
+ * dictionary; the entity vectors are computed when the knowledge base is created (see {@link TermVectors}), so only
+ * the context needs to be analysed at query time.
+ * <p/>
+ * Entity vectors are read from the knowledge base the first time each candidate is seen, and held in a bounded
+ * cache. Context vectors are cached by context instance, so all the mentions of one document share one analysis.
+ * Scoring a candidate is then a single merge of two sorted arrays, with no allocation, and the best candidates are
+ * selected by their primitive scores, so a {@link ScoredCandidate} is only created for those returned.
+ *
+ * @author Hamish Morgan
+ */
+@ThreadSafe
+public class ContextSimilarityRanker implements CandidateRanker<Mention, String> {
+
+    public static final long DEFAULT_CACHE_SIZE = 1 << 16;
+
+    /**
+     * Number of distinct contexts (i.e. documents being annotated concurrently) for which vectors are retained.
+     */
+    private static final int CONTEXT_CACHE_SIZE = 64;
+
+    @Nonnull
+    private final TermVectors termVectors;
+    @Nonnull
+    private final LoadingCache<String, SparseVector> entityVectors;
+    @Nonnull
+    private final LoadingCache<String, SparseVector> contextVectors;
+
+    /**
+     * @param termVectors term vectors of the knowledge base the candidates are taken from
+     * @param cacheSize   maximum number of entity vectors to hold in memory
+     */
+    public ContextSimilarityRanker(@Nonnull final TermVectors termVectors, final long cacheSize) {
+        checkArgument(cacheSize >= 0, "cacheSize < 0");
+        this.termVectors = checkNotNull(termVectors, "termVectors");
+        this.entityVectors = CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .build(new CacheLoader<String, SparseVector>() {
+                    @Override
+                    public SparseVector load(String id) {
+                        return termVectors.getVector(id);
+                    }
+                });
+        // Weak keys are compared by identity, so this only avoids re-analysing the very same context instance.
+        this.contextVectors = CacheBuilder.newBuilder()
+                .weakKeys()
+                .maximumSize(CONTEXT_CACHE_SIZE)
+                .build(new CacheLoader<String, SparseVector>() {
+                    @Override
+                    public SparseVector load(String context) {
+                        return termVectors.vectorize(context);
+                    }
+                });
+    }
+
+    public ContextSimilarityRanker(@Nonnull final TermVectors termVectors) {
+        this(termVectors, DEFAULT_CACHE_SIZE);
+    }
+
+    @Nonnull
+    @Override
+    public List<String> rankCandidates(@Nonnull final Mention query, @Nonnull final Iterable<String> candidates)
+            throws IOException {
+        final List<ScoredCandidate<String>> ranked = rankTopK(query, candidates, Integer.MAX_VALUE);
+        final List<String> result = new ArrayList<String>(ranked.size());
+        for (ScoredCandidate<String> scored : ranked)
+            result.add(scored.getCandidate());
+        return result;
+    }
+
+    @Nonnull
+    @Override
+    public List<ScoredCandidate<String>> rankTopK(@Nonnull final Mention query,
+                                                  @Nonnull final Iterable<String> candidates,
+                                                  final int k) throws IOException {
+        checkNotNull(query, "query");
+        checkNotNull(candidates, "candidates");
+        checkArgument(k >= 0, "k < 0");
+        final SparseVector context = get(contextVectors, query.getContext());
+        final List<String> list = candidates instanceof List
+                ? (List<String>) candidates : Lists.newArrayList(candidates);
+        final double[] scores = new double[list.size()];
+        for (int i = 0; i < scores.length; i++)
+            scores[i] = context.dot(get(entityVectors, list.get(i)));
+        return AbstractRanker.scoredCandidates(list, scores, AbstractRanker.selectTopK(scores, scores.length, k));
+    }
+
+    @Nonnull
+    private static SparseVector get(@Nonnull final LoadingCache<String, SparseVector> cache, @Nonnull final String key)
+            throws IOException {
+        try {
+            return cache.getUnchecked(key);
+        } catch (UncheckedExecutionException ex) {
+            throw new IOException(ex.getCause());
+        }
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2013, Hamish Morgan.
+ * All Rights Reserved.
+ */
+package uk.ac.susx.mlcl.erl.linker;
+
+import uk.ac.susx.mlcl.lib.StringDictionary;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Bidirectional mapping between entity id strings and dense integer ordinals, so that candidate sets can be held as
+ * sorted arrays of ints (see {@link IntCandidateSet}) and only decoded back to strings when they are output.
+ * <p/>
+ * Candidate sets can only be combined efficiently when they were encoded with the same dictionary, so the generators
+ * whose results are combined should share one. Since the dictionary is never pruned, it holds every id it has ever
+ * encoded, even after the sets using them are discarded: it should be scoped to a bounded set of ids, such as those of
+ * one knowledge base, or to the lifetime of a cache or batch job, and discarded along with it. There is deliberately
+ * no process-wide instance, which would grow for as long as the process runs.
+ *
+ * @author Hamish Morgan
+ */
+@ThreadSafe
+public final class EntityIdDictionary extends StringDictionary {
+
+    public EntityIdDictionary() {
+    }
+}
@@ -20,7 +20,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 public abstract class ForwardingGenerator<Q,L> extends AbstractGenerator<Q,L> {
 
     @Nonnull
-    private final CandidateGenerator delegate;
+    private final CandidateGenerator<Q,L> delegate;
 
     /**
      * Protected constructor should only be used by sub-classes.
@@ -34,7 +34,14 @@ public abstract class ForwardingGenerator<Q,L> extends AbstractGenerator<Q,L> {
     @Nonnull
     @Override
     public Set<L> findCandidates(@Nonnull final Q mention) throws IOException {
-        return delegate.findCandidates(mention);
+        return getDelegate().findCandidates(mention);
+    }
+
+    @Nonnull
+    @Override
+    public Map<Q, Set<L>> batchFindCandidates(@Nonnull final Iterable<Q> queries)
+            throws IOException, ExecutionException {
+        return getDelegate().batchFindCandidates(queries);
     }
 
     /**
@@ -5,8 +5,13 @@
 package uk.ac.susx.mlcl.erl.linker;
 
 import com.google.api.services.freebase.Freebase2;
+import com.google.common.base.Function;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.Immutable;
@@ -15,23 +20,49 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * A candidate link generator that backs off to the Freebase search API.
+ * <p/>
+ * Asynchronous queries are run as batch requests on a scheduler, which also times the retry back-off, so the calling
+ * thread is never blocked waiting on the network. The scheduler is owned by the caller; generators constructed without
+ * one share a single scheduler, created on first use, whose daemon threads exit when idle so it never needs to be
+ * shut down.
  *
  * @author Hamish Morgan
  */
 @Immutable
-public class FreebaseSearchGenerator implements CandidateGenerator<String,String> {
+public class FreebaseSearchGenerator implements AsyncCandidateGenerator<String, String> {
+
+    /**
+     * Number of threads in the shared scheduler used when none is given.
+     */
+    public static final int DEFAULT_SCHEDULER_THREADS = 4;
 
     @Nonnull
     private final Freebase2 freebase;
+    @Nonnull
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param freebase  Freebase client
+     * @param scheduler executor on which asynchronous requests and retries are run
+     */
+    public FreebaseSearchGenerator(@Nonnull Freebase2 freebase, @Nonnull ScheduledExecutorService scheduler) {
+        this.freebase = checkNotNull(freebase, "freebase");
+        this.scheduler = checkNotNull(scheduler, "scheduler");
+    }
 
+    /**
+     * @param freebase Freebase client; asynchronous requests are run on a scheduler shared by all such generators
+     */
     public FreebaseSearchGenerator(@Nonnull Freebase2 freebase) {
-        checkNotNull(freebase, "freebase");
-        this.freebase = freebase;
+        this(freebase, SharedScheduler.INSTANCE);
     }
 
     @Nonnull
@@ -47,7 +78,66 @@ public class FreebaseSearchGenerator implements CandidateGenerator<String,String
     public Map<String, Set<String>> batchFindCandidates(@Nonnull Iterable<String> mentions)
             throws IOException, ExecutionException {
         checkNotNull(mentions, "mentions");
-        final Map<String, List<String>> ids = freebase.batchSearchGetIds(ImmutableSet.copyOf(mentions));
+        return toSets(freebase.batchSearchGetIds(ImmutableSet.copyOf(mentions)));
+    }
+
+    @Nonnull
+    @Override
+    public ListenableFuture<Set<String>> findCandidatesAsync(@Nonnull final String mention) {
+        checkNotNull(mention, "mention");
+        return Futures.transform(batchFindCandidatesAsync(ImmutableSet.of(mention)),
+                new Function<Map<String, Set<String>>, Set<String>>() {
+                    @Override
+                    public Set<String> apply(Map<String, Set<String>> results) {
+                        final Set<String> result = results.get(mention);
+                        return result == null ? ImmutableSet.<String>of() : result;
+                    }
+                }, MoreExecutors.sameThreadExecutor());
+    }
+
+    @Nonnull
+    @Override
+    public ListenableFuture<Map<String, Set<String>>> batchFindCandidatesAsync(@Nonnull Iterable<String> mentions) {
+        checkNotNull(mentions, "mentions");
+        return Futures.transform(freebase.batchSearchGetIdsAsync(ImmutableSet.copyOf(mentions), scheduler),
+                new Function<Map<String, List<String>>, Map<String, Set<String>>>() {
+                    @Override
+                    public Map<String, Set<String>> apply(Map<String, List<String>> ids) {
+                        return toSets(ids);
+                    }
+                }, MoreExecutors.sameThreadExecutor());
+    }
+
+    /**
+     * Holder of the default scheduler, so that it is only created when a generator without a scheduler is.
+     */
+    private static final class SharedScheduler {
+
+        /**
+         * Time after which idle scheduler threads exit.
+         */
+        private static final long KEEP_ALIVE_SECONDS = 60;
+
+        static final ScheduledExecutorService INSTANCE = create();
+
+        private SharedScheduler() {
+        }
+
+        @Nonnull
+        private static ScheduledExecutorService create() {
+            final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(DEFAULT_SCHEDULER_THREADS,
+                    new ThreadFactoryBuilder()
+                            .setDaemon(true)
+                            .setNameFormat("freebase-search-%d")
+                            .build());
+            scheduler.setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+            scheduler.allowCoreThreadTimeOut(true);
+            return scheduler;
+        }
+    }
+
+    @Nonnull
+    private static Map<String, Set<String>> toSets(@Nonnull Map<String, List<String>> ids) {
         final ImmutableMap.Builder<String, Set<String>> builder = ImmutableMap.builder();
         for (Map.Entry<String, List<String>> entry : ids.entrySet()) {
             builder.put(entry.getKey(), ImmutableSet.copyOf(entry.getValue()));
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2012-2013, Hamish Morgan.
+ * All Rights Reserved.
+ */
+package uk.ac.susx.mlcl.erl.linker;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import uk.ac.susx.mlcl.erl.tac.kb.TacKnowledgeBase;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A candidate link generator that finds approximate matches for the query in a local {@link TacKnowledgeBase},
+ * using the character n-gram index of entity aliases. This allows near-misses such as "Barak Obama" or "U.S.A" to
+ * produce candidates where exact lookup would fail.
+ * <p/>
+ * Mentions are first looked up in the normalized alias index, which is cheap and catches most trivial variations
+ * (case, diacritics, punctuation and spacing); the n-gram index is only searched when that fails. Otherwise, the
+ * <tt>k</tt> most similar aliases are found, and the union of the entity id's for those aliases is returned.
+ * Since the order of the result set is not significant, it should usually be the last child of a
+ * {@link GeneratorCollection} with the {@link GeneratorCollection.AggregationMethod#FIRST} method, after an exact
+ * generator such as {@link TacKnowledgeBaseGenerator}.
+ *
+ * @author Hamish Morgan
+ */
+@Immutable
+public class FuzzyTacKnowledgeBaseGenerator implements CandidateGenerator<String, String> {
+
+    public static final int DEFAULT_K = 10;
+    public static final double DEFAULT_MIN_SIMILARITY = 0.5;
+
+    @Nonnull
+    private final TacKnowledgeBase kb;
+    private final int k;
+    private final double minSimilarity;
+
+    /**
+     * @param kb            knowledge base to search
+     * @param k             maximum number of similar aliases to resolve for each query
+     * @param minSimilarity minimum n-gram similarity (between 0 and 1) for an alias to be considered
+     */
+    public FuzzyTacKnowledgeBaseGenerator(@Nonnull TacKnowledgeBase kb, int k, double minSimilarity) {
+        checkArgument(k > 0, "k <= 0");
+        checkArgument(minSimilarity >= 0 && minSimilarity <= 1, "minSimilarity out of range [0,1]");
+        this.kb = checkNotNull(kb, "kb");
+        this.k = k;
+        this.minSimilarity = minSimilarity;
+    }
+
+    public FuzzyTacKnowledgeBaseGenerator(@Nonnull TacKnowledgeBase kb) {
+        this(kb, DEFAULT_K, DEFAULT_MIN_SIMILARITY);
+    }
+
+    @Nonnull
+    @Override
+    public Set<String> findCandidates(@Nonnull String mention) throws IOException {
+        checkNotNull(mention, "mention");
+        final Set<String> normalizedIds = kb.getIdsByNormalizedAlias(mention);
+        if (!normalizedIds.isEmpty())
+            return normalizedIds;
+
+        final ImmutableSet.Builder<String> ids = ImmutableSet.builder();
+        for (String alias : kb.findSimilarAliases(mention, k, minSimilarity))
+            ids.addAll(kb.getIdsByAlias(alias));
+        return ids.build();
+    }
+
+    @Nonnull
+    @Override
+    public Map<String, Set<String>> batchFindCandidates(@Nonnull Iterable<String> mentions)
+            throws IOException, ExecutionException {
+        checkNotNull(mentions, "mentions");
+        final ImmutableMap.Builder<String, Set<String>> builder = ImmutableMap.builder();
+        for (String mention : ImmutableSet.copyOf(mentions))
+            builder.put(mention, findCandidates(mention));
+        return builder.build();
+    }
+}
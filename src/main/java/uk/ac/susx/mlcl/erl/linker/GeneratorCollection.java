@@ -1,17 +1,31 @@
 package uk.ac.susx.mlcl.erl.linker;
 
+import com.google.common.base.Function;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
-import javax.annotation.Nullable;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.*;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
@@ -19,13 +33,24 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * forwards all method invocations to a collection of child generators. Depending on the
  * {@link uk.ac.susx.mlcl.erl.linker.GeneratorCollection.AggregationMethod} the results
  * are aggregated in various ways.
+ * <p/>
+ * By default the children are queried one after another on the calling thread. If an executor is set, using
+ * {@link Builder#setExecutor(ExecutorService, long, TimeUnit)}, then the children are queried concurrently, and the
+ * results of all children that complete within the timeout are aggregated. Children that do not complete in time are
+ * cancelled, and their results are ignored.
+ * <p/>
+ * The asynchronous methods query the children through their own asynchronous methods where they have them. Other
+ * children are run on the executor, or on the calling thread if no executor is set. The timeout does not apply to
+ * asynchronous queries; callers can impose their own deadline on the returned future.
  *
  * @author Hamish Morgan &lt;hamish.morgan@sussex.ac.uk&gt;
  */
 @Immutable
 public class GeneratorCollection<Q,L>
         extends AbstractCollection<CandidateGenerator<Q,L>>
-        implements CandidateGenerator<Q,L> {
+        implements AsyncCandidateGenerator<Q,L> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GeneratorCollection.class);
 
     /**
      * Control the way candidates are combined from the child generators.
@@ -46,6 +71,183 @@ public class GeneratorCollection<Q,L>
                 }
                 return ImmutableSet.of();
             }
+
+            @Nonnull
+            @Override
+            <L> Set<L> combine(@Nonnull final List<Set<L>> results) {
+                for (Set<L> result : results)
+                    if (result != null && !result.isEmpty())
+                        return result;
+                return ImmutableSet.of();
+            }
+
+            /**
+             * Each generator is sent a single batch, containing only those queries for which no preceding generator
+             * found candidates.
+             */
+            @Nonnull
+            @Override
+            <Q, L> Map<Q, Set<L>> batchFindCandidates(@Nonnull final List<CandidateGenerator<Q, L>> generators,
+                                                      @Nonnull final Set<Q> queries)
+                    throws IOException, ExecutionException {
+                final Map<Q, Set<L>> found = Maps.newHashMap();
+                Set<Q> remaining = queries;
+                for (CandidateGenerator<Q, L> generator : generators) {
+                    if (remaining.isEmpty())
+                        break;
+                    final Map<Q, Set<L>> batch = generator.batchFindCandidates(remaining);
+                    final Set<Q> next = Sets.newLinkedHashSet();
+                    for (Q query : remaining) {
+                        final Set<L> result = batch.get(query);
+                        if (result != null)
+                            found.put(query, result);
+                        if (result == null || result.isEmpty())
+                            next.add(query);
+                    }
+                    remaining = next;
+                }
+
+                return resultsFor(queries, found);
+            }
+
+            @Nonnull
+            @Override
+            <Q, L> ListenableFuture<Set<L>> findCandidatesAsync(
+                    @Nonnull final List<AsyncCandidateGenerator<Q, L>> generators, @Nonnull final Q mention) {
+                final SettableFuture<Set<L>> result = SettableFuture.create();
+                cascade(generators.iterator(), mention, result);
+                return result;
+            }
+
+            @Nonnull
+            @Override
+            <Q, L> ListenableFuture<Map<Q, Set<L>>> batchFindCandidatesAsync(
+                    @Nonnull final List<AsyncCandidateGenerator<Q, L>> generators, @Nonnull final Set<Q> queries) {
+                final SettableFuture<Map<Q, Set<L>>> result = SettableFuture.create();
+                cascadeBatch(generators.iterator(), queries, queries, new HashMap<Q, Set<L>>(), result);
+                return result;
+            }
+        },
+        /**
+         * All child generators are queried concurrently, and the first non-empty result to arrive is returned.
+         * When the collection has no executor this is identical to {@link #FIRST}. Concurrent batch queries wait for
+         * the children in the same way as the other methods, then take the first non-empty result in child order.
+         */
+        RACE {
+            @Nonnull
+            @Override
+            <Q, L> Set<L> findCandidates(@Nonnull final List<CandidateGenerator<Q, L>> generators, @Nonnull final Q mention)
+                    throws IOException {
+                return FIRST.findCandidates(generators, mention);
+            }
+
+            @Nonnull
+            @Override
+            <Q, L> Set<L> findCandidates(@Nonnull final List<CandidateGenerator<Q, L>> generators,
+                                         @Nonnull final Q mention,
+                                         @Nonnull final ExecutorService executor,
+                                         final long timeoutNanos)
+                    throws IOException {
+                final CompletionService<Set<L>> completionService = new ExecutorCompletionService<Set<L>>(executor);
+                final List<Future<Set<L>>> futures = submitAll(completionService, generators, mention);
+                final long start = System.nanoTime();
+                IOException failure = null;
+                try {
+                    for (int remaining = futures.size(); remaining > 0; remaining--) {
+                        final Future<Set<L>> future = completionService.poll(
+                                timeoutNanos - (System.nanoTime() - start), TimeUnit.NANOSECONDS);
+                        if (future == null)
+                            break;
+                        try {
+                            final Set<L> result = future.get();
+                            if (!result.isEmpty())
+                                return result;
+                        } catch (ExecutionException ex) {
+                            failure = asIOException(ex);
+                        }
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw (IOException) new InterruptedIOException().initCause(ex);
+                } finally {
+                    cancelAll(futures);
+                }
+                if (failure != null)
+                    throw failure;
+                return ImmutableSet.of();
+            }
+
+            @Nonnull
+            @Override
+            <L> Set<L> combine(@Nonnull final List<Set<L>> results) {
+                return FIRST.combine(results);
+            }
+
+            @Nonnull
+            @Override
+            <Q, L> Map<Q, Set<L>> batchFindCandidates(@Nonnull final List<CandidateGenerator<Q, L>> generators,
+                                                      @Nonnull final Set<Q> queries)
+                    throws IOException, ExecutionException {
+                return FIRST.batchFindCandidates(generators, queries);
+            }
+
+            @Nonnull
+            @Override
+            <Q, L> ListenableFuture<Set<L>> findCandidatesAsync(
+                    @Nonnull final List<AsyncCandidateGenerator<Q, L>> generators, @Nonnull final Q mention) {
+                final SettableFuture<Set<L>> result = SettableFuture.create();
+                if (generators.isEmpty()) {
+                    result.set(ImmutableSet.<L>of());
+                    return result;
+                }
+                final AtomicInteger remaining = new AtomicInteger(generators.size());
+                final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+                final List<ListenableFuture<Set<L>>> futures =
+                        new ArrayList<ListenableFuture<Set<L>>>(generators.size());
+                for (AsyncCandidateGenerator<Q, L> generator : generators) {
+                    final ListenableFuture<Set<L>> future = generator.findCandidatesAsync(mention);
+                    futures.add(future);
+                    Futures.addCallback(future, new FutureCallback<Set<L>>() {
+                        @Override
+                        public void onSuccess(Set<L> candidates) {
+                            if (candidates != null && !candidates.isEmpty())
+                                result.set(candidates);
+                            else
+                                childDone();
+                        }
+
+                        @Override
+                        public void onFailure(Throwable t) {
+                            failure.compareAndSet(null, t);
+                            childDone();
+                        }
+
+                        private void childDone() {
+                            if (remaining.decrementAndGet() > 0)
+                                return;
+                            if (failure.get() != null)
+                                result.setException(failure.get());
+                            else
+                                result.set(ImmutableSet.<L>of());
+                        }
+                    }, MoreExecutors.sameThreadExecutor());
+                }
+                // Once a result has been found the other children are no longer needed
+                result.addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        cancelAll(futures);
+                    }
+                }, MoreExecutors.sameThreadExecutor());
+                return result;
+            }
+
+            @Nonnull
+            @Override
+            <Q, L> ListenableFuture<Map<Q, Set<L>>> batchFindCandidatesAsync(
+                    @Nonnull final List<AsyncCandidateGenerator<Q, L>> generators, @Nonnull final Set<Q> queries) {
+                return FIRST.batchFindCandidatesAsync(generators, queries);
+            }
         },
         /**
          * All child generators are queries, and those candidates common to all generators are returned.
@@ -60,7 +262,7 @@ public class GeneratorCollection<Q,L>
                     if (result == null)
                         result = generator.findCandidates(mention);
                     else
-                        result = Sets.intersection(result, generator.findCandidates(mention));
+                        result = intersection(result, generator.findCandidates(mention));
                     if (result.isEmpty())
                         return ImmutableSet.of();
                 }
@@ -68,6 +270,18 @@ public class GeneratorCollection<Q,L>
                     result = ImmutableSet.of();
                 return result;
             }
+
+            @Nonnull
+            @Override
+            <L> Set<L> combine(@Nonnull final List<Set<L>> results) {
+                Set<L> intersection = null;
+                for (Set<L> result : results) {
+                    if (result == null)
+                        continue;
+                    intersection = intersection == null ? result : intersection(intersection, result);
+                }
+                return intersection == null ? ImmutableSet.<L>of() : intersection;
+            }
         },
         /**
          * All child generators are queries, and all unique those candidates are returned.
@@ -77,10 +291,22 @@ public class GeneratorCollection<Q,L>
             @Override
             <Q, L>  Set<L> findCandidates(@Nonnull final List<CandidateGenerator<Q,L>> generators, @Nonnull final Q mention)
                     throws IOException {
-                Set<L> result = ImmutableSet.of();
-                for (CandidateGenerator<Q,L> generator : generators)
-                    result = Sets.union(result, generator.findCandidates(mention));
-                return result;
+                Set<L> result = null;
+                for (CandidateGenerator<Q,L> generator : generators) {
+                    final Set<L> candidates = generator.findCandidates(mention);
+                    result = result == null ? candidates : union(result, candidates);
+                }
+                return result == null ? ImmutableSet.<L>of() : result;
+            }
+
+            @Nonnull
+            @Override
+            <L> Set<L> combine(@Nonnull final List<Set<L>> results) {
+                Set<L> union = null;
+                for (Set<L> result : results)
+                    if (result != null)
+                        union = union == null ? result : union(union, result);
+                return union == null ? ImmutableSet.<L>of() : union;
             }
 
         };
@@ -88,12 +314,326 @@ public class GeneratorCollection<Q,L>
         @Nonnull
         abstract <Q,L> Set<L> findCandidates(@Nonnull List<CandidateGenerator<Q,L>> generators, @Nonnull final Q mention)
                 throws IOException;
+
+        /**
+         * Aggregate the results of child generators that were queried concurrently.
+         *
+         * @param results result of each child generator, in child order, or null where the child did not complete
+         *                before the deadline
+         * @return aggregated candidates
+         */
+        @Nonnull
+        abstract <L> Set<L> combine(@Nonnull List<Set<L>> results);
+
+        /**
+         * Query all the generators concurrently using the given executor, waiting at most <tt>timeoutNanos</tt>
+         * for them to complete. The results of those that complete in time are passed to {@link #combine(List)}.
+         */
+        @Nonnull
+        <Q, L> Set<L> findCandidates(@Nonnull final List<CandidateGenerator<Q, L>> generators,
+                                     @Nonnull final Q mention,
+                                     @Nonnull final ExecutorService executor,
+                                     final long timeoutNanos)
+                throws IOException {
+            final List<Callable<Set<L>>> tasks = new ArrayList<Callable<Set<L>>>(generators.size());
+            for (final CandidateGenerator<Q, L> generator : generators) {
+                tasks.add(new Callable<Set<L>>() {
+                    @Override
+                    public Set<L> call() throws IOException {
+                        return generator.findCandidates(mention);
+                    }
+                });
+            }
+            try {
+                return combine(invokeAll(executor, tasks, timeoutNanos));
+            } catch (ExecutionException ex) {
+                throw asIOException(ex);
+            }
+        }
+
+        /**
+         * Query all the generators with the whole batch of queries, one generator after another, and combine the
+         * results for each query. Queries which no generator produced a result for are mapped to the empty set.
+         */
+        @Nonnull
+        <Q, L> Map<Q, Set<L>> batchFindCandidates(@Nonnull final List<CandidateGenerator<Q, L>> generators,
+                                                  @Nonnull final Set<Q> queries)
+                throws IOException, ExecutionException {
+            final List<Map<Q, Set<L>>> results = new ArrayList<Map<Q, Set<L>>>(generators.size());
+            for (CandidateGenerator<Q, L> generator : generators)
+                results.add(generator.batchFindCandidates(queries));
+            return combineBatch(queries, results);
+        }
+
+        /**
+         * Query all the generators with the whole batch of queries, concurrently using the given executor, waiting
+         * at most <tt>timeoutNanos</tt> for them to complete. The results of those that complete in time are
+         * combined for each query.
+         */
+        @Nonnull
+        <Q, L> Map<Q, Set<L>> batchFindCandidates(@Nonnull final List<CandidateGenerator<Q, L>> generators,
+                                                  @Nonnull final Set<Q> queries,
+                                                  @Nonnull final ExecutorService executor,
+                                                  final long timeoutNanos)
+                throws IOException, ExecutionException {
+            final List<Callable<Map<Q, Set<L>>>> tasks = new ArrayList<Callable<Map<Q, Set<L>>>>(generators.size());
+            for (final CandidateGenerator<Q, L> generator : generators) {
+                tasks.add(new Callable<Map<Q, Set<L>>>() {
+                    @Override
+                    public Map<Q, Set<L>> call() throws IOException, ExecutionException {
+                        return generator.batchFindCandidates(queries);
+                    }
+                });
+            }
+            return combineBatch(queries, invokeAll(executor, tasks, timeoutNanos));
+        }
+
+        /**
+         * Query all the generators without blocking, and combine their results with {@link #combine(List)} once
+         * every one has completed.
+         */
+        @Nonnull
+        <Q, L> ListenableFuture<Set<L>> findCandidatesAsync(
+                @Nonnull final List<AsyncCandidateGenerator<Q, L>> generators, @Nonnull final Q mention) {
+            final List<ListenableFuture<Set<L>>> futures = new ArrayList<ListenableFuture<Set<L>>>(generators.size());
+            for (AsyncCandidateGenerator<Q, L> generator : generators)
+                futures.add(generator.findCandidatesAsync(mention));
+            return Futures.transform(Futures.allAsList(futures), new Function<List<Set<L>>, Set<L>>() {
+                @Override
+                public Set<L> apply(List<Set<L>> results) {
+                    return combine(results);
+                }
+            }, MoreExecutors.sameThreadExecutor());
+        }
+
+        /**
+         * Query all the generators with the whole batch of queries without blocking, and combine the results for
+         * each query once every generator has completed.
+         */
+        @Nonnull
+        <Q, L> ListenableFuture<Map<Q, Set<L>>> batchFindCandidatesAsync(
+                @Nonnull final List<AsyncCandidateGenerator<Q, L>> generators, @Nonnull final Set<Q> queries) {
+            final List<ListenableFuture<Map<Q, Set<L>>>> futures =
+                    new ArrayList<ListenableFuture<Map<Q, Set<L>>>>(generators.size());
+            for (AsyncCandidateGenerator<Q, L> generator : generators)
+                futures.add(generator.batchFindCandidatesAsync(queries));
+            return Futures.transform(Futures.allAsList(futures),
+                    new Function<List<Map<Q, Set<L>>>, Map<Q, Set<L>>>() {
+                        @Override
+                        public Map<Q, Set<L>> apply(List<Map<Q, Set<L>>> results) {
+                            return combineBatch(queries, results);
+                        }
+                    }, MoreExecutors.sameThreadExecutor());
+        }
+
+        /**
+         * Query the generators one after another, without blocking, until one produces a non-empty result.
+         */
+        static <Q, L> void cascade(@Nonnull final Iterator<AsyncCandidateGenerator<Q, L>> generators,
+                                   @Nonnull final Q mention,
+                                   @Nonnull final SettableFuture<Set<L>> result) {
+            if (!generators.hasNext()) {
+                result.set(ImmutableSet.<L>of());
+                return;
+            }
+            Futures.addCallback(generators.next().findCandidatesAsync(mention), new FutureCallback<Set<L>>() {
+                @Override
+                public void onSuccess(Set<L> candidates) {
+                    if (candidates != null && !candidates.isEmpty())
+                        result.set(candidates);
+                    else if (!result.isCancelled())
+                        cascade(generators, mention, result);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    result.setException(t);
+                }
+            }, MoreExecutors.sameThreadExecutor());
+        }
+
+        /**
+         * Send each generator in turn a batch of the queries that are still unresolved, without blocking, until
+         * every query is resolved or the generators are exhausted.
+         */
+        static <Q, L> void cascadeBatch(@Nonnull final Iterator<AsyncCandidateGenerator<Q, L>> generators,
+                                        @Nonnull final Set<Q> queries,
+                                        @Nonnull final Set<Q> remaining,
+                                        @Nonnull final Map<Q, Set<L>> found,
+                                        @Nonnull final SettableFuture<Map<Q, Set<L>>> result) {
+            if (remaining.isEmpty() || !generators.hasNext()) {
+                result.set(resultsFor(queries, found));
+                return;
+            }
+            Futures.addCallback(generators.next().batchFindCandidatesAsync(remaining),
+                    new FutureCallback<Map<Q, Set<L>>>() {
+                        @Override
+                        public void onSuccess(Map<Q, Set<L>> batch) {
+                            final Set<Q> next = Sets.newLinkedHashSet();
+                            for (Q query : remaining) {
+                                final Set<L> candidates = batch.get(query);
+                                if (candidates != null)
+                                    found.put(query, candidates);
+                                if (candidates == null || candidates.isEmpty())
+                                    next.add(query);
+                            }
+                            if (!result.isCancelled())
+                                cascadeBatch(generators, queries, next, found, result);
+                        }
+
+                        @Override
+                        public void onFailure(Throwable t) {
+                            result.setException(t);
+                        }
+                    }, MoreExecutors.sameThreadExecutor());
+        }
+
+        /**
+         * Combine the per-generator batch results for each query, using {@link #combine(List)}.
+         *
+         * @param queries      queries that were requested
+         * @param batchResults result map of each child generator, in child order, or null where the child did not
+         *                     complete before the deadline
+         * @return aggregated candidates for each query
+         */
+        @Nonnull
+        <Q, L> Map<Q, Set<L>> combineBatch(@Nonnull final Set<Q> queries,
+                                           @Nonnull final List<Map<Q, Set<L>>> batchResults) {
+            final ImmutableMap.Builder<Q, Set<L>> builder = ImmutableMap.builder();
+            for (final Q query : queries) {
+                final List<Set<L>> results = new ArrayList<Set<L>>(batchResults.size());
+                for (Map<Q, Set<L>> batch : batchResults)
+                    results.add(batch == null ? null : batch.get(query));
+                builder.put(query, combine(results));
+            }
+            return builder.build();
+        }
+
+        /**
+         * Produce the result map of a batch, in which every requested query is present; those for which nothing was
+         * found are mapped to the empty set. Callers such as {@link CachedCandidateGenerator} require a value for
+         * every query they requested.
+         */
+        @Nonnull
+        static <Q, L> Map<Q, Set<L>> resultsFor(@Nonnull final Set<Q> queries, @Nonnull final Map<Q, Set<L>> found) {
+            final ImmutableMap.Builder<Q, Set<L>> builder = ImmutableMap.builder();
+            for (Q query : queries) {
+                final Set<L> candidates = found.get(query);
+                builder.put(query, candidates == null ? ImmutableSet.<L>of() : candidates);
+            }
+            return builder.build();
+        }
+
+        /**
+         * Union of two candidate sets. Sets encoded with the same {@link EntityIdDictionary} are merged directly;
+         * otherwise an unmodifiable view is returned.
+         */
+        @Nonnull
+        @SuppressWarnings("unchecked")
+        static <L> Set<L> union(@Nonnull final Set<L> a, @Nonnull final Set<L> b) {
+            if (a instanceof IntCandidateSet && b instanceof IntCandidateSet
+                    && ((IntCandidateSet) a).isCompatible((IntCandidateSet) b))
+                return (Set<L>) ((IntCandidateSet) a).union((IntCandidateSet) b);
+            return Sets.union(a, b);
+        }
+
+        /**
+         * Intersection of two candidate sets. Sets encoded with the same {@link EntityIdDictionary} are merged
+         * directly; otherwise an unmodifiable view is returned.
+         */
+        @Nonnull
+        @SuppressWarnings("unchecked")
+        static <L> Set<L> intersection(@Nonnull final Set<L> a, @Nonnull final Set<L> b) {
+            if (a instanceof IntCandidateSet && b instanceof IntCandidateSet
+                    && ((IntCandidateSet) a).isCompatible((IntCandidateSet) b))
+                return (Set<L>) ((IntCandidateSet) a).intersection((IntCandidateSet) b);
+            return Sets.intersection(a, b);
+        }
+
+        /**
+         * Submit all the tasks to the executor and wait at most <tt>timeoutNanos</tt> for them to complete. Any
+         * task still running when the time runs out is cancelled.
+         *
+         * @return result of each task, in task order, or null where the task did not complete in time
+         * @throws ExecutionException if any task that completed in time threw an exception
+         */
+        @Nonnull
+        static <T> List<T> invokeAll(@Nonnull final ExecutorService executor,
+                                     @Nonnull final List<? extends Callable<T>> tasks,
+                                     final long timeoutNanos)
+                throws InterruptedIOException, ExecutionException {
+            final CompletionService<T> completionService = new ExecutorCompletionService<T>(executor);
+            final Map<Future<T>, Integer> positions = Maps.newIdentityHashMap();
+            for (int i = 0; i < tasks.size(); i++)
+                positions.put(completionService.submit(tasks.get(i)), i);
+
+            final List<T> results = new ArrayList<T>(Collections.<T>nCopies(tasks.size(), null));
+            final long start = System.nanoTime();
+            try {
+                for (int remaining = tasks.size(); remaining > 0; remaining--) {
+                    final Future<T> future = completionService.poll(
+                            timeoutNanos - (System.nanoTime() - start), TimeUnit.NANOSECONDS);
+                    if (future == null) {
+                        LOG.debug("{} child generator(s) missed the deadline.", remaining);
+                        break;
+                    }
+                    results.set(positions.get(future), future.get());
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw (InterruptedIOException) new InterruptedIOException().initCause(ex);
+            } finally {
+                cancelAll(positions.keySet());
+            }
+            return results;
+        }
+
+        @Nonnull
+        static <Q, L> List<Future<Set<L>>> submitAll(@Nonnull final CompletionService<Set<L>> completionService,
+                                                     @Nonnull final List<CandidateGenerator<Q, L>> generators,
+                                                     @Nonnull final Q mention) {
+            final List<Future<Set<L>>> futures = new ArrayList<Future<Set<L>>>(generators.size());
+            for (final CandidateGenerator<Q, L> generator : generators) {
+                futures.add(completionService.submit(new Callable<Set<L>>() {
+                    @Override
+                    public Set<L> call() throws IOException {
+                        return generator.findCandidates(mention);
+                    }
+                }));
+            }
+            return futures;
+        }
+
+        static void cancelAll(@Nonnull final Iterable<? extends Future<?>> futures) {
+            for (Future<?> future : futures)
+                future.cancel(true);
+        }
+
+        @Nonnull
+        static IOException asIOException(@Nonnull final ExecutionException ex) {
+            Throwables.propagateIfPossible(ex.getCause());
+            return ex.getCause() instanceof IOException
+                    ? (IOException) ex.getCause()
+                    : new IOException(ex.getCause());
+        }
     }
 
     @Nonnull
     private final List<CandidateGenerator<Q,L>> children;
+    /**
+     * Asynchronous views of the children, in the same order.
+     */
+    @Nonnull
+    private final List<AsyncCandidateGenerator<Q,L>> asyncChildren;
     @Nonnull
     private final AggregationMethod aggregationMethod;
+    /**
+     * Executor on which children are queried concurrently, or null if they should be queried sequentially on the
+     * calling thread.
+     */
+    @Nullable
+    private final ExecutorService executor;
+    private final long timeoutNanos;
 
     /**
      * Protected dependency injection constructor. You should probably used the builder
@@ -101,11 +641,29 @@ public class GeneratorCollection<Q,L>
      *
      * @param children
      * @param aggregationMethod
+     * @param executor          executor for concurrent queries, or null for sequential queries
+     * @param timeoutNanos      maximum time to wait for concurrent queries
      */
     protected GeneratorCollection(@Nonnull final List<CandidateGenerator<Q,L>> children,
-                                  @Nonnull final AggregationMethod aggregationMethod) {
+                                  @Nonnull final AggregationMethod aggregationMethod,
+                                  @Nullable final ExecutorService executor,
+                                  final long timeoutNanos) {
+        checkArgument(timeoutNanos > 0, "timeoutNanos <= 0");
         this.children = checkNotNull(children, "childrenOf");
         this.aggregationMethod = checkNotNull(aggregationMethod, "aggregationMethod");
+        this.executor = executor;
+        this.timeoutNanos = timeoutNanos;
+
+        final Executor asyncExecutor = executor == null ? MoreExecutors.sameThreadExecutor() : executor;
+        final ImmutableList.Builder<AsyncCandidateGenerator<Q,L>> async = ImmutableList.builder();
+        for (CandidateGenerator<Q,L> child : children)
+            async.add(AsyncGenerators.asAsync(child, asyncExecutor));
+        this.asyncChildren = async.build();
+    }
+
+    protected GeneratorCollection(@Nonnull final List<CandidateGenerator<Q,L>> children,
+                                  @Nonnull final AggregationMethod aggregationMethod) {
+        this(children, aggregationMethod, null, Long.MAX_VALUE);
     }
 
     @Nonnull
@@ -126,17 +684,35 @@ public class GeneratorCollection<Q,L>
     @Nullable
     @Override
     public Set<L> findCandidates(@Nonnull final Q mention) throws IOException {
-        return aggregationMethod.findCandidates(children, mention);
+        return executor == null
+                ? aggregationMethod.findCandidates(children, mention)
+                : aggregationMethod.findCandidates(children, mention, executor, timeoutNanos);
     }
 
+    /**
+     * Each child generator receives the whole batch (or, for {@link AggregationMethod#FIRST}, only the queries that
+     * are still unresolved) as a single call, so children that support efficient batching can take advantage of it.
+     */
     @Nonnull
     @Override
     public Map<Q, Set<L>> batchFindCandidates(@Nonnull final Iterable<Q> queries)
             throws IOException, ExecutionException {
-        ImmutableMap.Builder<Q, Set<L>>  mapBuilder = ImmutableMap.builder();
-        for (Q query : queries)
-            mapBuilder.put(query, findCandidates(query));
-        return mapBuilder.build();
+        final Set<Q> uniqueQueries = ImmutableSet.copyOf(queries);
+        return executor == null
+                ? aggregationMethod.batchFindCandidates(children, uniqueQueries)
+                : aggregationMethod.batchFindCandidates(children, uniqueQueries, executor, timeoutNanos);
+    }
+
+    @Nonnull
+    @Override
+    public ListenableFuture<Set<L>> findCandidatesAsync(@Nonnull final Q mention) {
+        return aggregationMethod.findCandidatesAsync(asyncChildren, checkNotNull(mention, "mention"));
+    }
+
+    @Nonnull
+    @Override
+    public ListenableFuture<Map<Q, Set<L>>> batchFindCandidatesAsync(@Nonnull final Iterable<Q> queries) {
+        return aggregationMethod.batchFindCandidatesAsync(asyncChildren, ImmutableSet.copyOf(queries));
     }
 
     @Nonnull
@@ -155,10 +731,35 @@ public class GeneratorCollection<Q,L>
         public static final AggregationMethod DEFAULT_AGGREGATION_MODE = AggregationMethod.FIRST;
         private final ImmutableList.Builder<CandidateGenerator<Q,L>> children;
         private AggregationMethod aggregationMethod;
+        @Nullable
+        private ExecutorService executor;
+        private long timeoutNanos;
 
         public Builder() {
             children = ImmutableList.builder();
             aggregationMethod = DEFAULT_AGGREGATION_MODE;
+            executor = null;
+            timeoutNanos = Long.MAX_VALUE;
+        }
+
+        /**
+         * Query the child generators concurrently on the given executor, rather than sequentially on the calling
+         * thread. Each query waits at most the given timeout for the children to complete; the results of children
+         * that do not complete in time are dropped.
+         * <p/>
+         * The executor is not owned by the collection, so it can be shared, and must be shut down by the caller.
+         *
+         * @param executor executor on which children are queried
+         * @param timeout  maximum time to wait for each query
+         * @param unit     unit of the timeout argument
+         * @return this builder
+         */
+        @Nonnull
+        public Builder<Q,L> setExecutor(ExecutorService executor, long timeout, TimeUnit unit) {
+            checkArgument(timeout > 0, "timeout <= 0");
+            this.executor = checkNotNull(executor, "executor");
+            this.timeoutNanos = checkNotNull(unit, "unit").toNanos(timeout);
+            return this;
         }
 
         @Nonnull
@@ -193,7 +794,7 @@ public class GeneratorCollection<Q,L>
 
         @Nonnull
         public GeneratorCollection<Q,L> build() {
-            return new GeneratorCollection<Q,L>(children.build(), aggregationMethod);
+            return new GeneratorCollection<Q,L>(children.build(), aggregationMethod, executor, timeoutNanos);
         }
 
     }
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2013, Hamish Morgan.
+ * All Rights Reserved.
+ */
+package uk.ac.susx.mlcl.erl.linker;
+
+import com.google.common.collect.UnmodifiableIterator;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Immutable set of entity ids, stored as a sorted array of ordinals from an {@link EntityIdDictionary}.
+ * <p/>
+ * The set implements <tt>Set&lt;String&gt;</tt>, so it can be returned from any generator of string ids; the ids are
+ * only decoded when the set is iterated. Each element costs four bytes, rather than a boxed string and a hash
+ * table entry, and {@link #union(IntCandidateSet)} and {@link #intersection(IntCandidateSet)} of two sets from the
+ * same dictionary are computed by merging the arrays, in time linear in their sizes.
+ * <p/>
+ * Elements are iterated in order of ordinal, which is the order in which the dictionary first saw them, rather than
+ * the order they were added to this set.
+ *
+ * @author Hamish Morgan
+ */
+@Immutable
+public final class IntCandidateSet extends AbstractSet<String> {
+
+    private static final int[] NO_ORDINALS = new int[0];
+
+    @Nonnull
+    private final EntityIdDictionary dictionary;
+    /**
+     * Strictly increasing ordinals.
+     */
+    @Nonnull
+    private final int[] ordinals;
+
+    private IntCandidateSet(@Nonnull EntityIdDictionary dictionary, @Nonnull int[] ordinals) {
+        this.dictionary = dictionary;
+        this.ordinals = ordinals;
+    }
+
+    /**
+     * @return a set containing the given ids, encoding any that have not been seen by the dictionary
+     */
+    @Nonnull
+    public static IntCandidateSet copyOf(@Nonnull EntityIdDictionary dictionary, @Nonnull Iterable<String> ids) {
+        checkNotNull(dictionary, "dictionary");
+        checkNotNull(ids, "ids");
+        if (ids instanceof IntCandidateSet && ((IntCandidateSet) ids).dictionary == dictionary)
+            return (IntCandidateSet) ids;
+
+        int[] ordinals = ids instanceof Collection
+                ? new int[((Collection<String>) ids).size()]
+                : new int[8];
+        int n = 0;
+        for (String id : ids) {
+            if (n == ordinals.length)
+                ordinals = Arrays.copyOf(ordinals, n * 2);
+            ordinals[n++] = dictionary.encode(id);
+        }
+        return new IntCandidateSet(dictionary, sortedUnique(ordinals, n));
+    }
+
+    /**
+     * @return a set containing the ids with the given ordinals, which need not be sorted or unique
+     */
+    @Nonnull
+    public static IntCandidateSet ofOrdinals(@Nonnull EntityIdDictionary dictionary, @Nonnull int... ordinals) {
+        checkNotNull(dictionary, "dictionary");
+        final int[] copy = ordinals.clone();
+        for (int ordinal : copy)
+            checkArgument(ordinal >= 0 && ordinal < dictionary.size(), "ordinal %s not in dictionary", ordinal);
+        return new IntCandidateSet(dictionary, sortedUnique(copy, copy.length));
+    }
+
+    @Nonnull
+    public static IntCandidateSet empty(@Nonnull EntityIdDictionary dictionary) {
+        return new IntCandidateSet(checkNotNull(dictionary, "dictionary"), NO_ORDINALS);
+    }
+
+    @Nonnull
+    public EntityIdDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @return copy of the sorted ordinals of the elements
+     */
+    @Nonnull
+    public int[] toOrdinalArray() {
+        return ordinals.clone();
+    }
+
+    public int ordinalAt(int index) {
+        return ordinals[index];
+    }
+
+    public boolean containsOrdinal(int ordinal) {
+        return Arrays.binarySearch(ordinals, ordinal) >= 0;
+    }
+
+    /**
+     * @return whether the other set can be combined with this one by merging ordinals
+     */
+    public boolean isCompatible(@Nonnull IntCandidateSet other) {
+        return dictionary == other.dictionary;
+    }
+
+    /**
+     * @param other set encoded with the same dictionary
+     * @return the ids in either set
+     */
+    @Nonnull
+    public IntCandidateSet union(@Nonnull IntCandidateSet other) {
+        checkArgument(isCompatible(other), "sets were encoded with different dictionaries");
+        if (other.ordinals.length == 0)
+            return this;
+        if (ordinals.length == 0)
+            return other;
+        final int[] a = ordinals;
+        final int[] b = other.ordinals;
+        final int[] result = new int[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                result[n++] = a[i++];
+            } else if (a[i] > b[j]) {
+                result[n++] = b[j++];
+            } else {
+                result[n++] = a[i++];
+                j++;
+            }
+        }
+        while (i < a.length)
+            result[n++] = a[i++];
+        while (j < b.length)
+            result[n++] = b[j++];
+        if (n == a.length)
+            return this;
+        if (n == b.length)
+            return other;
+        return new IntCandidateSet(dictionary, Arrays.copyOf(result, n));
+    }
+
+    /**
+     * @param other set encoded with the same dictionary
+     * @return the ids in both sets
+     */
+    @Nonnull
+    public IntCandidateSet intersection(@Nonnull IntCandidateSet other) {
+        checkArgument(isCompatible(other), "sets were encoded with different dictionaries");
+        final int[] a = ordinals;
+        final int[] b = other.ordinals;
+        final int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i++];
+                j++;
+            }
+        }
+        if (n == a.length)
+            return this;
+        if (n == b.length)
+            return other;
+        return new IntCandidateSet(dictionary, Arrays.copyOf(result, n));
+    }
+
+    @Override
+    public int size() {
+        return ordinals.length;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return ordinals.length == 0;
+    }
+
+    @Override
+    public boolean contains(@Nullable Object o) {
+        if (!(o instanceof String))
+            return false;
+        final int ordinal = dictionary.ordinalOf(o);
+        return ordinal >= 0 && containsOrdinal(ordinal);
+    }
+
+    @Nonnull
+    @Override
+    public Iterator<String> iterator() {
+        return new UnmodifiableIterator<String>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < ordinals.length;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return dictionary.decode(ordinals[index++]);
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+        if (o == this)
+            return true;
+        if (o instanceof IntCandidateSet && ((IntCandidateSet) o).dictionary == dictionary)
+            return Arrays.equals(ordinals, ((IntCandidateSet) o).ordinals);
+        return o instanceof Set && super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+
+    /**
+     * Sort the first <tt>n</tt> ordinals and remove duplicates.
+     */
+    @Nonnull
+    private static int[] sortedUnique(@Nonnull int[] ordinals, int n) {
+        if (n == 0)
+            return NO_ORDINALS;
+        Arrays.sort(ordinals, 0, n);
+        int unique = 1;
+        for (int i = 1; i < n; i++)
+            if (ordinals[i] != ordinals[unique - 1])
+                ordinals[unique++] = ordinals[i];
+        return unique == ordinals.length ? ordinals : Arrays.copyOf(ordinals, unique);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2012-2013, Hamish Morgan.
+ * All Rights Reserved.
+ */
+package uk.ac.susx.mlcl.erl.linker;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A {@link CandidateRanker} that combines the scores of several other rankers, as a weighted sum. For example a
+ * context similarity ranker can be backed off to the entity prior, for mentions whose context is uninformative.
+ * <p/>
+ * Every component ranks the full candidate set, so each should produce scores on a comparable scale (such as [0,1]).
+ * Candidates a component does not return contribute zero from that component.
+ *
+ * @param <Q> query type
+ * @param <L> link type
+ * @author Hamish Morgan
+ */
+@Immutable
+public class LinearCombinationRanker<Q, L> implements CandidateRanker<Q, L> {
+
+    @Nonnull
+    private final List<CandidateRanker<? super Q, L>> rankers;
+    @Nonnull
+    private final double[] weights;
+
+    private LinearCombinationRanker(@Nonnull List<CandidateRanker<? super Q, L>> rankers, @Nonnull double[] weights) {
+        this.rankers = rankers;
+        this.weights = weights;
+    }
+
+    @Nonnull
+    @Override
+    public List<L> rankCandidates(@Nonnull final Q query, @Nonnull final Iterable<L> candidates) throws IOException {
+        final List<ScoredCandidate<L>> ranked = rankTopK(query, candidates, Integer.MAX_VALUE);
+        final List<L> result = new ArrayList<L>(ranked.size());
+        for (ScoredCandidate<L> scored : ranked)
+            result.add(scored.getCandidate());
+        return result;
+    }
+
+    /**
+     * Scores are only available from the component rankers in bulk, so each component ranks the whole candidate set
+     * and the weighted totals are accumulated by candidate position.
+     */
+    @Nonnull
+    @Override
+    public List<ScoredCandidate<L>> rankTopK(@Nonnull final Q query, @Nonnull final Iterable<L> candidates,
+                                             final int k) throws IOException {
+        checkNotNull(query, "query");
+        checkNotNull(candidates, "candidates");
+        checkArgument(k >= 0, "k < 0");
+
+        // Preserve the input order, so ties are broken the same way as the other rankers
+        final List<L> candidateList = ImmutableSet.copyOf(candidates).asList();
+        final Map<L, Integer> positions = Maps.newHashMapWithExpectedSize(candidateList.size());
+        for (int i = 0; i < candidateList.size(); i++)
+            positions.put(candidateList.get(i), i);
+
+        final double[] totals = new double[candidateList.size()];
+        for (int i = 0; i < rankers.size(); i++) {
+            for (ScoredCandidate<L> scored : rankers.get(i).rankTopK(query, candidateList, Integer.MAX_VALUE)) {
+                final Integer position = positions.get(scored.getCandidate());
+                if (position != null)
+                    totals[position] += weights[i] * scored.getScore();
+            }
+        }
+
+        return AbstractRanker.scoredCandidates(
+                candidateList, totals, AbstractRanker.selectTopK(totals, totals.length, k));
+    }
+
+    /**
+     * Builder for {@link LinearCombinationRanker} instances.
+     *
+     * @param <Q> query type
+     * @param <L> link type
+     */
+    public static class Builder<Q, L> {
+
+        private final List<CandidateRanker<? super Q, L>> rankers = Lists.newArrayList();
+        private final List<Double> weights = Lists.newArrayList();
+
+        public Builder() {
+        }
+
+        /**
+         * Add a component ranker, whose scores are multiplied by the given weight.
+         */
+        @Nonnull
+        public Builder<Q, L> add(@Nonnull CandidateRanker<? super Q, L> ranker, double weight) {
+            checkArgument(!Double.isNaN(weight) && !Double.isInfinite(weight), "weight is not finite");
+            rankers.add(checkNotNull(ranker, "ranker"));
+            weights.add(weight);
+            return this;
+        }
+
+        @Nonnull
+        public LinearCombinationRanker<Q, L> build() {
+            checkArgument(!rankers.isEmpty(), "no rankers have been added");
+            final double[] w = new double[weights.size()];
+            for (int i = 0; i < w.length; i++)
+                w[i] = weights.get(i);
+            return new LinearCombinationRanker<Q, L>(ImmutableList.copyOf(rankers), w);
+        }
+    }
+}
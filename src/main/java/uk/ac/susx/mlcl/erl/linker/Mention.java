@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2012-2013, Hamish Morgan.
+ * All Rights Reserved.
+ */
+package uk.ac.susx.mlcl.erl.linker;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A mention of an entity in a document: the surface text of the mention, along with the text surrounding it. This is
+ * the query type of rankers that make use of the mention context, such as {@link ContextSimilarityRanker}.
+ * <p/>
+ * Mentions from the same document will usually share a single context instance, which rankers may exploit to avoid
+ * analysing the same context repeatedly.
+ *
+ * @author Hamish Morgan
+ */
+@Immutable
+public final class Mention {
+
+    @Nonnull
+    private final String text;
+    @Nonnull
+    private final String context;
+
+    public Mention(@Nonnull final String text, @Nonnull final String context) {
+        this.text = checkNotNull(text, "text");
+        this.context = checkNotNull(context, "context");
+    }
+
+    @Nonnull
+    public String getText() {
+        return text;
+    }
+
+    @Nonnull
+    public String getContext() {
+        return context;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final Mention that = (Mention) o;
+        return text.equals(that.text) && context.equals(that.context);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * text.hashCode() + context.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "Mention{text=" + text + '}';
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2012-2013, Hamish Morgan.
+ * All Rights Reserved.
+ */
+package uk.ac.susx.mlcl.erl.linker;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.PrimitiveSink;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <tt>NilFilterGenerator</tt> is a {@link ForwardingGenerator} that remembers which queries produced no candidates,
+ * using a Bloom filter, so that repeated NIL mentions are answered with a few hash probes instead of a call to the
+ * delegate. Unlike {@link CachedCandidateGenerator} the memory used does not depend on the number of distinct NIL
+ * mentions, only on the configured capacity and false-positive rate.
+ * <p/>
+ * A false positive causes a query that does have candidates to be reported as NIL, so the rate should be chosen
+ * with that in mind. Since entries cannot be removed from a Bloom filter, the filter is periodically rebuilt: once it
+ * holds its expected number of insertions, or once the rebuild interval has passed. The previous filter is kept for
+ * one more generation, so known NIL mentions are not all forgotten at once. Each generation is sized for half the
+ * requested false-positive rate, so the rate across both stays within the target.
+ *
+ * @author Hamish Morgan
+ */
+@ThreadSafe
+public class NilFilterGenerator<Q, L> extends ForwardingGenerator<Q, L> {
+
+    public static final long DEFAULT_EXPECTED_INSERTIONS = 1 << 20;
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.001;
+
+    @Nonnull
+    private final Funnel<Q> funnel;
+    private final long expectedInsertions;
+    private final double falsePositiveRate;
+    private final long rebuildIntervalNanos;
+
+    @Nonnull
+    private volatile Generation<Q> current;
+    @Nonnull
+    private volatile Generation<Q> previous;
+    @Nonnull
+    private final AtomicLong filteredCount = new AtomicLong(0);
+
+    /**
+     * @param delegate             generator to query for mentions that are not known to be NIL
+     * @param funnel               funnel used to hash queries
+     * @param expectedInsertions   number of NIL queries each filter generation is sized to hold
+     * @param falsePositiveRate    target rate at which queries are wrongly reported as NIL, between 0 and 1
+     * @param rebuildInterval      maximum age of a filter generation, or zero to rebuild only when full
+     * @param unit                 time unit of <tt>rebuildInterval</tt>
+     */
+    public NilFilterGenerator(@Nonnull final CandidateGenerator<Q, L> delegate,
+                              @Nonnull final Funnel<? super Q> funnel,
+                              final long expectedInsertions,
+                              final double falsePositiveRate,
+                              final long rebuildInterval,
+                              @Nonnull final TimeUnit unit) {
+        super(delegate);
+        checkArgument(expectedInsertions > 0, "expectedInsertions <= 0");
+        checkArgument(falsePositiveRate > 0 && falsePositiveRate < 1, "falsePositiveRate out of range (0,1)");
+        checkArgument(rebuildInterval >= 0, "rebuildInterval < 0");
+        // Funnels only consume their input, so a funnel of any super-type can be safely used for Q.
+        @SuppressWarnings("unchecked")
+        final Funnel<Q> queryFunnel = (Funnel<Q>) checkNotNull(funnel, "funnel");
+        this.funnel = queryFunnel;
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        this.rebuildIntervalNanos = checkNotNull(unit, "unit").toNanos(rebuildInterval);
+        this.current = newGeneration();
+        this.previous = newGeneration();
+    }
+
+    /**
+     * Create a filter over string queries, with the default capacity and false-positive rate, which is only rebuilt
+     * when full.
+     */
+    @Nonnull
+    public static <L> NilFilterGenerator<String, L> forStrings(@Nonnull final CandidateGenerator<String, L> delegate) {
+        return new NilFilterGenerator<String, L>(delegate, CharSequenceFunnel.INSTANCE,
+                DEFAULT_EXPECTED_INSERTIONS, DEFAULT_FALSE_POSITIVE_RATE, 0, TimeUnit.SECONDS);
+    }
+
+    @Nonnull
+    @Override
+    public Set<L> findCandidates(@Nonnull final Q mention) throws IOException {
+        checkNotNull(mention, "mention");
+        if (isKnownNil(mention))
+            return ImmutableSet.of();
+        final Set<L> result = super.findCandidates(mention);
+        if (result.isEmpty())
+            recordNil(mention);
+        return result;
+    }
+
+    /**
+     * Queries known to be NIL are answered immediately; the remainder are passed to the delegate as a single batch.
+     */
+    @Nonnull
+    @Override
+    public Map<Q, Set<L>> batchFindCandidates(@Nonnull final Iterable<Q> queries)
+            throws IOException, ExecutionException {
+        final Map<Q, Set<L>> results = new LinkedHashMap<Q, Set<L>>();
+        final Set<Q> remaining = new LinkedHashSet<Q>();
+        for (Q query : queries) {
+            if (isKnownNil(query))
+                results.put(query, ImmutableSet.<L>of());
+            else
+                remaining.add(query);
+        }
+
+        if (!remaining.isEmpty()) {
+            final Map<Q, Set<L>> found = super.batchFindCandidates(remaining);
+            for (Q query : remaining) {
+                final Set<L> result = found.get(query);
+                if (result != null) {
+                    if (result.isEmpty())
+                        recordNil(query);
+                    results.put(query, result);
+                }
+            }
+        }
+        return ImmutableMap.copyOf(results);
+    }
+
+    /**
+     * @return number of queries that were answered from the filter, without calling the delegate
+     */
+    public long getFilteredCount() {
+        return filteredCount.get();
+    }
+
+    private boolean isKnownNil(@Nonnull final Q query) {
+        if (current.filter.mightContain(query) || previous.filter.mightContain(query)) {
+            filteredCount.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized void recordNil(@Nonnull final Q query) {
+        if (current.insertions >= expectedInsertions
+                || (rebuildIntervalNanos > 0 && System.nanoTime() - current.createdNanos >= rebuildIntervalNanos)) {
+            previous = current;
+            current = newGeneration();
+        }
+        // BloomFilter is not safe for concurrent writes, so insertions are made while holding the lock. Concurrent
+        // reads may miss an insertion in progress, which only costs a call to the delegate.
+        if (current.filter.put(query))
+            current.insertions++;
+    }
+
+    @Nonnull
+    private Generation<Q> newGeneration() {
+        return new Generation<Q>(BloomFilter.create(funnel, (int) Math.min(expectedInsertions, Integer.MAX_VALUE),
+                falsePositiveRate / 2), System.nanoTime());
+    }
+
+    /**
+     * One filter generation, with the state needed to decide when it should be replaced.
+     */
+    private static final class Generation<Q> {
+        @Nonnull
+        final BloomFilter<Q> filter;
+        final long createdNanos;
+        long insertions = 0;
+
+        Generation(@Nonnull final BloomFilter<Q> filter, final long createdNanos) {
+            this.filter = filter;
+            this.createdNanos = createdNanos;
+        }
+    }
+
+    /**
+     * Funnel that writes each character of a sequence.
+     */
+    public enum CharSequenceFunnel implements Funnel<CharSequence> {
+        INSTANCE;
+
+        @Override
+        public void funnel(@Nonnull final CharSequence from, @Nonnull final PrimitiveSink into) {
+            for (int i = 0; i < from.length(); i++)
+                into.putChar(from.charAt(i));
+        }
+    }
+}
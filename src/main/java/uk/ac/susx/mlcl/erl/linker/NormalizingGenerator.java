@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2012-2013, Hamish Morgan.
+ * All Rights Reserved.
+ */
+package uk.ac.susx.mlcl.erl.linker;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <tt>NormalizingGenerator</tt> is a {@link ForwardingGenerator} that reduces every query to a normalized key before
+ * passing it to the delegate. Queries with the same key are thereby answered by a single lookup, and share a single
+ * entry in any caches further down the generator stack, rather than being split across every variant of the surface
+ * form.
+ * <p/>
+ * The delegate only ever sees normalized keys, so it must be able to answer them; for example a
+ * {@link TacKnowledgeBaseGenerator}, which falls back to the normalized alias index.
+ *
+ * @param <L> candidate link type
+ * @author Hamish Morgan
+ */
+@Immutable
+public class NormalizingGenerator<L> extends ForwardingGenerator<String, L> {
+
+    @Nonnull
+    private final Function<String, String> normalizer;
+
+    /**
+     * @param delegate   generator that answers normalized queries
+     * @param normalizer function producing the normalized key of a query
+     */
+    public NormalizingGenerator(@Nonnull CandidateGenerator<String, L> delegate,
+                                @Nonnull Function<String, String> normalizer) {
+        super(delegate);
+        this.normalizer = checkNotNull(normalizer, "normalizer");
+    }
+
+    @Nonnull
+    @Override
+    public Set<L> findCandidates(@Nonnull String mention) throws IOException {
+        return super.findCandidates(normalizer.apply(checkNotNull(mention, "mention")));
+    }
+
+    @Nonnull
+    @Override
+    public Map<String, Set<L>> batchFindCandidates(@Nonnull Iterable<String> queries)
+            throws IOException, ExecutionException {
+        final Map<String, String> keys = new LinkedHashMap<String, String>();
+        final Set<String> distinctKeys = new LinkedHashSet<String>();
+        for (String query : queries) {
+            if (!keys.containsKey(query)) {
+                final String key = normalizer.apply(query);
+                keys.put(query, key);
+                distinctKeys.add(key);
+            }
+        }
+
+        final Map<String, Set<L>> keyCandidates = super.batchFindCandidates(distinctKeys);
+
+        final ImmutableMap.Builder<String, Set<L>> builder = ImmutableMap.builder();
+        for (Map.Entry<String, String> entry : keys.entrySet()) {
+            final Set<L> candidates = keyCandidates.get(entry.getValue());
+            builder.put(entry.getKey(), candidates == null ? ImmutableSet.<L>of() : candidates);
+        }
+        return builder.build();
+    }
+}
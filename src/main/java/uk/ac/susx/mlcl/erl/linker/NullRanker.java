@@ -7,8 +7,11 @@ package uk.ac.susx.mlcl.erl.linker;
 import com.google.common.collect.ImmutableList;
 
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.List;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 /**
  * @author hiam20
  */
@@ -18,4 +21,17 @@ public final class NullRanker<Q, L> implements CandidateRanker<Q, L> {
     public List<L> rankCandidates(Q query, Iterable<L> candidates) throws IOException {
         return ImmutableList.copyOf(candidates);
     }
+
+    /**
+     * Returns the first <tt>k</tt> candidates in their original order. All candidates are given a score of zero.
+     */
+    @Override
+    public List<ScoredCandidate<L>> rankTopK(Q query, Iterable<L> candidates, int k) throws IOException {
+        checkArgument(k >= 0, "k < 0");
+        final ImmutableList.Builder<ScoredCandidate<L>> result = ImmutableList.builder();
+        final Iterator<L> it = candidates.iterator();
+        for (int i = 0; i < k && it.hasNext(); i++)
+            result.add(new ScoredCandidate<L>(it.next(), 0));
+        return result.build();
+    }
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2012-2013, Hamish Morgan.
+ * All Rights Reserved.
+ */
+package uk.ac.susx.mlcl.erl.linker;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <tt>ParallelBatch</tt> processes a large batch of independent items (such as the queries of a TAC query set) by
+ * splitting it into contiguous chunks, and processing the chunks concurrently on an executor. At most
+ * <tt>parallelism</tt> chunks are in progress at once. The chunk results are concatenated in the original order, so
+ * the output is identical to processing the whole batch sequentially.
+ * <p/>
+ * The batch is split into several chunks per unit of parallelism, so that one slow chunk does not leave the other
+ * threads idle at the end of the batch. Each chunk is still passed to the function as a single list, so batch
+ * operations (such as {@link CandidateGenerator#batchFindCandidates(Iterable)}) can be used within a chunk.
+ *
+ * @author Hamish Morgan
+ */
+@Immutable
+public final class ParallelBatch {
+
+    /**
+     * Number of chunks the batch is split into, for each unit of parallelism.
+     */
+    public static final int CHUNKS_PER_THREAD = 4;
+
+    private static final ParallelBatch SEQUENTIAL = new ParallelBatch(null, 1);
+
+    /**
+     * Processes a chunk of items, returning exactly one result for each item, in the same order.
+     *
+     * @param <T> item type
+     * @param <R> result type
+     */
+    public interface ChunkFunction<T, R> {
+        @Nonnull
+        List<R> apply(@Nonnull List<T> chunk) throws IOException, ExecutionException;
+    }
+
+    @Nullable
+    private final ExecutorService executor;
+    private final int parallelism;
+
+    private ParallelBatch(@Nullable ExecutorService executor, int parallelism) {
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return an instance that processes the whole batch as one chunk, on the calling thread
+     */
+    @Nonnull
+    public static ParallelBatch sequential() {
+        return SEQUENTIAL;
+    }
+
+    /**
+     * The executor is not owned by this object, so it can be shared, and must be shut down by the caller.
+     *
+     * @param executor    executor on which chunks are processed
+     * @param parallelism maximum number of chunks in progress at once
+     * @return an instance that processes chunks concurrently on the executor
+     */
+    @Nonnull
+    public static ParallelBatch on(@Nonnull ExecutorService executor, int parallelism) {
+        checkNotNull(executor, "executor");
+        checkArgument(parallelism > 0, "parallelism <= 0");
+        return new ParallelBatch(executor, parallelism);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Apply the function to every item of the batch, chunk by chunk.
+     *
+     * @param items    items to process
+     * @param function function applied to each chunk
+     * @return the result for each item, in item order
+     * @throws IOException        if the function failed with an IOException
+     * @throws ExecutionException if the function failed with any other checked exception
+     */
+    @Nonnull
+    public <T, R> List<R> map(@Nonnull final List<T> items, @Nonnull final ChunkFunction<T, R> function)
+            throws IOException, ExecutionException {
+        checkNotNull(items, "items");
+        checkNotNull(function, "function");
+        if (executor == null || parallelism == 1 || items.size() <= 1)
+            return checkSize(function.apply(items), items.size());
+
+        final int chunkCount = Math.min(items.size(), parallelism * CHUNKS_PER_THREAD);
+        final List<List<T>> chunks = Lists.partition(items, (items.size() + chunkCount - 1) / chunkCount);
+
+        final CompletionService<List<R>> completionService = new ExecutorCompletionService<List<R>>(executor);
+        final Map<Future<List<R>>, Integer> positions = Maps.newHashMap();
+        final List<List<R>> results = new ArrayList<List<R>>(Collections.<List<R>>nCopies(chunks.size(), null));
+        int submitted = 0;
+        try {
+            for (int completed = 0; completed < chunks.size(); completed++) {
+                while (submitted < chunks.size() && submitted - completed < parallelism) {
+                    final List<T> chunk = chunks.get(submitted);
+                    positions.put(completionService.submit(new Callable<List<R>>() {
+                        @Override
+                        public List<R> call() throws IOException, ExecutionException {
+                            return checkSize(function.apply(chunk), chunk.size());
+                        }
+                    }), submitted);
+                    submitted++;
+                }
+                final Future<List<R>> future = completionService.take();
+                try {
+                    results.set(positions.remove(future), future.get());
+                } catch (ExecutionException ex) {
+                    Throwables.propagateIfInstanceOf(ex.getCause(), IOException.class);
+                    Throwables.propagateIfInstanceOf(ex.getCause(), ExecutionException.class);
+                    Throwables.propagateIfPossible(ex.getCause());
+                    throw ex;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw (InterruptedIOException) new InterruptedIOException().initCause(ex);
+        } finally {
+            // Abandon any outstanding chunks if one has failed
+            for (Future<List<R>> future : positions.keySet())
+                future.cancel(true);
+        }
+
+        // Results may contain nulls, so they can't be collected in an immutable list
+        final List<R> concatenated = new ArrayList<R>(items.size());
+        for (List<R> result : results)
+            concatenated.addAll(result);
+        return Collections.unmodifiableList(concatenated);
+    }
+
+    @Nonnull
+    private static <R> List<R> checkSize(@Nonnull List<R> results, int expectedSize) {
+        checkArgument(results.size() == expectedSize, "chunk function returned %s results for %s items",
+                results.size(), expectedSize);
+        return results;
+    }
+}
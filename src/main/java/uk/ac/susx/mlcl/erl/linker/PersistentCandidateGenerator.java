@@ -0,0 +1,424 @@
+/*
+ * Copyright (c) 2012-2013, Hamish Morgan.
+ * All Rights Reserved.
+ */
+package uk.ac.susx.mlcl.erl.linker;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.mapdb.BTreeMap;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.HTreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * <tt>PersistentCandidateGenerator</tt> is a {@link ForwardingGenerator} that stores the results of the delegate in
+ * a MapDB file, so that they survive restarts. It is intended to sit under the in-memory
+ * {@link CachedCandidateGenerator}, so that a newly started process can answer repeated mentions locally, rather than
+ * querying a remote service such as Freebase again.
+ * <p/>
+ * The store is bounded to a maximum number of entries; when it is exceeded the oldest written entries are evicted
+ * first. New results are not written immediately, but held in memory and written in batches (with a single commit)
+ * once the batch is large enough, or periodically if a flush interval is set. When a flush interval is set, writes
+ * are made on a background thread rather than by the caller. The database file is compacted after
+ * a configurable number of evictions, to reclaim the space of evicted entries.
+ * <p/>
+ * Both the query and candidate types must be serializable by MapDB. Instances must be closed to ensure pending
+ * writes reach the disk. Those created by the {@link Builder} are closed when the JVM shuts down, unless this is
+ * disabled with {@link Builder#setCloseOnShutdown(boolean)}, so pending writes are not lost when the owner has no
+ * opportunity to close them.
+ *
+ * @author Hamish Morgan
+ */
+@ThreadSafe
+public class PersistentCandidateGenerator<Q, L> extends ForwardingGenerator<Q, L> implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PersistentCandidateGenerator.class);
+
+    private static final String ENTRIES_NAME = "candidate-cache-entries";
+    private static final String WRITE_ORDER_NAME = "candidate-cache-write-order";
+
+    @Nonnull
+    private final DB database;
+    @Nonnull
+    private final HTreeMap<Q, Record<L>> entries;
+    @Nonnull
+    private final BTreeMap<Long, Q> writeOrder;
+    @Nonnull
+    private final ConcurrentMap<Q, Set<L>> pending;
+    @Nonnull
+    private final AtomicLong sequence;
+    private final long maximumSize;
+    private final int flushSize;
+    private final long compactionThreshold;
+    @Nullable
+    private final ScheduledExecutorService flusher;
+    @Nonnull
+    private final AtomicBoolean flushScheduled;
+    @Nonnull
+    private final Runnable flushTask;
+    private long evictedSinceCompaction = 0;
+    /**
+     * Thread that closes this generator when the JVM shuts down, or null if none is registered.
+     */
+    @Nullable
+    private Thread shutdownHook = null;
+
+    /**
+     * Dependency injection constructor. Use {@link Builder} instead.
+     */
+    protected PersistentCandidateGenerator(@Nonnull final CandidateGenerator<Q, L> delegate,
+                                           @Nonnull final DB database,
+                                           final long maximumSize,
+                                           final int flushSize,
+                                           final long compactionThreshold,
+                                           final long flushIntervalNanos) {
+        super(delegate);
+        this.database = checkNotNull(database, "database");
+        this.entries = openEntries(database);
+        this.writeOrder = database.getTreeMap(WRITE_ORDER_NAME);
+        this.pending = new ConcurrentHashMap<Q, Set<L>>();
+        this.sequence = new AtomicLong(writeOrder.isEmpty() ? 0 : writeOrder.lastKey());
+        this.maximumSize = maximumSize;
+        this.flushSize = flushSize;
+        this.compactionThreshold = compactionThreshold;
+
+        this.flushScheduled = new AtomicBoolean(false);
+        this.flushTask = new Runnable() {
+            @Override
+            public void run() {
+                flushScheduled.set(false);
+                try {
+                    flush();
+                } catch (RuntimeException ex) {
+                    LOG.warn("Failed to flush persistent candidate cache.", ex);
+                }
+            }
+        };
+
+        if (flushIntervalNanos > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("candidate-store-flush-%d")
+                    .build());
+            flusher.scheduleWithFixedDelay(flushTask, flushIntervalNanos, flushIntervalNanos, TimeUnit.NANOSECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    @Nonnull
+    private static <Q, L> HTreeMap<Q, Record<L>> openEntries(@Nonnull final DB database) {
+        // Create the map with a counter if it doesn't already exist, so that size() is fast for eviction checks.
+        if (database.getAll().containsKey(ENTRIES_NAME))
+            return database.getHashMap(ENTRIES_NAME);
+        return database.createHashMap(ENTRIES_NAME).keepCounter(true).make();
+    }
+
+    @Nonnull
+    @Override
+    public Set<L> findCandidates(@Nonnull final Q mention) throws IOException {
+        checkNotNull(mention, "mention");
+        final Set<L> stored = lookup(mention);
+        if (stored != null)
+            return stored;
+        final Set<L> result = super.findCandidates(mention);
+        store(mention, result);
+        return result;
+    }
+
+    /**
+     * Queries that are already stored are answered locally; the remainder are passed to the delegate as a single
+     * batch.
+     */
+    @Nonnull
+    @Override
+    public Map<Q, Set<L>> batchFindCandidates(@Nonnull final Iterable<Q> queries)
+            throws IOException, ExecutionException {
+        final Map<Q, Set<L>> results = new LinkedHashMap<Q, Set<L>>();
+        final Set<Q> missing = new LinkedHashSet<Q>();
+        for (Q query : queries) {
+            if (results.containsKey(query))
+                continue;
+            final Set<L> stored = lookup(query);
+            if (stored != null)
+                results.put(query, stored);
+            else
+                missing.add(query);
+        }
+
+        if (!missing.isEmpty()) {
+            for (Map.Entry<Q, Set<L>> entry : super.batchFindCandidates(missing).entrySet()) {
+                results.put(entry.getKey(), entry.getValue());
+                store(entry.getKey(), entry.getValue());
+            }
+        }
+        return ImmutableMap.copyOf(results);
+    }
+
+    @Nullable
+    private Set<L> lookup(@Nonnull final Q query) throws IOException {
+        final Set<L> unwritten = pending.get(query);
+        if (unwritten != null)
+            return unwritten;
+        checkOpen();
+        final Record<L> record = entries.get(query);
+        return record == null ? null : record.getCandidates();
+    }
+
+    private void store(@Nonnull final Q query, @Nonnull final Set<L> candidates) {
+        pending.put(query, ImmutableSet.copyOf(candidates));
+        if (pending.size() < flushSize)
+            return;
+        // When there is a flush thread hand the write over to it, so the caller doesn't wait on the disk.
+        if (flusher == null)
+            flush();
+        else if (flushScheduled.compareAndSet(false, true))
+            flusher.execute(flushTask);
+    }
+
+    /**
+     * Write all pending results to the database, evicting the oldest entries if the maximum size is exceeded, and
+     * commit. If enough entries have been evicted since the last compaction the database is also compacted.
+     */
+    public synchronized void flush() {
+        if (pending.isEmpty() || database.isClosed())
+            return;
+
+        int written = 0;
+        for (Map.Entry<Q, Set<L>> entry : new ArrayList<Map.Entry<Q, Set<L>>>(pending.entrySet())) {
+            final long seq = sequence.incrementAndGet();
+            final Record<L> previous = entries.put(entry.getKey(), new Record<L>(seq, entry.getValue()));
+            if (previous != null)
+                writeOrder.remove(previous.getSequence());
+            writeOrder.put(seq, entry.getKey());
+            pending.remove(entry.getKey(), entry.getValue());
+            written++;
+        }
+
+        int evicted = 0;
+        while (entries.size() > maximumSize) {
+            final Map.Entry<Long, Q> oldest = writeOrder.pollFirstEntry();
+            if (oldest == null)
+                break;
+            entries.remove(oldest.getValue());
+            evicted++;
+        }
+
+        database.commit();
+        LOG.debug("Wrote {} and evicted {} persistent cache entries.", written, evicted);
+
+        evictedSinceCompaction += evicted;
+        if (evictedSinceCompaction >= compactionThreshold) {
+            LOG.info("Compacting persistent candidate cache after {} evictions.", evictedSinceCompaction);
+            database.compact();
+            evictedSinceCompaction = 0;
+        }
+    }
+
+    /**
+     * @return number of entries written to the database (not including pending writes)
+     */
+    public long size() {
+        return entries.size();
+    }
+
+    private void checkOpen() throws IOException {
+        if (database.isClosed())
+            throw new IOException("The persistent candidate cache is closed.");
+    }
+
+    /**
+     * Register a shutdown hook that closes this generator, if it is still open, when the JVM shuts down. The hook is
+     * removed when the generator is closed.
+     */
+    synchronized void closeOnShutdown() {
+        if (shutdownHook != null || database.isClosed())
+            return;
+        shutdownHook = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    close();
+                } catch (IOException ex) {
+                    LOG.warn("Failed to close persistent candidate cache on shutdown.", ex);
+                }
+            }
+        }, "candidate-store-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (database.isClosed())
+            return;
+        if (shutdownHook != null && Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException ex) {
+                // The JVM is already shutting down, so the hook can't be removed; it will find the cache closed
+            }
+        }
+        shutdownHook = null;
+        if (flusher != null)
+            flusher.shutdownNow();
+        flush();
+        database.close();
+    }
+
+    /**
+     * Stored value: the candidates, and the write sequence number used to find the entry in the write order index.
+     */
+    static final class Record<L> implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+        private final long sequence;
+        @Nonnull
+        private final HashSet<L> candidates;
+
+        Record(final long sequence, @Nonnull final Set<L> candidates) {
+            this.sequence = sequence;
+            this.candidates = new HashSet<L>(candidates);
+        }
+
+        long getSequence() {
+            return sequence;
+        }
+
+        @Nonnull
+        Set<L> getCandidates() {
+            return Collections.unmodifiableSet(candidates);
+        }
+    }
+
+    /**
+     * Builder for {@link PersistentCandidateGenerator} instances.
+     *
+     * @param <Q> query type
+     * @param <L> candidate link type
+     */
+    public static class Builder<Q, L> {
+
+        public static final long DEFAULT_MAXIMUM_SIZE = 1 << 20;
+        public static final int DEFAULT_FLUSH_SIZE = 256;
+        public static final long DEFAULT_COMPACTION_THRESHOLD = 1 << 16;
+
+        @Nullable
+        private CandidateGenerator<Q, L> inner = null;
+        @Nullable
+        private File file = null;
+        private long maximumSize = DEFAULT_MAXIMUM_SIZE;
+        private int flushSize = DEFAULT_FLUSH_SIZE;
+        private long compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+        private long flushIntervalNanos = 0;
+        private boolean closeOnShutdown = true;
+
+        public Builder() {
+        }
+
+        @Nonnull
+        public Builder<Q, L> setInner(@Nonnull final CandidateGenerator<Q, L> inner) {
+            this.inner = checkNotNull(inner, "inner");
+            return this;
+        }
+
+        /**
+         * Set the MapDB file in which results are stored. It is created if it does not exist.
+         */
+        @Nonnull
+        public Builder<Q, L> setFile(@Nonnull final File file) {
+            this.file = checkNotNull(file, "file");
+            return this;
+        }
+
+        /**
+         * Set the maximum number of entries to store, after which the oldest written entries are evicted.
+         */
+        @Nonnull
+        public Builder<Q, L> setMaximumSize(final long maximumSize) {
+            checkArgument(maximumSize > 0, "maximumSize <= 0");
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * Set the number of pending results that triggers a write to the database.
+         */
+        @Nonnull
+        public Builder<Q, L> setFlushSize(final int flushSize) {
+            checkArgument(flushSize > 0, "flushSize <= 0");
+            this.flushSize = flushSize;
+            return this;
+        }
+
+        /**
+         * Set the interval at which pending results are written, however few there are. A duration of zero (the
+         * default) means results are only written when the flush size is reached, or the generator is closed.
+         */
+        @Nonnull
+        public Builder<Q, L> setFlushInterval(final long duration, @Nonnull final TimeUnit unit) {
+            checkArgument(duration >= 0, "duration < 0");
+            this.flushIntervalNanos = checkNotNull(unit, "unit").toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Set the number of evictions after which the database is compacted.
+         */
+        @Nonnull
+        public Builder<Q, L> setCompactionThreshold(final long compactionThreshold) {
+            checkArgument(compactionThreshold > 0, "compactionThreshold <= 0");
+            this.compactionThreshold = compactionThreshold;
+            return this;
+        }
+
+        /**
+         * Set whether the generator is closed, writing any pending results, when the JVM shuts down. This is enabled
+         * by default; it may be disabled when the owner is certain to close the generator itself.
+         */
+        @Nonnull
+        public Builder<Q, L> setCloseOnShutdown(final boolean closeOnShutdown) {
+            this.closeOnShutdown = closeOnShutdown;
+            return this;
+        }
+
+        @Nonnull
+        public PersistentCandidateGenerator<Q, L> build() {
+            checkState(inner != null, "inner generator has not been set");
+            checkState(file != null, "file has not been set");
+            LOG.info("Opening persistent candidate cache: {}", file);
+            // The generator closes the database itself on shutdown, rather than MapDB, so that pending writes are
+            // flushed first
+            final DB database = DBMaker.newFileDB(file).make();
+            final PersistentCandidateGenerator<Q, L> generator = new PersistentCandidateGenerator<Q, L>(
+                    inner, database, maximumSize, flushSize, compactionThreshold, flushIntervalNanos);
+            if (closeOnShutdown)
+                generator.closeOnShutdown();
+            return generator;
+        }
+    }
+}
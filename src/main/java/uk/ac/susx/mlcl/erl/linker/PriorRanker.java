@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2012-2013, Hamish Morgan.
+ * All Rights Reserved.
+ */
+package uk.ac.susx.mlcl.erl.linker;
+
+import uk.ac.susx.mlcl.erl.tac.kb.EntityPriors;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A {@link CandidateRanker} that orders candidate entities by their prior, ignoring the query entirely. Popular
+ * entities are the right answer surprisingly often, so this makes a strong baseline, and a useful component of a
+ * {@link LinearCombinationRanker}.
+ * <p/>
+ * Scoring a candidate is a single lookup into the dense prior table, so ranking costs <em>O(n)</em> in the number of
+ * candidates. Entities missing from the table have a prior of zero.
+ *
+ * @author Hamish Morgan
+ */
+@Immutable
+public class PriorRanker extends AbstractRanker<Object, String> {
+
+    @Nonnull
+    private final EntityPriors priors;
+
+    public PriorRanker(@Nonnull EntityPriors priors) {
+        this.priors = checkNotNull(priors, "priors");
+    }
+
+    @Override
+    protected double score(@Nonnull Object query, @Nonnull String candidate) {
+        return priors.getPrior(candidate);
+    }
+}
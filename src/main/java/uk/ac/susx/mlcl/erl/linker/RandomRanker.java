@@ -13,6 +13,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Random;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
@@ -60,14 +61,36 @@ public final class RandomRanker<Q,L> implements CandidateRanker<Q,L> {
     public List<L> rankCandidates(Q query, final Iterable<L> candidates) throws IOException {
         // Shallow the input List
         final List<L> result = Lists.newArrayList(checkNotNull(candidates, "candidates"));
+        shuffleHead(result, result.size());
+        return result;
+    }
 
-        // For every element in the list, swap it with a randomly selected element in the tail 
+    /**
+     * Only the first <tt>k</tt> positions are shuffled, so this is linear in <tt>k</tt> after copying the
+     * candidates. All candidates are given a score of zero.
+     */
+    @Override
+    public List<ScoredCandidate<L>> rankTopK(Q query, Iterable<L> candidates, int k) throws IOException {
+        checkArgument(k >= 0, "k < 0");
+        final List<L> shuffled = Lists.newArrayList(checkNotNull(candidates, "candidates"));
+        final int n = Math.min(k, shuffled.size());
+        shuffleHead(shuffled, n);
+        final List<ScoredCandidate<L>> result = Lists.newArrayListWithCapacity(n);
+        for (int i = 0; i < n; i++)
+            result.add(new ScoredCandidate<L>(shuffled.get(i), 0));
+        return result;
+    }
+
+    /**
+     * Randomly select the first <tt>n</tt> elements of the list, by a partial Fisher-Yates shuffle.
+     */
+    private void shuffleHead(@Nonnull final List<?> list, final int n) {
+        // For every element in the head, swap it with a randomly selected element in the tail
         // (i.e with an element at an index equal to or greater than the current element.)
-        for (int i = 0; i < result.size() - 1; i++) {
-            final int j = i + random.nextInt(result.size() - i);
-            swap(result, i, j);
+        for (int i = 0; i < Math.min(n, list.size() - 1); i++) {
+            final int j = i + random.nextInt(list.size() - i);
+            swap(list, i, j);
         }
-        return result;
     }
 
     /**
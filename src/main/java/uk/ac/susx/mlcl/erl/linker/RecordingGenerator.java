@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2013, Hamish Morgan.
+ * All Rights Reserved.
+ */
+package uk.ac.susx.mlcl.erl.linker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * <tt>RecordingGenerator</tt> is a {@link ForwardingGenerator} that appends every response of the delegate to a
+ * recording file, so that a session against a remote service such as Freebase can later be replayed offline with a
+ * {@link ReplayGenerator}.
+ * <p/>
+ * The file consists of a header followed by one record per response. Each record holds its own length, the query
+ * and the candidates, so a file that was cut short by a crash can still be replayed up to the last whole record.
+ * Recording to an existing file appends to it; when a query is recorded more than once the last response wins. A
+ * truncated record at the end of an existing file is removed before appending, since records written after it could
+ * not otherwise be found.
+ * <p/>
+ * The responses of each call are written to the file before the call returns, since the recorded service is
+ * usually far slower than the disk, and a recording should not depend on the process shutting down cleanly.
+ *
+ * @author Hamish Morgan
+ */
+@ThreadSafe
+public class RecordingGenerator extends ForwardingGenerator<String, String> implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RecordingGenerator.class);
+
+    /**
+     * First four bytes of every recording file.
+     */
+    static final int MAGIC = 0x52434731;
+    /**
+     * Version of the record layout, written after the magic number.
+     */
+    static final int VERSION = 1;
+    /**
+     * Length of the file header in bytes.
+     */
+    static final int HEADER_LENGTH = 8;
+
+    @Nonnull
+    private final File file;
+    @GuardedBy("this")
+    @Nonnull
+    private final DataOutputStream out;
+    @GuardedBy("this")
+    private long recordCount = 0;
+    @GuardedBy("this")
+    private boolean closed = false;
+
+    /**
+     * @param delegate generator whose responses are recorded
+     * @param file     recording file, which is created if it does not exist and appended to otherwise, after
+     *                 removing any truncated record at its end
+     * @throws IOException if the file could not be opened, or exists but is not a recording
+     */
+    public RecordingGenerator(@Nonnull final CandidateGenerator<String, String> delegate, @Nonnull final File file)
+            throws IOException {
+        super(delegate);
+        this.file = checkNotNull(file, "file");
+        final boolean exists = file.exists() && file.length() > 0;
+        if (exists)
+            truncateToLastRecord(file);
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        if (!exists) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+        LOG.info("Recording candidate generator responses to {}", file);
+    }
+
+    @Nonnull
+    @Override
+    public Set<String> findCandidates(@Nonnull final String mention) throws IOException {
+        final Set<String> candidates = super.findCandidates(mention);
+        final byte[] record = encode(mention, candidates);
+        synchronized (this) {
+            append(record);
+            out.flush();
+        }
+        return candidates;
+    }
+
+    @Nonnull
+    @Override
+    public Map<String, Set<String>> batchFindCandidates(@Nonnull final Iterable<String> queries)
+            throws IOException, ExecutionException {
+        final Map<String, Set<String>> results = super.batchFindCandidates(queries);
+        synchronized (this) {
+            for (Map.Entry<String, Set<String>> entry : results.entrySet())
+                if (entry.getValue() != null)
+                    append(encode(entry.getKey(), entry.getValue()));
+            out.flush();
+        }
+        return results;
+    }
+
+    /**
+     * @return number of responses recorded by this instance
+     */
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    @Nonnull
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        out.close();
+        LOG.info("Recorded {} responses to {}", recordCount, file);
+    }
+
+    @GuardedBy("this")
+    private void append(@Nonnull final byte[] record) throws IOException {
+        checkState(!closed, "recording has been closed");
+        out.writeInt(record.length);
+        out.write(record);
+        recordCount++;
+    }
+
+    /**
+     * Encode the record body: the query, the number of candidates, and each candidate.
+     */
+    @Nonnull
+    static byte[] encode(@Nonnull final String query, @Nonnull final Set<String> candidates) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 * (candidates.size() + 1));
+        final DataOutputStream data = new DataOutputStream(bytes);
+        data.writeUTF(query);
+        data.writeInt(candidates.size());
+        for (String candidate : candidates)
+            data.writeUTF(candidate);
+        data.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Check the header of an existing recording, then find the end of its last whole record by following the record
+     * lengths, and cut off anything after it: a record that was cut short by a crash would otherwise swallow the
+     * start of the next record appended, and hide every record after it from {@link ReplayGenerator}.
+     */
+    private static void truncateToLastRecord(@Nonnull final File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            final long length = raf.length();
+            if (length < HEADER_LENGTH || raf.readInt() != MAGIC)
+                throw new IOException("Not a candidate recording: " + file);
+            final int version = raf.readInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported candidate recording version " + version + ": " + file);
+
+            long position = HEADER_LENGTH;
+            while (position + 4 <= length) {
+                raf.seek(position);
+                final int recordLength = raf.readInt();
+                if (recordLength < 0 || position + 4 + recordLength > length)
+                    break;
+                position += 4 + recordLength;
+            }
+            if (position < length) {
+                LOG.warn("Removing truncated record at offset {} of {}", position, file);
+                raf.setLength(position);
+            }
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2013, Hamish Morgan.
+ * All Rights Reserved.
+ */
+package uk.ac.susx.mlcl.erl.linker;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <tt>ReplayGenerator</tt> answers queries from a file written by {@link RecordingGenerator}, so that linking can be
+ * benchmarked reproducibly without access to the service that was recorded.
+ * <p/>
+ * The file is memory mapped, and indexed when the generator is opened: only the offset of each query's record is
+ * held on the heap, and the candidates are decoded from the mapping when they are requested. Queries that were not
+ * recorded produce no candidates, and are counted by {@link #getMissCount()}.
+ * <p/>
+ * To imitate a remote service, each call can be delayed by a fixed latency, plus a further latency for each query
+ * in a batch. The delay is a plain sleep on the calling thread, so results are reproducible run to run.
+ *
+ * @author Hamish Morgan
+ */
+@ThreadSafe
+public class ReplayGenerator extends AbstractGenerator<String, String> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReplayGenerator.class);
+
+    @Nonnull
+    private final ByteBuffer buffer;
+    /**
+     * Offset of the body of the last record for each query.
+     */
+    @Nonnull
+    private final Map<String, Integer> offsets;
+    private final long callLatencyNanos;
+    private final long queryLatencyNanos;
+    @Nonnull
+    private final AtomicLong missCount = new AtomicLong(0);
+
+    /**
+     * @param file         recording to replay
+     * @param callLatency  delay added to every call
+     * @param queryLatency delay added for every query in a call
+     * @param unit         unit of both latencies
+     * @throws IOException if the file could not be read, or is not a recording
+     */
+    public ReplayGenerator(@Nonnull final File file, final long callLatency, final long queryLatency,
+                           @Nonnull final TimeUnit unit) throws IOException {
+        checkNotNull(file, "file");
+        checkArgument(callLatency >= 0, "callLatency < 0");
+        checkArgument(queryLatency >= 0, "queryLatency < 0");
+        this.callLatencyNanos = checkNotNull(unit, "unit").toNanos(callLatency);
+        this.queryLatencyNanos = unit.toNanos(queryLatency);
+        this.buffer = map(file);
+        this.offsets = index(buffer, file);
+        LOG.info("Replaying {} recorded queries from {}", offsets.size(), file);
+    }
+
+    /**
+     * Create a generator that answers immediately.
+     */
+    public ReplayGenerator(@Nonnull final File file) throws IOException {
+        this(file, 0, 0, TimeUnit.NANOSECONDS);
+    }
+
+    @Nonnull
+    @Override
+    public Set<String> findCandidates(@Nonnull final String mention) throws IOException {
+        checkNotNull(mention, "mention");
+        delay(callLatencyNanos + queryLatencyNanos);
+        return lookup(mention);
+    }
+
+    @Nonnull
+    @Override
+    public Map<String, Set<String>> batchFindCandidates(@Nonnull final Iterable<String> queries)
+            throws IOException, ExecutionException {
+        final Set<String> uniqueQueries = ImmutableSet.copyOf(queries);
+        delay(callLatencyNanos + queryLatencyNanos * uniqueQueries.size());
+        final ImmutableMap.Builder<String, Set<String>> results = ImmutableMap.builder();
+        for (String query : uniqueQueries)
+            results.put(query, lookup(query));
+        return results.build();
+    }
+
+    /**
+     * @return number of distinct queries in the recording
+     */
+    public int size() {
+        return offsets.size();
+    }
+
+    /**
+     * @return number of requested queries that were not in the recording
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    @Nonnull
+    private Set<String> lookup(@Nonnull final String query) throws IOException {
+        final Integer offset = offsets.get(query);
+        if (offset == null) {
+            missCount.incrementAndGet();
+            LOG.debug("No recorded response for query: {}", query);
+            return ImmutableSet.of();
+        }
+        final DataInputStream in = open(buffer, offset);
+        in.readUTF();
+        final int count = in.readInt();
+        final ImmutableSet.Builder<String> candidates = ImmutableSet.builder();
+        for (int i = 0; i < count; i++)
+            candidates.add(in.readUTF());
+        return candidates.build();
+    }
+
+    private static void delay(final long nanos) throws InterruptedIOException {
+        if (nanos <= 0)
+            return;
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw (InterruptedIOException) new InterruptedIOException().initCause(ex);
+        }
+    }
+
+    @Nonnull
+    private static MappedByteBuffer map(@Nonnull final File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final long length = raf.length();
+            if (length > Integer.MAX_VALUE)
+                throw new IOException("Candidate recording is too large to map: " + file);
+            // The mapping remains valid after the channel is closed
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Check the header and find the offset of the last record of each query. A truncated final record is ignored.
+     */
+    @Nonnull
+    private static Map<String, Integer> index(@Nonnull final ByteBuffer buffer, @Nonnull final File file)
+            throws IOException {
+        if (buffer.limit() < RecordingGenerator.HEADER_LENGTH
+                || buffer.getInt(0) != RecordingGenerator.MAGIC)
+            throw new IOException("Not a candidate recording: " + file);
+        final int version = buffer.getInt(4);
+        if (version != RecordingGenerator.VERSION)
+            throw new IOException("Unsupported candidate recording version " + version + ": " + file);
+
+        final Map<String, Integer> offsets = Maps.newHashMap();
+        int position = RecordingGenerator.HEADER_LENGTH;
+        while (position + 4 <= buffer.limit()) {
+            final int length = buffer.getInt(position);
+            final int body = position + 4;
+            if (length < 0 || body + length > buffer.limit()) {
+                LOG.warn("Ignoring truncated record at offset {} of {}", position, file);
+                break;
+            }
+            offsets.put(open(buffer, body).readUTF(), body);
+            position = body + length;
+        }
+        return offsets;
+    }
+
+    /**
+     * @return a stream reading the buffer from the given offset, independent of any other reader
+     */
+    @Nonnull
+    private static DataInputStream open(@Nonnull final ByteBuffer buffer, final int offset) {
+        final ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        return new DataInputStream(new ByteBufferInputStream(view));
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        @Nonnull
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(@Nonnull final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(@Nonnull final byte[] bytes, final int off, final int len) {
+            if (len == 0)
+                return 0;
+            if (!buffer.hasRemaining())
+                return -1;
+            final int n = Math.min(len, buffer.remaining());
+            buffer.get(bytes, off, n);
+            return n;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2012-2013, Hamish Morgan.
+ * All Rights Reserved.
+ */
+package uk.ac.susx.mlcl.erl.linker;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A candidate knowledgebase link, together with the score assigned to it by a {@link CandidateRanker}. Higher scores
+ * indicate more plausible candidates. Scores are only comparable between candidates ranked by the same ranker.
+ *
+ * @param <L> link type
+ * @author Hamish Morgan
+ */
+@Immutable
+public final class ScoredCandidate<L> {
+
+    @Nonnull
+    private final L candidate;
+    private final double score;
+
+    public ScoredCandidate(@Nonnull final L candidate, final double score) {
+        this.candidate = checkNotNull(candidate, "candidate");
+        this.score = score;
+    }
+
+    @Nonnull
+    public L getCandidate() {
+        return candidate;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final ScoredCandidate<?> that = (ScoredCandidate<?>) o;
+        return Double.compare(that.score, score) == 0 && candidate.equals(that.candidate);
+    }
+
+    @Override
+    public int hashCode() {
+        final long bits = Double.doubleToLongBits(score);
+        return 31 * candidate.hashCode() + (int) (bits ^ (bits >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "ScoredCandidate{candidate=" + candidate + ", score=" + score + '}';
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2012-2013, Hamish Morgan.
+ * All Rights Reserved.
+ */
+package uk.ac.susx.mlcl.erl.linker;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import uk.ac.susx.mlcl.erl.tac.kb.TacKnowledgeBase;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A candidate link generator that answers queries from a local {@link TacKnowledgeBase}, using the alias index that
+ * is built when the knowledge base is imported. Candidates are returned as knowledge base entity id's. Mentions that
+ * don't match an alias exactly are retried against the normalized alias index, so variations in case, diacritics,
+ * punctuation and spacing are still found.
+ * <p/>
+ * Unlike {@link FreebaseSearchGenerator} no network calls are made, so lookup is bounded by the speed of the local
+ * database.
+ *
+ * @author Hamish Morgan
+ */
+@Immutable
+public class TacKnowledgeBaseGenerator implements CandidateGenerator<String, String> {
+
+    @Nonnull
+    private final TacKnowledgeBase kb;
+
+    public TacKnowledgeBaseGenerator(@Nonnull TacKnowledgeBase kb) {
+        this.kb = checkNotNull(kb, "kb");
+    }
+
+    @Nonnull
+    public final TacKnowledgeBase getKnowledgeBase() {
+        return kb;
+    }
+
+    @Nonnull
+    @Override
+    public Set<String> findCandidates(@Nonnull String mention) throws IOException {
+        checkNotNull(mention, "mention");
+        final Set<String> ids = kb.getIdsByAlias(mention);
+        if (!ids.isEmpty())
+            return ids;
+
+        final Set<String> normalizedIds = kb.getIdsByNormalizedAlias(mention);
+        if (!normalizedIds.isEmpty())
+            return normalizedIds;
+
+        // Knowledge bases created before the alias index was introduced will only contain the name index.
+        final String id = kb.getNameById(mention);
+        return id == null ? ImmutableSet.<String>of() : ImmutableSet.of(id);
+    }
+
+    @Nonnull
+    @Override
+    public Map<String, Set<String>> batchFindCandidates(@Nonnull Iterable<String> mentions)
+            throws IOException, ExecutionException {
+        checkNotNull(mentions, "mentions");
+        final ImmutableMap.Builder<String, Set<String>> builder = ImmutableMap.builder();
+        for (String mention : ImmutableSet.copyOf(mentions))
+            builder.put(mention, findCandidates(mention));
+        return builder.build();
+    }
+}
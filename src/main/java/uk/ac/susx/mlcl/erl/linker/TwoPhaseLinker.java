@@ -3,9 +3,11 @@ package uk.ac.susx.mlcl.erl.linker;
 import com.google.common.collect.ImmutableList;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 
@@ -15,6 +17,13 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * A linker which decomoses the opertation into to stages: First, generate a list of candidate knowedgebase entries.
  * Second order those entries by how likely they are correlate with the query. Finally return the entry with the
  * highest rank.
+ * <p/>
+ * Only the best candidate is requested from the ranker, using {@link CandidateRanker#rankTopK(Object, Iterable, int)},
+ * so the remaining candidates need not be ordered. If a NIL link is given then it is returned whenever there are no
+ * candidates, or the best candidate scores below the NIL threshold.
+ * <p/>
+ * Batches are split into chunks by a {@link ParallelBatch}, so large query sets can be linked concurrently; within
+ * each chunk candidates are generated as a single batch. Links are returned in query order regardless.
  *
  * @param <Q> query type
  * @param <L> link type
@@ -26,30 +35,89 @@ public class TwoPhaseLinker<Q, L> implements Linker<Q, L> {
     private final CandidateGenerator<Q, L> generator;
     @Nonnull
     private final CandidateRanker<Q, L> ranker;
+    @Nullable
+    private final L nilLink;
+    private final double nilThreshold;
+    @Nonnull
+    private final ParallelBatch parallelBatch;
 
-    public TwoPhaseLinker(@Nonnull CandidateGenerator<Q, L> generator, @Nonnull CandidateRanker<Q, L> ranker) {
+    /**
+     * @param generator     candidate generator
+     * @param ranker        candidate ranker
+     * @param nilLink       link returned when no candidate is good enough, or null to always return the best
+     *                      candidate (see {@link #TwoPhaseLinker(CandidateGenerator, CandidateRanker)})
+     * @param nilThreshold  minimum score for the best candidate to be returned instead of <tt>nilLink</tt>
+     * @param parallelBatch how batches are split and run concurrently
+     */
+    public TwoPhaseLinker(@Nonnull CandidateGenerator<Q, L> generator, @Nonnull CandidateRanker<Q, L> ranker,
+                          @Nullable L nilLink, double nilThreshold, @Nonnull ParallelBatch parallelBatch) {
         this.generator = checkNotNull(generator, "generator");
         this.ranker = checkNotNull(ranker, "ranker");
+        this.nilLink = nilLink;
+        this.nilThreshold = nilLink == null ? Double.NEGATIVE_INFINITY : nilThreshold;
+        this.parallelBatch = checkNotNull(parallelBatch, "parallelBatch");
+    }
+
+    /**
+     * @param generator    candidate generator
+     * @param ranker       candidate ranker
+     * @param nilLink      link returned when no candidate is good enough
+     * @param nilThreshold minimum score for the best candidate to be returned instead of <tt>nilLink</tt>
+     */
+    public TwoPhaseLinker(@Nonnull CandidateGenerator<Q, L> generator, @Nonnull CandidateRanker<Q, L> ranker,
+                          @Nonnull L nilLink, double nilThreshold) {
+        this(generator, ranker, checkNotNull(nilLink, "nilLink"), nilThreshold, ParallelBatch.sequential());
+    }
+
+    /**
+     * Construct a linker without a NIL link; the best candidate is always returned, and linking fails with a
+     * {@link NoSuchElementException} when there are no candidates.
+     */
+    public TwoPhaseLinker(@Nonnull CandidateGenerator<Q, L> generator, @Nonnull CandidateRanker<Q, L> ranker,
+                          @Nonnull ParallelBatch parallelBatch) {
+        this(generator, ranker, null, Double.NEGATIVE_INFINITY, parallelBatch);
+    }
+
+    /**
+     * Construct a linker without a NIL link; the best candidate is always returned, and linking fails with a
+     * {@link NoSuchElementException} when there are no candidates.
+     */
+    public TwoPhaseLinker(@Nonnull CandidateGenerator<Q, L> generator, @Nonnull CandidateRanker<Q, L> ranker) {
+        this(generator, ranker, ParallelBatch.sequential());
     }
 
     @Override
     @Nonnull
     public L link(@Nonnull Q query) throws IOException {
         final Set<L> candidates = generator.findCandidates(query);
-        final List<L> rankedCandidates = ranker.rankCandidates(query, candidates);
-        return rankedCandidates.get(0);
+        return best(query, candidates);
+    }
+
+    @Nonnull
+    private L best(@Nonnull Q query, @Nonnull Iterable<L> candidates) throws IOException {
+        final List<ScoredCandidate<L>> top = ranker.rankTopK(query, candidates, 1);
+        if (!top.isEmpty() && (nilLink == null || top.get(0).getScore() >= nilThreshold))
+            return top.get(0).getCandidate();
+        if (nilLink == null)
+            throw new NoSuchElementException("No candidates found for query: " + query);
+        return nilLink;
     }
 
     @Nonnull
     @Override
     public Iterable<L> batchLink(@Nonnull Iterable<Q> queries) throws IOException, ExecutionException {
-        Map<Q, Set<L>> candidateSets = generator.batchFindCandidates(queries);
-        ImmutableList.Builder<L> links = ImmutableList.builder();
-        for (Q query : queries) {
-            Iterable<L> candidates = candidateSets.get(query);
-            List<L> rankedCandidates = ranker.rankCandidates(query, candidates);
-            links.add(rankedCandidates.get(0));
-        }
-        return links.build();
+        return parallelBatch.map(ImmutableList.copyOf(queries), new ParallelBatch.ChunkFunction<Q, L>() {
+            @Nonnull
+            @Override
+            public List<L> apply(@Nonnull List<Q> chunk) throws IOException, ExecutionException {
+                final Map<Q, Set<L>> candidateSets = generator.batchFindCandidates(chunk);
+                final ImmutableList.Builder<L> links = ImmutableList.builder();
+                for (Q query : chunk) {
+                    final Iterable<L> candidates = candidateSets.get(query);
+                    links.add(best(query, candidates == null ? ImmutableList.<L>of() : candidates));
+                }
+                return links.build();
+            }
+        });
     }
 }
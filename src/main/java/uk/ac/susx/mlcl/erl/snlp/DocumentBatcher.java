@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2013, Hamish Morgan.
+ * All Rights Reserved.
+ */
+package uk.ac.susx.mlcl.erl.snlp;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import edu.stanford.nlp.pipeline.Annotation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Collects documents into windows, and links the mentions of each window with a single call to
+ * {@link EntityLinkingAnnotator#annotateAll(java.util.Collection)}. The unique mentions of the whole window are
+ * looked up in one batch, so a feed of short documents makes a few large generator calls rather than one small call
+ * per document.
+ * <p/>
+ * A window is linked as soon as it holds <tt>maxDocuments</tt> documents, on the thread that submitted the last of
+ * them, or <tt>maxDelay</tt> after its first document was submitted, on the scheduler thread, whichever comes first.
+ * The future returned by {@link #submit(Annotation)} completes when the document has been annotated. Call
+ * {@link #flush()} to link a partial window immediately, and {@link #close()} to link any remaining documents and
+ * release the scheduler.
+ *
+ * @author Hamish Morgan
+ */
+@ThreadSafe
+public class DocumentBatcher implements Closeable {
+
+    public static final int DEFAULT_MAX_DOCUMENTS = 64;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 100;
+
+    private static final Logger LOG = LoggerFactory.getLogger(DocumentBatcher.class);
+
+    @Nonnull
+    private final EntityLinkingAnnotator annotator;
+    private final int maxDocuments;
+    private final long maxDelayNanos;
+    @Nonnull
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownsScheduler;
+
+    @GuardedBy("this")
+    private Window window = new Window(0);
+    @GuardedBy("this")
+    private boolean closed = false;
+
+    /**
+     * @param annotator    annotator with which to link each window
+     * @param maxDocuments number of documents at which a window is linked immediately
+     * @param maxDelay     longest time a document waits for its window to fill, or zero to only link full windows
+     *                     and explicit flushes
+     * @param unit         unit of <tt>maxDelay</tt>
+     * @param scheduler    executor on which windows are linked when their delay expires
+     */
+    public DocumentBatcher(@Nonnull EntityLinkingAnnotator annotator, int maxDocuments, long maxDelay,
+                           @Nonnull TimeUnit unit, @Nonnull ScheduledExecutorService scheduler) {
+        this(annotator, maxDocuments, checkNotNull(unit, "unit").toNanos(maxDelay), scheduler, false);
+    }
+
+    /**
+     * Create a batcher with the default window size and delay, and its own scheduler thread.
+     */
+    public DocumentBatcher(@Nonnull EntityLinkingAnnotator annotator) {
+        this(annotator, DEFAULT_MAX_DOCUMENTS, TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_DELAY_MILLIS),
+                Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                        .setDaemon(true)
+                        .setNameFormat("document-batcher-%d")
+                        .build()),
+                true);
+    }
+
+    private DocumentBatcher(@Nonnull EntityLinkingAnnotator annotator, int maxDocuments, long maxDelayNanos,
+                            @Nonnull ScheduledExecutorService scheduler, boolean ownsScheduler) {
+        checkArgument(maxDocuments > 0, "maxDocuments <= 0");
+        checkArgument(maxDelayNanos >= 0, "maxDelay < 0");
+        this.annotator = checkNotNull(annotator, "annotator");
+        this.maxDocuments = maxDocuments;
+        this.maxDelayNanos = maxDelayNanos;
+        this.scheduler = checkNotNull(scheduler, "scheduler");
+        this.ownsScheduler = ownsScheduler;
+    }
+
+    /**
+     * Add the document to the current window.
+     *
+     * @param document document to annotate
+     * @return future that completes with the document once it has been annotated, or fails with the exception
+     *         thrown while annotating its window
+     * @throws IllegalStateException if the batcher has been closed
+     */
+    @Nonnull
+    public ListenableFuture<Annotation> submit(@Nonnull Annotation document) {
+        checkNotNull(document, "document");
+        final SettableFuture<Annotation> future = SettableFuture.create();
+        final Window full;
+        synchronized (this) {
+            checkState(!closed, "batcher has been closed");
+            window.add(document, future);
+            if (window.size() == 1 && maxDelayNanos > 0)
+                window.deadline = scheduler.schedule(new DeadlineTask(window.generation), maxDelayNanos,
+                        TimeUnit.NANOSECONDS);
+            full = window.size() >= maxDocuments ? takeWindow() : null;
+        }
+        if (full != null)
+            link(full);
+        return future;
+    }
+
+    /**
+     * Link the documents of the current window now, on the calling thread.
+     */
+    public void flush() {
+        final Window pending;
+        synchronized (this) {
+            pending = takeWindow();
+        }
+        link(pending);
+    }
+
+    /**
+     * Link any remaining documents, and stop accepting new ones. The scheduler is shut down if it was created by
+     * this batcher.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        flush();
+        if (ownsScheduler)
+            scheduler.shutdown();
+    }
+
+    /**
+     * @return number of documents waiting for their window to be linked
+     */
+    public synchronized int pendingCount() {
+        return window.size();
+    }
+
+    @GuardedBy("this")
+    @Nonnull
+    private Window takeWindow() {
+        final Window taken = window;
+        if (taken.deadline != null)
+            taken.deadline.cancel(false);
+        window = new Window(taken.generation + 1);
+        return taken;
+    }
+
+    private void link(@Nonnull Window batch) {
+        if (batch.size() == 0)
+            return;
+        try {
+            annotator.annotateAll(batch.documents);
+            for (int i = 0; i < batch.size(); i++)
+                batch.futures.get(i).set(batch.documents.get(i));
+        } catch (RuntimeException ex) {
+            LOG.error("Failed to link a window of " + batch.size() + " documents", ex);
+            batch.fail(ex);
+        } catch (Error ex) {
+            batch.fail(ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Links the window of the given generation when its delay expires, unless it has already been taken.
+     */
+    private final class DeadlineTask implements Runnable {
+        private final long generation;
+
+        DeadlineTask(long generation) {
+            this.generation = generation;
+        }
+
+        @Override
+        public void run() {
+            final Window expired;
+            synchronized (DocumentBatcher.this) {
+                if (window.generation != generation)
+                    return;
+                expired = takeWindow();
+            }
+            link(expired);
+        }
+    }
+
+    /**
+     * Documents waiting to be linked together, and their futures.
+     */
+    private static final class Window {
+        final long generation;
+        final List<Annotation> documents = new ArrayList<Annotation>();
+        final List<SettableFuture<Annotation>> futures = new ArrayList<SettableFuture<Annotation>>();
+        @Nullable
+        ScheduledFuture<?> deadline = null;
+
+        Window(long generation) {
+            this.generation = generation;
+        }
+
+        void add(@Nonnull Annotation document, @Nonnull SettableFuture<Annotation> future) {
+            documents.add(document);
+            futures.add(future);
+        }
+
+        int size() {
+            return documents.size();
+        }
+
+        void fail(@Nonnull Throwable t) {
+            for (SettableFuture<Annotation> future : futures)
+                future.setException(t);
+        }
+    }
+}
@@ -8,6 +8,7 @@ import com.google.api.services.freebase.Freebase2;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.io.Closer;
 import edu.stanford.nlp.ling.CoreAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreAnnotations.NamedEntityTagAnnotation;
@@ -20,31 +21,82 @@ import edu.stanford.nlp.util.CoreMap;
 import org.slf4j.LoggerFactory;
 import uk.ac.susx.mlcl.erl.MiscUtil;
 import uk.ac.susx.mlcl.erl.linker.*;
+import uk.ac.susx.mlcl.erl.tac.kb.EntityPriors;
+import uk.ac.susx.mlcl.erl.tac.kb.NameNormalizer;
+import uk.ac.susx.mlcl.erl.tac.kb.TacKnowledgeBase;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * @author Hamish Morgan
  */
-public class EntityLinkingAnnotator implements Annotator {
+public class EntityLinkingAnnotator implements Annotator, Closeable {
 
     private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(Freebase2.class);
     private final CandidateGenerator<String,String> generator;
-    private final CandidateRanker<String,String> ranker;
+    private final CandidateRanker<? super Mention,String> ranker;
+    private final double nilThreshold;
+    /**
+     * Resources opened for this annotator by its {@link Factory}, such as the local knowledge base, which are closed
+     * along with it.
+     */
+    private final Closer resources = Closer.create();
 
     /**
      * @param generator
      * @param ranker
+     * @param nilThreshold minimum score of the best candidate, below which a mention is linked to NIL
      */
-    public EntityLinkingAnnotator(CandidateGenerator<String,String> generator, CandidateRanker<String,String> ranker) {
+    public EntityLinkingAnnotator(CandidateGenerator<String,String> generator,
+                                  CandidateRanker<? super Mention,String> ranker,
+                                  double nilThreshold) {
         this.generator = checkNotNull(generator, "generator");
         this.ranker = checkNotNull(ranker, "ranker");
+        this.nilThreshold = nilThreshold;
+    }
+
+    /**
+     * Construct an annotator with a ranker that only considers the mention text, and not its context. Every mention
+     * is linked to its best candidate, if it has any. Rankers that use the mention context are given to
+     * {@link #EntityLinkingAnnotator(CandidateGenerator, CandidateRanker, double)} instead.
+     *
+     * @param generator
+     * @param ranker    ranker that is given the text of each mention
+     */
+    public EntityLinkingAnnotator(CandidateGenerator<String,String> generator,
+                                  CandidateRanker<String,String> ranker) {
+        this(generator, new MentionTextRanker(checkNotNull(ranker, "ranker")), Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * @return candidate generator used to find entities for each mention; for example a
+     *         {@link CachedCandidateGenerator}, from which the cache statistics can be read
+     */
+    @Nonnull
+    public CandidateGenerator<String, String> getGenerator() {
+        return generator;
+    }
+
+    /**
+     * Close the resources that were opened for this annotator by its {@link Factory}: the local knowledge base, the
+     * persistent candidate cache, and the Freebase client with its HTTP connections. Generators and rankers given to
+     * the constructor are otherwise left open; they remain the responsibility of the caller.
+     *
+     * @throws IOException if a resource could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        resources.close();
     }
 
     /**
@@ -75,7 +127,55 @@ public class EntityLinkingAnnotator implements Annotator {
     @Override
     public void annotate(@Nonnull final Annotation document) {
         checkNotNull(document, "annotation");
+        annotateAll(Collections.singletonList(document));
+    }
+
+    /**
+     * Link the mentions of several documents at once. The unique surface forms of all the documents are passed to
+     * the generator as a single batch, and the candidates are then ranked and assigned to the tokens of each
+     * document, using that document as the mention context. This is equivalent to annotating each document in turn,
+     * but a stream of short documents makes far fewer, larger, generator calls; see {@link DocumentBatcher}.
+     *
+     * @param documents documents to annotate
+     */
+    public void annotateAll(@Nonnull final Collection<Annotation> documents) {
+        checkNotNull(documents, "documents");
+
+        // For each document, map the surface form of each mention to the tokens it covers, and collect the unique
+        // surface forms across all the documents
+        final List<Map<String, List<CoreLabel>>> documentQueries =
+                new ArrayList<Map<String, List<CoreLabel>>>(documents.size());
+        final Set<String> queries = Sets.newLinkedHashSet();
+        for (final Annotation document : documents) {
+            final Map<String, List<CoreLabel>> query2labels = findQueries(document);
+            documentQueries.add(query2labels);
+            queries.addAll(query2labels.keySet());
+        }
 
+        // Search the knowledge base with all of the unique query strings
+        final Map<String, Set<String>> results;
+        try {
+            results = generator.batchFindCandidates(queries);
+
+            final Iterator<Map<String, List<CoreLabel>>> queriesIt = documentQueries.iterator();
+            for (final Annotation document : documents)
+                assignLinks(document, queriesIt.next(), results);
+
+        } catch (IOException ex) {
+            LOG.error(ex.getLocalizedMessage(), ex);
+            throw new RuntimeException(ex);
+        } catch (ExecutionException ex) {
+            LOG.error(ex.getLocalizedMessage(), ex);
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Find the mentions in the document, and map each unique surface form to all the tokens of the mentions that
+     * have it.
+     */
+    @Nonnull
+    private Map<String, List<CoreLabel>> findQueries(@Nonnull final Annotation document) {
         // Find all the entity mentions in the document
         final List<List<CoreLabel>> mentions = findMentions(document);
 
@@ -95,43 +195,42 @@ public class EntityLinkingAnnotator implements Annotator {
                 query2labels.put(text, Lists.newArrayList(phrase));
             }
         }
+        return query2labels;
+    }
 
-        // Search the knowledge base with all of the unique query strings
-        final Map<String, Set<String>> results;
-        try {
-            results = generator.batchFindCandidates(query2labels.keySet());
-
-
-            // Now add the kb id as an annotation to each mention token
-            for (final String query : query2labels.keySet()) {
-                if (!results.containsKey(query)) {
-                    LOG.warn("Failed to find search result for: " + query);
-                    continue;
-                }
-
-                Set<String> unrankedCandidateIds = results.get(query);
+    /**
+     * Rank the candidates of each query in the document, and annotate the query tokens with the best.
+     */
+    private void assignLinks(@Nonnull final Annotation document,
+                             @Nonnull final Map<String, List<CoreLabel>> query2labels,
+                             @Nonnull final Map<String, Set<String>> results) throws IOException {
 
+        // The whole document is the context of every mention; a single instance is shared so rankers can reuse
+        // any analysis of it.
+        final String documentText = document.get(CoreAnnotations.TextAnnotation.class);
+        final String context = documentText == null ? "" : documentText;
 
-                List<String> candidateIds = ranker.rankCandidates(query, unrankedCandidateIds);
+        // Now add the kb id as an annotation to each mention token
+        for (final String query : query2labels.keySet()) {
+            if (!results.containsKey(query)) {
+                LOG.warn("Failed to find search result for: " + query);
+                continue;
+            }
 
+            Set<String> unrankedCandidateIds = results.get(query);
 
-                // TODO: Implement a more sensible method of handling NILs
-                final String id = candidateIds.isEmpty() ? "/NIL" : candidateIds.get(0);
 
-                for (final CoreLabel token : query2labels.get(query)) {
-                    token.set(EntityKbIdAnnotation.class, id);
-                }
+            // Only the best candidate is needed, and its score decides whether the mention is NIL
+            final Mention mention = new Mention(query, context);
+            final List<ScoredCandidate<String>> top = ranker.rankTopK(mention, unrankedCandidateIds, 1);
+            final String id = top.isEmpty() || top.get(0).getScore() < nilThreshold
+                    ? "/NIL" : top.get(0).getCandidate();
 
+            for (final CoreLabel token : query2labels.get(query)) {
+                token.set(EntityKbIdAnnotation.class, id);
             }
 
-        } catch (IOException ex) {
-            LOG.error(ex.getLocalizedMessage(), ex);
-            throw new RuntimeException(ex);
-        } catch (ExecutionException ex) {
-            LOG.error(ex.getLocalizedMessage(), ex);
-            throw new RuntimeException(ex);
         }
-
     }
 
     /**
@@ -214,6 +313,33 @@ public class EntityLinkingAnnotator implements Annotator {
         }
     }
 
+    /**
+     * Adapts a ranker of mention text to rank mentions, by passing it the text of each mention.
+     */
+    private static final class MentionTextRanker implements CandidateRanker<Mention, String> {
+
+        @Nonnull
+        private final CandidateRanker<String, String> inner;
+
+        MentionTextRanker(@Nonnull CandidateRanker<String, String> inner) {
+            this.inner = inner;
+        }
+
+        @Nonnull
+        @Override
+        public List<String> rankCandidates(@Nonnull Mention query, @Nonnull Iterable<String> candidates)
+                throws IOException {
+            return inner.rankCandidates(query.getText(), candidates);
+        }
+
+        @Nonnull
+        @Override
+        public List<ScoredCandidate<String>> rankTopK(@Nonnull Mention query, @Nonnull Iterable<String> candidates,
+                                                      int k) throws IOException {
+            return inner.rankTopK(query.getText(), candidates, k);
+        }
+    }
+
     public static class Factory
             extends AbstractAnnotatorFactory
             implements edu.stanford.nlp.util.Factory<Annotator>, Serializable {
@@ -221,15 +347,59 @@ public class EntityLinkingAnnotator implements Annotator {
         private static final String PROPERTY_PREFIX = "nel.";
         private static final String GENERATOR_KEY = PROPERTY_PREFIX + "generator";
         private static final String GENERATOR_VALUE_FREEBASE_SEARCH = "freebase_search";
+        private static final String GENERATOR_VALUE_TAC_KB = "tac_kb";
+        private static final String GENERATOR_VALUE_TAC_KB_FUZZY = "tac_kb_fuzzy";
+        private static final String GENERATOR_VALUE_REPLAY = "replay";
+        private static final String GENERATOR_REPLAY_PATH_KEY = GENERATOR_KEY + ".replay.path";
+        private static final String GENERATOR_REPLAY_CALL_LATENCY_KEY = GENERATOR_KEY + ".replay.call_latency_millis";
+        private static final String GENERATOR_REPLAY_QUERY_LATENCY_KEY = GENERATOR_KEY + ".replay.query_latency_millis";
+        private static final String GENERATOR_RECORD_PATH_KEY = GENERATOR_KEY + ".record.path";
+        private static final String GENERATOR_TAC_KB_PATH_KEY = GENERATOR_KEY + ".tac_kb.path";
+        private static final String GENERATOR_FUZZY_K_KEY = GENERATOR_KEY + ".tac_kb_fuzzy.k";
+        private static final String GENERATOR_FUZZY_MIN_SIMILARITY_KEY = GENERATOR_KEY + ".tac_kb_fuzzy.min_similarity";
         private static final String GENERATOR_DEFAULT = GENERATOR_VALUE_FREEBASE_SEARCH;
         private static final String GENERATOR_CACHED_KEY = PROPERTY_PREFIX + "generator.cached";
         private static final String GENERATOR_CACHED_DEFAULT = "true";
+        private static final String GENERATOR_CACHED_MAX_WEIGHT_KEY = GENERATOR_CACHED_KEY + ".max_weight";
+        private static final String GENERATOR_CACHED_EXPIRE_SECONDS_KEY = GENERATOR_CACHED_KEY + ".expire_seconds";
+        private static final String GENERATOR_CACHED_REFRESH_SECONDS_KEY = GENERATOR_CACHED_KEY + ".refresh_seconds";
+        private static final String GENERATOR_CACHED_RECORD_STATS_KEY = GENERATOR_CACHED_KEY + ".record_stats";
+        private static final String GENERATOR_CACHED_DICTIONARY_KEY = GENERATOR_CACHED_KEY + ".dictionary";
+        private static final String GENERATOR_CACHED_DICTIONARY_DEFAULT = "false";
+        private static final String GENERATOR_PERSISTENT_KEY = GENERATOR_CACHED_KEY + ".persistent";
+        private static final String GENERATOR_PERSISTENT_DEFAULT = "false";
+        private static final String GENERATOR_PERSISTENT_PATH_KEY = GENERATOR_PERSISTENT_KEY + ".path";
+        private static final String GENERATOR_PERSISTENT_PATH_SUFFIX = ".candidates";
+        private static final String GENERATOR_PERSISTENT_MAX_SIZE_KEY = GENERATOR_PERSISTENT_KEY + ".max_size";
+        private static final String GENERATOR_PERSISTENT_FLUSH_SIZE_KEY = GENERATOR_PERSISTENT_KEY + ".flush_size";
+        private static final String GENERATOR_PERSISTENT_FLUSH_SECONDS_KEY = GENERATOR_PERSISTENT_KEY + ".flush_seconds";
+        private static final String GENERATOR_COALESCE_KEY = GENERATOR_KEY + ".coalesce";
+        private static final String GENERATOR_COALESCE_DEFAULT = "false";
+        private static final String GENERATOR_NIL_FILTER_KEY = GENERATOR_KEY + ".nil_filter";
+        private static final String GENERATOR_NIL_FILTER_DEFAULT = "false";
+        private static final String GENERATOR_NIL_FILTER_EXPECTED_INSERTIONS_KEY =
+                GENERATOR_NIL_FILTER_KEY + ".expected_insertions";
+        private static final String GENERATOR_NIL_FILTER_FPP_KEY = GENERATOR_NIL_FILTER_KEY + ".false_positive_rate";
+        private static final String GENERATOR_NIL_FILTER_REBUILD_SECONDS_KEY = GENERATOR_NIL_FILTER_KEY + ".rebuild_seconds";
+        private static final String GENERATOR_NORMALIZE_KEY = GENERATOR_KEY + ".normalize";
+        private static final String GENERATOR_NORMALIZE_DEFAULT = "false";
         private static final String RANKER_KEY = PROPERTY_PREFIX + "ranker";
         private static final String RANKER_VALUE_NULL = "null";
         private static final String RANKER_VALUE_RANDOM = "random";
+        private static final String RANKER_VALUE_CONTEXT_SIMILARITY = "context_similarity";
+        private static final String RANKER_VALUE_PRIOR = "prior";
         private static final String RANKER_DEFAULT = RANKER_VALUE_NULL;
+        private static final String RANKER_PRIOR_KEY = RANKER_KEY + ".prior";
+        private static final String RANKER_PRIOR_PATH_KEY = RANKER_PRIOR_KEY + ".path";
+        private static final String RANKER_PRIOR_PATH_SUFFIX = ".priors";
+        private static final String RANKER_PRIOR_WEIGHT_KEY = RANKER_PRIOR_KEY + ".weight";
+        private static final String RANKER_NIL_THRESHOLD_KEY = RANKER_KEY + ".nil_threshold";
         private static final String RANKER_SEED_KEY = PROPERTY_PREFIX + RANKER_KEY + ".seed";
         private static final long serialVersionUID = 1L;
+        @Nullable
+        private transient TacKnowledgeBase knowledgeBase = null;
+        @Nullable
+        private transient EntityIdDictionary knowledgeBaseIds = null;
 
         public Factory(Properties props) {
             super(props);
@@ -244,26 +414,63 @@ public class EntityLinkingAnnotator implements Annotator {
         public Annotator create() {
 
             CandidateGenerator generator;
+            Freebase2 fb = null;
 
             final String gen = props.getProperty(GENERATOR_KEY, GENERATOR_DEFAULT).toLowerCase().trim();
             if (gen.equals(GENERATOR_VALUE_FREEBASE_SEARCH)) {
-                Freebase2 fb;
                 try {
-                    fb = MiscUtil.newFreebaseInstance();
+                    fb = MiscUtil.newFreebaseInstance(props);
                     generator = new FreebaseSearchGenerator(fb);
                 } catch (IOException ex) {
                     throw new RuntimeException(ex);
                 }
+            } else if (gen.equals(GENERATOR_VALUE_TAC_KB)) {
+                generator = new TacKnowledgeBaseGenerator(openKnowledgeBase(gen));
+            } else if (gen.equals(GENERATOR_VALUE_TAC_KB_FUZZY)) {
+                final int k = Integer.parseInt(props.getProperty(GENERATOR_FUZZY_K_KEY,
+                        Integer.toString(FuzzyTacKnowledgeBaseGenerator.DEFAULT_K)));
+                final double minSimilarity = Double.parseDouble(props.getProperty(GENERATOR_FUZZY_MIN_SIMILARITY_KEY,
+                        Double.toString(FuzzyTacKnowledgeBaseGenerator.DEFAULT_MIN_SIMILARITY)));
+                generator = new FuzzyTacKnowledgeBaseGenerator(openKnowledgeBase(gen), k, minSimilarity);
+            } else if (gen.equals(GENERATOR_VALUE_REPLAY)) {
+                generator = createReplay();
             } else {
                 throw new RuntimeException("Unknown generator type: "
                         + props.getProperty(GENERATOR_KEY, GENERATOR_DEFAULT));
             }
 
+            if (props.containsKey(GENERATOR_RECORD_PATH_KEY)) {
+                try {
+                    final File file = new File(props.getProperty(GENERATOR_RECORD_PATH_KEY));
+                    generator = new RecordingGenerator(generator, file);
+                } catch (IOException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+
+            // Under the caches, so that only their misses are coalesced
+            if (Boolean.valueOf(props.getProperty(GENERATOR_COALESCE_KEY, GENERATOR_COALESCE_DEFAULT))) {
+                generator = new CoalescingGenerator<String, String>(generator);
+            }
+
+            PersistentCandidateGenerator<String, String> persistentCache = null;
             if (Boolean.valueOf(props.getProperty(GENERATOR_CACHED_KEY, GENERATOR_CACHED_DEFAULT))) {
-                generator = CachedCandidateGenerator.wrap(generator);
+                if (Boolean.valueOf(props.getProperty(GENERATOR_PERSISTENT_KEY, GENERATOR_PERSISTENT_DEFAULT))) {
+                    persistentCache = createPersistentCache(generator);
+                    generator = persistentCache;
+                }
+                generator = createCache(generator, gen);
+            }
+
+            if (Boolean.valueOf(props.getProperty(GENERATOR_NIL_FILTER_KEY, GENERATOR_NIL_FILTER_DEFAULT))) {
+                generator = createNilFilter(generator);
             }
 
-            final CandidateRanker ranker;
+            if (Boolean.valueOf(props.getProperty(GENERATOR_NORMALIZE_KEY, GENERATOR_NORMALIZE_DEFAULT))) {
+                generator = new NormalizingGenerator<String>(generator, NameNormalizer.function());
+            }
+
+            CandidateRanker ranker;
             final String rnkr = props.getProperty(RANKER_KEY, RANKER_DEFAULT).toLowerCase().trim();
             if (rnkr.equals(RANKER_VALUE_NULL)) {
                 ranker = new NullRanker();
@@ -275,12 +482,191 @@ public class EntityLinkingAnnotator implements Annotator {
                     ranker = new RandomRanker();
                 }
 
+            } else if (rnkr.equals(RANKER_VALUE_CONTEXT_SIMILARITY)) {
+                try {
+                    ranker = new ContextSimilarityRanker(openKnowledgeBase(rnkr).getTermVectors());
+                } catch (IOException ex) {
+                    throw new RuntimeException(ex);
+                }
+            } else if (rnkr.equals(RANKER_VALUE_PRIOR)) {
+                ranker = new PriorRanker(readPriors());
             } else {
                 throw new RuntimeException("Unknown ranker type: "
                         + props.getProperty(RANKER_KEY, RANKER_DEFAULT));
             }
 
-            return new EntityLinkingAnnotator(generator, ranker);
+            if (props.containsKey(RANKER_PRIOR_WEIGHT_KEY) && !rnkr.equals(RANKER_VALUE_PRIOR)) {
+                final double weight = Double.parseDouble(props.getProperty(RANKER_PRIOR_WEIGHT_KEY));
+                ranker = new LinearCombinationRanker.Builder<Mention, String>()
+                        .add(ranker, 1.0)
+                        .add(new PriorRanker(readPriors()), weight)
+                        .build();
+            }
+
+            final double nilThreshold = props.containsKey(RANKER_NIL_THRESHOLD_KEY)
+                    ? Double.parseDouble(props.getProperty(RANKER_NIL_THRESHOLD_KEY))
+                    : Double.NEGATIVE_INFINITY;
+
+            final EntityLinkingAnnotator annotator = new EntityLinkingAnnotator(generator, ranker, nilThreshold);
+            final TacKnowledgeBase kb = takeKnowledgeBase();
+            if (kb != null)
+                annotator.resources.register(kb);
+            if (persistentCache != null)
+                annotator.resources.register(persistentCache);
+            if (fb != null)
+                annotator.resources.register(fb);
+            return annotator;
+        }
+
+        @Nonnull
+        private CandidateGenerator<String, String> createReplay() {
+            if (!props.containsKey(GENERATOR_REPLAY_PATH_KEY))
+                throw new RuntimeException("Replay generator requires property: " + GENERATOR_REPLAY_PATH_KEY);
+            final long callLatency = Long.parseLong(props.getProperty(GENERATOR_REPLAY_CALL_LATENCY_KEY, "0"));
+            final long queryLatency = Long.parseLong(props.getProperty(GENERATOR_REPLAY_QUERY_LATENCY_KEY, "0"));
+            try {
+                return new ReplayGenerator(new File(props.getProperty(GENERATOR_REPLAY_PATH_KEY)),
+                        callLatency, queryLatency, TimeUnit.MILLISECONDS);
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+
+        /**
+         * The cache dictionary is only available in front of the local knowledge base. The dictionary is never pruned,
+         * so it is shared by everything built over the knowledge base, whose ids are a fixed set; with an open-ended
+         * source such as Freebase search it would grow for as long as the annotator is used.
+         */
+        @Nonnull
+        private CandidateGenerator<String, String> createCache(@Nonnull CandidateGenerator<String, String> inner,
+                                                               @Nonnull String generatorType) {
+            final CachedCandidateGenerator.Builder<String, String> builder =
+                    new CachedCandidateGenerator.Builder<String, String>().setInner(inner);
+            if (props.containsKey(GENERATOR_CACHED_MAX_WEIGHT_KEY))
+                builder.setMaximumWeight(Long.parseLong(props.getProperty(GENERATOR_CACHED_MAX_WEIGHT_KEY)));
+            if (props.containsKey(GENERATOR_CACHED_EXPIRE_SECONDS_KEY))
+                builder.setExpireAfterWrite(
+                        Long.parseLong(props.getProperty(GENERATOR_CACHED_EXPIRE_SECONDS_KEY)), TimeUnit.SECONDS);
+            if (props.containsKey(GENERATOR_CACHED_REFRESH_SECONDS_KEY))
+                builder.setRefreshAfterWrite(
+                        Long.parseLong(props.getProperty(GENERATOR_CACHED_REFRESH_SECONDS_KEY)), TimeUnit.SECONDS);
+            if (props.containsKey(GENERATOR_CACHED_RECORD_STATS_KEY))
+                builder.setRecordStats(Boolean.valueOf(props.getProperty(GENERATOR_CACHED_RECORD_STATS_KEY)));
+            final boolean dictionary = Boolean.valueOf(
+                    props.getProperty(GENERATOR_CACHED_DICTIONARY_KEY, GENERATOR_CACHED_DICTIONARY_DEFAULT));
+            if (dictionary) {
+                if (!generatorType.equals(GENERATOR_VALUE_TAC_KB)
+                        && !generatorType.equals(GENERATOR_VALUE_TAC_KB_FUZZY))
+                    throw new RuntimeException("Property " + GENERATOR_CACHED_DICTIONARY_KEY + " requires generator "
+                            + GENERATOR_VALUE_TAC_KB + " or " + GENERATOR_VALUE_TAC_KB_FUZZY);
+                builder.setDictionary(knowledgeBaseIds());
+            }
+            return builder.build();
+        }
+
+        @Nonnull
+        private CandidateGenerator<String, String> createNilFilter(@Nonnull CandidateGenerator<String, String> inner) {
+            final long expectedInsertions = Long.parseLong(props.getProperty(
+                    GENERATOR_NIL_FILTER_EXPECTED_INSERTIONS_KEY,
+                    Long.toString(NilFilterGenerator.DEFAULT_EXPECTED_INSERTIONS)));
+            final double falsePositiveRate = Double.parseDouble(props.getProperty(
+                    GENERATOR_NIL_FILTER_FPP_KEY,
+                    Double.toString(NilFilterGenerator.DEFAULT_FALSE_POSITIVE_RATE)));
+            final long rebuildSeconds = Long.parseLong(props.getProperty(
+                    GENERATOR_NIL_FILTER_REBUILD_SECONDS_KEY, "0"));
+            return new NilFilterGenerator<String, String>(inner, NilFilterGenerator.CharSequenceFunnel.INSTANCE,
+                    expectedInsertions, falsePositiveRate, rebuildSeconds, TimeUnit.SECONDS);
+        }
+
+        /**
+         * The persistent cache is stored in the file given by the path property, or otherwise next to the local
+         * knowledge base. It is closed along with the annotator, and also when the JVM shuts down, since the pipeline
+         * never closes its annotators; either way any results still pending are written.
+         */
+        @Nonnull
+        private PersistentCandidateGenerator<String, String> createPersistentCache(
+                @Nonnull CandidateGenerator<String, String> inner) {
+            final File file;
+            if (props.containsKey(GENERATOR_PERSISTENT_PATH_KEY)) {
+                file = new File(props.getProperty(GENERATOR_PERSISTENT_PATH_KEY));
+            } else if (props.containsKey(GENERATOR_TAC_KB_PATH_KEY)) {
+                file = new File(props.getProperty(GENERATOR_TAC_KB_PATH_KEY) + GENERATOR_PERSISTENT_PATH_SUFFIX);
+            } else {
+                throw new RuntimeException("Persistent candidate cache requires property: "
+                        + GENERATOR_PERSISTENT_PATH_KEY);
+            }
+
+            final PersistentCandidateGenerator.Builder<String, String> builder =
+                    new PersistentCandidateGenerator.Builder<String, String>()
+                            .setInner(inner)
+                            .setFile(file)
+                            .setCloseOnShutdown(true);
+            if (props.containsKey(GENERATOR_PERSISTENT_MAX_SIZE_KEY))
+                builder.setMaximumSize(Long.parseLong(props.getProperty(GENERATOR_PERSISTENT_MAX_SIZE_KEY)));
+            if (props.containsKey(GENERATOR_PERSISTENT_FLUSH_SIZE_KEY))
+                builder.setFlushSize(Integer.parseInt(props.getProperty(GENERATOR_PERSISTENT_FLUSH_SIZE_KEY)));
+            if (props.containsKey(GENERATOR_PERSISTENT_FLUSH_SECONDS_KEY))
+                builder.setFlushInterval(
+                        Long.parseLong(props.getProperty(GENERATOR_PERSISTENT_FLUSH_SECONDS_KEY)), TimeUnit.SECONDS);
+            return builder.build();
+        }
+
+        /**
+         * The priors are read from the file given by the path property, or otherwise from next to the local
+         * knowledge base.
+         */
+        @Nonnull
+        private EntityPriors readPriors() {
+            final File file;
+            if (props.containsKey(RANKER_PRIOR_PATH_KEY)) {
+                file = new File(props.getProperty(RANKER_PRIOR_PATH_KEY));
+            } else if (props.containsKey(GENERATOR_TAC_KB_PATH_KEY)) {
+                file = new File(props.getProperty(GENERATOR_TAC_KB_PATH_KEY) + RANKER_PRIOR_PATH_SUFFIX);
+            } else {
+                throw new RuntimeException("Prior ranker requires property: " + RANKER_PRIOR_PATH_KEY);
+            }
+            try {
+                return EntityPriors.readFrom(file);
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+
+        /**
+         * Open the local knowledge base, or return the one already opened for the annotator being created, since both
+         * the generator and ranker may need it but the database can only be opened once.
+         */
+        @Nonnull
+        private synchronized TacKnowledgeBase openKnowledgeBase(String componentType) {
+            if (knowledgeBase == null) {
+                if (!props.containsKey(GENERATOR_TAC_KB_PATH_KEY))
+                    throw new RuntimeException("Component type " + componentType
+                            + " requires property: " + GENERATOR_TAC_KB_PATH_KEY);
+                knowledgeBase = TacKnowledgeBase.open(new File(props.getProperty(GENERATOR_TAC_KB_PATH_KEY)));
+            }
+            return knowledgeBase;
+        }
+
+        /**
+         * Hand the knowledge base opened for the annotator being created over to that annotator, which closes it.
+         * The next annotator created opens its own.
+         */
+        @Nullable
+        private synchronized TacKnowledgeBase takeKnowledgeBase() {
+            final TacKnowledgeBase kb = knowledgeBase;
+            knowledgeBase = null;
+            return kb;
+        }
+
+        /**
+         * Get the dictionary of the local knowledge base's entity ids, creating it on first use. Its size is bounded
+         * by the number of entities in the knowledge base.
+         */
+        @Nonnull
+        private synchronized EntityIdDictionary knowledgeBaseIds() {
+            if (knowledgeBaseIds == null)
+                knowledgeBaseIds = new EntityIdDictionary();
+            return knowledgeBaseIds;
         }
     }
 }
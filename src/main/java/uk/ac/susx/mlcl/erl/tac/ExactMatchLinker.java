@@ -2,6 +2,7 @@ package uk.ac.susx.mlcl.erl.tac;
 
 import com.google.common.collect.ImmutableList;
 import uk.ac.susx.mlcl.erl.linker.Linker;
+import uk.ac.susx.mlcl.erl.linker.ParallelBatch;
 import uk.ac.susx.mlcl.erl.tac.kb.Entity;
 import uk.ac.susx.mlcl.erl.tac.kb.TacKnowledgeBase;
 import uk.ac.susx.mlcl.erl.tac.queries.Link;
@@ -9,29 +10,50 @@ import uk.ac.susx.mlcl.erl.tac.queries.Query;
 
 import javax.annotation.Nonnull;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 /**
- *
+ * Links each query to the knowledge base entity with exactly the same name, or to a new NIL cluster if there is none.
+ * <p/>
+ * Batches are split into chunks by a {@link ParallelBatch}, so the knowledge base lookups of large query sets can be
+ * run concurrently. NIL ids are assigned afterwards, in query order, so they are the same however the work was split.
  */
 public class ExactMatchLinker implements Linker<Query, Link> {
 
     private final TacKnowledgeBase kb;
-    private final Linker<Query, Link> backoff = new NilLinker();
+    private final Linker<Query, Link> backoff;
+    private final ParallelBatch parallelBatch;
 
-    public ExactMatchLinker(final TacKnowledgeBase kb) {
+    /**
+     * @param kb            knowledge base to look up query names in
+     * @param backoff       linker for queries with no exactly matching entity
+     * @param parallelBatch splits batch lookups into chunks
+     */
+    public ExactMatchLinker(final TacKnowledgeBase kb, final Linker<Query, Link> backoff,
+                            final ParallelBatch parallelBatch) {
         this.kb = kb;
+        this.backoff = checkNotNull(backoff, "backoff");
+        this.parallelBatch = checkNotNull(parallelBatch, "parallelBatch");
+    }
+
+    public ExactMatchLinker(final TacKnowledgeBase kb, final ParallelBatch parallelBatch) {
+        this(kb, new NilLinker(), parallelBatch);
+    }
+
+    public ExactMatchLinker(final TacKnowledgeBase kb) {
+        this(kb, ParallelBatch.sequential());
     }
 
     @Override
     public Link link(@Nonnull Query query) throws IOException {
         final Entity entity = kb.getEntityByName(query.getName());
         if (entity != null)
-            return new Link(query.getId(),
-                    entity.getId(),
-                    entity.getType(),
-                    false,
-                    Genre.forDocumentId(query.getDocId()));
+            return entityLink(query, entity);
         else
             return backoff.link(query);
     }
@@ -39,9 +61,38 @@ public class ExactMatchLinker implements Linker<Query, Link> {
     @Nonnull
     @Override
     public Iterable<Link> batchLink(@Nonnull Iterable<Query> queries) throws IOException, ExecutionException {
+        final List<Query> queryList = ImmutableList.copyOf(queries);
+        final List<Entity> entities = parallelBatch.map(queryList, new ParallelBatch.ChunkFunction<Query, Entity>() {
+            @Nonnull
+            @Override
+            public List<Entity> apply(@Nonnull List<Query> chunk) throws IOException {
+                final List<Entity> result = new ArrayList<Entity>(chunk.size());
+                for (Query query : chunk)
+                    result.add(kb.getEntityByName(query.getName()));
+                return result;
+            }
+        });
+
+        final List<Query> unmatched = new ArrayList<Query>();
+        for (int i = 0; i < queryList.size(); i++)
+            if (entities.get(i) == null)
+                unmatched.add(queryList.get(i));
+        final Iterator<Link> nilLinks = backoff.batchLink(unmatched).iterator();
+
         final ImmutableList.Builder<Link> links = ImmutableList.builder();
-        for(Query query : queries)
-            links.add(link(query));
+        for (int i = 0; i < queryList.size(); i++) {
+            final Entity entity = entities.get(i);
+            links.add(entity != null ? entityLink(queryList.get(i), entity) : nilLinks.next());
+        }
         return links.build();
     }
+
+    @Nonnull
+    private static Link entityLink(@Nonnull Query query, @Nonnull Entity entity) {
+        return new Link(query.getId(),
+                entity.getId(),
+                entity.getType(),
+                false,
+                Genre.forDocumentId(query.getDocId()));
+    }
 }
@@ -0,0 +1,240 @@
+package uk.ac.susx.mlcl.erl.tac;
+
+import com.google.common.collect.Maps;
+import uk.ac.susx.mlcl.erl.tac.kb.NameNormalizer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Groups the names of NIL mentions into clusters that are likely to refer to the same (unknown) entity, without
+ * comparing every pair of mentions.
+ * <p/>
+ * Mentions are first blocked by their normalized name (see {@link NameNormalizer}), so that trivial variants are
+ * always clustered together. Mentions with different names are then blocked using locality sensitive hashing: a
+ * MinHash signature is computed over the character trigrams of each normalized name, and the signature is split into
+ * bands. Mentions that share any band are candidates, and are merged if the estimated Jaccard similarity of their
+ * trigrams reaches the threshold. Each candidate is only compared with the first mention of its bucket, and clusters
+ * are merged with a union-find structure, so clustering takes time roughly linear in the number of mentions.
+ * <p/>
+ * Clusters are numbered in order of their first mention, so the result depends only on the input order.
+ *
+ * @author Hamish Morgan
+ */
+@Immutable
+public class NilClusterer {
+
+    public static final int DEFAULT_BANDS = 8;
+    public static final int DEFAULT_ROWS = 4;
+    public static final double DEFAULT_MIN_SIMILARITY = 0.7;
+
+    /**
+     * Fixed seed, so signatures (and hence clusters) are reproducible.
+     */
+    private static final long SEED = 0x5DEECE66DL;
+
+    private final int bands;
+    private final int rows;
+    private final double minSimilarity;
+    /**
+     * Seed of each MinHash function.
+     */
+    private final long[] seeds;
+
+    /**
+     * @param bands         number of LSH bands; more bands find more candidates
+     * @param rows          number of MinHash values in each band; more rows make candidates more similar
+     * @param minSimilarity minimum estimated Jaccard similarity of the trigrams of two names for them to be merged
+     */
+    public NilClusterer(int bands, int rows, double minSimilarity) {
+        checkArgument(bands > 0, "bands <= 0");
+        checkArgument(rows > 0, "rows <= 0");
+        checkArgument(minSimilarity >= 0 && minSimilarity <= 1, "minSimilarity out of range [0,1]");
+        this.bands = bands;
+        this.rows = rows;
+        this.minSimilarity = minSimilarity;
+        this.seeds = new long[bands * rows];
+        final Random random = new Random(SEED);
+        for (int i = 0; i < seeds.length; i++)
+            seeds[i] = random.nextLong();
+    }
+
+    public NilClusterer() {
+        this(DEFAULT_BANDS, DEFAULT_ROWS, DEFAULT_MIN_SIMILARITY);
+    }
+
+    /**
+     * Cluster the names.
+     *
+     * @param names mention names
+     * @return the cluster of each name, numbered from 0 in order of first occurrence
+     */
+    @Nonnull
+    public int[] cluster(@Nonnull List<? extends CharSequence> names) {
+        checkNotNull(names, "names");
+        final int n = names.size();
+        final UnionFind clusters = new UnionFind(n);
+
+        // Block by normalized name; every mention is merged with the first having the same key. The keys are kept in
+        // input order, because that decides which key is first in each band bucket below.
+        final String[] keys = new String[n];
+        final Map<String, Integer> firstByKey = Maps.newLinkedHashMap();
+        for (int i = 0; i < n; i++) {
+            keys[i] = NameNormalizer.normalize(names.get(i));
+            if (keys[i].isEmpty())
+                continue;
+            final Integer first = firstByKey.get(keys[i]);
+            if (first == null)
+                firstByKey.put(keys[i], i);
+            else
+                clusters.union(first, i);
+        }
+
+        // Block the distinct keys by MinHash bands, and verify candidates against the first key of each bucket.
+        final Map<BandKey, Integer> firstByBand = Maps.newHashMap();
+        final Map<Integer, int[]> signatures = Maps.newHashMap();
+        for (int i : firstByKey.values()) {
+            final int[] signature = signature(keys[i]);
+            signatures.put(i, signature);
+            for (int band = 0; band < bands; band++) {
+                final BandKey bandKey = new BandKey(band, signature, band * rows, rows);
+                final Integer first = firstByBand.get(bandKey);
+                if (first == null)
+                    firstByBand.put(bandKey, i);
+                else if (clusters.find(first) != clusters.find(i)
+                        && similarity(signatures.get(first), signature) >= minSimilarity)
+                    clusters.union(first, i);
+            }
+        }
+
+        // Number the clusters by first occurrence
+        final int[] assignments = new int[n];
+        final int[] numberByRoot = new int[n];
+        Arrays.fill(numberByRoot, -1);
+        int next = 0;
+        for (int i = 0; i < n; i++) {
+            final int root = clusters.find(i);
+            if (numberByRoot[root] < 0)
+                numberByRoot[root] = next++;
+            assignments[i] = numberByRoot[root];
+        }
+        return assignments;
+    }
+
+    /**
+     * Compute the MinHash signature of the character trigrams of the key, padded with a space at either end.
+     */
+    @Nonnull
+    int[] signature(@Nonnull String key) {
+        final String padded = ' ' + key + ' ';
+        final int[] signature = new int[seeds.length];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (int start = 0; start + 3 <= padded.length(); start++) {
+            final int shingle = padded.substring(start, start + 3).hashCode();
+            for (int h = 0; h < seeds.length; h++) {
+                final int value = mix(shingle ^ seeds[h]);
+                if (value < signature[h])
+                    signature[h] = value;
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * @return the fraction of signature positions that are equal, which estimates the Jaccard similarity
+     */
+    static double similarity(@Nonnull int[] a, @Nonnull int[] b) {
+        int equal = 0;
+        for (int i = 0; i < a.length; i++)
+            if (a[i] == b[i])
+                equal++;
+        return (double) equal / a.length;
+    }
+
+    /**
+     * 64 bit finalizer of MurmurHash3, truncated to 32 bits.
+     */
+    private static int mix(long x) {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        x *= 0xc4ceb9fe1a85ec53L;
+        x ^= x >>> 33;
+        return (int) x;
+    }
+
+    /**
+     * Hash key of one band of a signature.
+     */
+    private static final class BandKey {
+        private final int band;
+        private final int[] values;
+
+        BandKey(int band, int[] signature, int from, int length) {
+            this.band = band;
+            this.values = Arrays.copyOfRange(signature, from, from + length);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof BandKey)) return false;
+            final BandKey that = (BandKey) o;
+            return band == that.band && Arrays.equals(values, that.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * band + Arrays.hashCode(values);
+        }
+    }
+
+    /**
+     * Disjoint set forest over the integers <tt>[0, n)</tt>, with union by rank and path compression.
+     */
+    static final class UnionFind {
+        private final int[] parent;
+        private final byte[] rank;
+
+        UnionFind(int n) {
+            parent = new int[n];
+            rank = new byte[n];
+            for (int i = 0; i < n; i++)
+                parent[i] = i;
+        }
+
+        int find(int x) {
+            int root = x;
+            while (parent[root] != root)
+                root = parent[root];
+            while (parent[x] != root) {
+                final int next = parent[x];
+                parent[x] = root;
+                x = next;
+            }
+            return root;
+        }
+
+        void union(int x, int y) {
+            final int rx = find(x);
+            final int ry = find(y);
+            if (rx == ry)
+                return;
+            if (rank[rx] < rank[ry]) {
+                parent[rx] = ry;
+            } else if (rank[rx] > rank[ry]) {
+                parent[ry] = rx;
+            } else {
+                parent[ry] = rx;
+                rank[rx]++;
+            }
+        }
+    }
+}
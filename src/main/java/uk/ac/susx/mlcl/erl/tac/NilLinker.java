@@ -7,35 +7,76 @@ import uk.ac.susx.mlcl.erl.tac.queries.Link;
 import uk.ac.susx.mlcl.erl.tac.queries.Query;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Created with IntelliJ IDEA.
- * User: hiam20
- * Date: 01/08/2013
- * Time: 16:52
- * To change this template use File | Settings | File Templates.
+ * Baseline linker that assumes no query is in the knowledge base. Every query is linked to a NIL cluster. A batch
+ * reserves a contiguous block of NIL ids, assigned in query order, so the ids of a batch do not depend on other
+ * batches being linked concurrently.
+ * <p/>
+ * By default each query gets a new NIL cluster. If a {@link NilClusterer} is given, the queries of a batch with
+ * similar names share a cluster; clusters are numbered in order of their first query, so the ids written by
+ * {@link uk.ac.susx.mlcl.erl.tac.io.Tac2012LinkIO} are stable for a given input.
  */
 public class NilLinker implements Linker<Query, Link> {
 
     private final AtomicInteger nextNilId = new AtomicInteger(1);
+    @Nullable
+    private final NilClusterer clusterer;
+
+    /**
+     * @param clusterer clusters the queries of each batch, or null to give every query its own cluster
+     */
+    public NilLinker(@Nullable NilClusterer clusterer) {
+        this.clusterer = clusterer;
+    }
+
+    public NilLinker() {
+        this(null);
+    }
 
     @Nonnull
     @Override
     public Link link(@Nonnull Query query) {
-        final String linkId = String.format("NIL%d", nextNilId.getAndIncrement());
-        return new Link(query.getId(), linkId, EntityType.UKN, false,
-                Genre.forDocumentId(query.getDocId()));
+        return nilLink(query, nextNilId.getAndIncrement());
     }
 
     @Nonnull
     @Override
     public Iterable<Link> batchLink(@Nonnull Iterable<Query> queries) throws IOException, ExecutionException {
+        final List<Query> queryList = ImmutableList.copyOf(queries);
+        if (clusterer == null) {
+            final int firstNilId = nextNilId.getAndAdd(queryList.size());
+            final ImmutableList.Builder<Link> links = ImmutableList.builder();
+            for (int i = 0; i < queryList.size(); i++)
+                links.add(nilLink(queryList.get(i), firstNilId + i));
+            return links.build();
+        }
+
+        final List<String> names = new ArrayList<String>(queryList.size());
+        for (Query query : queryList)
+            names.add(query.getName());
+        final int[] clusters = clusterer.cluster(names);
+        int clusterCount = 0;
+        for (int cluster : clusters)
+            clusterCount = Math.max(clusterCount, cluster + 1);
+
+        final int firstNilId = nextNilId.getAndAdd(clusterCount);
         final ImmutableList.Builder<Link> links = ImmutableList.builder();
-        for (Query query : queries)
-            links.add(link(query));
+        for (int i = 0; i < queryList.size(); i++)
+            links.add(nilLink(queryList.get(i), firstNilId + clusters[i]));
         return links.build();
     }
+
+    @Nonnull
+    private static Link nilLink(@Nonnull Query query, int nilId) {
+        final String linkId = String.format("NIL%d", nilId);
+        return new Link(query.getId(), linkId, EntityType.UKN, false,
+                Genre.forDocumentId(query.getDocId()));
+    }
 }
@@ -0,0 +1,51 @@
+package uk.ac.susx.mlcl.erl.tac.cmd;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import uk.ac.susx.mlcl.erl.tac.kb.EntityPriors;
+import uk.ac.susx.mlcl.erl.tac.kb.TacKnowledgeBase;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A tool for measuring the prior of every entity in a TAC knowledge base (in MapDB format), and storing them in a
+ * priors file for use by the prior ranker.
+ *
+ * @author Hamish Morgan
+ */
+public class BuildPriors implements Runnable {
+
+    @Parameter(names = {"-i"}, required = true, description = "Input MapDB file")
+    File srcDatabaseFile;
+    @Parameter(names = {"-o"}, required = true, description = "Output priors file")
+    File dstPriorsFile;
+    @Parameter(names = {"-m"}, description = "Measure: IN_LINKS or TEXT_LENGTH")
+    EntityPriors.Measure measure = EntityPriors.Measure.IN_LINKS;
+
+    public static void main(String[] args) {
+
+        BuildPriors instance = new BuildPriors();
+
+        final JCommander jc = new JCommander();
+        jc.setProgramName("nel");
+        jc.addObject(instance);
+
+        jc.parse(args);
+
+        instance.run();
+
+    }
+
+    @Override
+    public void run() {
+        final TacKnowledgeBase kb = TacKnowledgeBase.open(srcDatabaseFile);
+        try {
+            EntityPriors.build(kb, measure).writeTo(dstPriorsFile);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            kb.close();
+        }
+    }
+}
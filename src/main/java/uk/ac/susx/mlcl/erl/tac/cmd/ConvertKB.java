@@ -21,6 +21,14 @@ public class ConvertKB implements Runnable {
     File srcXmlFiles;
     @Parameter(names={"-o"}, required = true, description = "Output MapDB file")
     File dstDatabaseFile;
+    @Parameter(names = {"-t"}, description = "Number of input files to parse concurrently")
+    int threads = 1;
+    @Parameter(names = {"-b"}, description = "Bulk load into sorted B-trees, and compact the database when done")
+    boolean bulk = false;
+    @Parameter(names = {"-c"},
+            description = "Number of insertions between commits when bulk loading the indices; "
+                    + "0 commits once they are all written")
+    int commitInterval = 0;
 
 
 
@@ -43,7 +51,9 @@ public class ConvertKB implements Runnable {
         try {
 
 
-            TacKnowledgeBase kb = Tac2009KnowledgeBaseIO.create(dstDatabaseFile, srcXmlFiles);
+            TacKnowledgeBase kb = bulk
+                    ? Tac2009KnowledgeBaseIO.bulkLoad(dstDatabaseFile, srcXmlFiles, threads, commitInterval)
+                    : Tac2009KnowledgeBaseIO.create(dstDatabaseFile, srcXmlFiles, threads);
             kb.close();
         } catch (ParserConfigurationException e) {
             throw new RuntimeException(e);
@@ -2,9 +2,10 @@ package uk.ac.susx.mlcl.erl.tac.cmd;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
-import com.beust.jcommander.internal.Lists;
+import com.google.common.collect.ImmutableList;
 import nu.xom.ParsingException;
 import uk.ac.susx.mlcl.erl.linker.Linker;
+import uk.ac.susx.mlcl.erl.tac.NilClusterer;
 import uk.ac.susx.mlcl.erl.tac.NilLinker;
 import uk.ac.susx.mlcl.erl.tac.io.LinkIO;
 import uk.ac.susx.mlcl.erl.tac.io.QueryIO;
@@ -15,6 +16,7 @@ import uk.ac.susx.mlcl.erl.tac.queries.Query;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Created with IntelliJ IDEA.
@@ -25,10 +27,6 @@ import java.util.List;
  */
 public class LinkQueries implements Runnable {
 
-    /**
-     *
-     */
-    private final Linker<Query,Link> linker = new NilLinker();
     /**
      *
      */
@@ -39,10 +37,15 @@ public class LinkQueries implements Runnable {
      */
     @Parameter(names = {"-o"}, required = true, description = "Output links file")
     File dstLinks;
+    /**
+     *
+     */
+    @Parameter(names = {"-c"}, description = "Cluster NIL queries with similar names")
+    boolean clusterNils = false;
 
     public static void main(String[] args) {
 
-        ConvertKB instance = new ConvertKB();
+        LinkQueries instance = new LinkQueries();
 
         final JCommander jc = new JCommander();
         jc.setProgramName("nel");
@@ -66,15 +69,13 @@ public class LinkQueries implements Runnable {
         }
     }
 
-    protected void runWithExceptions() throws IOException, ParsingException {
+    protected void runWithExceptions() throws IOException, ParsingException, ExecutionException {
 
+        final Linker<Query, Link> linker = new NilLinker(clusterNils ? new NilClusterer() : null);
         final QueryIO qio = QueryIO.detectFormat(srcQueries);
         final LinkIO lio = new Tac2012LinkIO();
 
-        List<Link> links = Lists.newArrayList();
-        for (Query query : qio.readAll(srcQueries)) {
-            links.add(linker.link(query));
-        }
+        List<Link> links = ImmutableList.copyOf(linker.batchLink(qio.readAll(srcQueries)));
         lio.writeAll(dstLinks, links);
 
     }
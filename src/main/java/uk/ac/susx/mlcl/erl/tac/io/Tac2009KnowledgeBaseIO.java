@@ -1,10 +1,13 @@
 package uk.ac.susx.mlcl.erl.tac.io;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Collections2;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.lang.time.StopWatch;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.mapdb.BTreeMap;
 import org.mapdb.DB;
 import org.mapdb.DBMaker;
 import org.mapdb.HTreeMap;
@@ -14,6 +17,7 @@ import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 import org.xml.sax.helpers.DefaultHandler;
 import uk.ac.susx.mlcl.lib.C14nCache;
+import uk.ac.susx.mlcl.lib.StringDictionary;
 import uk.ac.susx.mlcl.erl.tac.kb.*;
 
 import javax.annotation.Nonnull;
@@ -24,12 +28,30 @@ import javax.xml.parsers.SAXParserFactory;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.Stack;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.text.MessageFormat.format;
 
@@ -45,6 +67,28 @@ public class Tac2009KnowledgeBaseIO {
 
     private static final Log LOG = LogFactory.getLog(Tac2009KnowledgeBaseIO.class);
 
+    /**
+     * Number of entities written between database commits.
+     */
+    public static final int DEFAULT_COMMIT_INTERVAL = 1000;
+
+    /**
+     * Maximum number of parsed entities waiting to be written, in the parallel import mode.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+
+    /**
+     * Maximum number of entities the writer takes from the queue at once, in the parallel import mode.
+     */
+    private static final int WRITE_BATCH_SIZE = 256;
+
+    private static final int PROGRESS_INTERVAL = 10000;
+
+    /**
+     * Name of the map holding the dictionary used to encode entities; see {@link EntitySerializer}.
+     */
+    public static final String ENTITY_DICTIONARY_NAME = "entity-dictionary";
+
     /**
      * Create a new knowledge base from the given raw source XML file(s).
      * <p/>
@@ -60,92 +104,503 @@ public class Tac2009KnowledgeBaseIO {
      */
     @Nonnull
     public static TacKnowledgeBase create(File dbFile, @Nonnull File dataPath) throws ParserConfigurationException, SAXException, IOException {
+        return create(dbFile, dataPath, 1);
+    }
+
+    /**
+     * Create a new knowledge base from the given raw source XML file(s), parsing up to <tt>threads</tt> files
+     * concurrently.
+     * <p/>
+     * When more than one thread is requested, and the data path is a directory holding more than one part file, each
+     * file is parsed by its own SAX parser on a worker pool. Parsed entities are passed through a bounded queue to a
+     * single writer (the calling thread), which drains them in batches and inserts them into the database, so MapDB
+     * is only ever accessed from one thread. Entities are written in no particular order, so if two entities share
+     * a name, which one the name index resolves to is not defined.
+     *
+     * @param dbFile   database file to create
+     * @param dataPath XML file, or directory of <tt>kb_part-*.xml</tt> files
+     * @param threads  maximum number of files to parse concurrently
+     * @return the new knowledge base
+     * @throws ParserConfigurationException
+     * @throws SAXException
+     * @throws IOException
+     */
+    @Nonnull
+    public static TacKnowledgeBase create(File dbFile, @Nonnull File dataPath, int threads)
+            throws ParserConfigurationException, SAXException, IOException {
+        return load(dbFile, dataPath, threads, false, DEFAULT_COMMIT_INTERVAL);
+    }
+
+    /**
+     * Create a new knowledge base from the given raw source XML file(s), using a load path tuned for building the
+     * whole database in one go.
+     * <p/>
+     * The entity, name and alias indices are stored in B-trees rather than hash maps, and keys are inserted in
+     * ascending order. MapDB 0.9 has no way to build a B-tree from sorted input, so nodes are still split as they
+     * fill, but every insertion goes to the last leaf, and nodes to its left are not written again. Entities are
+     * written as they are parsed; the part files are in id order, so this holds when parsing with a single thread.
+     * The name and alias indices are accumulated in memory in sorted maps, and written out once parsing has finished.
+     * <p/>
+     * While the entity, name and alias indices are written, a commit is made every <tt>commitInterval</tt>
+     * insertions, or only once they are all written if it is zero. Building the alias n-gram index and the entity
+     * term vectors afterwards makes further commits of its own, whatever the interval (see {@link NGramIndex} and
+     * {@link TermVectors}). The database is committed and compacted once more before it is closed.
+     *
+     * @param dbFile         database file to create
+     * @param dataPath       XML file, or directory of <tt>kb_part-*.xml</tt> files
+     * @param threads        maximum number of files to parse concurrently
+     * @param commitInterval number of insertions between commits while the entity, name and alias indices are
+     *                       written, or zero to commit them once they are all written
+     * @return the new knowledge base
+     * @throws ParserConfigurationException
+     * @throws SAXException
+     * @throws IOException
+     */
+    @Nonnull
+    public static TacKnowledgeBase bulkLoad(File dbFile, @Nonnull File dataPath, int threads, int commitInterval)
+            throws ParserConfigurationException, SAXException, IOException {
+        return load(dbFile, dataPath, threads, true, commitInterval);
+    }
+
+    @Nonnull
+    private static TacKnowledgeBase load(File dbFile, @Nonnull File dataPath, int threads, boolean bulk,
+                                         int commitInterval)
+            throws ParserConfigurationException, SAXException, IOException {
+        Preconditions.checkArgument(threads > 0, "threads <= 0");
+        Preconditions.checkArgument(commitInterval >= 0, "commitInterval < 0");
 
         LOG.info(format("Creating knowledge-base DB, from XML resource {0}, to {1}", dataPath, dbFile));
+
+        final File[] parts = listParts(dataPath);
+
         LOG.debug("Initializing database.");
         final DB db = openDB(dbFile);
-        final HTreeMap<String, Entity> idIndex = db.createHashMap("entity-id-index").keepCounter(true).make();
-        final HTreeMap<String, String> nameIndex = db.createHashMap("entity-name-index").keepCounter(true).make();
-        final SAXParserFactory saxFactory = SAXParserFactory.newInstance();
-        final SAXParser saxParser = saxFactory.newSAXParser();
-        final DefaultHandler handler = new Tac2009SaxHandler(new TacEntryHandler() {
-            private int count = 0;
-            private final StopWatch tic = new StopWatch();
+        final EntityWriter writer = bulk
+                ? new BulkEntityWriter(db, commitInterval)
+                : new HashEntityWriter(db, commitInterval);
 
-            {
-                tic.start();
-            }
+        if (threads == 1 || parts.length <= 1) {
+            importSequential(parts, writer);
+        } else {
+            importParallel(parts, writer, Math.min(threads, parts.length));
+        }
+        writer.finish();
 
-            @Override
-            public void entry(@Nonnull Entity entry) {
-                Preconditions.checkNotNull(entry, "entry");
-
-                final String id = entry.getId();
-                final String name = entry.getName();
-                Preconditions.checkNotNull(id, "id");
-                Preconditions.checkNotNull(name, "name");
-
-//                assert idIndex.size() == nameIndex.size();
-//                assert idIndex.isEmpty() == nameIndex.isEmpty();
-//
-//                assert !idIndex.containsKey(id);
-//                assert !nameIndex.containsKey(name);
-
-                final Entity idiPutResult = idIndex.put(id, entry);
-                final String niPutResult = nameIndex.put(name, id);
-
-//                assert idiPutResult == null;
-//                assert niPutResult == null;
-//
-//                assert idIndex.size() == nameIndex.size();
-//                assert idIndex.isEmpty() == nameIndex.isEmpty();
-
-                if (count % 1000 == 0) {
-                    db.commit();
-                }
-                if (count % 10000 == 0) {
-                    LOG.info(String.format("Processed %d entities. (%f e/s)%n", count,
-                            count / ((tic.getTime() / 1000.0))));
-                }
-                count++;
-            }
-        });
+        LOG.debug("Committing changes.");
+        db.commit();
+
+        LOG.info("Building alias n-gram index.");
+        NGramIndex.create(db, writer.aliases());
+
+        LOG.info("Building entity term vectors.");
+        TermVectors.create(db, writer.entities());
+
+        if (bulk) {
+            LOG.debug("Committing and compacting database.");
+            db.commit();
+            db.compact();
+        }
+
+        LOG.debug("Closing database.");
+        db.close();
+
+        LOG.debug("All done.");
 
+        return TacKnowledgeBase.open(dbFile);
+    }
 
+    @Nonnull
+    private static File[] listParts(@Nonnull File dataPath) throws IOException {
         if (!dataPath.exists()) {
             throw new IOException("Data path does not exist: " + dataPath);
         } else if (!dataPath.canRead()) {
             throw new IOException("Data path is not readable: " + dataPath);
         }
 
-        final File[] parts;
         if (dataPath.isDirectory()) {
             LOG.info("Parsing all files in directory: " + dataPath);
-            parts = dataPath.listFiles(new FilenameFilter() {
+            final File[] parts = dataPath.listFiles(new FilenameFilter() {
                 @Override
                 public boolean accept(File dir, @Nonnull String name) {
                     return name.matches("kb_part-\\d+\\.xml");
                 }
             });
+            if (parts == null)
+                throw new IOException("Failed to list data path: " + dataPath);
+            Arrays.sort(parts);
+            return parts;
         } else {
             LOG.info("Parsing single file: " + dataPath);
-            parts = new File[]{dataPath};
+            return new File[]{dataPath};
         }
+    }
+
+    private static void importSequential(@Nonnull File[] parts, @Nonnull final EntityWriter writer)
+            throws ParserConfigurationException, SAXException, IOException {
+        final SAXParserFactory saxFactory = SAXParserFactory.newInstance();
+        final SAXParser saxParser = saxFactory.newSAXParser();
+        final DefaultHandler handler = new Tac2009SaxHandler(new TacEntryHandler() {
+            @Override
+            public void entry(@Nonnull Entity entry) {
+                writer.write(entry);
+            }
+        });
 
         for (File part : parts) {
             LOG.info("Processing file: " + part);
             saxParser.parse(part, handler);
         }
+    }
 
-        LOG.debug("Committing changes.");
-        db.commit();
+    private static void importParallel(@Nonnull File[] parts, @Nonnull EntityWriter writer, int threads)
+            throws ParserConfigurationException, SAXException, IOException {
+        LOG.info(format("Parsing {0} files with {1} workers.", parts.length, threads));
+
+        final BlockingQueue<Entity> queue = new ArrayBlockingQueue<Entity>(DEFAULT_QUEUE_CAPACITY);
+        final AtomicInteger remaining = new AtomicInteger(parts.length);
+        final ExecutorService workers = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("kb-import-%d").build());
+        final List<Future<Long>> results = new ArrayList<Future<Long>>(parts.length);
+        try {
+            for (File part : parts)
+                results.add(workers.submit(new ParseTask(part, queue, remaining)));
+            workers.shutdown();
+
+            final List<Entity> batch = new ArrayList<Entity>(WRITE_BATCH_SIZE);
+            // Workers decrement the count only after their last put, so once it reaches zero the queue holds
+            // everything that is left to write.
+            while (remaining.get() > 0 || !queue.isEmpty()) {
+                final Entity head = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (head == null) {
+                    // Nothing to write, so take the opportunity to fail fast if a worker has died.
+                    for (Future<Long> result : results)
+                        if (result.isDone())
+                            getResult(result);
+                    continue;
+                }
+                batch.add(head);
+                queue.drainTo(batch, WRITE_BATCH_SIZE - 1);
+                for (Entity entity : batch)
+                    writer.write(entity);
+                batch.clear();
+            }
+
+            for (Future<Long> result : results)
+                getResult(result);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while importing knowledge base.");
+        } finally {
+            // Releases any workers blocked on the queue if the writer failed
+            workers.shutdownNow();
+        }
+    }
 
-        LOG.debug("Closing database.");
-        db.close();
+    /**
+     * Wait for the result of a worker, and rethrow the exception it failed with (if any.)
+     */
+    private static long getResult(@Nonnull Future<Long> result)
+            throws InterruptedException, ParserConfigurationException, SAXException, IOException {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof SAXException)
+                throw (SAXException) cause;
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof ParserConfigurationException)
+                throw (ParserConfigurationException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new RuntimeException(cause);
+        }
+    }
 
-        LOG.debug("All done.");
+    /**
+     * Inserts entities into the database indices, committing periodically. Not thread safe: all writes must come from
+     * the same thread.
+     */
+    private static abstract class EntityWriter {
 
-        return TacKnowledgeBase.open(dbFile);
+        final DB db;
+        final EntitySerializer serializer;
+        private final int commitInterval;
+        private final StopWatch tic = new StopWatch();
+        private int count = 0;
+        private int insertions = 0;
+
+        /**
+         * @param commitInterval number of insertions between commits, or zero to never commit
+         */
+        EntityWriter(@Nonnull DB db, int commitInterval) {
+            this.db = db;
+            this.commitInterval = commitInterval;
+            final Map<String, Integer> dictionary = db.createHashMap(ENTITY_DICTIONARY_NAME).make();
+            this.serializer = new EntitySerializer(new StringDictionary(dictionary), true);
+            tic.start();
+        }
+
+        @Nonnull
+        byte[] encode(@Nonnull Entity entry) {
+            try {
+                return serializer.toBytes(entry);
+            } catch (IOException e) {
+                // Only writing to memory
+                throw new AssertionError(e);
+            }
+        }
+
+        void write(@Nonnull Entity entry) {
+            Preconditions.checkNotNull(entry, "entry");
+
+            final String id = entry.getId();
+            final String name = entry.getName();
+            Preconditions.checkNotNull(id, "id");
+            Preconditions.checkNotNull(name, "name");
+
+            put(entry, id, name);
+
+            inserted();
+            if (count % PROGRESS_INTERVAL == 0) {
+                LOG.info(String.format("Processed %d entities. (%f e/s)%n", count,
+                        count / ((tic.getTime() / 1000.0))));
+            }
+            count++;
+        }
+
+        /**
+         * Record an insertion into the database, committing if the interval has been reached.
+         */
+        void inserted() {
+            if (commitInterval > 0 && insertions++ % commitInterval == 0) {
+                db.commit();
+            }
+        }
+
+        abstract void put(@Nonnull Entity entry, @Nonnull String id, @Nonnull String name);
+
+        /**
+         * Write out anything still held back, once every entity has been passed to {@link #write(Entity)}.
+         */
+        void finish() {
+        }
+
+        @Nonnull
+        abstract Collection<String> aliases();
+
+        @Nonnull
+        abstract Collection<Entity> entities();
+    }
+
+    /**
+     * Writes every index directly into a hash map as entities arrive.
+     */
+    private static final class HashEntityWriter extends EntityWriter {
+
+        private final HTreeMap<String, byte[]> idIndex;
+        private final HTreeMap<String, String> nameIndex;
+        private final HTreeMap<String, String[]> aliasIndex;
+        private final HTreeMap<String, String[]> normalizedAliasIndex;
+
+        HashEntityWriter(@Nonnull DB db, int commitInterval) {
+            super(db, commitInterval);
+            idIndex = db.createHashMap("entity-id-index").keepCounter(true).make();
+            nameIndex = db.createHashMap("entity-name-index").keepCounter(true).make();
+            aliasIndex = db.createHashMap("entity-alias-index").keepCounter(true).make();
+            normalizedAliasIndex = db.createHashMap("entity-normalized-alias-index").keepCounter(true).make();
+        }
+
+        @Override
+        void put(@Nonnull Entity entry, @Nonnull String id, @Nonnull String name) {
+            idIndex.put(id, encode(entry));
+            nameIndex.put(name, id);
+
+            for (final String alias : EntityAliases.aliasesOf(entry)) {
+                addId(aliasIndex, alias, id);
+                final String key = NameNormalizer.normalize(alias);
+                if (!key.isEmpty())
+                    addId(normalizedAliasIndex, key, id);
+            }
+        }
+
+        @Nonnull
+        @Override
+        Collection<String> aliases() {
+            return aliasIndex.keySet();
+        }
+
+        @Nonnull
+        @Override
+        Collection<Entity> entities() {
+            return Collections2.transform(idIndex.values(), serializer.decoder());
+        }
+    }
+
+    /**
+     * Writes entities straight into a B-tree, and holds the (much smaller) name and alias indices in memory until
+     * {@link #finish()}, when they are written into B-trees in key order.
+     */
+    private static final class BulkEntityWriter extends EntityWriter {
+
+        private final BTreeMap<String, byte[]> idIndex;
+        private final SortedMap<String, String> names = new TreeMap<String, String>();
+        private final SortedMap<String, String[]> aliases = new TreeMap<String, String[]>();
+        private final SortedMap<String, String[]> normalizedAliases = new TreeMap<String, String[]>();
+        @Nullable
+        private BTreeMap<String, String[]> aliasIndex = null;
+        @Nullable
+        private String lastId = null;
+        private long outOfOrder = 0;
+
+        BulkEntityWriter(@Nonnull DB db, int commitInterval) {
+            super(db, commitInterval);
+            // Entities are large, so keep them out of the nodes; otherwise every node split copies them.
+            idIndex = db.createTreeMap("entity-id-index").valuesStoredOutsideNodes(true).keepCounter(true).make();
+        }
+
+        @Override
+        void put(@Nonnull Entity entry, @Nonnull String id, @Nonnull String name) {
+            if (lastId != null && id.compareTo(lastId) < 0)
+                ++outOfOrder;
+            lastId = id;
+            idIndex.put(id, encode(entry));
+            names.put(name, id);
+
+            for (final String alias : EntityAliases.aliasesOf(entry)) {
+                addId(aliases, alias, id);
+                final String key = NameNormalizer.normalize(alias);
+                if (!key.isEmpty())
+                    addId(normalizedAliases, key, id);
+            }
+        }
+
+        @Override
+        void finish() {
+            if (outOfOrder > 0)
+                LOG.info(format("{0} entities were not in id order; parse with one thread for sequential insertion.",
+                        outOfOrder));
+            LOG.info(format("Writing {0} names, {1} aliases and {2} normalized aliases.",
+                    names.size(), aliases.size(), normalizedAliases.size()));
+            writeSorted("entity-name-index", names);
+            aliasIndex = writeSorted("entity-alias-index", aliases);
+            writeSorted("entity-normalized-alias-index", normalizedAliases);
+        }
+
+        /**
+         * Write the sorted map into a new B-tree, emptying it as it goes so the memory can be reclaimed.
+         */
+        @Nonnull
+        private <V> BTreeMap<String, V> writeSorted(@Nonnull String name, @Nonnull SortedMap<String, V> entries) {
+            final BTreeMap<String, V> index = db.createTreeMap(name).keepCounter(true).make();
+            final Iterator<Map.Entry<String, V>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                final Map.Entry<String, V> entry = it.next();
+                index.put(entry.getKey(), entry.getValue());
+                it.remove();
+                inserted();
+            }
+            return index;
+        }
+
+        @Nonnull
+        @Override
+        Collection<String> aliases() {
+            Preconditions.checkState(aliasIndex != null, "finish() has not been called");
+            return aliasIndex.keySet();
+        }
+
+        @Nonnull
+        @Override
+        Collection<Entity> entities() {
+            return Collections2.transform(idIndex.values(), serializer.decoder());
+        }
+    }
+
+    /**
+     * Parses a single part file on a worker thread, passing each entity to the writer queue. Returns the number of
+     * entities parsed.
+     */
+    private static final class ParseTask implements Callable<Long> {
+
+        private final File part;
+        private final BlockingQueue<Entity> queue;
+        private final AtomicInteger remaining;
+
+        ParseTask(@Nonnull File part, @Nonnull BlockingQueue<Entity> queue, @Nonnull AtomicInteger remaining) {
+            this.part = part;
+            this.queue = queue;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public Long call() throws ParserConfigurationException, SAXException, IOException {
+            try {
+                final String worker = Thread.currentThread().getName();
+                final SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
+                final QueueingEntryHandler handler = new QueueingEntryHandler(queue, worker);
+
+                LOG.info(format("{0} processing file: {1}", worker, part));
+                saxParser.parse(part, new Tac2009SaxHandler(handler));
+                LOG.info(String.format("%s finished file %s: %d entities. (%f e/s)", worker, part,
+                        handler.count, handler.rate()));
+                return handler.count;
+            } finally {
+                remaining.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Entry handler for parallel import workers, which puts entities on the writer queue and reports the rate at
+     * which the worker is parsing them.
+     */
+    private static final class QueueingEntryHandler implements TacEntryHandler {
+
+        private final BlockingQueue<Entity> queue;
+        private final String worker;
+        private final StopWatch tic = new StopWatch();
+        private long count = 0;
+
+        QueueingEntryHandler(@Nonnull BlockingQueue<Entity> queue, @Nonnull String worker) {
+            this.queue = queue;
+            this.worker = worker;
+            tic.start();
+        }
+
+        double rate() {
+            return count / (tic.getTime() / 1000.0);
+        }
+
+        @Override
+        public void entry(@Nonnull Entity entry) {
+            try {
+                queue.put(entry);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException(worker + " interrupted while queueing entities.");
+            }
+            count++;
+            if (count % PROGRESS_INTERVAL == 0) {
+                LOG.info(String.format("%s parsed %d entities. (%f e/s)", worker, count, rate()));
+            }
+        }
+    }
+
+    /**
+     * Add the id to the set of id's stored under the given key, unless it's already present.
+     */
+    private static void addId(@Nonnull Map<String, String[]> index, @Nonnull String key, @Nonnull String id) {
+        final String[] ids = index.get(key);
+        if (ids == null) {
+            index.put(key, new String[]{id});
+        } else if (!Arrays.asList(ids).contains(id)) {
+            final String[] newIds = Arrays.copyOf(ids, ids.length + 1);
+            newIds[ids.length] = id;
+            index.put(key, newIds);
+        }
     }
 
     public static DB openDB(@Nonnull URL url) throws URISyntaxException {
@@ -201,6 +656,16 @@ public class Tac2009KnowledgeBaseIO {
             states.push(rootState);
         }
 
+        /**
+         * Canonicalize the given string. The cache is shared by all handlers, which may be running on different
+         * threads during a parallel import, so access to it is synchronized.
+         */
+        private static String intern(@Nonnull String value) {
+            synchronized (INTERNER) {
+                return INTERNER.cached(value);
+            }
+        }
+
         private static void checkAttributes(@Nonnull Attributes attributes, @Nonnull Set<String> required,
                                             @Nonnull Set<String> optional) throws SAXException {
             if (attributes.getLength() == 0 && required.isEmpty() && optional.isEmpty()) {
@@ -351,7 +816,7 @@ public class Tac2009KnowledgeBaseIO {
                 if (qName.equalsIgnoreCase("facts")) {
                     final String factsClass = attributes.getValue("class");
                     if (factsClass != null) {
-                        entityBuilder.setFactsClass(INTERNER.cached(factsClass));
+                        entityBuilder.setFactsClass(intern(factsClass));
                     }
                     states.push(new FactsHandler(entityBuilder));
 
@@ -482,7 +947,7 @@ public class Tac2009KnowledgeBaseIO {
             @Override
             public void endElement(String uri, String localName, @Nonnull String qName) throws SAXException {
                 checkQname(qName, "wiki_text");
-                entityBuilder.setWikiText(INTERNER.cached(text.toString()));
+                entityBuilder.setWikiText(intern(text.toString()));
                 text = null;
                 states.pop();
             }
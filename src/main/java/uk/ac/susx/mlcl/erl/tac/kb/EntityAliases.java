@@ -0,0 +1,102 @@
+package uk.ac.susx.mlcl.erl.tac.kb;
+
+import com.google.common.collect.ImmutableSet;
+
+import javax.annotation.Nonnull;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Static utility class for deriving the alternative names (aliases) under which an {@link Entity} may be mentioned in
+ * text. The aliases are taken from the entity name, the Wikipedia title, and a small number of infobox facts which are
+ * known to hold names.
+ * <p/>
+ * Aliases are produced at import time, so they can be written into the knowledge base alias index rather than being
+ * re-derived for every query.
+ *
+ * @author Hamish Morgan
+ */
+public final class EntityAliases {
+
+    /**
+     * Infobox fact names whose value is expected to be another name for the entity.
+     */
+    private static final Set<String> NAME_FACTS = ImmutableSet.of(
+            "name", "official_name", "full_name", "birth_name", "native_name",
+            "common_name", "conventional_long_name", "conventional_short_name",
+            "nickname", "alias", "aliases", "other_names");
+
+    /**
+     * Fact values longer than this are almost certainly not names, but some mark-up that has leaked into the infobox.
+     */
+    private static final int MAX_ALIAS_LENGTH = 100;
+
+    /**
+     * Matches a trailing disambiguation suffix such as "Mike Quigley (footballer)".
+     */
+    private static final Pattern PARENTHETICAL_SUFFIX = Pattern.compile("\\s*\\([^()]*\\)\\s*$");
+
+    /**
+     * Matches a trailing comma qualifier such as "Parker, Florida".
+     */
+    private static final Pattern COMMA_SUFFIX = Pattern.compile("\\s*,[^,]*$");
+
+    /**
+     * Static utility class should not be instantiated.
+     */
+    private EntityAliases() {
+    }
+
+    /**
+     * Produce the set of all aliases for the given entity. The set always contains the entity name.
+     *
+     * @param entity entity to find aliases for
+     * @return set of aliases (never empty)
+     */
+    @Nonnull
+    public static Set<String> aliasesOf(@Nonnull final Entity entity) {
+        checkNotNull(entity, "entity");
+
+        final ImmutableSet.Builder<String> aliases = ImmutableSet.builder();
+        aliases.add(entity.getName());
+        addNameVariants(aliases, entity.getName());
+
+        if (entity.getWikiTitle().isPresent())
+            addNameVariants(aliases, entity.getWikiTitle().get().replace('_', ' '));
+
+        for (final Fact fact : entity.getFacts()) {
+            if (!NAME_FACTS.contains(fact.getName().toLowerCase()))
+                continue;
+            final StringBuilder value = new StringBuilder();
+            for (final CharSequence link : fact.getLinks())
+                value.append(link);
+            addNameVariants(aliases, value.toString());
+        }
+
+        return aliases.build();
+    }
+
+    private static void addNameVariants(@Nonnull final ImmutableSet.Builder<String> aliases,
+                                        @Nonnull final String name) {
+        final String trimmed = name.trim();
+        if (!isPlausibleAlias(trimmed))
+            return;
+        aliases.add(trimmed);
+
+        final String withoutParenthetical = PARENTHETICAL_SUFFIX.matcher(trimmed).replaceFirst("");
+        if (isPlausibleAlias(withoutParenthetical))
+            aliases.add(withoutParenthetical);
+
+        final String withoutQualifier = COMMA_SUFFIX.matcher(withoutParenthetical).replaceFirst("");
+        if (isPlausibleAlias(withoutQualifier))
+            aliases.add(withoutQualifier);
+    }
+
+    private static boolean isPlausibleAlias(@Nonnull final String alias) {
+        return !alias.isEmpty()
+                && alias.length() <= MAX_ALIAS_LENGTH
+                && alias.indexOf('\n') == -1;
+    }
+}
@@ -0,0 +1,220 @@
+package uk.ac.susx.mlcl.erl.tac.kb;
+
+import com.google.common.collect.Maps;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.text.MessageFormat.format;
+
+/**
+ * A table of prior probabilities (or rather, plausibility scores) for every entity in a knowledge base, independent
+ * of any query. Entities are interned to dense integer ordinals, and the priors are held in a single
+ * <tt>float[]</tt> indexed by ordinal, so looking up the prior of an entity is one hash lookup and one array read.
+ * <p/>
+ * Priors are produced by an offline pass over the knowledge base, using one of the {@link Measure}s, and stored in a
+ * compact binary file. Raw measurements are log scaled and divided by the maximum, so all priors lie in [0,1].
+ *
+ * @author Hamish Morgan
+ */
+@Immutable
+public final class EntityPriors {
+
+    private static final Log LOG = LogFactory.getLog(EntityPriors.class);
+
+    /**
+     * Identifies the file format, and its version.
+     */
+    private static final int MAGIC = 0x45505231;
+
+    /**
+     * The measurement from which the prior of an entity is derived.
+     */
+    public enum Measure {
+        /**
+         * The number of infobox fact links, from other entities in the knowledge base, to the entity.
+         */
+        IN_LINKS,
+        /**
+         * The length of the entity's Wikipedia text; longer articles tend to be about more prominent entities.
+         */
+        TEXT_LENGTH
+    }
+
+    @Nonnull
+    private final Map<String, Integer> ordinals;
+    @Nonnull
+    private final float[] priors;
+
+    /**
+     * Dependency injection constructor. Use {@link #build(Iterable, Measure)} or {@link #readFrom(File)} instead.
+     *
+     * @param ordinals map from entity id to ordinal, which must be dense
+     * @param priors   prior of each entity, indexed by ordinal
+     */
+    EntityPriors(@Nonnull Map<String, Integer> ordinals, @Nonnull float[] priors) {
+        checkArgument(ordinals.size() == priors.length, "ordinals and priors are of different sizes");
+        this.ordinals = checkNotNull(ordinals, "ordinals");
+        this.priors = checkNotNull(priors, "priors");
+    }
+
+    /**
+     * Measure the prior of every entity in a single pass over the knowledge base.
+     */
+    @Nonnull
+    public static EntityPriors build(@Nonnull Iterable<Entity> entities, @Nonnull Measure measure) {
+        checkNotNull(entities, "entities");
+        checkNotNull(measure, "measure");
+
+        final Map<String, Integer> ordinals = Maps.newHashMap();
+        float[] raw = new float[1024];
+        final Map<String, int[]> inLinks = Maps.newHashMap();
+
+        for (Entity entity : entities) {
+            final int ordinal = ordinals.size();
+            ordinals.put(entity.getId(), ordinal);
+            if (ordinal == raw.length)
+                raw = Arrays.copyOf(raw, raw.length * 2);
+
+            switch (measure) {
+                case TEXT_LENGTH:
+                    raw[ordinal] = entity.getWikiText().isPresent() ? entity.getWikiText().get().length() : 0;
+                    break;
+                case IN_LINKS:
+                    // The target may not have been seen yet, so count by id and resolve ordinals afterwards
+                    for (Fact fact : entity.getFacts()) {
+                        for (CharSequence link : fact.getLinks()) {
+                            if (!(link instanceof Link) || !((Link) link).getEntityId().isPresent())
+                                continue;
+                            final String target = ((Link) link).getEntityId().get();
+                            if (target.equals(entity.getId()))
+                                continue;
+                            final int[] count = inLinks.get(target);
+                            if (count == null)
+                                inLinks.put(target, new int[]{1});
+                            else
+                                count[0]++;
+                        }
+                    }
+                    break;
+                default:
+                    throw new AssertionError(measure);
+            }
+        }
+
+        for (Map.Entry<String, int[]> entry : inLinks.entrySet()) {
+            final Integer ordinal = ordinals.get(entry.getKey());
+            if (ordinal != null)
+                raw[ordinal] = entry.getValue()[0];
+        }
+
+        final float[] priors = Arrays.copyOf(raw, ordinals.size());
+        normalize(priors);
+        LOG.info(format("Built {0} priors for {1} entities.", measure, priors.length));
+        return new EntityPriors(ordinals, priors);
+    }
+
+    /**
+     * Log scale the raw measurements, and divide by the maximum so they lie in [0,1].
+     */
+    static void normalize(@Nonnull float[] values) {
+        double max = 0;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (float) Math.log1p(Math.max(0, values[i]));
+            max = Math.max(max, values[i]);
+        }
+        if (max > 0)
+            for (int i = 0; i < values.length; i++)
+                values[i] = (float) (values[i] / max);
+    }
+
+    /**
+     * @return the ordinal of the entity, or -1 if it is not known
+     */
+    public int ordinalOf(@Nonnull String id) {
+        final Integer ordinal = ordinals.get(id);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    /**
+     * @return the prior of the entity with the given ordinal
+     */
+    public float priorAt(int ordinal) {
+        return priors[ordinal];
+    }
+
+    /**
+     * @return the prior of the entity, or zero if it is not known
+     */
+    public float getPrior(@Nonnull String id) {
+        final int ordinal = ordinalOf(id);
+        return ordinal < 0 ? 0f : priors[ordinal];
+    }
+
+    /**
+     * @return number of entities with priors
+     */
+    public int size() {
+        return priors.length;
+    }
+
+    /**
+     * Write the priors to a file, as the entity ids in ordinal order followed by the priors.
+     */
+    public void writeTo(@Nonnull File file) throws IOException {
+        checkNotNull(file, "file");
+        final String[] ids = new String[priors.length];
+        for (Map.Entry<String, Integer> entry : ordinals.entrySet())
+            ids[entry.getValue()] = entry.getKey();
+
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(priors.length);
+            for (String id : ids)
+                out.writeUTF(id);
+            for (float prior : priors)
+                out.writeFloat(prior);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Read priors that were previously written with {@link #writeTo(File)}.
+     */
+    @Nonnull
+    public static EntityPriors readFrom(@Nonnull File file) throws IOException {
+        checkNotNull(file, "file");
+        LOG.info(format("Reading entity priors: {0}", file));
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC)
+                throw new IOException("Not an entity priors file: " + file);
+            final int size = in.readInt();
+            final Map<String, Integer> ordinals = Maps.newHashMapWithExpectedSize(size);
+            for (int i = 0; i < size; i++)
+                ordinals.put(in.readUTF(), i);
+            final float[] priors = new float[size];
+            for (int i = 0; i < size; i++)
+                priors[i] = in.readFloat();
+            return new EntityPriors(ordinals, priors);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2013, Hamish Morgan.
+ * All Rights Reserved.
+ */
+package uk.ac.susx.mlcl.erl.tac.kb;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import org.mapdb.Serializer;
+import uk.ac.susx.mlcl.lib.StringDictionary;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Compact binary encoding of {@link Entity} records, with their {@link Fact}s and {@link Link}s, for storage in the
+ * knowledge base database. Compared to default Java serialization there are no class descriptors, optional values
+ * are recorded as flag bits, and all lengths and counts are variable length integers.
+ * <p/>
+ * Fact names and facts classes are drawn from a small vocabulary of infobox templates and parameters, so they are
+ * replaced by ordinals from a shared {@link StringDictionary}, which is persisted alongside the entities. Wikipedia
+ * text accounts for most of the size of a record; when enabled it is deflated if it is long enough for that to help.
+ * <p/>
+ * Every record starts with a format version byte, so that the encoding can be changed without rebuilding existing
+ * databases.
+ *
+ * @author Hamish Morgan
+ */
+@ThreadSafe
+public class EntitySerializer implements Serializer<Entity> {
+
+    public static final int VERSION = 1;
+
+    /**
+     * Wikipedia text shorter than this (in UTF-8 bytes) is always stored uncompressed.
+     */
+    public static final int MIN_COMPRESSED_LENGTH = 256;
+
+    private static final int HAS_FACTS_CLASS = 1;
+    private static final int HAS_WIKI_TITLE = 1 << 1;
+    private static final int HAS_WIKI_TEXT = 1 << 2;
+    private static final int WIKI_TEXT_DEFLATED = 1 << 3;
+
+    private static final int TEXT_ITEM = 0;
+    private static final int LINK_ITEM = 1;
+    private static final int ENTITY_LINK_ITEM = 2;
+
+    private static final EntityType[] TYPES = EntityType.values();
+
+    @Nonnull
+    private final StringDictionary dictionary;
+    private final boolean compressWikiText;
+
+    /**
+     * @param dictionary       dictionary of fact names and facts classes
+     * @param compressWikiText whether to deflate long Wikipedia text; records are readable either way
+     */
+    public EntitySerializer(@Nonnull StringDictionary dictionary, boolean compressWikiText) {
+        this.dictionary = checkNotNull(dictionary, "dictionary");
+        this.compressWikiText = compressWikiText;
+    }
+
+    @Nonnull
+    public StringDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public boolean isCompressWikiText() {
+        return compressWikiText;
+    }
+
+    @Nonnull
+    public byte[] toBytes(@Nonnull Entity entity) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        serialize(new DataOutputStream(bytes), entity);
+        return bytes.toByteArray();
+    }
+
+    @Nonnull
+    public Entity fromBytes(@Nonnull byte[] bytes) throws IOException {
+        return deserialize(new DataInputStream(new ByteArrayInputStream(bytes)), bytes.length);
+    }
+
+    /**
+     * @return function that decodes records produced by {@link #toBytes(Entity)}, throwing an unchecked exception
+     *         if a record is corrupt
+     */
+    @Nonnull
+    public Function<byte[], Entity> decoder() {
+        return new Function<byte[], Entity>() {
+            @Override
+            public Entity apply(byte[] input) {
+                try {
+                    return fromBytes(input);
+                } catch (IOException e) {
+                    throw Throwables.propagate(e);
+                }
+            }
+        };
+    }
+
+    @Override
+    public void serialize(@Nonnull DataOutput out, @Nonnull Entity entity) throws IOException {
+        checkNotNull(entity, "entity");
+
+        byte[] wikiText = null;
+        int wikiTextLength = 0;
+        int flags = 0;
+        if (entity.getFactsClass().isPresent())
+            flags |= HAS_FACTS_CLASS;
+        if (entity.getWikiTitle().isPresent())
+            flags |= HAS_WIKI_TITLE;
+        if (entity.getWikiText().isPresent()) {
+            flags |= HAS_WIKI_TEXT;
+            wikiText = entity.getWikiText().get().getBytes(Charsets.UTF_8);
+            wikiTextLength = wikiText.length;
+            if (compressWikiText && wikiText.length >= MIN_COMPRESSED_LENGTH) {
+                final byte[] deflated = deflate(wikiText);
+                if (deflated.length < wikiText.length) {
+                    flags |= WIKI_TEXT_DEFLATED;
+                    wikiText = deflated;
+                }
+            }
+        }
+
+        out.writeByte(VERSION);
+        out.writeByte(flags);
+        writeString(out, entity.getId());
+        writeString(out, entity.getName());
+        writeVarInt(out, entity.getType().ordinal());
+        if (entity.getWikiTitle().isPresent())
+            writeString(out, entity.getWikiTitle().get());
+        if (entity.getFactsClass().isPresent())
+            writeVarInt(out, dictionary.encode(entity.getFactsClass().get()));
+
+        final Collection<Fact> facts = entity.getFacts();
+        writeVarInt(out, facts.size());
+        for (Fact fact : facts) {
+            writeVarInt(out, dictionary.encode(fact.getName()));
+            final Collection<CharSequence> items = fact.getLinks();
+            writeVarInt(out, items.size());
+            for (CharSequence item : items) {
+                if (item instanceof Link) {
+                    final Link link = (Link) item;
+                    if (link.getEntityId().isPresent()) {
+                        out.writeByte(ENTITY_LINK_ITEM);
+                        writeString(out, link.getEntityId().get());
+                    } else {
+                        out.writeByte(LINK_ITEM);
+                    }
+                    writeString(out, link.getData());
+                } else {
+                    out.writeByte(TEXT_ITEM);
+                    writeString(out, item.toString());
+                }
+            }
+        }
+
+        if (wikiText != null) {
+            if ((flags & WIKI_TEXT_DEFLATED) != 0)
+                writeVarInt(out, wikiTextLength);
+            writeVarInt(out, wikiText.length);
+            out.write(wikiText);
+        }
+    }
+
+    @Nonnull
+    @Override
+    public Entity deserialize(@Nonnull DataInput in, int available) throws IOException {
+        final int version = in.readUnsignedByte();
+        if (version != VERSION)
+            throw new StreamCorruptedException("Unsupported entity record version: " + version);
+        final int flags = in.readUnsignedByte();
+
+        final String id = readString(in);
+        final String name = readString(in);
+        final int typeOrdinal = readVarInt(in);
+        if (typeOrdinal >= TYPES.length)
+            throw new StreamCorruptedException("Unknown entity type ordinal: " + typeOrdinal);
+        final EntityType type = TYPES[typeOrdinal];
+        final Optional<String> wikiTitle = (flags & HAS_WIKI_TITLE) != 0
+                ? Optional.of(readString(in)) : Optional.<String>absent();
+        final Optional<String> factsClass = (flags & HAS_FACTS_CLASS) != 0
+                ? Optional.of(dictionary.decode(readVarInt(in))) : Optional.<String>absent();
+
+        final int factCount = readVarInt(in);
+        final List<Fact> facts = new ArrayList<Fact>(factCount);
+        for (int i = 0; i < factCount; i++) {
+            final String factName = dictionary.decode(readVarInt(in));
+            final int itemCount = readVarInt(in);
+            final List<CharSequence> items = new ArrayList<CharSequence>(itemCount);
+            for (int j = 0; j < itemCount; j++) {
+                final int kind = in.readUnsignedByte();
+                switch (kind) {
+                    case TEXT_ITEM:
+                        items.add(readString(in));
+                        break;
+                    case LINK_ITEM:
+                        items.add(new Link(Optional.<String>absent(), readString(in)));
+                        break;
+                    case ENTITY_LINK_ITEM:
+                        final String entityId = readString(in);
+                        items.add(new Link(Optional.of(entityId), readString(in)));
+                        break;
+                    default:
+                        throw new StreamCorruptedException("Unknown fact item kind: " + kind);
+                }
+            }
+            facts.add(new Fact(items, factName));
+        }
+
+        Optional<String> wikiText = Optional.absent();
+        if ((flags & HAS_WIKI_TEXT) != 0) {
+            final boolean deflated = (flags & WIKI_TEXT_DEFLATED) != 0;
+            final int length = deflated ? readVarInt(in) : 0;
+            final byte[] bytes = new byte[readVarInt(in)];
+            in.readFully(bytes);
+            wikiText = Optional.of(new String(deflated ? inflate(bytes, length) : bytes, Charsets.UTF_8));
+        }
+
+        return new Entity(factsClass, facts, wikiText, id, name, type, wikiTitle);
+    }
+
+    @Nonnull
+    private static byte[] deflate(@Nonnull byte[] bytes) {
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2);
+            final byte[] buffer = new byte[4096];
+            while (!deflater.finished())
+                out.write(buffer, 0, deflater.deflate(buffer));
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Nonnull
+    private static byte[] inflate(@Nonnull byte[] bytes, int length) throws IOException {
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes);
+            final byte[] result = new byte[length];
+            int offset = 0;
+            while (offset < length) {
+                final int n = inflater.inflate(result, offset, length - offset);
+                if (n == 0)
+                    throw new StreamCorruptedException("Deflated wiki text is truncated.");
+                offset += n;
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new StreamCorruptedException("Deflated wiki text is corrupt: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void writeString(@Nonnull DataOutput out, @Nonnull String value) throws IOException {
+        final byte[] bytes = value.getBytes(Charsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    @Nonnull
+    private static String readString(@Nonnull DataInput in) throws IOException {
+        final byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    private static void writeVarInt(@Nonnull DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(@Nonnull DataInput in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift > 28)
+                throw new StreamCorruptedException("Variable length integer is too long.");
+            b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
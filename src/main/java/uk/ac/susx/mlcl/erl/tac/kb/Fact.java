@@ -36,6 +36,14 @@ public class Fact implements Serializable {
         this.name = checkNotNull(name, "name");
     }
 
+    public Collection<CharSequence> getLinks() {
+        return links;
+    }
+
+    public String getName() {
+        return name;
+    }
+
     @SuppressWarnings("UnusedReturnValue")
     public static class Builder {
 
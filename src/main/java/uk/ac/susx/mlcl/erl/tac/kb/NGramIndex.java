@@ -0,0 +1,424 @@
+package uk.ac.susx.mlcl.erl.tac.kb;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mapdb.DB;
+import org.mapdb.HTreeMap;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.text.MessageFormat.format;
+
+/**
+ * A character n-gram inverted index over a set of terms (typically entity names and aliases), stored in the
+ * knowledge base database. It supports approximate lookup of terms that are similar to a query string, even when
+ * there is no exact match; e.g "Barak Obama" will find "Barack Obama".
+ * <p/>
+ * Each term is assigned an integer ordinal. For every n-gram the index holds the sorted list of ordinals of terms
+ * containing that n-gram. Posting lists are delta encoded as variable length integers to keep them compact on disk.
+ * <p/>
+ * Search proceeds in two stages. First the posting lists for all query n-grams are merged, counting the number of
+ * n-grams each term shares with the query, and a pool of the terms with the greatest overlap is retained. Second,
+ * the pooled terms are re-scored by their exact Dice coefficient with the query, and the top-k are returned.
+ *
+ * @author Hamish Morgan
+ */
+public class NGramIndex {
+
+    private static final Log LOG = LogFactory.getLog(NGramIndex.class);
+
+    /**
+     * Default length of character n-grams.
+     */
+    public static final int DEFAULT_N = 3;
+
+    /**
+     * Character used to pad the beginning and end of terms, so boundary n-grams are distinguished.
+     */
+    private static final char PAD = '$';
+
+    /**
+     * The number of candidates retained by overlap, for every result requested, before exact re-scoring.
+     */
+    private static final int POOL_FACTOR = 8;
+
+    private static final String POSTINGS_NAME = "entity-ngram-postings";
+    private static final String TERMS_NAME = "entity-ngram-terms";
+
+    private final int n;
+    private final HTreeMap<String, byte[]> postings;
+    private final HTreeMap<Integer, String> terms;
+
+    /**
+     * Dependency injection constructor. Use {@link NGramIndex#open(DB)} instead.
+     *
+     * @param n        length of character n-grams
+     * @param postings map from n-gram to the encoded posting list of term ordinals
+     * @param terms    map from term ordinal to term
+     */
+    private NGramIndex(int n, HTreeMap<String, byte[]> postings, HTreeMap<Integer, String> terms) {
+        checkArgument(n > 0, "n <= 0");
+        this.n = n;
+        this.postings = checkNotNull(postings, "postings");
+        this.terms = checkNotNull(terms, "terms");
+    }
+
+    @Nonnull
+    public static NGramIndex open(@Nonnull DB db) {
+        checkNotNull(db, "db");
+        final HTreeMap<String, byte[]> postings = db.getHashMap(POSTINGS_NAME);
+        final HTreeMap<Integer, String> terms = db.getHashMap(TERMS_NAME);
+        return new NGramIndex(DEFAULT_N, postings, terms);
+    }
+
+    /**
+     * Build a new n-gram index in the given database, containing all the given terms. Posting lists are accumulated
+     * in memory, and written out once every term has been seen.
+     *
+     * @param db    database to write the index into
+     * @param input terms to index
+     * @return the new index
+     */
+    @Nonnull
+    public static NGramIndex create(@Nonnull DB db, @Nonnull Iterable<String> input) {
+        checkNotNull(db, "db");
+        checkNotNull(input, "input");
+
+        final HTreeMap<String, byte[]> postings = db.createHashMap(POSTINGS_NAME).keepCounter(true).make();
+        final HTreeMap<Integer, String> terms = db.createHashMap(TERMS_NAME).keepCounter(true).make();
+        final NGramIndex index = new NGramIndex(DEFAULT_N, postings, terms);
+
+        // Ordinals are assigned in iteration order, so every posting list is naturally sorted.
+        final Map<String, IntList> accumulator = Maps.newHashMap();
+        int ordinal = 0;
+        for (final String term : input) {
+            terms.put(ordinal, term);
+            for (final String gram : index.distinctNGrams(term)) {
+                IntList list = accumulator.get(gram);
+                if (list == null) {
+                    list = new IntList();
+                    accumulator.put(gram, list);
+                }
+                list.add(ordinal);
+            }
+            ++ordinal;
+        }
+
+        LOG.info(format("Writing n-gram index of {0} terms and {1} n-grams.", ordinal, accumulator.size()));
+        for (final Map.Entry<String, IntList> entry : accumulator.entrySet())
+            postings.put(entry.getKey(), encode(entry.getValue().toArray()));
+        db.commit();
+
+        return index;
+    }
+
+    public int getN() {
+        return n;
+    }
+
+    /**
+     * Find up to <tt>k</tt> indexed terms that are most similar to the given query, ordered by decreasing
+     * similarity. Only terms with a Dice coefficient of at least <tt>minSimilarity</tt> are returned.
+     *
+     * @param query         string to search for
+     * @param k             maximum number of terms to return
+     * @param minSimilarity minimum Dice coefficient (between 0 and 1) of returned terms
+     * @return list of similar terms
+     */
+    @Nonnull
+    public List<String> search(@Nonnull String query, int k, double minSimilarity) {
+        checkNotNull(query, "query");
+        checkArgument(k > 0, "k <= 0");
+        checkArgument(minSimilarity >= 0 && minSimilarity <= 1, "minSimilarity out of range [0,1]");
+
+        final String[] queryGrams = distinctNGrams(query);
+        if (queryGrams.length == 0)
+            return ImmutableList.of();
+
+        final int[][] lists = new int[queryGrams.length][];
+        int listCount = 0;
+        for (final String gram : queryGrams) {
+            final byte[] encoded = postings.get(gram);
+            if (encoded != null)
+                lists[listCount++] = decode(encoded);
+        }
+
+        // A term cannot reach minSimilarity unless it shares at least this many n-grams with the query.
+        final int minOverlap = Math.max(1, (int) Math.ceil(minSimilarity * queryGrams.length / 2.0));
+        final int[] pool = topByOverlap(lists, listCount, k * POOL_FACTOR, minOverlap);
+
+        // Re-score the pooled terms exactly, and keep the best k
+        final PriorityQueue<ScoredTerm> best = new PriorityQueue<ScoredTerm>(k + 1);
+        for (final int ordinal : pool) {
+            final String term = terms.get(ordinal);
+            if (term == null)
+                continue;
+            final double score = dice(queryGrams, distinctNGrams(term));
+            if (score < minSimilarity)
+                continue;
+            best.add(new ScoredTerm(term, score));
+            if (best.size() > k)
+                best.poll();
+        }
+
+        final String[] result = new String[best.size()];
+        for (int i = result.length - 1; i >= 0; i--)
+            result[i] = best.poll().term;
+        return ImmutableList.copyOf(result);
+    }
+
+    /**
+     * Produce the sorted array of distinct padded n-grams of the given string, after case folding and whitespace
+     * normalisation.
+     */
+    @Nonnull
+    String[] distinctNGrams(@Nonnull String text) {
+        final String normalized = text.trim().toLowerCase().replaceAll("\\s+", " ");
+        if (normalized.isEmpty())
+            return new String[0];
+        final StringBuilder padded = new StringBuilder(normalized.length() + 2 * (n - 1));
+        for (int i = 0; i < n - 1; i++)
+            padded.append(PAD);
+        padded.append(normalized);
+        for (int i = 0; i < n - 1; i++)
+            padded.append(PAD);
+
+        final String[] grams = new String[padded.length() - n + 1];
+        for (int i = 0; i < grams.length; i++)
+            grams[i] = padded.substring(i, i + n);
+        Arrays.sort(grams);
+
+        int distinct = 0;
+        for (int i = 0; i < grams.length; i++)
+            if (distinct == 0 || !grams[i].equals(grams[distinct - 1]))
+                grams[distinct++] = grams[i];
+        return Arrays.copyOf(grams, distinct);
+    }
+
+    /**
+     * Dice coefficient of two sorted arrays of distinct n-grams.
+     */
+    static double dice(@Nonnull String[] a, @Nonnull String[] b) {
+        if (a.length + b.length == 0)
+            return 0;
+        int i = 0, j = 0, common = 0;
+        while (i < a.length && j < b.length) {
+            final int c = a[i].compareTo(b[j]);
+            if (c == 0) {
+                ++common;
+                ++i;
+                ++j;
+            } else if (c < 0) {
+                ++i;
+            } else {
+                ++j;
+            }
+        }
+        return 2.0 * common / (a.length + b.length);
+    }
+
+    /**
+     * Merge the given sorted posting lists, counting the number of lists each ordinal occurs in, and return the
+     * ordinals of (up to) the <tt>limit</tt> highest counts that are at least <tt>minOverlap</tt>.
+     */
+    @Nonnull
+    static int[] topByOverlap(@Nonnull int[][] lists, int listCount, int limit, int minOverlap) {
+        // Binary min-heap of list indices, ordered by the current head of each list
+        final int[] heap = new int[listCount];
+        final int[] cursor = new int[listCount];
+        int heapSize = 0;
+        for (int i = 0; i < listCount; i++) {
+            if (lists[i].length > 0) {
+                heap[heapSize] = i;
+                siftUp(heap, heapSize, lists, cursor);
+                ++heapSize;
+            }
+        }
+
+        // Bounded min-heap of candidates, encoded as (count << 32 | ordinal) so they order by count
+        final long[] best = new long[limit];
+        int bestSize = 0;
+
+        while (heapSize > 0) {
+            final int ordinal = lists[heap[0]][cursor[heap[0]]];
+            int count = 0;
+            while (heapSize > 0 && lists[heap[0]][cursor[heap[0]]] == ordinal) {
+                ++count;
+                final int top = heap[0];
+                if (++cursor[top] == lists[top].length)
+                    heap[0] = heap[--heapSize];
+                if (heapSize > 0)
+                    siftDown(heap, heapSize, lists, cursor);
+            }
+
+            if (count < minOverlap)
+                continue;
+            final long entry = ((long) count << 32) | (ordinal & 0xFFFFFFFFL);
+            if (bestSize < limit) {
+                best[bestSize] = entry;
+                siftUpLong(best, bestSize++);
+            } else if (entry > best[0]) {
+                best[0] = entry;
+                siftDownLong(best, bestSize);
+            }
+        }
+
+        final int[] result = new int[bestSize];
+        for (int i = 0; i < bestSize; i++)
+            result[i] = (int) best[i];
+        return result;
+    }
+
+    private static void siftUp(int[] heap, int index, int[][] lists, int[] cursor) {
+        final int item = heap[index];
+        final int value = lists[item][cursor[item]];
+        while (index > 0) {
+            final int parent = (index - 1) >>> 1;
+            if (lists[heap[parent]][cursor[heap[parent]]] <= value)
+                break;
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = item;
+    }
+
+    private static void siftDown(int[] heap, int size, int[][] lists, int[] cursor) {
+        final int item = heap[0];
+        final int value = lists[item][cursor[item]];
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && lists[heap[child + 1]][cursor[heap[child + 1]]]
+                    < lists[heap[child]][cursor[heap[child]]])
+                ++child;
+            if (value <= lists[heap[child]][cursor[heap[child]]])
+                break;
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = item;
+    }
+
+    private static void siftUpLong(long[] heap, int index) {
+        final long item = heap[index];
+        while (index > 0) {
+            final int parent = (index - 1) >>> 1;
+            if (heap[parent] <= item)
+                break;
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = item;
+    }
+
+    private static void siftDownLong(long[] heap, int size) {
+        final long item = heap[0];
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && heap[child + 1] < heap[child])
+                ++child;
+            if (item <= heap[child])
+                break;
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = item;
+    }
+
+    /**
+     * Encode a sorted array of non-negative integers as the variable length deltas between consecutive values.
+     */
+    @Nonnull
+    static byte[] encode(@Nonnull int[] sorted) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(sorted.length + 4);
+        writeVarInt(out, sorted.length);
+        int previous = 0;
+        for (final int value : sorted) {
+            writeVarInt(out, value - previous);
+            previous = value;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode an array previously encoded with {@link #encode(int[])}.
+     */
+    @Nonnull
+    static int[] decode(@Nonnull byte[] encoded) {
+        final int[] offset = {0};
+        final int[] values = new int[readVarInt(encoded, offset)];
+        int previous = 0;
+        for (int i = 0; i < values.length; i++) {
+            previous += readVarInt(encoded, offset);
+            values[i] = previous;
+        }
+        return values;
+    }
+
+    private static void writeVarInt(@Nonnull ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(@Nonnull byte[] bytes, @Nonnull int[] offset) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[offset[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static final class ScoredTerm implements Comparable<ScoredTerm> {
+        final String term;
+        final double score;
+
+        ScoredTerm(String term, double score) {
+            this.term = term;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(@Nonnull ScoredTerm that) {
+            return Double.compare(this.score, that.score);
+        }
+    }
+
+    /**
+     * Minimal growable list of primitive integers, used to accumulate posting lists without boxing.
+     */
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
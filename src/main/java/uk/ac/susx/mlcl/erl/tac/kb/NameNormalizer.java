@@ -0,0 +1,85 @@
+package uk.ac.susx.mlcl.erl.tac.kb;
+
+import com.google.common.base.Function;
+
+import javax.annotation.Nonnull;
+import java.text.Normalizer;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Static utility class for reducing names to a normalized key, so that trivial variations of the same surface form
+ * (case, diacritics, punctuation and spacing) can be matched by exact lookup. For example "Beyonc&eacute; Knowles",
+ * "BEYONCE KNOWLES." and " beyonce  knowles" all have the key "beyonce knowles".
+ * <p/>
+ * Normalization is applied as follows: the name is decomposed into base characters and combining marks, and the
+ * marks are dropped; letters are lower-cased; apostrophes and full-stops are deleted, so "U.S.A." becomes "usa" and
+ * "O'Brien" becomes "obrien"; all other punctuation, symbols and whitespace separate words; and words are joined by
+ * a single space.
+ *
+ * @author Hamish Morgan
+ */
+public final class NameNormalizer {
+
+    /**
+     * Matches the combining marks left after canonical decomposition.
+     */
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+
+    /**
+     * Static utility class should not be instantiated.
+     */
+    private NameNormalizer() {
+    }
+
+    /**
+     * Reduce the name to its normalized key. The key may be empty, if the name contains no letters or digits.
+     *
+     * @param name name to normalize
+     * @return normalized key
+     */
+    @Nonnull
+    public static String normalize(@Nonnull final CharSequence name) {
+        checkNotNull(name, "name");
+        final String decomposed = COMBINING_MARKS.matcher(
+                Normalizer.normalize(name, Normalizer.Form.NFD)).replaceAll("");
+
+        final StringBuilder key = new StringBuilder(decomposed.length());
+        boolean separate = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            final char c = decomposed.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (separate && key.length() > 0)
+                    key.append(' ');
+                separate = false;
+                key.append(Character.toLowerCase(c));
+            } else if (!isDeleted(c)) {
+                separate = true;
+            }
+        }
+        return key.toString();
+    }
+
+    private static boolean isDeleted(final char c) {
+        return c == '.' || c == '\'' || c == '\u2019' || c == '`';
+    }
+
+    /**
+     * @return a function that applies {@link #normalize(CharSequence)}
+     */
+    @Nonnull
+    public static Function<String, String> function() {
+        return NormalizeFunction.INSTANCE;
+    }
+
+    private enum NormalizeFunction implements Function<String, String> {
+        INSTANCE;
+
+        @Nonnull
+        @Override
+        public String apply(@Nonnull String name) {
+            return normalize(name);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package uk.ac.susx.mlcl.erl.tac.kb;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import java.io.Serializable;
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A sparse vector of float weights, stored as parallel primitive arrays of strictly increasing indices and their
+ * values. The compact representation keeps the vectors small on disk and in memory, and allows the dot product of
+ * two vectors to be found by a single merge pass without any allocation.
+ *
+ * @author Hamish Morgan
+ */
+@Immutable
+public final class SparseVector implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final SparseVector EMPTY = new SparseVector(new int[0], new float[0]);
+
+    private final int[] indices;
+    private final float[] values;
+
+    /**
+     * Construct a vector from arrays which are not copied, and so must not be modified afterwards.
+     *
+     * @param indices strictly increasing indices of the non-zero elements
+     * @param values  values of the non-zero elements
+     */
+    public SparseVector(@Nonnull int[] indices, @Nonnull float[] values) {
+        checkNotNull(indices, "indices");
+        checkNotNull(values, "values");
+        checkArgument(indices.length == values.length, "indices and values are of different lengths");
+        this.indices = indices;
+        this.values = values;
+    }
+
+    public int size() {
+        return indices.length;
+    }
+
+    public int indexAt(int i) {
+        return indices[i];
+    }
+
+    public float valueAt(int i) {
+        return values[i];
+    }
+
+    /**
+     * @return the dot product of this vector and <tt>that</tt>, which is their cosine similarity if both have unit
+     *         length
+     */
+    public double dot(@Nonnull SparseVector that) {
+        final int[] a = indices;
+        final int[] b = that.indices;
+        double sum = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                sum += values[i] * that.values[j];
+                i++;
+                j++;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * @return the euclidean length of the vector
+     */
+    public double norm() {
+        double sum = 0;
+        for (float value : values)
+            sum += value * value;
+        return Math.sqrt(sum);
+    }
+
+    /**
+     * @return a copy of the vector scaled to unit length, or this vector if it is all zeros
+     */
+    @Nonnull
+    public SparseVector normalize() {
+        final double norm = norm();
+        if (norm == 0)
+            return this;
+        final float[] scaled = new float[values.length];
+        for (int i = 0; i < values.length; i++)
+            scaled[i] = (float) (values[i] / norm);
+        return new SparseVector(indices, scaled);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final SparseVector that = (SparseVector) o;
+        return Arrays.equals(indices, that.indices) && Arrays.equals(values, that.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(indices) + Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("SparseVector{");
+        for (int i = 0; i < indices.length; i++) {
+            if (i > 0)
+                builder.append(", ");
+            builder.append(indices[i]).append('=').append(values[i]);
+        }
+        return builder.append('}').toString();
+    }
+}
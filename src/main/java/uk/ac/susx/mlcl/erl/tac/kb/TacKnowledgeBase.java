@@ -4,12 +4,15 @@
  */
 package uk.ac.susx.mlcl.erl.tac.kb;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import javax.annotation.Nullable;
+import org.mapdb.BTreeMap;
 import org.mapdb.DB;
-import org.mapdb.HTreeMap;
 import uk.ac.susx.mlcl.erl.tac.io.Tac2009KnowledgeBaseIO;
+import uk.ac.susx.mlcl.lib.StringDictionary;
 
 import javax.annotation.Nonnull;
 import java.io.Closeable;
@@ -18,6 +21,9 @@ import java.io.IOException;
 import java.util.AbstractCollection;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static java.text.MessageFormat.format;
 
@@ -30,29 +36,78 @@ public class TacKnowledgeBase extends AbstractCollection<Entity> implements Clos
 
     private static final Log LOG = LogFactory.getLog(TacKnowledgeBase.class);
     private final DB database;
-    private final HTreeMap<String, Entity> idIndex;
-    private final HTreeMap<String, String> nameIndex;
+    private final Map<String, Entity> idIndex;
+    private final Map<String, String> nameIndex;
+    private final Map<String, String[]> aliasIndex;
+    private final Map<String, String[]> normalizedAliasIndex;
+    private final NGramIndex nGramIndex;
+    private final TermVectors termVectors;
 
     /**
      * Dependency injection constructor. Use {@link TacKnowledgeBase#open(java.io.File)} )} instead.
      *
-     * @param database  The database connection object, used for closing
-     * @param idIndex   Index of entity id's to entity objects
-     * @param nameIndex Index of entity names to entity objects.
+     * @param database   The database connection object, used for closing
+     * @param idIndex    Index of entity id's to entity objects
+     * @param nameIndex  Index of entity names to entity objects.
+     * @param aliasIndex Index of entity aliases to the id's of every entity known by that alias.
+     * @param normalizedAliasIndex Index of normalized entity aliases to the id's of every entity known by them.
+     * @param nGramIndex Character n-gram index of entity aliases, for approximate lookup.
+     * @param termVectors TF-IDF vectors of the entity text, for context similarity.
      */
-    private TacKnowledgeBase(DB database, HTreeMap<String, Entity> idIndex, HTreeMap<String, String> nameIndex) {
+    private TacKnowledgeBase(DB database, Map<String, Entity> idIndex, Map<String, String> nameIndex,
+                             Map<String, String[]> aliasIndex, Map<String, String[]> normalizedAliasIndex,
+                             NGramIndex nGramIndex, TermVectors termVectors) {
         this.database = database;
         this.idIndex = idIndex;
         this.nameIndex = nameIndex;
+        this.aliasIndex = aliasIndex;
+        this.normalizedAliasIndex = normalizedAliasIndex;
+        this.nGramIndex = nGramIndex;
+        this.termVectors = termVectors;
     }
 
     @Nonnull
     public static TacKnowledgeBase open(File dbFile) {
         LOG.info(format("Opening database: {0}", dbFile));
         final DB db = Tac2009KnowledgeBaseIO.openDB(dbFile);
-        final HTreeMap<String, Entity> idIndex = db.getHashMap("entity-id-index");
-        final HTreeMap<String, String> nameIndex = db.getHashMap("entity-name-index");
-        return new TacKnowledgeBase(db, idIndex, nameIndex);
+        final Map<String, Object> catalog = db.getAll();
+        final Map<String, Entity> idIndex;
+        if (catalog.containsKey(Tac2009KnowledgeBaseIO.ENTITY_DICTIONARY_NAME)) {
+            final Map<String, Integer> dictionary = db.getHashMap(Tac2009KnowledgeBaseIO.ENTITY_DICTIONARY_NAME);
+            final EntitySerializer serializer = new EntitySerializer(new StringDictionary(dictionary), true);
+            idIndex = Maps.transformValues(TacKnowledgeBase.<byte[]>openIndex(db, catalog, "entity-id-index"),
+                    serializer.decoder());
+        } else {
+            // Created before entities were encoded with EntitySerializer
+            idIndex = openIndex(db, catalog, "entity-id-index");
+        }
+        final Map<String, String> nameIndex = openIndex(db, catalog, "entity-name-index");
+        final Map<String, String[]> aliasIndex = openIndex(db, catalog, "entity-alias-index");
+        if (aliasIndex.size() == 0 && idIndex.size() != 0)
+            LOG.warn(format("Database {0} has no alias index; re-create it to enable alias lookup.", dbFile));
+        final Map<String, String[]> normalizedAliasIndex = openIndex(db, catalog, "entity-normalized-alias-index");
+        if (normalizedAliasIndex.size() == 0 && idIndex.size() != 0)
+            LOG.warn(format("Database {0} has no normalized alias index; re-create it to enable normalized lookup.",
+                    dbFile));
+        final NGramIndex nGramIndex = NGramIndex.open(db);
+        final TermVectors termVectors = TermVectors.open(db);
+        return new TacKnowledgeBase(db, idIndex, nameIndex, aliasIndex, normalizedAliasIndex, nGramIndex,
+                termVectors);
+    }
+
+    /**
+     * Get the named index, which is a B-tree if the database was bulk loaded, or a hash map otherwise.
+     */
+    @Nonnull
+    private static <V> Map<String, V> openIndex(@Nonnull DB db, @Nonnull Map<String, Object> catalog,
+                                                @Nonnull String name) {
+        final Object index = catalog.get(name);
+        if (index instanceof BTreeMap) {
+            @SuppressWarnings("unchecked")
+            final BTreeMap<String, V> treeIndex = (BTreeMap<String, V>) index;
+            return treeIndex;
+        }
+        return db.getHashMap(name);
     }
 
     private void checkState() throws IOException {
@@ -76,6 +131,66 @@ public class TacKnowledgeBase extends AbstractCollection<Entity> implements Clos
         return nameIndex.get(name);
     }
 
+    /**
+     * Get the id's of all entities known by the given alias. Aliases are produced at import time by
+     * {@link EntityAliases#aliasesOf(Entity)}, and always include the entity name.
+     *
+     * @param alias surface form to look up
+     * @return id's of all matching entities, or the empty set if there are none
+     * @throws IOException if the database is closed
+     */
+    @Nonnull
+    public Set<String> getIdsByAlias(String alias) throws IOException {
+        checkState();
+        final String[] ids = aliasIndex.get(alias);
+        return ids == null ? ImmutableSet.<String>of() : ImmutableSet.copyOf(ids);
+    }
+
+    /**
+     * Get the id's of all entities with an alias that has the same normalized key as the given name, as produced by
+     * {@link NameNormalizer#normalize(CharSequence)}. This matches surface forms that differ from an alias only in
+     * case, diacritics, punctuation or spacing, at the cost of a single exact lookup.
+     *
+     * @param name surface form to look up
+     * @return id's of all matching entities, or the empty set if there are none
+     * @throws IOException if the database is closed
+     */
+    @Nonnull
+    public Set<String> getIdsByNormalizedAlias(String name) throws IOException {
+        checkState();
+        final String key = NameNormalizer.normalize(name);
+        final String[] ids = key.isEmpty() ? null : normalizedAliasIndex.get(key);
+        return ids == null ? ImmutableSet.<String>of() : ImmutableSet.copyOf(ids);
+    }
+
+    /**
+     * Find up to <tt>k</tt> aliases that are approximately equal to the given name, using the character n-gram
+     * index. Results are ordered by decreasing similarity.
+     *
+     * @param name          surface form to look up
+     * @param k             maximum number of aliases to return
+     * @param minSimilarity minimum similarity (between 0 and 1) of returned aliases
+     * @return list of similar aliases, which can be resolved with {@link #getIdsByAlias(String)}
+     * @throws IOException if the database is closed
+     */
+    @Nonnull
+    public List<String> findSimilarAliases(String name, int k, double minSimilarity) throws IOException {
+        checkState();
+        return nGramIndex.search(name, k, minSimilarity);
+    }
+
+    /**
+     * Get the TF-IDF vectors of the entity Wikipedia text, which were computed when the knowledge base was created.
+     *
+     * @return the term vectors of this knowledge base
+     * @throws IOException if the database is closed
+     */
+    @Nonnull
+    public TermVectors getTermVectors() throws IOException {
+        checkState();
+        return termVectors;
+    }
+
     @Nullable
     public String getTextForId(String id) throws IOException {
         return getEntityById(id).getWikiText().orNull();
@@ -0,0 +1,245 @@
+package uk.ac.susx.mlcl.erl.tac.kb;
+
+import com.google.common.collect.Maps;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mapdb.DB;
+import org.mapdb.HTreeMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.text.MessageFormat.format;
+
+/**
+ * TF-IDF term vectors of the entity Wikipedia text, stored in the knowledge base database. The vectors are computed
+ * once when the knowledge base is created, so that context similarity can be measured at query time without
+ * re-analysing the entity text.
+ * <p/>
+ * Each term is assigned an integer ordinal by the term dictionary, and the inverse document frequency of every term
+ * is held in a single <tt>float[]</tt> indexed by ordinal. Entity vectors are stored as {@link SparseVector}s with
+ * unit length, so the cosine similarity of an entity and a context vector is their dot product. Terms that occur in
+ * fewer than {@link #MIN_DOCUMENT_FREQUENCY} entities are dropped, since they can never match anything else and would
+ * bloat the dictionary.
+ * <p/>
+ * The dictionary and IDF table are only read from the database the first time they are needed.
+ *
+ * @author Hamish Morgan
+ */
+public class TermVectors {
+
+    private static final Log LOG = LogFactory.getLog(TermVectors.class);
+
+    /**
+     * The minimum number of entities a term must occur in to be included in the dictionary.
+     */
+    public static final int MIN_DOCUMENT_FREQUENCY = 2;
+
+    private static final String VECTORS_NAME = "entity-term-vectors";
+    private static final String DICTIONARY_NAME = "entity-term-dictionary";
+    private static final String IDF_NAME = "entity-term-idf";
+    private static final String IDF_KEY = "idf";
+
+    private final HTreeMap<String, SparseVector> vectors;
+    private final HTreeMap<String, Integer> storedDictionary;
+    private final HTreeMap<String, float[]> storedIdf;
+
+    @Nullable
+    private volatile Map<String, Integer> dictionary = null;
+    @Nullable
+    private volatile float[] idf = null;
+
+    /**
+     * Dependency injection constructor. Use {@link TermVectors#open(DB)} instead.
+     */
+    private TermVectors(HTreeMap<String, SparseVector> vectors, HTreeMap<String, Integer> storedDictionary,
+                        HTreeMap<String, float[]> storedIdf) {
+        this.vectors = checkNotNull(vectors, "vectors");
+        this.storedDictionary = checkNotNull(storedDictionary, "storedDictionary");
+        this.storedIdf = checkNotNull(storedIdf, "storedIdf");
+    }
+
+    @Nonnull
+    public static TermVectors open(@Nonnull DB db) {
+        checkNotNull(db, "db");
+        return new TermVectors(
+                db.<String, SparseVector>getHashMap(VECTORS_NAME),
+                db.<String, Integer>getHashMap(DICTIONARY_NAME),
+                db.<String, float[]>getHashMap(IDF_NAME));
+    }
+
+    /**
+     * Build the term vectors of all the given entities, and commit them to the database. The entities are read
+     * twice: once to count document frequencies, and again to produce the vectors.
+     */
+    @Nonnull
+    public static TermVectors create(@Nonnull DB db, @Nonnull Iterable<Entity> entities) {
+        checkNotNull(db, "db");
+        checkNotNull(entities, "entities");
+
+        // First pass: count the number of entities each term occurs in
+        final Map<String, int[]> documentFrequencies = Maps.newHashMap();
+        int documentCount = 0;
+        for (Entity entity : entities) {
+            if (!entity.getWikiText().isPresent())
+                continue;
+            for (String term : termFrequencies(entity.getWikiText().get()).keySet()) {
+                final int[] df = documentFrequencies.get(term);
+                if (df == null)
+                    documentFrequencies.put(term, new int[]{1});
+                else
+                    df[0]++;
+            }
+            documentCount++;
+        }
+
+        // Assign ordinals to the retained terms, and compute their IDF
+        final HTreeMap<String, Integer> storedDictionary = db.createHashMap(DICTIONARY_NAME).make();
+        final Map<String, Integer> dictionary = Maps.newHashMap();
+        final float[] idf = new float[documentFrequencies.size()];
+        for (Map.Entry<String, int[]> entry : documentFrequencies.entrySet()) {
+            final int df = entry.getValue()[0];
+            if (df < MIN_DOCUMENT_FREQUENCY)
+                continue;
+            final int ordinal = dictionary.size();
+            dictionary.put(entry.getKey(), ordinal);
+            idf[ordinal] = (float) Math.log((double) documentCount / df);
+        }
+        documentFrequencies.clear();
+        storedDictionary.putAll(dictionary);
+        final float[] trimmedIdf = Arrays.copyOf(idf, dictionary.size());
+        final HTreeMap<String, float[]> storedIdf = db.createHashMap(IDF_NAME).make();
+        storedIdf.put(IDF_KEY, trimmedIdf);
+        db.commit();
+        LOG.info(format("Term dictionary contains {0} terms from {1} entities.", dictionary.size(), documentCount));
+
+        // Second pass: weight and store the vector of every entity
+        final HTreeMap<String, SparseVector> vectors = db.createHashMap(VECTORS_NAME).keepCounter(true).make();
+        int count = 0;
+        for (Entity entity : entities) {
+            if (!entity.getWikiText().isPresent())
+                continue;
+            final SparseVector vector = vectorize(entity.getWikiText().get(), dictionary, trimmedIdf);
+            if (vector.size() > 0)
+                vectors.put(entity.getId(), vector);
+            if (++count % 1000 == 0)
+                db.commit();
+        }
+        db.commit();
+
+        final TermVectors result = new TermVectors(vectors, storedDictionary, storedIdf);
+        result.dictionary = dictionary;
+        result.idf = trimmedIdf;
+        return result;
+    }
+
+    /**
+     * @return the unit length TF-IDF vector of the entity's Wikipedia text, or {@link SparseVector#EMPTY} if it has
+     *         none
+     */
+    @Nonnull
+    public SparseVector getVector(@Nonnull String entityId) {
+        checkNotNull(entityId, "entityId");
+        final SparseVector vector = vectors.get(entityId);
+        return vector == null ? SparseVector.EMPTY : vector;
+    }
+
+    /**
+     * Produce the unit length TF-IDF vector of some text, such as the context of a mention, using the knowledge base
+     * term dictionary and IDF weights. Terms that are not in the dictionary are ignored.
+     */
+    @Nonnull
+    public SparseVector vectorize(@Nonnull CharSequence text) {
+        checkNotNull(text, "text");
+        loadDictionary();
+        return vectorize(text, dictionary, idf);
+    }
+
+    /**
+     * @return whether any vectors were built for this knowledge base
+     */
+    public boolean isEmpty() {
+        return vectors.isEmpty();
+    }
+
+    private void loadDictionary() {
+        if (idf != null)
+            return;
+        synchronized (this) {
+            if (idf == null) {
+                LOG.debug("Loading term dictionary.");
+                final float[] storedIdfValues = storedIdf.get(IDF_KEY);
+                dictionary = Maps.newHashMap(storedDictionary);
+                idf = storedIdfValues == null ? new float[0] : storedIdfValues;
+            }
+        }
+    }
+
+    @Nonnull
+    static SparseVector vectorize(@Nonnull CharSequence text, @Nonnull Map<String, Integer> dictionary,
+                                  @Nonnull float[] idf) {
+        final Map<String, int[]> tf = termFrequencies(text);
+        final long[] packed = new long[tf.size()];
+        int size = 0;
+        for (Map.Entry<String, int[]> entry : tf.entrySet()) {
+            final Integer ordinal = dictionary.get(entry.getKey());
+            if (ordinal == null)
+                continue;
+            final float weight = (float) ((1 + Math.log(entry.getValue()[0])) * idf[ordinal]);
+            if (weight > 0)
+                packed[size++] = ((long) ordinal << 32) | (Float.floatToIntBits(weight) & 0xFFFFFFFFL);
+        }
+
+        // Sorting the packed ordinal and weight pairs orders them by ordinal
+        Arrays.sort(packed, 0, size);
+        final int[] indices = new int[size];
+        final float[] values = new float[size];
+        for (int i = 0; i < size; i++) {
+            indices[i] = (int) (packed[i] >>> 32);
+            values[i] = Float.intBitsToFloat((int) packed[i]);
+        }
+        return new SparseVector(indices, values).normalize();
+    }
+
+    /**
+     * Count the occurrences of each term in the text. Terms are maximal runs of letters or digits, lower-cased, of
+     * at least two characters.
+     */
+    @Nonnull
+    static Map<String, int[]> termFrequencies(@Nonnull CharSequence text) {
+        final Map<String, int[]> counts = Maps.newHashMap();
+        for (String term : tokenize(text)) {
+            final int[] count = counts.get(term);
+            if (count == null)
+                counts.put(term, new int[]{1});
+            else
+                count[0]++;
+        }
+        return counts;
+    }
+
+    @Nonnull
+    static List<String> tokenize(@Nonnull CharSequence text) {
+        checkNotNull(text, "text");
+        final List<String> terms = new ArrayList<String>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            final boolean inTerm = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inTerm && start < 0) {
+                start = i;
+            } else if (!inTerm && start >= 0) {
+                if (i - start >= 2)
+                    terms.add(text.subSequence(start, i).toString().toLowerCase(Locale.ENGLISH));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2013, Hamish Morgan.
+ * All Rights Reserved.
+ */
+package uk.ac.susx.mlcl.lib;
+
+import com.google.common.collect.Maps;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Bidirectional mapping between strings and dense integer ordinals. Ordinals are assigned in order of first encoding,
+ * starting at 0, and are never reassigned; the dictionary only grows.
+ * <p/>
+ * Lookups by string are lock free, and decoding an ordinal is a single array read. Encoding a new string takes a
+ * lock. The dictionary can optionally write new strings through to a backing map, from which it can later be
+ * reloaded, so that it can be persisted along with the data encoded with it.
+ *
+ * @author Hamish Morgan
+ */
+@ThreadSafe
+public class StringDictionary {
+
+    private static final int INITIAL_CAPACITY = 1 << 8;
+
+    /**
+     * Map to which new strings are written through, or null if the dictionary is held only in memory.
+     */
+    @Nullable
+    private final Map<String, Integer> store;
+    private final ConcurrentMap<String, Integer> ordinals = Maps.newConcurrentMap();
+    /**
+     * Strings indexed by ordinal. Only written while holding the lock; the reference is replaced when it grows.
+     */
+    private volatile String[] strings;
+    private volatile int size;
+
+    /**
+     * Create an empty dictionary that is held only in memory.
+     */
+    public StringDictionary() {
+        this.store = null;
+        this.strings = new String[INITIAL_CAPACITY];
+        this.size = 0;
+    }
+
+    /**
+     * Load the dictionary from the given map of strings to ordinals, to which any new strings are also added.
+     *
+     * @param store backing map of strings to ordinals
+     * @throws IllegalArgumentException if the ordinals in the store are not dense
+     */
+    public StringDictionary(@Nonnull Map<String, Integer> store) {
+        this.store = checkNotNull(store, "store");
+        final int loadedSize = store.size();
+        final String[] loaded = new String[Math.max(INITIAL_CAPACITY, Integer.highestOneBit(loadedSize) << 1)];
+        for (Map.Entry<String, Integer> entry : store.entrySet()) {
+            final int ordinal = entry.getValue();
+            checkArgument(ordinal >= 0 && ordinal < loadedSize && loaded[ordinal] == null,
+                    "Invalid dictionary ordinal %s for string: %s", ordinal, entry.getKey());
+            loaded[ordinal] = entry.getKey();
+            ordinals.put(entry.getKey(), ordinal);
+        }
+        this.strings = loaded;
+        this.size = loadedSize;
+    }
+
+    /**
+     * Get the ordinal of the given string, assigning the next free ordinal if it has not been seen before.
+     *
+     * @param string string to encode
+     * @return ordinal of the string
+     */
+    public int encode(@Nonnull final String string) {
+        final Integer ordinal = ordinals.get(checkNotNull(string, "string"));
+        if (ordinal != null)
+            return ordinal;
+        synchronized (this) {
+            final Integer existing = ordinals.get(string);
+            if (existing != null)
+                return existing;
+            final int next = size;
+            if (next == strings.length)
+                strings = Arrays.copyOf(strings, strings.length * 2);
+            strings[next] = string;
+            if (store != null)
+                store.put(string, next);
+            size = next + 1;
+            ordinals.put(string, next);
+            return next;
+        }
+    }
+
+    /**
+     * Get the ordinal of the given string, without assigning one.
+     *
+     * @param string string to look up
+     * @return ordinal of the string, or -1 if it has never been encoded
+     */
+    public int ordinalOf(@Nonnull final Object string) {
+        final Integer ordinal = ordinals.get(checkNotNull(string, "string"));
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    /**
+     * @param ordinal ordinal previously returned by {@link #encode(String)}
+     * @return the string with that ordinal
+     * @throws IndexOutOfBoundsException if no string has been assigned the ordinal
+     */
+    @Nonnull
+    public String decode(final int ordinal) {
+        checkElementIndex(ordinal, size, "ordinal");
+        return strings[ordinal];
+    }
+
+    /**
+     * @return number of distinct strings encoded so far
+     */
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{size=" + size + '}';
+    }
+}
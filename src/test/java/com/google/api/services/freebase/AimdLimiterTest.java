@@ -0,0 +1,113 @@
+package com.google.api.services.freebase;
+
+import org.junit.Test;
+import uk.ac.susx.mlcl.erl.test.AbstractTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Hamish Morgan
+ */
+public class AimdLimiterTest extends AbstractTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(10);
+
+    @Test
+    public void testAdditiveIncrease() throws InterruptedException {
+        final AimdLimiter limiter = new AimdLimiter(2, 1, 4, 0.5, 1, TimeUnit.SECONDS);
+        for (int i = 0; i < 100; i++)
+            limiter.release(limiter.acquire(), FAST, false);
+        assertEquals(4, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testMultiplicativeDecrease() throws InterruptedException {
+        final AimdLimiter limiter = new AimdLimiter(8, 1, 8, 0.5, 1, TimeUnit.SECONDS);
+        limiter.release(limiter.acquire(), FAST, true);
+        assertEquals(4, limiter.getLimit());
+        // Slow requests count as failures
+        limiter.release(limiter.acquire(), SLOW, false);
+        assertEquals(2, limiter.getLimit());
+        for (int i = 0; i < 10; i++)
+            limiter.release(limiter.acquire(), FAST, true);
+        assertEquals(1, limiter.getLimit());
+    }
+
+    @Test
+    public void testConcurrentFailuresDecreaseOnce() throws InterruptedException {
+        final AimdLimiter limiter = new AimdLimiter(8, 1, 8, 0.5, 1, TimeUnit.SECONDS);
+        final long[] permits = new long[4];
+        for (int i = 0; i < permits.length; i++)
+            permits[i] = limiter.acquire();
+        for (long permit : permits)
+            limiter.release(permit, FAST, true);
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    public void testAcquireBlocksAtLimit() throws InterruptedException {
+        final AimdLimiter limiter = new AimdLimiter(1, 1, 1, 0.5, 1, TimeUnit.SECONDS);
+        final long permit = limiter.acquire();
+        final CountDownLatch acquired = new CountDownLatch(1);
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    limiter.release(limiter.acquire(), FAST, false);
+                    acquired.countDown();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        thread.start();
+        assertTrue(!acquired.await(50, TimeUnit.MILLISECONDS));
+        limiter.release(permit, FAST, false);
+        assertTrue(acquired.await(1, TimeUnit.SECONDS));
+        thread.join();
+    }
+
+    /**
+     * Callback that records the permits it is given.
+     */
+    private static final class RecordingCallback implements AimdLimiter.PermitCallback {
+        final List<Long> permits = new ArrayList<Long>();
+
+        @Override
+        public void onPermit(long permit) {
+            permits.add(permit);
+        }
+    }
+
+    @Test
+    public void testAsyncAcquireQueuesAtLimit() {
+        final AimdLimiter limiter = new AimdLimiter(1, 1, 4, 0.5, 1, TimeUnit.SECONDS);
+        final RecordingCallback first = new RecordingCallback();
+        final RecordingCallback second = new RecordingCallback();
+        limiter.acquire(first);
+        limiter.acquire(second);
+        assertEquals(1, first.permits.size());
+        assertEquals(0, second.permits.size());
+        assertEquals(1, limiter.getWaiting());
+
+        // Releasing the first permit grants the queued caller one
+        limiter.release(first.permits.get(0), FAST, false);
+        assertEquals(2, limiter.getLimit());
+        assertEquals(1, second.permits.size());
+        assertEquals(0, limiter.getWaiting());
+        assertEquals(1, limiter.getInFlight());
+
+        // A cancelled permit is returned without adjusting the limit
+        limiter.cancel(second.permits.get(0));
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(2, limiter.getLimit());
+    }
+}
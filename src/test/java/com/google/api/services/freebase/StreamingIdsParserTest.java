@@ -0,0 +1,74 @@
+package com.google.api.services.freebase;
+
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.jackson.JacksonFactory;
+import com.google.api.services.freebase.SearchFormat.IdsResult;
+import com.google.common.base.Charsets;
+import org.junit.Test;
+import uk.ac.susx.mlcl.erl.test.AbstractTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Hamish Morgan
+ */
+public class StreamingIdsParserTest extends AbstractTest {
+
+    private final JsonFactory jsonFactory = new JacksonFactory();
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(Charsets.UTF_8));
+    }
+
+    @Test
+    public void testReadIds() throws IOException {
+        final String json = "{\"status\":\"200 OK\",\"code\":\"/api/status/ok\","
+                + "\"result\":[\"/m/02mjmr\",\"/m/0d06m5\"],\"cursor\":2,\"cost\":7,\"hits\":1234}";
+        final List<String> ids = new ArrayList<String>();
+        final String status = StreamingIdsParser.readIds(jsonFactory.createJsonParser(stream(json), Charsets.UTF_8), ids);
+        assertEquals("200 OK", status);
+        assertEquals(Arrays.asList("/m/02mjmr", "/m/0d06m5"), ids);
+    }
+
+    @Test
+    public void testReadEntityIds() throws IOException {
+        final String json = "{\"status\":\"200 OK\",\"result\":["
+                + "{\"mid\":\"/m/02mjmr\",\"id\":\"/en/barack_obama\",\"name\":\"Barack Obama\","
+                + "\"notable\":{\"name\":\"US President\",\"id\":\"/government/us_president\"},\"score\":812.3},"
+                + "{\"id\":\"/en/obama\",\"lang\":\"en\"}]}";
+        final List<String> ids = new ArrayList<String>();
+        StreamingIdsParser.readIds(jsonFactory.createJsonParser(stream(json), Charsets.UTF_8), ids);
+        assertEquals(Arrays.asList("/m/02mjmr", "/en/obama"), ids);
+    }
+
+    @Test
+    public void testBufferIsReused() throws IOException {
+        final List<String> ids = new ArrayList<String>();
+        StreamingIdsParser.readIds(jsonFactory.createJsonParser(stream("{\"result\":[\"a\"]}"), Charsets.UTF_8), ids);
+        ids.clear();
+        StreamingIdsParser.readIds(jsonFactory.createJsonParser(stream("{\"result\":[\"b\",\"c\"]}"), Charsets.UTF_8), ids);
+        assertEquals(Arrays.asList("b", "c"), ids);
+    }
+
+    @Test
+    public void testParseAndClose() throws IOException {
+        final StreamingIdsParser parser = new StreamingIdsParser(jsonFactory);
+        final IdsResult result = parser.parseAndClose(
+                stream("{\"code\":\"/api/status/ok\",\"result\":[\"x\",\"y\"]}"), Charsets.UTF_8, IdsResult.class);
+        assertEquals("/api/status/ok", result.getCode());
+        assertEquals(Arrays.asList("x", "y"), result.getResults());
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncated() throws IOException {
+        StreamingIdsParser.readIds(
+                jsonFactory.createJsonParser(stream("{\"result\":[\"a\","), Charsets.UTF_8), new ArrayList<String>());
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2013, Hamish Morgan.
+ * All Rights Reserved.
+ */
+package uk.ac.susx.mlcl.erl;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.apache.ApacheHttpTransport;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.jackson.JacksonFactory;
+import com.google.api.services.freebase.Freebase2;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.susx.mlcl.erl.test.AbstractTest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the HTTP transports against a local stand-in for the Freebase search service.
+ *
+ * @author Hamish Morgan
+ */
+public class HttpTransportsTest extends AbstractTest {
+
+    private static final byte[] SEARCH_RESPONSE = "{\"status\":\"200 OK\",\"result\":[\"/en/brighton\"]}".getBytes();
+
+    private HttpServer server;
+    private final Set<Integer> clientPorts = Collections.synchronizedSet(Sets.<Integer>newHashSet());
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private volatile long responseDelayMillis = 0;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requestCount.incrementAndGet();
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+                try {
+                    Thread.sleep(responseDelayMillis);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+                exchange.sendResponseHeaders(200, SEARCH_RESPONSE.length);
+                final OutputStream out = exchange.getResponseBody();
+                out.write(SEARCH_RESPONSE);
+                out.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private Freebase2 newFreebase(HttpTransport transport, int readTimeoutMillis) {
+        return new Freebase2.Builder(transport, new JacksonFactory(),
+                HttpTransports.newRequestInitializer(1000, readTimeoutMillis))
+                .setRootUrl("http://localhost:" + server.getAddress().getPort() + "/")
+                .build();
+    }
+
+    @Test
+    public void testNewTransport() {
+        final Properties props = new Properties();
+        assertTrue(HttpTransports.newTransport(props) instanceof NetHttpTransport);
+        props.setProperty(HttpTransports.TRANSPORT_KEY, HttpTransports.TRANSPORT_VALUE_POOLED);
+        props.setProperty(HttpTransports.MAX_CONNECTIONS_KEY, "4");
+        assertTrue(HttpTransports.newTransport(props) instanceof ApacheHttpTransport);
+    }
+
+    @Test
+    public void testPooledTransportReusesConnections() throws IOException {
+        final Freebase2 freebase = newFreebase(HttpTransports.newPooledTransport(4, 4, 1000), 1000);
+        for (int i = 0; i < 5; i++)
+            assertEquals(ImmutableList.of("/en/brighton"), freebase.searchGetIds("Brighton"));
+        assertEquals(5, requestCount.get());
+        // Sequential requests share a single kept-alive connection
+        assertEquals(1, clientPorts.size());
+    }
+
+    @Test
+    public void testCloseShutsDownPooledTransport() throws IOException {
+        final Freebase2 freebase = newFreebase(HttpTransports.newPooledTransport(4, 4, 1000), 1000);
+        assertEquals(ImmutableList.of("/en/brighton"), freebase.searchGetIds("Brighton"));
+        freebase.close();
+        try {
+            freebase.searchGetIds("Brighton");
+            fail("Expected the connection pool to be shut down");
+        } catch (IllegalStateException expected) {
+            // Connection pool shut down
+        }
+        assertEquals(1, requestCount.get());
+    }
+
+    @Test
+    public void testReadTimeout() throws IOException {
+        responseDelayMillis = 500;
+        final Freebase2 freebase = newFreebase(HttpTransports.newPooledTransport(4, 4, 1000), 100);
+        try {
+            freebase.searchGetIds("Brighton");
+            fail("Expected the request to time out");
+        } catch (IOException expected) {
+            // Timed out
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package uk.ac.susx.mlcl.erl.linker;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+import uk.ac.susx.mlcl.erl.test.AbstractTest;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Hamish Morgan
+ */
+public class AbstractRankerTest extends AbstractTest {
+
+    /**
+     * Ranker that scores each candidate by its length.
+     */
+    private static final class LengthRanker extends AbstractRanker<String, String> {
+        @Override
+        protected double score(@Nonnull String query, @Nonnull String candidate) {
+            return candidate.length();
+        }
+    }
+
+    private static List<String> candidatesOf(List<ScoredCandidate<String>> scored) {
+        final ImmutableList.Builder<String> result = ImmutableList.builder();
+        for (ScoredCandidate<String> candidate : scored)
+            result.add(candidate.getCandidate());
+        return result.build();
+    }
+
+    @Test
+    public void testTopKOrderAndTies() throws IOException {
+        final LengthRanker ranker = new LengthRanker();
+        final List<String> candidates = Arrays.asList("b", "ccc", "aa", "dd", "eeee", "f");
+
+        assertEquals(Arrays.asList("eeee", "ccc", "aa"), candidatesOf(ranker.rankTopK("q", candidates, 3)));
+        assertEquals(Arrays.asList("eeee", "ccc", "aa", "dd", "b", "f"), ranker.rankCandidates("q", candidates));
+        assertEquals(new ScoredCandidate<String>("eeee", 4), ranker.rankTopK("q", candidates, 1).get(0));
+        assertEquals(ImmutableList.of(), ranker.rankTopK("q", candidates, 0));
+        assertEquals(ImmutableList.of(), ranker.rankTopK("q", ImmutableList.<String>of(), 1));
+    }
+
+    @Test
+    public void testSelectTopKMatchesSort() {
+        final Random random = new Random(0);
+        for (int trial = 0; trial < 100; trial++) {
+            // Few distinct scores, so that there are many ties
+            final double[] scores = new double[random.nextInt(20)];
+            final List<Integer> sorted = new ArrayList<Integer>(scores.length);
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] = random.nextInt(5);
+                sorted.add(i);
+            }
+            Collections.sort(sorted, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    final int c = Double.compare(scores[b], scores[a]);
+                    return c != 0 ? c : a.compareTo(b);
+                }
+            });
+
+            final int k = random.nextInt(scores.length + 2);
+            final int[] top = AbstractRanker.selectTopK(scores, scores.length, k);
+            assertEquals(Math.min(k, scores.length), top.length);
+            for (int i = 0; i < top.length; i++)
+                assertEquals((int) sorted.get(i), top[i]);
+        }
+    }
+
+    @Test
+    public void testLinearCombinationSumsWeightedScores() throws IOException {
+        final CandidateRanker<String, String> negated = new AbstractRanker<String, String>() {
+            @Override
+            protected double score(@Nonnull String query, @Nonnull String candidate) {
+                return -candidate.length();
+            }
+        };
+        final LinearCombinationRanker<String, String> ranker = new LinearCombinationRanker.Builder<String, String>()
+                .add(new LengthRanker(), 2.0)
+                .add(negated, 0.5)
+                .build();
+        final List<String> candidates = Arrays.asList("b", "ccc", "aa", "ccc");
+
+        assertEquals(Arrays.asList(new ScoredCandidate<String>("ccc", 4.5), new ScoredCandidate<String>("aa", 3.0)),
+                ranker.rankTopK("q", candidates, 2));
+        assertEquals(Arrays.asList("ccc", "aa", "b"), ranker.rankCandidates("q", candidates));
+    }
+
+    @Test
+    public void testTwoPhaseLinkerNilThreshold() throws Exception {
+        final CandidateGenerator<String, String> generator = new StaticMapGenerator<String, String>(
+                ImmutableMap.<String, Set<String>>of(
+                        "long", ImmutableSet.of("x", "xyz"),
+                        "short", ImmutableSet.of("x")));
+        final TwoPhaseLinker<String, String> linker =
+                new TwoPhaseLinker<String, String>(generator, new LengthRanker(), "NIL", 2);
+
+        assertEquals("xyz", linker.link("long"));
+        assertEquals("NIL", linker.link("short"));
+        assertEquals("NIL", linker.link("missing"));
+        assertEquals(Arrays.asList("xyz", "NIL", "NIL"),
+                ImmutableList.copyOf(linker.batchLink(Arrays.asList("long", "short", "missing"))));
+    }
+}
@@ -0,0 +1,60 @@
+package uk.ac.susx.mlcl.erl.linker;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+import uk.ac.susx.mlcl.erl.test.AbstractTest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static uk.ac.susx.mlcl.erl.test.StubGenerators.recording;
+
+/**
+ * @author Hamish Morgan
+ */
+public class AliasMappingGeneratorTest extends AbstractTest {
+
+    @Test
+    public void testBatchesDistinctAliases() throws IOException, ExecutionException {
+        final List<Set<String>> batches = new ArrayList<Set<String>>();
+        final CandidateGenerator<String, String> delegate = recording(new StaticMapGenerator<String, String>(
+                ImmutableMap.<String, Set<String>>of("x", ImmutableSet.of("X"), "y", ImmutableSet.of("Y"))),
+                batches);
+        final AliasMappingGenerator<String, String> instance = new AliasMappingGenerator<String, String>(
+                delegate, ImmutableMap.of("a", "x", "b", "x", "y", "z", "z", "y"), true);
+
+        final Map<String, Set<String>> result = instance.batchFindCandidates(Arrays.asList("a", "b", "y", "q"));
+
+        assertEquals(ImmutableSet.of("X"), ImmutableSet.copyOf(result.get("a")));
+        assertEquals(ImmutableSet.of("X"), ImmutableSet.copyOf(result.get("b")));
+        assertEquals(ImmutableSet.of("Y"), ImmutableSet.copyOf(result.get("y")));
+        assertEquals(ImmutableSet.of(), ImmutableSet.copyOf(result.get("q")));
+        assertEquals(1, batches.size());
+        assertEquals(ImmutableSet.of("x", "y", "z", "q"), batches.get(0));
+        assertEquals(instance.findCandidates("y"), result.get("y"));
+    }
+
+    @Test
+    public void testTransitiveClosure() {
+        final Map<String, ? extends List<String>> closure = AliasMappingGenerator.transitiveClosure(
+                ImmutableMap.of("a", "b", "b", "c", "c", "d", "x", "y", "y", "x"));
+
+        assertEquals(Arrays.asList("d"), closure.get("a"));
+        assertEquals(Arrays.asList("d"), closure.get("c"));
+        // Every key on a chain shares one resolution
+        assertTrue(closure.get("a") == closure.get("b"));
+        // Both members of the loop resolve to the whole loop
+        assertEquals(ImmutableSet.of("x", "y"), ImmutableSet.copyOf(closure.get("x")));
+        assertTrue(closure.get("x") == closure.get("y"));
+        assertTrue(!closure.containsKey("d"));
+        assertEquals(Arrays.asList("s"), AliasMappingGenerator.transitiveClosure(ImmutableMap.of("s", "s")).get("s"));
+    }
+}
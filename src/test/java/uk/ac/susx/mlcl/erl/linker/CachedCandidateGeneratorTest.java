@@ -0,0 +1,121 @@
+package uk.ac.susx.mlcl.erl.linker;
+
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+import uk.ac.susx.mlcl.erl.test.AbstractTest;
+import uk.ac.susx.mlcl.erl.test.StubGenerators.CountingGenerator;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Hamish Morgan
+ */
+public class CachedCandidateGeneratorTest extends AbstractTest {
+
+    @Test
+    public void testStats() throws IOException, ExecutionException {
+        final CountingGenerator inner = CountingGenerator.numbered();
+        final CachedCandidateGenerator<String, String> instance =
+                new CachedCandidateGenerator.Builder<String, String>().setInner(inner).build();
+
+        assertEquals(ImmutableSet.of("a1"), instance.findCandidates("a"));
+        assertEquals(ImmutableSet.of("a1"), instance.findCandidates("a"));
+        instance.batchFindCandidates(Arrays.asList("a", "b"));
+
+        final CacheStats stats = instance.stats();
+        assertEquals(2, stats.hitCount());
+        assertEquals(2, stats.missCount());
+        assertEquals(2, inner.calls.get());
+        assertEquals(2, instance.size());
+    }
+
+    @Test
+    public void testDictionaryEncodesEntries() throws IOException, ExecutionException {
+        final EntityIdDictionary dictionary = new EntityIdDictionary();
+        final CachedCandidateGenerator<String, String> instance = new CachedCandidateGenerator.Builder<String, String>()
+                .setInner(CountingGenerator.numbered())
+                .setDictionary(dictionary)
+                .build();
+
+        final Set<String> candidates = instance.findCandidates("a");
+        assertTrue(candidates instanceof IntCandidateSet);
+        assertEquals(ImmutableSet.of("a1"), candidates);
+        assertTrue(instance.batchFindCandidates(Arrays.asList("a", "b")).get("b") instanceof IntCandidateSet);
+        assertEquals(2, dictionary.size());
+    }
+
+    @Test
+    public void testMaximumWeightEvicts() throws IOException {
+        final CachedCandidateGenerator<String, String> instance = new CachedCandidateGenerator.Builder<String, String>()
+                .setInner(CountingGenerator.numbered())
+                .setMaximumWeight(4)
+                .build();
+        for (int i = 0; i < 10; i++)
+            instance.findCandidates("q" + i);
+        assertTrue(instance.size() <= 2);
+        assertTrue(instance.stats().evictionCount() >= 8);
+    }
+
+    @Test
+    public void testExpireAfterWrite() throws IOException, InterruptedException {
+        final CountingGenerator inner = CountingGenerator.numbered();
+        final CachedCandidateGenerator<String, String> instance = new CachedCandidateGenerator.Builder<String, String>()
+                .setInner(inner)
+                .setExpireAfterWrite(20, TimeUnit.MILLISECONDS)
+                .build();
+        assertEquals(ImmutableSet.of("a1"), instance.findCandidates("a"));
+        Thread.sleep(50);
+        assertEquals(ImmutableSet.of("a2"), instance.findCandidates("a"));
+    }
+
+    @Test
+    public void testRefreshAfterWrite() throws IOException, InterruptedException {
+        final CountingGenerator inner = CountingGenerator.numbered();
+        final CachedCandidateGenerator<String, String> instance = new CachedCandidateGenerator.Builder<String, String>()
+                .setInner(inner)
+                .setRefreshAfterWrite(20, TimeUnit.MILLISECONDS)
+                .setRefreshExecutor(new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        command.run();
+                    }
+                })
+                .build();
+        assertEquals(ImmutableSet.of("a1"), instance.findCandidates("a"));
+        Thread.sleep(50);
+        instance.findCandidates("a");
+        assertEquals(ImmutableSet.of("a2"), instance.findCandidates("a"));
+        assertEquals(2, inner.calls.get());
+    }
+
+    @Test
+    public void testAsync() throws InterruptedException, ExecutionException, IOException {
+        final CountingGenerator inner = CountingGenerator.numbered();
+        final CachedCandidateGenerator<String, String> instance =
+                new CachedCandidateGenerator.Builder<String, String>().setInner(inner).build();
+
+        assertEquals(ImmutableSet.of("a1"), instance.findCandidatesAsync("a").get());
+        // Asynchronous loads are cached, and hits are answered without calling the inner generator
+        assertEquals(ImmutableSet.of("a1"), instance.findCandidates("a"));
+        final Map<String, Set<String>> batch = instance.batchFindCandidatesAsync(Arrays.asList("a", "b")).get();
+        assertEquals(ImmutableSet.of("a1"), batch.get("a"));
+        assertEquals(ImmutableSet.of("b2"), batch.get("b"));
+        assertTrue(instance.findCandidatesAsync("b").isDone());
+        assertEquals(2, inner.calls.get());
+
+        // One load for "a", and one for the batch containing "b"
+        final CacheStats stats = instance.stats();
+        assertEquals(2, stats.loadSuccessCount());
+        assertEquals(0, stats.loadExceptionCount());
+    }
+}
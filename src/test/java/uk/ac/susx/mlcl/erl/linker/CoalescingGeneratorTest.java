@@ -0,0 +1,125 @@
+package uk.ac.susx.mlcl.erl.linker;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.susx.mlcl.erl.test.AbstractTest;
+import uk.ac.susx.mlcl.erl.test.StubGenerators.BlockingGenerator;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Hamish Morgan
+ */
+public class CoalescingGeneratorTest extends AbstractTest {
+
+    private static final long JOIN_TIMEOUT_SECONDS = 10;
+
+    private ExecutorService executor;
+
+    @Before
+    public void createExecutor() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentCallsShareLookup() throws Exception {
+        final int callers = 8;
+        final BlockingGenerator inner = new BlockingGenerator();
+        final CountDownLatch joined = new CountDownLatch(callers - 1);
+        final CoalescingGenerator<String, String> instance = new CoalescingGenerator<String, String>(inner) {
+            @Override
+            Set<String> awaitLookup(@Nonnull Future<Set<String>> lookup)
+                    throws InterruptedIOException, ExecutionException {
+                joined.countDown();
+                return super.awaitLookup(lookup);
+            }
+        };
+
+        final List<Future<Set<String>>> futures = new ArrayList<Future<Set<String>>>();
+        for (int i = 0; i < callers; i++) {
+            futures.add(executor.submit(new Callable<Set<String>>() {
+                @Override
+                public Set<String> call() throws IOException {
+                    return instance.findCandidates("a");
+                }
+            }));
+        }
+        // Only release the lookup once every other caller is waiting for it
+        inner.awaitStarted(1);
+        assertTrue(joined.await(JOIN_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        inner.release.countDown();
+
+        for (Future<Set<String>> future : futures)
+            assertEquals(ImmutableSet.of("A"), future.get());
+        assertEquals(Arrays.asList("a"), inner.lookups);
+        assertEquals(0, instance.inFlightCount());
+    }
+
+    @Test
+    public void testBatchSkipsQueriesInFlight() throws Exception {
+        final BlockingGenerator inner = new BlockingGenerator();
+        final CoalescingGenerator<String, String> instance = new CoalescingGenerator<String, String>(inner);
+
+        final Future<Set<String>> single = executor.submit(new Callable<Set<String>>() {
+            @Override
+            public Set<String> call() throws IOException {
+                return instance.findCandidates("a");
+            }
+        });
+        inner.awaitStarted(1);
+
+        final Future<Map<String, Set<String>>> batch = executor.submit(new Callable<Map<String, Set<String>>>() {
+            @Override
+            public Map<String, Set<String>> call() throws IOException, ExecutionException {
+                return instance.batchFindCandidates(Arrays.asList("a", "b"));
+            }
+        });
+        inner.awaitStarted(2);
+        inner.release.countDown();
+
+        assertEquals(ImmutableSet.of("A"), single.get());
+        assertEquals(ImmutableSet.of("A"), batch.get().get("a"));
+        assertEquals(ImmutableSet.of("B"), batch.get().get("b"));
+        assertEquals(Arrays.asList("a", "b"), inner.lookups);
+    }
+
+    @Test
+    public void testFailureIsSharedAndNotRetained() throws Exception {
+        final BlockingGenerator inner = new BlockingGenerator();
+        final CoalescingGenerator<String, String> instance = new CoalescingGenerator<String, String>(inner);
+        inner.release.countDown();
+        try {
+            instance.findCandidates("fail");
+            fail("expected IOException");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("fail"));
+        }
+        assertEquals(0, instance.inFlightCount());
+        assertEquals(ImmutableSet.of("B"), instance.findCandidates("b"));
+    }
+}
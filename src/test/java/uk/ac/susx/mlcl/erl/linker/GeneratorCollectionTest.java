@@ -0,0 +1,291 @@
+package uk.ac.susx.mlcl.erl.linker;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.susx.mlcl.erl.test.AbstractTest;
+import uk.ac.susx.mlcl.erl.test.StubGenerators.BlockingGenerator;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static uk.ac.susx.mlcl.erl.test.StubGenerators.awaiting;
+import static uk.ac.susx.mlcl.erl.test.StubGenerators.fixed;
+import static uk.ac.susx.mlcl.erl.test.StubGenerators.recording;
+import static uk.ac.susx.mlcl.erl.test.StubGenerators.signalling;
+
+/**
+ * @author Hamish Morgan
+ */
+public class GeneratorCollectionTest extends AbstractTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void createExecutor() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Deadline for tests in which some child never completes. The other children return immediately, so this only
+     * needs to be long enough for them to be scheduled.
+     */
+    private static final long DEADLINE_MILLIS = 1000;
+
+    /**
+     * Deadline for tests in which every child completes; it should never be reached.
+     */
+    private static final long NO_DEADLINE_SECONDS = 30;
+
+    /**
+     * Generator that is blocked for the whole test, so always misses the deadline. It is released by interruption
+     * when the collection cancels it, or when the executor is shut down.
+     */
+    private static CandidateGenerator<String, String> neverCompletes() {
+        return new BlockingGenerator();
+    }
+
+    /**
+     * Generator that produces "a" for the mention "query", and whose batches omit every other query rather than
+     * mapping them to the empty set.
+     */
+    private static CandidateGenerator<String, String> answersQueryOnly() {
+        return new AbstractGenerator<String, String>() {
+            @Nonnull
+            @Override
+            public Set<String> findCandidates(@Nonnull String mention) {
+                return mention.equals("query") ? ImmutableSet.of("a") : ImmutableSet.<String>of();
+            }
+
+            @Nonnull
+            @Override
+            public Map<String, Set<String>> batchFindCandidates(@Nonnull Iterable<String> queries) {
+                return ImmutableMap.<String, Set<String>>of("query", ImmutableSet.of("a"));
+            }
+        };
+    }
+
+    @Test
+    public void testSequentialUnion() throws IOException {
+        final GeneratorCollection<String, String> instance = new GeneratorCollection.Builder<String, String>()
+                .setAggregationMethod(GeneratorCollection.AggregationMethod.UNION)
+                .addChild(fixed("a", "b"))
+                .addChild(fixed("b", "c"))
+                .build();
+        assertEquals(ImmutableSet.of("a", "b", "c"), ImmutableSet.copyOf(instance.findCandidates("query")));
+    }
+
+    @Test
+    public void testConcurrentUnionDropsLateChildren() throws IOException {
+        final GeneratorCollection<String, String> instance = new GeneratorCollection.Builder<String, String>()
+                .setAggregationMethod(GeneratorCollection.AggregationMethod.UNION)
+                .setExecutor(executor, DEADLINE_MILLIS, TimeUnit.MILLISECONDS)
+                .addChild(fixed("a", "b"))
+                .addChild(neverCompletes())
+                .addChild(fixed("c"))
+                .build();
+        assertEquals(ImmutableSet.of("a", "b", "c"), ImmutableSet.copyOf(instance.findCandidates("query")));
+    }
+
+    @Test
+    public void testConcurrentIntersection() throws IOException {
+        final GeneratorCollection<String, String> instance = new GeneratorCollection.Builder<String, String>()
+                .setAggregationMethod(GeneratorCollection.AggregationMethod.INTERSECTION)
+                .setExecutor(executor, NO_DEADLINE_SECONDS, TimeUnit.SECONDS)
+                .addChild(fixed("a", "b"))
+                .addChild(fixed("b", "c"))
+                .build();
+        assertEquals(ImmutableSet.of("b"), ImmutableSet.copyOf(instance.findCandidates("query")));
+    }
+
+    @Test
+    public void testConcurrentFirstKeepsChildOrder() throws IOException {
+        // The second child only completes after the third has been called
+        final CountDownLatch fastCalled = new CountDownLatch(1);
+        final GeneratorCollection<String, String> instance = new GeneratorCollection.Builder<String, String>()
+                .setAggregationMethod(GeneratorCollection.AggregationMethod.FIRST)
+                .setExecutor(executor, NO_DEADLINE_SECONDS, TimeUnit.SECONDS)
+                .addChild(fixed())
+                .addChild(awaiting(fastCalled, "slow"))
+                .addChild(signalling(fastCalled, "fast"))
+                .build();
+        assertEquals(ImmutableSet.of("slow"), instance.findCandidates("query"));
+    }
+
+    @Test
+    public void testRaceReturnsFirstToArrive() throws IOException, InterruptedException {
+        final BlockingGenerator blocked = new BlockingGenerator();
+        final GeneratorCollection<String, String> instance = new GeneratorCollection.Builder<String, String>()
+                .setAggregationMethod(GeneratorCollection.AggregationMethod.RACE)
+                .setExecutor(executor, NO_DEADLINE_SECONDS, TimeUnit.SECONDS)
+                .addChild(blocked)
+                .addChild(fixed())
+                .addChild(fixed("fast"))
+                .build();
+        // Returns without waiting for the blocked child, which is cancelled
+        assertEquals(ImmutableSet.of("fast"), instance.findCandidates("query"));
+        blocked.awaitStarted(1);
+    }
+
+    @Test
+    public void testBatchFirstOnlyForwardsUnresolvedQueries() throws IOException, ExecutionException {
+        final List<Set<String>> firstBatches = new ArrayList<Set<String>>();
+        final List<Set<String>> secondBatches = new ArrayList<Set<String>>();
+        final GeneratorCollection<String, String> instance = new GeneratorCollection.Builder<String, String>()
+                .setAggregationMethod(GeneratorCollection.AggregationMethod.FIRST)
+                .addChild(recording(new StaticMapGenerator<String, String>(
+                        ImmutableMap.<String, Set<String>>of("a", ImmutableSet.of("A"))), firstBatches))
+                .addChild(recording(new StaticMapGenerator<String, String>(
+                        ImmutableMap.<String, Set<String>>of("a", ImmutableSet.of("X"), "b", ImmutableSet.of("B"))),
+                        secondBatches))
+                .build();
+
+        final Map<String, Set<String>> result = instance.batchFindCandidates(Arrays.asList("a", "b", "c", "a"));
+
+        assertEquals(ImmutableSet.of("A"), result.get("a"));
+        assertEquals(ImmutableSet.of("B"), result.get("b"));
+        assertEquals(ImmutableSet.of(), result.get("c"));
+        assertEquals(Arrays.asList(ImmutableSet.of("a", "b", "c")), firstBatches);
+        assertEquals(Arrays.asList(ImmutableSet.of("b", "c")), secondBatches);
+    }
+
+    @Test
+    public void testDeadlineMissBehindCache() throws IOException, ExecutionException {
+        final GeneratorCollection<String, String> collection = new GeneratorCollection.Builder<String, String>()
+                .setAggregationMethod(GeneratorCollection.AggregationMethod.UNION)
+                .setExecutor(executor, DEADLINE_MILLIS, TimeUnit.MILLISECONDS)
+                .addChild(neverCompletes())
+                .build();
+        final CachedCandidateGenerator<String, String> instance =
+                new CachedCandidateGenerator.Builder<String, String>().setInner(collection).build();
+
+        // The cache requires a value for every query it loads, even when no child answered in time
+        final Map<String, Set<String>> result = instance.batchFindCandidates(Arrays.asList("query", "other"));
+
+        assertEquals(ImmutableSet.of("query", "other"), result.keySet());
+        assertEquals(ImmutableSet.of(), ImmutableSet.copyOf(result.get("query")));
+        assertEquals(ImmutableSet.of(), ImmutableSet.copyOf(result.get("other")));
+    }
+
+    @Test
+    public void testBatchFirstMapsUnansweredQueriesToEmpty() throws IOException, ExecutionException {
+        final CandidateGenerator<String, String> answersNothing = new AbstractGenerator<String, String>() {
+            @Nonnull
+            @Override
+            public Set<String> findCandidates(@Nonnull String mention) {
+                return ImmutableSet.of();
+            }
+
+            @Nonnull
+            @Override
+            public Map<String, Set<String>> batchFindCandidates(@Nonnull Iterable<String> queries) {
+                return ImmutableMap.of();
+            }
+        };
+        final GeneratorCollection<String, String> instance = new GeneratorCollection.Builder<String, String>()
+                .setAggregationMethod(GeneratorCollection.AggregationMethod.FIRST)
+                .addChild(answersNothing)
+                .addChild(answersQueryOnly())
+                .build();
+
+        final Map<String, Set<String>> result = instance.batchFindCandidates(Arrays.asList("query", "other"));
+
+        assertEquals(ImmutableSet.of("query", "other"), result.keySet());
+        assertEquals(ImmutableSet.of("a"), ImmutableSet.copyOf(result.get("query")));
+        assertEquals(ImmutableSet.of(), ImmutableSet.copyOf(result.get("other")));
+    }
+
+    @Test
+    public void testConcurrentBatchUnion() throws IOException, ExecutionException {
+        final List<Set<String>> batches = new ArrayList<Set<String>>();
+        final GeneratorCollection<String, String> instance = new GeneratorCollection.Builder<String, String>()
+                .setAggregationMethod(GeneratorCollection.AggregationMethod.UNION)
+                .setExecutor(executor, DEADLINE_MILLIS, TimeUnit.MILLISECONDS)
+                .addChild(recording(fixed("a", "b"), batches))
+                .addChild(neverCompletes())
+                .addChild(fixed("c"))
+                .build();
+
+        final Map<String, Set<String>> result = instance.batchFindCandidates(Arrays.asList("query", "other"));
+
+        assertEquals(ImmutableSet.of("a", "b", "c"), ImmutableSet.copyOf(result.get("query")));
+        assertEquals(ImmutableSet.of(), ImmutableSet.copyOf(result.get("other")));
+        assertEquals(1, batches.size());
+    }
+
+    @Test
+    public void testAsyncFirstCascadesAndUnionCombines() throws InterruptedException, ExecutionException {
+        final List<Set<String>> secondBatches = new ArrayList<Set<String>>();
+        final GeneratorCollection<String, String> first = new GeneratorCollection.Builder<String, String>()
+                .setAggregationMethod(GeneratorCollection.AggregationMethod.FIRST)
+                .setExecutor(executor, NO_DEADLINE_SECONDS, TimeUnit.SECONDS)
+                .addChild(new StaticMapGenerator<String, String>(
+                        ImmutableMap.<String, Set<String>>of("a", ImmutableSet.of("A"))))
+                .addChild(recording(new StaticMapGenerator<String, String>(
+                        ImmutableMap.<String, Set<String>>of("a", ImmutableSet.of("X"), "b", ImmutableSet.of("B"))),
+                        secondBatches))
+                .build();
+
+        assertEquals(ImmutableSet.of("A"), first.findCandidatesAsync("a").get());
+        final Map<String, Set<String>> batch = first.batchFindCandidatesAsync(Arrays.asList("a", "b")).get();
+        assertEquals(ImmutableSet.of("A"), batch.get("a"));
+        assertEquals(ImmutableSet.of("B"), batch.get("b"));
+        assertEquals(Arrays.<Set<String>>asList(ImmutableSet.of("b")), secondBatches);
+
+        final GeneratorCollection<String, String> union = new GeneratorCollection.Builder<String, String>()
+                .setAggregationMethod(GeneratorCollection.AggregationMethod.UNION)
+                .addChild(fixed("a", "b"))
+                .addChild(fixed("b", "c"))
+                .build();
+        assertEquals(ImmutableSet.of("a", "b", "c"), ImmutableSet.copyOf(union.findCandidatesAsync("query").get()));
+    }
+
+    @Test
+    public void testAsyncBatchFirstMapsUnansweredQueriesToEmpty()
+            throws InterruptedException, ExecutionException, TimeoutException {
+        final GeneratorCollection<String, String> instance = new GeneratorCollection.Builder<String, String>()
+                .setAggregationMethod(GeneratorCollection.AggregationMethod.FIRST)
+                .addChild(answersQueryOnly())
+                .build();
+
+        final Map<String, Set<String>> result = instance.batchFindCandidatesAsync(Arrays.asList("query", "other"))
+                .get(NO_DEADLINE_SECONDS, TimeUnit.SECONDS);
+
+        assertEquals(ImmutableSet.of("query", "other"), result.keySet());
+        assertEquals(ImmutableSet.of("a"), ImmutableSet.copyOf(result.get("query")));
+        assertEquals(ImmutableSet.of(), ImmutableSet.copyOf(result.get("other")));
+    }
+
+    @Test
+    public void testAsyncRaceReturnsFirstNonEmpty()
+            throws InterruptedException, ExecutionException, TimeoutException {
+        final GeneratorCollection<String, String> instance = new GeneratorCollection.Builder<String, String>()
+                .setAggregationMethod(GeneratorCollection.AggregationMethod.RACE)
+                .setExecutor(executor, NO_DEADLINE_SECONDS, TimeUnit.SECONDS)
+                .addChild(neverCompletes())
+                .addChild(fixed())
+                .addChild(fixed("fast"))
+                .build();
+        assertEquals(ImmutableSet.of("fast"),
+                instance.findCandidatesAsync("query").get(NO_DEADLINE_SECONDS, TimeUnit.SECONDS));
+    }
+}
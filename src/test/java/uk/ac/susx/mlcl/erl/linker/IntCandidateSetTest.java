@@ -0,0 +1,70 @@
+package uk.ac.susx.mlcl.erl.linker;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+import uk.ac.susx.mlcl.erl.test.AbstractTest;
+
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Hamish Morgan
+ */
+public class IntCandidateSetTest extends AbstractTest {
+
+    @Test
+    public void testDictionary() {
+        final EntityIdDictionary dictionary = new EntityIdDictionary();
+        assertEquals(0, dictionary.encode("E0000001"));
+        assertEquals(1, dictionary.encode("E0000002"));
+        assertEquals(0, dictionary.encode("E0000001"));
+        assertEquals(1, dictionary.ordinalOf("E0000002"));
+        assertEquals(-1, dictionary.ordinalOf("E0000003"));
+        assertEquals("E0000002", dictionary.decode(1));
+        assertEquals(2, dictionary.size());
+
+        // Grows past the initial capacity
+        for (int i = 0; i < 5000; i++)
+            dictionary.encode("id" + i);
+        assertEquals(5002, dictionary.size());
+        assertEquals("id4999", dictionary.decode(5001));
+    }
+
+    @Test
+    public void testSetContract() {
+        final EntityIdDictionary dictionary = new EntityIdDictionary();
+        final Set<String> expected = ImmutableSet.of("a", "b", "c");
+        final IntCandidateSet set = IntCandidateSet.copyOf(dictionary, ImmutableList.of("c", "a", "b", "a"));
+
+        assertEquals(3, set.size());
+        assertTrue(set.contains("b"));
+        assertFalse(set.contains("d"));
+        assertFalse(set.contains(1));
+        assertEquals(expected, set);
+        assertEquals(set, expected);
+        assertEquals(expected.hashCode(), set.hashCode());
+        // Iterated in ordinal order
+        assertEquals(ImmutableList.of("c", "a", "b"), ImmutableList.copyOf(set));
+        assertTrue(IntCandidateSet.empty(dictionary).isEmpty());
+    }
+
+    @Test
+    public void testSetAlgebra() {
+        final EntityIdDictionary dictionary = new EntityIdDictionary();
+        final IntCandidateSet a = IntCandidateSet.copyOf(dictionary, ImmutableList.of("a", "b", "c", "d"));
+        final IntCandidateSet b = IntCandidateSet.copyOf(dictionary, ImmutableList.of("c", "d", "e"));
+
+        assertEquals(ImmutableSet.of("a", "b", "c", "d", "e"), a.union(b));
+        assertEquals(ImmutableSet.of("c", "d"), a.intersection(b));
+        assertTrue(a.intersection(IntCandidateSet.empty(dictionary)).isEmpty());
+        assertSame(a, a.union(a.intersection(b)));
+
+        // Combined without views when both sets share a dictionary
+        assertTrue(GeneratorCollection.AggregationMethod.union(a, b) instanceof IntCandidateSet);
+        assertTrue(GeneratorCollection.AggregationMethod.intersection(a, b) instanceof IntCandidateSet);
+        final Set<String> other = IntCandidateSet.copyOf(new EntityIdDictionary(), ImmutableList.of("a", "e"));
+        assertEquals(ImmutableSet.of("a"), GeneratorCollection.AggregationMethod.intersection(a, other));
+    }
+}
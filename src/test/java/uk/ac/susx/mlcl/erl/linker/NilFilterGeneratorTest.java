@@ -0,0 +1,75 @@
+package uk.ac.susx.mlcl.erl.linker;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+import uk.ac.susx.mlcl.erl.test.AbstractTest;
+import uk.ac.susx.mlcl.erl.test.StubGenerators.CountingGenerator;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Hamish Morgan
+ */
+public class NilFilterGeneratorTest extends AbstractTest {
+
+    /**
+     * @return counting generator that produces "K" for the mention "known", and nothing otherwise
+     */
+    private static CountingGenerator knownOnly() {
+        return new CountingGenerator(new StaticMapGenerator<String, String>(
+                ImmutableMap.<String, Set<String>>of("known", ImmutableSet.of("K"))));
+    }
+
+    @Test
+    public void testRepeatedNilSkipsDelegate() throws IOException {
+        final CountingGenerator inner = knownOnly();
+        final NilFilterGenerator<String, String> instance = NilFilterGenerator.forStrings(inner);
+
+        assertEquals(ImmutableSet.of(), instance.findCandidates("unknown"));
+        assertEquals(ImmutableSet.of(), instance.findCandidates("unknown"));
+        assertEquals(ImmutableSet.of("K"), instance.findCandidates("known"));
+        assertEquals(ImmutableSet.of("K"), instance.findCandidates("known"));
+        assertEquals(3, inner.calls.get());
+        assertEquals(1, instance.getFilteredCount());
+    }
+
+    @Test
+    public void testBatchOnlyForwardsUnfiltered() throws IOException, ExecutionException {
+        final CountingGenerator inner = knownOnly();
+        final NilFilterGenerator<String, String> instance = NilFilterGenerator.forStrings(inner);
+        instance.findCandidates("x");
+
+        final Map<String, Set<String>> result = instance.batchFindCandidates(Arrays.asList("x", "y", "known"));
+        assertEquals(ImmutableSet.of(), result.get("x"));
+        assertEquals(ImmutableSet.of(), result.get("y"));
+        assertEquals(ImmutableSet.of("K"), result.get("known"));
+        assertEquals(3, inner.calls.get());
+    }
+
+    @Test
+    public void testRebuildForgetsOldGenerations() throws IOException {
+        final CountingGenerator inner = knownOnly();
+        final NilFilterGenerator<String, String> instance = new NilFilterGenerator<String, String>(
+                inner, NilFilterGenerator.CharSequenceFunnel.INSTANCE, 1, 0.01, 0, TimeUnit.SECONDS);
+
+        instance.findCandidates("a");
+        instance.findCandidates("b");
+        instance.findCandidates("c");
+        assertEquals(3, inner.calls.get());
+
+        // "b" and "c" are held by the current and previous generations, but "a" has been forgotten
+        instance.findCandidates("c");
+        instance.findCandidates("b");
+        assertEquals(3, inner.calls.get());
+        instance.findCandidates("a");
+        assertEquals(4, inner.calls.get());
+    }
+}
@@ -0,0 +1,57 @@
+package uk.ac.susx.mlcl.erl.linker;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+import uk.ac.susx.mlcl.erl.tac.kb.NameNormalizer;
+import uk.ac.susx.mlcl.erl.test.AbstractTest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static uk.ac.susx.mlcl.erl.test.StubGenerators.recording;
+import static uk.ac.susx.mlcl.erl.test.StubGenerators.upperCase;
+
+/**
+ * The delegates here produce the query they were given in upper case, so each result shows the key that reached the
+ * delegate.
+ *
+ * @author Hamish Morgan
+ */
+public class NormalizingGeneratorTest extends AbstractTest {
+
+    @Test
+    public void testFindCandidatesNormalizesQuery() throws IOException {
+        final NormalizingGenerator<String> instance =
+                new NormalizingGenerator<String>(upperCase(), NameNormalizer.function());
+
+        assertEquals(ImmutableSet.of("CAFE NERO"), instance.findCandidates("Caf\u00e9  Nero!"));
+        assertEquals(ImmutableSet.of("USA"), instance.findCandidates("U.S.A."));
+    }
+
+    @Test
+    public void testBatchFindCandidatesNormalizesQueries() throws IOException, ExecutionException {
+        final List<Set<String>> batches = new ArrayList<Set<String>>();
+        final NormalizingGenerator<String> instance = new NormalizingGenerator<String>(
+                recording(upperCase(), batches), NameNormalizer.function());
+
+        final Map<String, Set<String>> result =
+                instance.batchFindCandidates(Arrays.asList("U.S.A.", "usa", "Caf\u00e9  Nero!", "U.S.A."));
+
+        // Queries with the same key are looked up once, as that key
+        assertEquals(1, batches.size());
+        assertEquals(ImmutableSet.of("usa", "cafe nero"), batches.get(0));
+
+        // Results are keyed by the original queries, in the order they were given
+        assertEquals(ImmutableList.of("U.S.A.", "usa", "Caf\u00e9  Nero!"), ImmutableList.copyOf(result.keySet()));
+        assertEquals(ImmutableSet.of("USA"), result.get("U.S.A."));
+        assertEquals(ImmutableSet.of("USA"), result.get("usa"));
+        assertEquals(ImmutableSet.of("CAFE NERO"), result.get("Caf\u00e9  Nero!"));
+    }
+}
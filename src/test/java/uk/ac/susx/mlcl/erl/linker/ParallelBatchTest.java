@@ -0,0 +1,117 @@
+package uk.ac.susx.mlcl.erl.linker;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.susx.mlcl.erl.test.AbstractTest;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Hamish Morgan
+ */
+public class ParallelBatchTest extends AbstractTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void createExecutor() {
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @After
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    private static List<Integer> range(int n) {
+        final List<Integer> items = new ArrayList<Integer>(n);
+        for (int i = 0; i < n; i++)
+            items.add(i);
+        return items;
+    }
+
+    @Test
+    public void testMapPreservesOrderAndBoundsParallelism() throws IOException, ExecutionException {
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+        final List<Integer> result = ParallelBatch.on(executor, 3).map(range(1000),
+                new ParallelBatch.ChunkFunction<Integer, Integer>() {
+                    @Nonnull
+                    @Override
+                    public List<Integer> apply(@Nonnull List<Integer> chunk) {
+                        final int now = active.incrementAndGet();
+                        synchronized (maxActive) {
+                            maxActive.set(Math.max(maxActive.get(), now));
+                        }
+                        try {
+                            Thread.sleep(chunk.get(0) % 7);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        final List<Integer> squares = new ArrayList<Integer>(chunk.size());
+                        for (int i : chunk)
+                            squares.add(i * i);
+                        active.decrementAndGet();
+                        return squares;
+                    }
+                });
+
+        assertEquals(1000, result.size());
+        for (int i = 0; i < 1000; i++)
+            assertEquals(i * i, (int) result.get(i));
+        assertTrue(maxActive.get() <= 3);
+    }
+
+    @Test
+    public void testMapPropagatesIOException() throws ExecutionException {
+        try {
+            ParallelBatch.on(executor, 4).map(range(100), new ParallelBatch.ChunkFunction<Integer, Integer>() {
+                @Nonnull
+                @Override
+                public List<Integer> apply(@Nonnull List<Integer> chunk) throws IOException {
+                    if (chunk.contains(50))
+                        throw new IOException("failed");
+                    return chunk;
+                }
+            });
+            fail();
+        } catch (IOException expected) {
+            assertEquals("failed", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void testTwoPhaseLinkerParallelBatch() throws IOException, ExecutionException {
+        final ImmutableMap.Builder<String, Set<String>> candidates = ImmutableMap.builder();
+        final List<String> queries = new ArrayList<String>();
+        for (int i = 0; i < 200; i++) {
+            queries.add("q" + i);
+            if (i % 3 != 0)
+                candidates.put("q" + i, ImmutableSet.of("e" + i));
+        }
+        final TwoPhaseLinker<String, String> linker = new TwoPhaseLinker<String, String>(
+                new StaticMapGenerator<String, String>(candidates.build()), new NullRanker<String, String>(),
+                "NIL", Double.NEGATIVE_INFINITY, ParallelBatch.on(executor, 4));
+
+        final List<String> links = ImmutableList.copyOf(linker.batchLink(queries));
+        assertEquals(200, links.size());
+        for (int i = 0; i < 200; i++)
+            assertEquals(i % 3 != 0 ? "e" + i : "NIL", links.get(i));
+    }
+}
@@ -0,0 +1,73 @@
+package uk.ac.susx.mlcl.erl.linker;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+import uk.ac.susx.mlcl.erl.test.AbstractTest;
+import uk.ac.susx.mlcl.erl.test.StubGenerators.CountingGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static uk.ac.susx.mlcl.erl.test.StubGenerators.upperCase;
+
+/**
+ * @author Hamish Morgan
+ */
+public class PersistentCandidateGeneratorTest extends AbstractTest {
+
+    private File newDbFile() throws IOException {
+        final File file = newTempFile();
+        assertTrue(file.delete());
+        return file;
+    }
+
+    @Test
+    public void testSurvivesRestart() throws IOException, ExecutionException {
+        final File file = newDbFile();
+
+        final CountingGenerator first = new CountingGenerator(upperCase());
+        final PersistentCandidateGenerator<String, String> before = new PersistentCandidateGenerator.Builder<String, String>()
+                .setInner(first).setFile(file).build();
+        before.batchFindCandidates(Arrays.asList("a", "b"));
+        assertEquals(ImmutableSet.of("A"), before.findCandidates("a"));
+        assertEquals(2, first.calls.get());
+        before.close();
+
+        final CountingGenerator second = new CountingGenerator(upperCase());
+        final PersistentCandidateGenerator<String, String> after = new PersistentCandidateGenerator.Builder<String, String>()
+                .setInner(second).setFile(file).build();
+        final Map<String, Set<String>> result = after.batchFindCandidates(Arrays.asList("a", "b", "c"));
+        assertEquals(ImmutableSet.of("A"), ImmutableSet.copyOf(result.get("a")));
+        assertEquals(ImmutableSet.of("B"), ImmutableSet.copyOf(result.get("b")));
+        assertEquals(ImmutableSet.of("C"), ImmutableSet.copyOf(result.get("c")));
+        assertEquals(1, second.calls.get());
+        after.close();
+    }
+
+    @Test
+    public void testMaximumSizeEvictsOldest() throws IOException {
+        final CountingGenerator inner = new CountingGenerator(upperCase());
+        final PersistentCandidateGenerator<String, String> instance = new PersistentCandidateGenerator.Builder<String, String>()
+                .setInner(inner)
+                .setFile(newDbFile())
+                .setMaximumSize(3)
+                .setFlushSize(1)
+                .setCompactionThreshold(2)
+                .build();
+        for (String query : Arrays.asList("a", "b", "c", "d", "e"))
+            instance.findCandidates(query);
+        assertEquals(3, instance.size());
+
+        instance.findCandidates("e");
+        assertEquals(5, inner.calls.get());
+        instance.findCandidates("a");
+        assertEquals(6, inner.calls.get());
+        instance.close();
+    }
+}
@@ -0,0 +1,121 @@
+package uk.ac.susx.mlcl.erl.linker;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+import uk.ac.susx.mlcl.erl.test.AbstractTest;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Hamish Morgan
+ */
+public class ReplayGeneratorTest extends AbstractTest {
+
+    private static final Map<String, Set<String>> RESPONSES = ImmutableMap.<String, Set<String>>of(
+            "Obama", ImmutableSet.of("/m/02mjmr", "/m/025s5v9"),
+            "Brighton", ImmutableSet.of("/m/0n9dn"),
+            "Nowhere", ImmutableSet.<String>of());
+
+    @Test
+    public void testRecordAndReplay() throws Exception {
+        final File file = newTempFile();
+        assertTrue(file.delete());
+
+        final RecordingGenerator recorder =
+                new RecordingGenerator(new StaticMapGenerator<String, String>(RESPONSES), file);
+        assertEquals(RESPONSES.get("Obama"), recorder.findCandidates("Obama"));
+        recorder.batchFindCandidates(ImmutableList.of("Brighton", "Nowhere"));
+        assertEquals(3, recorder.getRecordCount());
+        recorder.close();
+
+        final ReplayGenerator replay = new ReplayGenerator(file);
+        assertEquals(3, replay.size());
+        assertEquals(RESPONSES.get("Obama"), replay.findCandidates("Obama"));
+        assertEquals(RESPONSES, replay.batchFindCandidates(RESPONSES.keySet()));
+        assertTrue(replay.findCandidates("Not recorded").isEmpty());
+        assertEquals(1, replay.getMissCount());
+    }
+
+    @Test
+    public void testAppendAndTruncatedRecord() throws Exception {
+        final File file = newTempFile();
+        assertTrue(file.delete());
+
+        RecordingGenerator recorder = new RecordingGenerator(new StaticMapGenerator<String, String>(
+                ImmutableMap.<String, Set<String>>of("Brighton", ImmutableSet.of("old"))), file);
+        recorder.findCandidates("Brighton");
+        recorder.close();
+        recorder = new RecordingGenerator(new StaticMapGenerator<String, String>(RESPONSES), file);
+        recorder.findCandidates("Brighton");
+        recorder.findCandidates("Obama");
+        recorder.close();
+
+        // Cut the last record short, as a crash might
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+
+        final ReplayGenerator replay = new ReplayGenerator(file);
+        // The last response for a query wins
+        assertEquals(ImmutableSet.of("/m/0n9dn"), replay.findCandidates("Brighton"));
+        assertTrue(replay.findCandidates("Obama").isEmpty());
+    }
+
+    @Test
+    public void testAppendAfterTruncatedRecord() throws Exception {
+        final File file = newTempFile();
+        assertTrue(file.delete());
+
+        RecordingGenerator recorder = new RecordingGenerator(new StaticMapGenerator<String, String>(RESPONSES), file);
+        recorder.findCandidates("Obama");
+        recorder.findCandidates("Nowhere");
+        recorder.close();
+        final long complete = file.length();
+
+        // Cut the last record short, as a crash might, then carry on recording to the same file
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(complete - 3);
+        raf.close();
+        recorder = new RecordingGenerator(new StaticMapGenerator<String, String>(RESPONSES), file);
+        recorder.findCandidates("Brighton");
+        recorder.close();
+
+        final ReplayGenerator replay = new ReplayGenerator(file);
+        assertEquals(2, replay.size());
+        assertEquals(RESPONSES.get("Obama"), replay.findCandidates("Obama"));
+        assertEquals(RESPONSES.get("Brighton"), replay.findCandidates("Brighton"));
+        assertEquals(0, replay.getMissCount());
+    }
+
+    @Test
+    public void testLatency() throws Exception {
+        final File file = newTempFile();
+        assertTrue(file.delete());
+        new RecordingGenerator(new StaticMapGenerator<String, String>(RESPONSES), file).close();
+
+        final ReplayGenerator replay = new ReplayGenerator(file, 20, 10, TimeUnit.MILLISECONDS);
+        final long start = System.nanoTime();
+        replay.batchFindCandidates(RESPONSES.keySet());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotARecording() throws Exception {
+        final File file = newTempFile();
+        final FileOutputStream out = new FileOutputStream(file);
+        out.write("not a recording".getBytes("UTF-8"));
+        out.close();
+        new ReplayGenerator(file);
+    }
+}
@@ -0,0 +1,87 @@
+package uk.ac.susx.mlcl.erl.linker;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+import uk.ac.susx.mlcl.erl.tac.io.Tac2009KnowledgeBaseIO;
+import uk.ac.susx.mlcl.erl.tac.kb.TacKnowledgeBase;
+import uk.ac.susx.mlcl.erl.test.AbstractTest;
+
+import javax.annotation.Nullable;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Hamish Morgan
+ */
+public class TacKnowledgeBaseGeneratorTest extends AbstractTest {
+
+    private static final String SAMPLE_KB = "/uk/ac/susx/mlcl/erl/tac/io/tac09-kb-sample.xml";
+
+    @Nullable
+    private TacKnowledgeBase kb = null;
+
+    @Before
+    public void createKnowledgeBase() throws IOException, ParserConfigurationException, SAXException {
+        final File dbFile = newTempFile();
+        assertTrue(dbFile.delete());
+        kb = Tac2009KnowledgeBaseIO.create(dbFile, getResourceAsFile(SAMPLE_KB));
+    }
+
+    @After
+    public void closeKnowledgeBase() {
+        if (kb != null)
+            kb.close();
+    }
+
+    @Test
+    public void testFindCandidatesByAlias() throws IOException {
+        final TacKnowledgeBaseGenerator instance = new TacKnowledgeBaseGenerator(kb);
+
+        assertEquals(ImmutableSet.of("E0000003"), instance.findCandidates("Theodore Roberts"));
+        // Disambiguation suffixes are stripped from the aliases at import time
+        assertTrue(instance.findCandidates("Mike Quigley").contains("E0000001"));
+        assertEquals(ImmutableSet.of("E0000009"), instance.findCandidates("Gablenz"));
+    }
+
+    @Test
+    public void testFindCandidatesByNormalizedAlias() throws IOException {
+        final TacKnowledgeBaseGenerator instance = new TacKnowledgeBaseGenerator(kb);
+
+        assertTrue(instance.findCandidates("MIKE  QUIGLEY.").contains("E0000001"));
+        assertEquals(ImmutableSet.of("E0000009"), instance.findCandidates("gablenz saxony"));
+    }
+
+    @Test
+    public void testFindCandidatesUnknownMention() throws IOException {
+        final TacKnowledgeBaseGenerator instance = new TacKnowledgeBaseGenerator(kb);
+
+        assertTrue(instance.findCandidates("No Such Entity").isEmpty());
+    }
+
+    @Test
+    public void testBatchFindCandidates() throws IOException, ExecutionException {
+        final TacKnowledgeBaseGenerator instance = new TacKnowledgeBaseGenerator(kb);
+
+        final Map<String, Set<String>> result = instance.batchFindCandidates(
+                Arrays.asList("Theodore Roberts", "theodore roberts", "No Such Entity", "Theodore Roberts"));
+
+        assertEquals(ImmutableList.of("Theodore Roberts", "theodore roberts", "No Such Entity"),
+                ImmutableList.copyOf(result.keySet()));
+        for (Map.Entry<String, Set<String>> entry : result.entrySet())
+            assertEquals(instance.findCandidates(entry.getKey()), entry.getValue());
+        assertEquals(ImmutableSet.of("E0000003"), result.get("theodore roberts"));
+        assertTrue(result.get("No Such Entity").isEmpty());
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2013, Hamish Morgan.
+ * All Rights Reserved.
+ */
+package uk.ac.susx.mlcl.erl.snlp;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.util.CoreMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.susx.mlcl.erl.linker.AbstractGenerator;
+import uk.ac.susx.mlcl.erl.linker.CandidateGenerator;
+import uk.ac.susx.mlcl.erl.linker.NullRanker;
+import uk.ac.susx.mlcl.erl.test.AbstractTest;
+import uk.ac.susx.mlcl.erl.test.StubGenerators.CountingGenerator;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Hamish Morgan
+ */
+public class DocumentBatcherTest extends AbstractTest {
+
+    /**
+     * Generator that links every mention to an id made from its text.
+     */
+    private static final CandidateGenerator<String, String> MID_GENERATOR = new AbstractGenerator<String, String>() {
+        @Nonnull
+        @Override
+        public Set<String> findCandidates(@Nonnull String mention) {
+            return ImmutableSet.of("/m/" + mention.trim());
+        }
+    };
+
+    private ScheduledExecutorService scheduler;
+    private CountingGenerator generator;
+    private EntityLinkingAnnotator annotator;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        generator = new CountingGenerator(MID_GENERATOR);
+        annotator = new EntityLinkingAnnotator(generator, new NullRanker<String, String>());
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Create a single sentence document in which every word is a PERSON mention, separated by "O" tokens.
+     */
+    @Nonnull
+    private static Annotation document(@Nonnull String... names) {
+        final StringBuilder text = new StringBuilder();
+        final List<CoreLabel> tokens = Lists.newArrayList();
+        for (String name : names) {
+            tokens.add(token(text, name, "PERSON"));
+            tokens.add(token(text, "and", "O"));
+        }
+        final Annotation sentence = new Annotation(text.toString());
+        sentence.set(CoreAnnotations.TokensAnnotation.class, tokens);
+        final Annotation document = new Annotation(text.toString());
+        document.set(CoreAnnotations.TokensAnnotation.class, tokens);
+        document.set(CoreAnnotations.SentencesAnnotation.class, ImmutableList.<CoreMap>of(sentence));
+        return document;
+    }
+
+    @Nonnull
+    private static CoreLabel token(@Nonnull StringBuilder text, @Nonnull String word, @Nonnull String tag) {
+        final CoreLabel token = new CoreLabel();
+        token.setWord(word);
+        token.set(CoreAnnotations.TextAnnotation.class, word);
+        token.set(CoreAnnotations.NamedEntityTagAnnotation.class, tag);
+        token.setBeginPosition(text.length());
+        text.append(word);
+        token.setEndPosition(text.length());
+        text.append(' ');
+        return token;
+    }
+
+    @Nonnull
+    private static String linkOf(@Nonnull Annotation document, int token) {
+        return document.get(CoreAnnotations.TokensAnnotation.class).get(token)
+                .get(EntityLinkingAnnotator.EntityKbIdAnnotation.class);
+    }
+
+    @Test
+    public void testFullWindowIsLinkedInOneBatch() throws Exception {
+        final DocumentBatcher batcher = new DocumentBatcher(annotator, 3, 0, TimeUnit.MILLISECONDS, scheduler);
+        final Annotation a = document("Obama", "Quigley");
+        final Annotation b = document("Obama");
+        final Annotation c = document("Brighton");
+
+        final ListenableFuture<Annotation> fa = batcher.submit(a);
+        final ListenableFuture<Annotation> fb = batcher.submit(b);
+        assertFalse(fa.isDone());
+        assertEquals(2, batcher.pendingCount());
+        batcher.submit(c);
+
+        assertSame(a, fa.get(1, TimeUnit.SECONDS));
+        assertSame(b, fb.get(1, TimeUnit.SECONDS));
+        assertEquals(1, generator.batches.get());
+        // Mentions shared between documents are only looked up once
+        assertEquals(3, generator.calls.get());
+        assertEquals("/m/Obama", linkOf(a, 0));
+        assertEquals("/m/Quigley", linkOf(a, 2));
+        assertEquals("/m/Obama", linkOf(b, 0));
+        assertEquals("/m/Brighton", linkOf(c, 0));
+        batcher.close();
+    }
+
+    @Test
+    public void testPartialWindowIsLinkedAfterDelay() throws Exception {
+        final DocumentBatcher batcher = new DocumentBatcher(annotator, 100, 20, TimeUnit.MILLISECONDS, scheduler);
+        final ListenableFuture<Annotation> fa = batcher.submit(document("Obama"));
+        final ListenableFuture<Annotation> fb = batcher.submit(document("Quigley"));
+
+        fa.get(1, TimeUnit.SECONDS);
+        fb.get(1, TimeUnit.SECONDS);
+        assertEquals(1, generator.batches.get());
+        assertEquals(0, batcher.pendingCount());
+        batcher.close();
+    }
+
+    @Test
+    public void testCloseFlushes() throws Exception {
+        final DocumentBatcher batcher = new DocumentBatcher(annotator, 100, 0, TimeUnit.MILLISECONDS, scheduler);
+        final Annotation a = document("Obama");
+        final ListenableFuture<Annotation> fa = batcher.submit(a);
+        assertFalse(fa.isDone());
+        batcher.close();
+        assertSame(a, fa.get(1, TimeUnit.SECONDS));
+        assertEquals("/m/Obama", linkOf(a, 0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSubmitAfterClose() {
+        final DocumentBatcher batcher = new DocumentBatcher(annotator, 100, 0, TimeUnit.MILLISECONDS, scheduler);
+        batcher.close();
+        batcher.submit(document("Obama"));
+    }
+}
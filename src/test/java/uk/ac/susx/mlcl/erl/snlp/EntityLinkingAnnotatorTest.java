@@ -20,11 +20,19 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.List;
 import java.util.Properties;
+import javax.xml.parsers.ParserConfigurationException;
 
 import org.junit.Test;
+import org.xml.sax.SAXException;
+import uk.ac.susx.mlcl.erl.linker.TacKnowledgeBaseGenerator;
 import uk.ac.susx.mlcl.erl.snlp.EntityLinkingAnnotator;
+import uk.ac.susx.mlcl.erl.tac.io.Tac2009KnowledgeBaseIO;
+import uk.ac.susx.mlcl.erl.tac.kb.TacKnowledgeBase;
 import uk.ac.susx.mlcl.erl.test.AbstractTest;
 
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
 /**
  *
  * @author hamish
@@ -151,6 +159,31 @@ public class EntityLinkingAnnotatorTest extends AbstractTest {
 
         ax.xmlPrint(document, System.out);
     }
+
+    @Test
+    public void testCloseClosesKnowledgeBase() throws IOException, ParserConfigurationException, SAXException {
+        final File dbFile = newTempFile();
+        assertTrue(dbFile.delete());
+        Tac2009KnowledgeBaseIO.create(dbFile,
+                getResourceAsFile("/uk/ac/susx/mlcl/erl/tac/io/tac09-kb-sample.xml")).close();
+
+        final Properties props = new Properties();
+        props.setProperty("nel.generator", "tac_kb");
+        props.setProperty("nel.generator.tac_kb.path", dbFile.getPath());
+        props.setProperty("nel.generator.cached", "false");
+        final EntityLinkingAnnotator instance =
+                (EntityLinkingAnnotator) new EntityLinkingAnnotator.Factory(props).create();
+        final TacKnowledgeBase kb = ((TacKnowledgeBaseGenerator) instance.getGenerator()).getKnowledgeBase();
+        assertTrue(kb.getIdsByAlias("Theodore Roberts").contains("E0000003"));
+
+        instance.close();
+
+        try {
+            kb.getIdsByAlias("Theodore Roberts");
+            fail("Expected the knowledge base to be closed");
+        } catch (IOException expected) {
+        }
+    }
 //    
 //    /**
 //     * Test of newInstance method, of class EntityLinkingAnnotator.
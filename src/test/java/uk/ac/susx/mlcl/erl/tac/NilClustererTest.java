@@ -0,0 +1,64 @@
+package uk.ac.susx.mlcl.erl.tac;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import uk.ac.susx.mlcl.erl.tac.queries.Link;
+import uk.ac.susx.mlcl.erl.tac.queries.Query;
+import uk.ac.susx.mlcl.erl.test.AbstractTest;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Hamish Morgan
+ */
+public class NilClustererTest extends AbstractTest {
+
+    @Test
+    public void testClusterNames() {
+        final List<String> names = ImmutableList.of(
+                "Barack Obama", "Mike Quigley", "barack obama", "BARACK  OBAMA.", "Barack Obamma",
+                "Quigley", "", "");
+        final int[] clusters = new NilClusterer().cluster(names);
+
+        // Clusters are numbered in order of first occurrence
+        assertEquals(0, clusters[0]);
+        assertEquals(1, clusters[1]);
+        // Normalized names are always clustered together
+        assertEquals(0, clusters[2]);
+        assertEquals(0, clusters[3]);
+        // A near miss is clustered through MinHash
+        assertEquals(0, clusters[4]);
+        // Dissimilar names are not
+        assertTrue(clusters[1] != clusters[5]);
+        // Empty names are never clustered
+        assertTrue(clusters[6] != clusters[7]);
+    }
+
+    @Test
+    public void testClusterIsStable() {
+        final List<String> names = ImmutableList.of("Alpha", "Beta", "alpha", "Gamma", "BETA");
+        assertArrayEquals(new int[]{0, 1, 0, 2, 1}, new NilClusterer().cluster(names));
+        assertArrayEquals(new NilClusterer().cluster(names), new NilClusterer().cluster(names));
+    }
+
+    @Test
+    public void testNilLinkerClusters() throws Exception {
+        final List<Query> queries = ImmutableList.of(
+                new Query("EL1", "Mike Quigley", "APW_ENG_1"),
+                new Query("EL2", "Barack Obama", "APW_ENG_2"),
+                new Query("EL3", "mike quigley", "APW_ENG_3"));
+        final NilLinker linker = new NilLinker(new NilClusterer());
+
+        final List<Link> first = ImmutableList.copyOf(linker.batchLink(queries));
+        assertEquals("NIL1", first.get(0).getEntityNodeId());
+        assertEquals("NIL2", first.get(1).getEntityNodeId());
+        assertEquals("NIL1", first.get(2).getEntityNodeId());
+
+        // The next batch continues after the clusters of the first
+        final List<Link> second = ImmutableList.copyOf(linker.batchLink(queries));
+        assertEquals("NIL3", second.get(0).getEntityNodeId());
+        assertEquals("NIL4", second.get(1).getEntityNodeId());
+    }
+}
@@ -0,0 +1,136 @@
+package uk.ac.susx.mlcl.erl.tac.io;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+import uk.ac.susx.mlcl.erl.tac.kb.Entity;
+import uk.ac.susx.mlcl.erl.tac.kb.EntitySerializer;
+import uk.ac.susx.mlcl.erl.test.AbstractTest;
+import uk.ac.susx.mlcl.lib.StringDictionary;
+
+import javax.annotation.Nonnull;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.text.MessageFormat.format;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the size and decoding time of knowledge base entities stored with Java serialization against
+ * {@link EntitySerializer}, with and without wiki text compression, over the sample knowledge base.
+ * <p/>
+ * The class name does not match the surefire test patterns, so it only runs when requested explicitly:
+ * <pre>
+ *     mvn test -Dtest=EntityEncodingBenchmark
+ * </pre>
+ *
+ * @author Hamish Morgan
+ */
+public class EntityEncodingBenchmark extends AbstractTest {
+
+    private static final Log LOG = LogFactory.getLog(EntityEncodingBenchmark.class);
+
+    /**
+     * Number of times each decoder is run before timing, so both are measured after JIT compilation.
+     */
+    private static final int WARMUP_ROUNDS = 3;
+
+    /**
+     * Number of passes over the sample in each timed round.
+     */
+    private static final int PASSES = 50;
+
+    private List<Entity> readSample() throws ParserConfigurationException, SAXException, IOException {
+        final List<Entity> entities = new ArrayList<Entity>();
+        SAXParserFactory.newInstance().newSAXParser().parse(getResourceAsFile("tac09-kb-sample.xml"),
+                new Tac2009KnowledgeBaseIO.Tac2009SaxHandler(new Tac2009KnowledgeBaseIO.TacEntryHandler() {
+                    @Override
+                    public void entry(Entity entry) {
+                        entities.add(entry);
+                    }
+                }));
+        return entities;
+    }
+
+    private static byte[] javaSerialize(@Nonnull Entity entity) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(entity);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static long totalLength(@Nonnull List<byte[]> records) {
+        long total = 0;
+        for (byte[] record : records)
+            total += record.length;
+        return total;
+    }
+
+    private static long timeJavaDecoding(@Nonnull List<byte[]> records) throws IOException, ClassNotFoundException {
+        final long start = System.nanoTime();
+        for (int pass = 0; pass < PASSES; pass++)
+            for (byte[] record : records)
+                new ObjectInputStream(new ByteArrayInputStream(record)).readObject();
+        return System.nanoTime() - start;
+    }
+
+    private static long timeCompactDecoding(@Nonnull EntitySerializer serializer, @Nonnull List<byte[]> records)
+            throws IOException {
+        final long start = System.nanoTime();
+        for (int pass = 0; pass < PASSES; pass++)
+            for (byte[] record : records)
+                serializer.fromBytes(record);
+        return System.nanoTime() - start;
+    }
+
+    @Test
+    public void testSampleKnowledgeBase()
+            throws ParserConfigurationException, SAXException, IOException, ClassNotFoundException {
+        final List<Entity> entities = readSample();
+        final EntitySerializer plain = new EntitySerializer(new StringDictionary(), false);
+        final EntitySerializer compressing = new EntitySerializer(new StringDictionary(), true);
+
+        final List<byte[]> javaRecords = new ArrayList<byte[]>();
+        final List<byte[]> plainRecords = new ArrayList<byte[]>();
+        final List<byte[]> compressedRecords = new ArrayList<byte[]>();
+        for (Entity entity : entities) {
+            javaRecords.add(javaSerialize(entity));
+            plainRecords.add(plain.toBytes(entity));
+            final byte[] compressed = compressing.toBytes(entity);
+            assertEquals(entity, compressing.fromBytes(compressed));
+            compressedRecords.add(compressed);
+        }
+
+        final long javaSize = totalLength(javaRecords);
+        final long plainSize = totalLength(plainRecords);
+        final long compressedSize = totalLength(compressedRecords);
+        LOG.info(format("{0} entities: java serialization {1} bytes, compact {2} bytes, "
+                + "compact with deflated wiki text {3} bytes",
+                entities.size(), javaSize, plainSize, compressedSize));
+        assertTrue(compressedSize <= plainSize);
+        assertTrue(plainSize < javaSize);
+
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            timeJavaDecoding(javaRecords);
+            timeCompactDecoding(compressing, compressedRecords);
+        }
+
+        final long javaNanos = timeJavaDecoding(javaRecords);
+        final long plainNanos = timeCompactDecoding(plain, plainRecords);
+        final long compressedNanos = timeCompactDecoding(compressing, compressedRecords);
+        LOG.info(format("Decoding {0} passes: java serialization {1} ms, compact {2} ms ({3,number,#.#}x), "
+                + "compact with deflated wiki text {4} ms ({5,number,#.#}x)",
+                PASSES, javaNanos / 1000000, plainNanos / 1000000, (double) javaNanos / plainNanos,
+                compressedNanos / 1000000, (double) javaNanos / compressedNanos));
+    }
+}
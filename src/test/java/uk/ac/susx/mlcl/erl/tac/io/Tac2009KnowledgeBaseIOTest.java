@@ -4,9 +4,12 @@
  */
 package uk.ac.susx.mlcl.erl.tac.io;
 
+import com.google.common.io.Files;
 import org.junit.Test;
 import org.xml.sax.SAXException;
+import uk.ac.susx.mlcl.erl.tac.kb.SparseVector;
 import uk.ac.susx.mlcl.erl.tac.kb.TacKnowledgeBase;
+import uk.ac.susx.mlcl.erl.tac.kb.TermVectors;
 import uk.ac.susx.mlcl.erl.test.AbstractTest;
 
 import javax.annotation.Nonnull;
@@ -14,7 +17,9 @@ import javax.xml.parsers.ParserConfigurationException;
 import java.io.File;
 import java.io.IOException;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author hiam20
@@ -54,4 +59,104 @@ public class Tac2009KnowledgeBaseIOTest extends AbstractTest {
 
     }
 
+    @Test
+    public void testCreateParallel() throws ParserConfigurationException, SAXException, IOException {
+
+        final File dataDir = newTempFile();
+        assertTrue(dataDir.delete() && dataDir.mkdir());
+        final File part1 = new File(dataDir, "kb_part-0001.xml");
+        final File part2 = new File(dataDir, "kb_part-0002.xml");
+        part1.deleteOnExit();
+        part2.deleteOnExit();
+        dataDir.deleteOnExit();
+
+        Files.copy(getResourceAsFile("tac09-kb-sample.xml"), part1);
+        Files.write("<?xml version='1.0' encoding='UTF-8'?>\n<knowledge_base>\n"
+                + "<entity type=\"PER\" id=\"E9999999\" name=\"Parallel Import Person\">\n"
+                + "<facts class=\"Infobox Person\"><fact name=\"name\">Parallel Import Person</fact></facts>\n"
+                + "<wiki_text><![CDATA[Parallel Import Person is a person.]]></wiki_text>\n"
+                + "</entity>\n</knowledge_base>\n", part2, DEFAULT_CHARSET);
+
+        File dbFile = newTempFile();
+        deleteMapDBIfExists(dbFile);
+
+        TacKnowledgeBase kb = Tac2009KnowledgeBaseIO.create(dbFile, dataDir, 2);
+
+        assertTrue(kb.getIdsByAlias("Mike Quigley").contains("E0000001"));
+        assertTrue(kb.getIdsByAlias("Parallel Import Person").contains("E9999999"));
+
+        kb.close();
+
+    }
+
+    @Test
+    public void testBulkLoad() throws ParserConfigurationException, SAXException, IOException {
+
+        File xmlFile = getResourceAsFile("tac09-kb-sample.xml");
+        File dbFile = newTempFile();
+
+        deleteMapDBIfExists(dbFile);
+
+        TacKnowledgeBase kb = Tac2009KnowledgeBaseIO.bulkLoad(dbFile, xmlFile, 1, 0);
+
+        assertFalse(kb.isEmpty());
+        assertEquals("E0000001", kb.getEntityById("E0000001").getId());
+        assertEquals("E0000001", kb.getNameById("Mike Quigley (footballer)"));
+        assertTrue(kb.getIdsByAlias("Mike Quigley").contains("E0000001"));
+        assertTrue(kb.getIdsByNormalizedAlias("MIKE  QUIGLEY.").contains("E0000001"));
+        assertTrue(kb.findSimilarAliases("Mike Quigly", 5, 0.5).contains("Mike Quigley"));
+
+        kb.close();
+
+    }
+
+    @Test
+    public void testCreateAliasIndex() throws ParserConfigurationException, SAXException, IOException {
+
+        File xmlFile = getResourceAsFile("tac09-kb-sample.xml");
+        File dbFile = newTempFile();
+
+        deleteMapDBIfExists(dbFile);
+
+        TacKnowledgeBase kb = Tac2009KnowledgeBaseIO.create(dbFile, xmlFile);
+
+        // The entity name is always an alias
+        assertTrue(kb.getIdsByAlias("Mike Quigley (footballer)").contains("E0000001"));
+        // Disambiguating suffixes are stripped
+        assertTrue(kb.getIdsByAlias("Mike Quigley").contains("E0000001"));
+        assertTrue(kb.getIdsByAlias("Parker").contains("E0000012"));
+        assertTrue(kb.getIdsByAlias("Not an entity in the sample").isEmpty());
+        // Near misses are found through the n-gram index
+        assertTrue(kb.findSimilarAliases("Mike Quigly", 5, 0.5).contains("Mike Quigley"));
+        // Case, punctuation and spacing variants are found through the normalized index
+        assertTrue(kb.getIdsByAlias("MIKE  QUIGLEY.").isEmpty());
+        assertTrue(kb.getIdsByNormalizedAlias("MIKE  QUIGLEY.").contains("E0000001"));
+
+        kb.close();
+
+    }
+
+    @Test
+    public void testCreateTermVectors() throws ParserConfigurationException, SAXException, IOException {
+
+        File xmlFile = getResourceAsFile("tac09-kb-sample.xml");
+        File dbFile = newTempFile();
+
+        deleteMapDBIfExists(dbFile);
+
+        TacKnowledgeBase kb = Tac2009KnowledgeBaseIO.create(dbFile, xmlFile);
+        TermVectors vectors = kb.getTermVectors();
+
+        assertFalse(vectors.isEmpty());
+        assertTrue(vectors.getVector("E0000001").size() > 0);
+        assertTrue(vectors.getVector("Not an entity in the sample").size() == 0);
+
+        // A footballing context should prefer the footballer
+        SparseVector context = vectors.vectorize("The English midfielder played football for the club.");
+        assertTrue(context.dot(vectors.getVector("E0000001")) > context.dot(vectors.getVector("E0000012")));
+
+        kb.close();
+
+    }
+
 }
@@ -0,0 +1,85 @@
+package uk.ac.susx.mlcl.erl.tac.kb;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import uk.ac.susx.mlcl.erl.linker.LinearCombinationRanker;
+import uk.ac.susx.mlcl.erl.linker.PriorRanker;
+import uk.ac.susx.mlcl.erl.linker.RandomRanker;
+import uk.ac.susx.mlcl.erl.test.AbstractTest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Hamish Morgan
+ */
+public class EntityPriorsTest extends AbstractTest {
+
+    private static final double EPSILON = 1e-6;
+
+    private static List<Entity> sample() {
+        return ImmutableList.of(
+                new Entity.Builder("E1", "Brighton", EntityType.GPE)
+                        .setWikiText("Brighton is a seaside resort.")
+                        .addFact(new Fact.Builder("county").addLink("E3", "East Sussex").build())
+                        .build(),
+                new Entity.Builder("E2", "Hove", EntityType.GPE)
+                        .setWikiText("Hove.")
+                        .addFact(new Fact.Builder("county").addLink("E3", "East Sussex").build())
+                        .addFact(new Fact.Builder("neighbour").addLink("E1", "Brighton").build())
+                        .addFact(new Fact.Builder("self").addLink("E2", "Hove").build())
+                        .addFact(new Fact.Builder("country").addLink("E9", "England").build())
+                        .build(),
+                new Entity.Builder("E3", "East Sussex", EntityType.GPE)
+                        .addFact(new Fact.Builder("note").appendData("Not a link").build())
+                        .build());
+    }
+
+    @Test
+    public void testInLinks() {
+        final EntityPriors priors = EntityPriors.build(sample(), EntityPriors.Measure.IN_LINKS);
+        assertEquals(3, priors.size());
+        assertEquals(1.0, priors.getPrior("E3"), EPSILON);
+        assertEquals(Math.log(2) / Math.log(3), priors.getPrior("E1"), EPSILON);
+        // Self links and links to unknown entities are not counted
+        assertEquals(0.0, priors.getPrior("E2"), EPSILON);
+        assertEquals(0.0, priors.getPrior("E9"), EPSILON);
+        assertEquals(-1, priors.ordinalOf("E9"));
+        assertEquals(priors.getPrior("E1"), priors.priorAt(priors.ordinalOf("E1")), EPSILON);
+    }
+
+    @Test
+    public void testTextLength() throws IOException {
+        final EntityPriors priors = EntityPriors.build(sample(), EntityPriors.Measure.TEXT_LENGTH);
+        assertEquals(1.0, priors.getPrior("E1"), EPSILON);
+        assertEquals(0.0, priors.getPrior("E3"), EPSILON);
+
+        final File file = newTempFile();
+        priors.writeTo(file);
+        final EntityPriors read = EntityPriors.readFrom(file);
+        assertEquals(priors.size(), read.size());
+        for (String id : Arrays.asList("E1", "E2", "E3"))
+            assertEquals(priors.getPrior(id), read.getPrior(id), 0);
+    }
+
+    @Test
+    public void testRanking() throws IOException {
+        final EntityPriors priors = EntityPriors.build(sample(), EntityPriors.Measure.IN_LINKS);
+        final List<String> candidates = Arrays.asList("E2", "E1", "E9", "E3");
+        assertEquals(Arrays.asList("E3", "E1", "E2", "E9"),
+                new PriorRanker(priors).rankCandidates("Sussex", candidates));
+
+        // A heavily weighted prior dominates a random ranker
+        final LinearCombinationRanker<Object, String> combined = new LinearCombinationRanker.Builder<Object, String>()
+                .add(new RandomRanker<Object, String>(new Random(1)), 0.001)
+                .add(new PriorRanker(priors), 1.0)
+                .build();
+        assertEquals("E3", combined.rankTopK("Sussex", candidates, 1).get(0).getCandidate());
+        assertEquals(4, combined.rankTopK("Sussex", candidates, 10).size());
+    }
+}
@@ -0,0 +1,99 @@
+package uk.ac.susx.mlcl.erl.tac.kb;
+
+import com.google.common.base.Strings;
+import org.junit.Test;
+import uk.ac.susx.mlcl.erl.test.AbstractTest;
+import uk.ac.susx.mlcl.lib.StringDictionary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Hamish Morgan
+ */
+public class EntitySerializerTest extends AbstractTest {
+
+    private static Entity newEntity(String wikiText) {
+        final Entity.Builder builder = new Entity.Builder("E0000001", "Mike Quigley (footballer)", EntityType.PER);
+        builder.setWikiTitle("Mike_Quigley_(footballer)");
+        builder.setFactsClass("Infobox Football biography");
+        builder.addFact(new Fact.Builder("playername").appendData("Mike Quigley").build());
+        builder.addFact(new Fact.Builder("cityofbirth").addLink("E0467057", "Manchester").build());
+        builder.addFact(new Fact.Builder("clubs").addLink("Manchester City").appendData("\n→ ")
+                .addLink("E0640710", "Hull City").build());
+        builder.addFact(new Fact.Builder("position").addLink("Midfielder").build());
+        if (wikiText != null)
+            builder.setWikiText(wikiText);
+        return builder.build();
+    }
+
+    private static String longWikiText() {
+        return Strings.repeat("Mike Quigley (born 2 October 1970) is an English football midfielder. ", 50);
+    }
+
+    private static int javaSerializedSize(Entity entity) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(entity);
+        out.close();
+        return bytes.size();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final EntitySerializer serializer = new EntitySerializer(new StringDictionary(), true);
+
+        final Entity withoutText = newEntity(null);
+        assertEquals(withoutText, serializer.fromBytes(serializer.toBytes(withoutText)));
+
+        final Entity withText = newEntity(longWikiText());
+        assertEquals(withText, serializer.fromBytes(serializer.toBytes(withText)));
+
+        final Entity minimal = new Entity.Builder("E0000002", "Großrinderfeld", EntityType.UKN).build();
+        assertEquals(minimal, serializer.fromBytes(serializer.toBytes(minimal)));
+    }
+
+    @Test
+    public void testCompression() throws IOException {
+        final Entity entity = newEntity(longWikiText());
+        final byte[] plain = new EntitySerializer(new StringDictionary(), false).toBytes(entity);
+        final EntitySerializer compressing = new EntitySerializer(new StringDictionary(), true);
+        final byte[] compressed = compressing.toBytes(entity);
+
+        assertTrue(compressed.length < plain.length);
+        assertTrue(plain.length < javaSerializedSize(entity));
+        assertEquals(entity, compressing.fromBytes(compressed));
+    }
+
+    @Test
+    public void testDictionaryIsPersisted() throws IOException {
+        final Map<String, Integer> store = new HashMap<String, Integer>();
+        final Entity entity = newEntity("Short text.");
+        final byte[] bytes = new EntitySerializer(new StringDictionary(store), true).toBytes(entity);
+
+        // Infobox class and the four fact names
+        assertEquals(5, store.size());
+
+        final StringDictionary reloaded = new StringDictionary(store);
+        final Entity decoded = new EntitySerializer(reloaded, true).fromBytes(bytes);
+        assertEquals(entity, decoded);
+        // Decoded fact names are shared rather than copied per record
+        assertSame(reloaded.decode(reloaded.encode("playername")), decoded.getFacts().iterator().next().getName());
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public void testUnknownVersion() throws IOException {
+        final EntitySerializer serializer = new EntitySerializer(new StringDictionary(), true);
+        final byte[] bytes = serializer.toBytes(newEntity(null));
+        bytes[0] = (byte) (EntitySerializer.VERSION + 1);
+        serializer.fromBytes(bytes);
+    }
+}
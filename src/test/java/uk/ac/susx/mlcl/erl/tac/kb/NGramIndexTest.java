@@ -0,0 +1,49 @@
+package uk.ac.susx.mlcl.erl.tac.kb;
+
+import org.junit.Test;
+import uk.ac.susx.mlcl.erl.test.AbstractTest;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Hamish Morgan
+ */
+public class NGramIndexTest extends AbstractTest {
+
+    @Test
+    public void testEncodeDecode() {
+        final Random rand = newRandom();
+        final int[] values = new int[1000];
+        for (int i = 0; i < values.length; i++)
+            values[i] = rand.nextInt(Integer.MAX_VALUE);
+        Arrays.sort(values);
+
+        assertArrayEquals(values, NGramIndex.decode(NGramIndex.encode(values)));
+        assertArrayEquals(new int[0], NGramIndex.decode(NGramIndex.encode(new int[0])));
+    }
+
+    @Test
+    public void testTopByOverlap() {
+        final int[][] lists = {{1, 3, 5, 7}, {3, 5, 9}, {5, 7, 9, 11}, {}};
+
+        final int[] top = NGramIndex.topByOverlap(lists, lists.length, 1, 1);
+        assertArrayEquals(new int[]{5}, top);
+
+        final int[] atLeastTwo = NGramIndex.topByOverlap(lists, lists.length, 10, 2);
+        Arrays.sort(atLeastTwo);
+        assertArrayEquals(new int[]{3, 5, 7, 9}, atLeastTwo);
+    }
+
+    @Test
+    public void testDice() {
+        final String[] a = {"abc", "bcd", "cde"};
+        final String[] b = {"bcd", "cde", "def"};
+        assertEquals(1.0, NGramIndex.dice(a, a), 0);
+        assertEquals(4.0 / 6.0, NGramIndex.dice(a, b), 1e-9);
+        assertEquals(0.0, NGramIndex.dice(a, new String[]{"xyz"}), 0);
+    }
+}
@@ -0,0 +1,25 @@
+package uk.ac.susx.mlcl.erl.tac.kb;
+
+import org.junit.Test;
+import uk.ac.susx.mlcl.erl.test.AbstractTest;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Hamish Morgan
+ */
+public class NameNormalizerTest extends AbstractTest {
+
+    @Test
+    public void testNormalize() {
+        assertEquals("beyonce knowles", NameNormalizer.normalize("Beyoncé Knowles"));
+        assertEquals("beyonce knowles", NameNormalizer.normalize("BEYONCE KNOWLES."));
+        assertEquals("beyonce knowles", NameNormalizer.normalize("  beyonce \t knowles\n"));
+        assertEquals("usa", NameNormalizer.normalize("U.S.A."));
+        assertEquals("obrien", NameNormalizer.normalize("O'Brien"));
+        assertEquals("mike quigley footballer", NameNormalizer.normalize("Mike Quigley (footballer)"));
+        assertEquals("parker florida", NameNormalizer.normalize("Parker, Florida,"));
+        assertEquals("jean claude van damme", NameNormalizer.normalize("Jean-Claude Van Damme"));
+        assertEquals("", NameNormalizer.normalize(" -- "));
+    }
+}
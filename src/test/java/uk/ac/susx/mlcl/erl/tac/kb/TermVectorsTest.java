@@ -0,0 +1,56 @@
+package uk.ac.susx.mlcl.erl.tac.kb;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+import uk.ac.susx.mlcl.erl.test.AbstractTest;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Hamish Morgan
+ */
+public class TermVectorsTest extends AbstractTest {
+
+    private static final double EPSILON = 1e-6;
+
+    @Test
+    public void testTokenize() {
+        assertEquals(Arrays.asList("mike", "quigley", "born", "1970", "is", "an", "english"),
+                TermVectors.tokenize("Mike Quigley (born 1970) is an English"));
+        assertEquals(Arrays.asList("october"), TermVectors.tokenize("2 October..."));
+        assertEquals(Arrays.asList("großrinderfeld"), TermVectors.tokenize("Großrinderfeld!"));
+    }
+
+    @Test
+    public void testVectorize() {
+        final Map<String, Integer> dictionary = ImmutableMap.of("football", 2, "club", 0, "river", 1);
+        final float[] idf = {1f, 1f, 2f};
+
+        final SparseVector vector = TermVectors.vectorize("Football club; the football CLUB, a club.", dictionary, idf);
+        assertEquals(2, vector.size());
+        assertEquals(0, vector.indexAt(0));
+        assertEquals(2, vector.indexAt(1));
+        assertEquals(1.0, vector.norm(), EPSILON);
+        // club occurs three times with idf 1, football twice with idf 2
+        final double club = 1 + Math.log(3);
+        final double football = (1 + Math.log(2)) * 2;
+        assertEquals(club / Math.hypot(club, football), vector.valueAt(0), EPSILON);
+
+        assertEquals(0, TermVectors.vectorize("nothing known here", dictionary, idf).size());
+    }
+
+    @Test
+    public void testDot() {
+        final SparseVector a = new SparseVector(new int[]{1, 3, 5}, new float[]{1f, 2f, 3f});
+        final SparseVector b = new SparseVector(new int[]{0, 3, 5, 7}, new float[]{4f, 5f, 6f, 7f});
+        assertEquals(2 * 5 + 3 * 6, a.dot(b), EPSILON);
+        assertEquals(a.dot(b), b.dot(a), EPSILON);
+        assertEquals(0, a.dot(SparseVector.EMPTY), EPSILON);
+        assertEquals(1.0, a.normalize().dot(a.normalize()), EPSILON);
+        assertTrue(a.normalize().dot(b.normalize()) < 1.0);
+    }
+}
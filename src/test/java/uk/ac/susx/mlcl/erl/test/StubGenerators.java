@@ -0,0 +1,219 @@
+package uk.ac.susx.mlcl.erl.test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import uk.ac.susx.mlcl.erl.linker.AbstractGenerator;
+import uk.ac.susx.mlcl.erl.linker.CandidateGenerator;
+import uk.ac.susx.mlcl.erl.linker.ForwardingGenerator;
+import uk.ac.susx.mlcl.erl.linker.StaticMapGenerator;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Candidate generators for testing the generator decorators and collections. None of them depend on wall-clock
+ * timing: generators that should be slow block on a latch, which the test releases (or never releases.)
+ *
+ * @author Hamish Morgan
+ */
+public final class StubGenerators {
+
+    /**
+     * Maximum time to wait for a blocked generator to be called, before the test is failed.
+     */
+    private static final long AWAIT_TIMEOUT_SECONDS = 10;
+
+    private StubGenerators() {
+    }
+
+    /**
+     * @return generator that produces the given candidates for the mention "query", and nothing otherwise
+     */
+    @Nonnull
+    public static CandidateGenerator<String, String> fixed(String... candidates) {
+        return new StaticMapGenerator<String, String>(
+                ImmutableMap.<String, Set<String>>of("query", ImmutableSet.copyOf(candidates)));
+    }
+
+    /**
+     * @return generator that produces the mention in upper case as the only candidate
+     */
+    @Nonnull
+    public static CandidateGenerator<String, String> upperCase() {
+        return new AbstractGenerator<String, String>() {
+            @Nonnull
+            @Override
+            public Set<String> findCandidates(@Nonnull String mention) {
+                return ImmutableSet.of(mention.toUpperCase());
+            }
+        };
+    }
+
+    /**
+     * @return generator that forwards to the given generator, recording the queries of every batch it receives
+     */
+    @Nonnull
+    public static CandidateGenerator<String, String> recording(@Nonnull final CandidateGenerator<String, String> inner,
+                                                               @Nonnull final List<Set<String>> batches) {
+        return new ForwardingGenerator<String, String>(inner) {
+            @Nonnull
+            @Override
+            public Map<String, Set<String>> batchFindCandidates(@Nonnull Iterable<String> queries)
+                    throws IOException, ExecutionException {
+                batches.add(ImmutableSet.copyOf(queries));
+                return super.batchFindCandidates(queries);
+            }
+        };
+    }
+
+    /**
+     * Generator that forwards to another generator, counting the number of mentions looked up and the number of
+     * batches received. Batches are looked up one mention at a time, so each mention in a batch is counted.
+     */
+    public static class CountingGenerator extends AbstractGenerator<String, String> {
+
+        public final AtomicInteger calls = new AtomicInteger();
+        public final AtomicInteger batches = new AtomicInteger();
+        private final CandidateGenerator<String, String> inner;
+
+        public CountingGenerator(@Nonnull CandidateGenerator<String, String> inner) {
+            this.inner = inner;
+        }
+
+        /**
+         * @return counting generator that produces the mention followed by the number of the call as the only
+         *         candidate, so that every lookup produces a different result
+         */
+        @Nonnull
+        public static CountingGenerator numbered() {
+            return new CountingGenerator(upperCase()) {
+                @Nonnull
+                @Override
+                protected Set<String> lookup(@Nonnull String mention, int call) {
+                    return ImmutableSet.of(mention + call);
+                }
+            };
+        }
+
+        @Nonnull
+        protected Set<String> lookup(@Nonnull String mention, int call) throws IOException {
+            return inner.findCandidates(mention);
+        }
+
+        @Nonnull
+        @Override
+        public final Set<String> findCandidates(@Nonnull String mention) throws IOException {
+            return lookup(mention, calls.incrementAndGet());
+        }
+
+        @Nonnull
+        @Override
+        public Map<String, Set<String>> batchFindCandidates(@Nonnull Iterable<String> queries)
+                throws IOException, ExecutionException {
+            batches.incrementAndGet();
+            return super.batchFindCandidates(queries);
+        }
+    }
+
+    /**
+     * Generator that blocks every lookup until {@link #release} is counted down, or the calling thread is
+     * interrupted, then produces the mention in upper case. The mention "fail" throws an IOException instead. Every
+     * lookup is recorded when it starts, so tests can wait for calls to arrive with {@link #awaitStarted(int)}.
+     */
+    public static class BlockingGenerator extends AbstractGenerator<String, String> {
+
+        public final CountDownLatch release = new CountDownLatch(1);
+        public final List<String> lookups = new ArrayList<String>();
+
+        @Nonnull
+        @Override
+        public Set<String> findCandidates(@Nonnull String mention) throws IOException {
+            synchronized (lookups) {
+                lookups.add(mention);
+                lookups.notifyAll();
+            }
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (mention.equals("fail"))
+                throw new IOException("failed: " + mention);
+            return ImmutableSet.of(mention.toUpperCase());
+        }
+
+        /**
+         * @return number of lookups started so far
+         */
+        public int started() {
+            synchronized (lookups) {
+                return lookups.size();
+            }
+        }
+
+        /**
+         * Wait until at least <tt>count</tt> lookups have started.
+         *
+         * @throws AssertionError if they have not started after a generous timeout
+         */
+        public void awaitStarted(int count) throws InterruptedException {
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(AWAIT_TIMEOUT_SECONDS);
+            synchronized (lookups) {
+                while (lookups.size() < count) {
+                    final long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0)
+                        throw new AssertionError("expected " + count + " lookups but only "
+                                + lookups.size() + " started");
+                    TimeUnit.NANOSECONDS.timedWait(lookups, remaining);
+                }
+            }
+        }
+    }
+
+    /**
+     * Generator that produces the given candidates for any mention, but only once the given latch has been counted
+     * down, so that tests can control the order in which concurrent children complete.
+     */
+    @Nonnull
+    public static CandidateGenerator<String, String> awaiting(@Nonnull final CountDownLatch latch,
+                                                              final String... candidates) {
+        return new AbstractGenerator<String, String>() {
+            @Nonnull
+            @Override
+            public Set<String> findCandidates(@Nonnull String mention) throws IOException {
+                try {
+                    if (!latch.await(AWAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                        throw new AssertionError("latch was never released");
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return ImmutableSet.copyOf(candidates);
+            }
+        };
+    }
+
+    /**
+     * Generator that counts down the given latch whenever it is called, then produces the given candidates for any
+     * mention.
+     */
+    @Nonnull
+    public static CandidateGenerator<String, String> signalling(@Nonnull final CountDownLatch latch,
+                                                                final String... candidates) {
+        return new AbstractGenerator<String, String>() {
+            @Nonnull
+            @Override
+            public Set<String> findCandidates(@Nonnull String mention) {
+                latch.countDown();
+                return ImmutableSet.copyOf(candidates);
+            }
+        };
+    }
+}